@@ -1,10 +1,20 @@
 package com.alerts;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
+import com.data_management.AsOfJoin;
 import com.data_management.DataStorage;
+import com.data_management.JoinMatch;
 import com.data_management.Patient;
+import com.data_management.PatientDirectory;
 import com.data_management.PatientRecord;
+import com.data_management.ReadingFilter;
+import com.data_management.RecordTypeRegistry;
+import com.data_management.Subscription;
+import com.data_management.WindowSpec;
+import com.data_management.WindowStats;
 import com.alerts.factory.AlertFactory;
 
 /**
@@ -15,10 +25,8 @@ import com.alerts.factory.AlertFactory;
  */
 public class AlertGenerator {
     private DataStorage dataStorage;
-    private Map<Integer, Map<AlertType, Alert>> activeAlerts = new HashMap<>();
-    
-    // Store record history for trend analysis
-    private Map<Integer, Map<String, List<PatientRecord>>> patientRecordHistory = new HashMap<>();
+    private final PatientDirectory<Map<AlertType, Alert>> activeAlerts = new PatientDirectory<>();
+
     
     // Alert thresholds for blood pressure (systolic/diastolic)
     private static final int HIGH_SYSTOLIC_BP_THRESHOLD = 180;
@@ -27,15 +35,26 @@ public class AlertGenerator {
     private static final int LOW_DIASTOLIC_BP_THRESHOLD = 60;
     private static final int BP_TREND_CHANGE_THRESHOLD = 10;
     private static final int BP_TREND_CONSECUTIVE_READINGS = 3;
+    private static final WindowSpec BP_TREND_WINDOW = WindowSpec.ofReadings(BP_TREND_CONSECUTIVE_READINGS);
     
     // Alert thresholds for oxygen saturation
     private static final double LOW_OXYGEN_THRESHOLD = 92.0;
     private static final double OXYGEN_DROP_THRESHOLD = 5.0;
     private static final long OXYGEN_DROP_TIME_WINDOW_MS = 10 * 60 * 1000; // 10 minutes
+    private static final WindowSpec OXYGEN_DROP_WINDOW =
+        WindowSpec.ofDuration(OXYGEN_DROP_TIME_WINDOW_MS, TimeUnit.MILLISECONDS);
+
+    // Combined alerts only pair readings taken close together
+    private static final long COMBINED_ALIGNMENT_TOLERANCE_MS = 60 * 1000; // 1 minute
+    private static final AsOfJoin COMBINED_ALIGNMENT =
+        new AsOfJoin(RecordTypeRegistry.SYSTOLIC_BP, RecordTypeRegistry.OXYGEN_SATURATION)
+            .setTolerance(COMBINED_ALIGNMENT_TOLERANCE_MS, TimeUnit.MILLISECONDS)
+            .setMatch(JoinMatch.NEAREST);
     
     // Alert thresholds for ECG
     private static final int ECG_WINDOW_SIZE = 20; // Size of sliding window for ECG analysis
     private static final double ECG_ABNORMAL_THRESHOLD = 2.0; // Multiple of standard deviation
+    private static final WindowSpec ECG_WINDOW = WindowSpec.ofReadings(ECG_WINDOW_SIZE);
 
     /**
      * Constructs an {@code AlertGenerator} with a specified {@code DataStorage}.
@@ -53,64 +72,26 @@ public class AlertGenerator {
      * Evaluates the specified patient's data to determine if any alert conditions
      * are met. If a condition is met, an alert is triggered via the
      * {@link #triggerAlert} method.
+     * Each check reads only the latest reading of a record type or the
+     * statistics of a sliding window over its newest readings, which the
+     * patient keeps up to date as readings arrive, so evaluation does not
+     * depend on how much history has been stored or how large the windows
+     * are.
      *
      * @param patient the patient data to evaluate for alert conditions
      */
     public void evaluateData(Patient patient) {
         int patientId = patient.getPatientId();
         
-        // Initialize patient record history if needed
-        if (!patientRecordHistory.containsKey(patientId)) {
-            patientRecordHistory.put(patientId, new HashMap<>());
-        }
-        
         // Initialize active alerts for this patient if needed
-        if (!activeAlerts.containsKey(patientId)) {
-            activeAlerts.put(patientId, new HashMap<>());
-        }
-        
-        // Get the records for each vital sign and update history
-        updatePatientHistory(patient);
-        
-        // Get latest data from data storage to ensure we have the most up-to-date information
-        long currentTime = System.currentTimeMillis();
-        long twentyFourHoursAgo = currentTime - (24 * 60 * 60 * 1000);
-        List<PatientRecord> recentStorageRecords = dataStorage.getRecords(patientId, twentyFourHoursAgo, currentTime);
-        
-        // Also add the records from storage to our history
-        if (!recentStorageRecords.isEmpty()) {
-            for (PatientRecord record : recentStorageRecords) {
-                String recordType = record.getRecordType();
-                
-                if (!patientRecordHistory.get(patientId).containsKey(recordType)) {
-                    patientRecordHistory.get(patientId).put(recordType, new ArrayList<>());
-                }
-                
-                List<PatientRecord> typeHistory = patientRecordHistory.get(patientId).get(recordType);
-                
-                // Check if record already exists in history
-                boolean exists = typeHistory.stream()
-                    .anyMatch(r -> r.getTimestamp() == record.getTimestamp());
-                    
-                if (!exists) {
-                    typeHistory.add(record);
-                }
-            }
-            
-            // Re-sort all record types by timestamp after adding storage records
-            for (String recordType : patientRecordHistory.get(patientId).keySet()) {
-                patientRecordHistory.get(patientId).get(recordType).sort(
-                    Comparator.comparingLong(PatientRecord::getTimestamp)
-                );
-            }
-        }
+        activeAlerts.computeIfAbsent(patientId, id -> new ConcurrentHashMap<>());
         
         // Process each type of alert
-        checkBloodPressureAlerts(patientId);
-        checkOxygenSaturationAlerts(patientId);
-        checkCombinedAlerts(patientId);
-        checkECGAlerts(patientId);
-        checkManuallyTriggeredAlerts(patientId);
+        checkBloodPressureAlerts(patient);
+        checkOxygenSaturationAlerts(patient);
+        checkCombinedAlerts(patient);
+        checkECGAlerts(patient);
+        checkManuallyTriggeredAlerts(patient);
         
         // Print a summary of active alerts for the patient
         Map<AlertType, Alert> patientAlerts = activeAlerts.get(patientId);
@@ -121,65 +102,39 @@ public class AlertGenerator {
     }
     
     /**
-     * Updates the patient's record history with new data.
-     * 
-     * @param patient the patient whose history to update
+     * Starts evaluating patients as their readings arrive, instead of
+     * waiting for {@link #evaluateData(Patient)} to be called on every
+     * patient. Each batch of new readings re-evaluates the patient it
+     * belongs to, on the storage's delivery threads; alerts are derived from
+     * the readings of the alerting record types only.
+     *
+     * @return the subscription; cancel it to stop monitoring
      */
-    private void updatePatientHistory(Patient patient) {
-        int patientId = patient.getPatientId();
-        Map<String, List<PatientRecord>> recordsByType = patient.getRecordsByType();
-        
-        for (Map.Entry<String, List<PatientRecord>> entry : recordsByType.entrySet()) {
-            String recordType = entry.getKey();
-            List<PatientRecord> records = entry.getValue();
-            
-            if (!records.isEmpty()) {
-                if (!patientRecordHistory.get(patientId).containsKey(recordType)) {
-                    patientRecordHistory.get(patientId).put(recordType, new ArrayList<>());
-                }
-                
-                List<PatientRecord> history = patientRecordHistory.get(patientId).get(recordType);
-                
-                // Keep history manageable by limiting size
-                if (history.size() > 100) {
-                    history = history.subList(history.size() - 100, history.size());
-                }
-                
-                // Add new records
-                for (PatientRecord record : records) {
-                    // Add only if not already in history (by timestamp comparison)
-                    boolean exists = history.stream()
-                        .anyMatch(r -> r.getTimestamp() == record.getTimestamp());
-                    
-                    if (!exists) {
-                        history.add(record);
-                    }
-                }
-                
-                // Sort history by timestamp
-                history.sort(Comparator.comparingLong(PatientRecord::getTimestamp));
-                patientRecordHistory.get(patientId).put(recordType, history);
+    public Subscription startMonitoring() {
+        ReadingFilter alerting = ReadingFilter.recordTypes("SystolicBP", "DiastolicBP", "OxygenSaturation",
+                "ECG", "Alert");
+        return dataStorage.subscribe(alerting, update -> {
+            Patient patient = dataStorage.getPatient(update.getPatientId());
+            if (patient != null) {
+                evaluateData(patient);
             }
-        }
+        });
     }
-    
+
     /**
      * Check for blood pressure related alerts.
      * 
-     * @param patientId the ID of the patient to check
+     * @param patient the patient to check
      */
-    private void checkBloodPressureAlerts(int patientId) {
-        Map<String, List<PatientRecord>> recordsByType = patientRecordHistory.get(patientId);
-        if (recordsByType == null) return;
-        
-        List<PatientRecord> systolicRecords = recordsByType.get("SystolicBP");
-        List<PatientRecord> diastolicRecords = recordsByType.get("DiastolicBP");
+    private void checkBloodPressureAlerts(Patient patient) {
+        int patientId = patient.getPatientId();
+        WindowStats systolic = patient.getWindowStats(RecordTypeRegistry.SYSTOLIC_BP, BP_TREND_WINDOW);
+        WindowStats diastolic = patient.getWindowStats(RecordTypeRegistry.DIASTOLIC_BP, BP_TREND_WINDOW);
         
         // Check systolic blood pressure
-        if (systolicRecords != null && !systolicRecords.isEmpty()) {
-            PatientRecord latestSystolic = systolicRecords.get(systolicRecords.size() - 1);
-            double systolicValue = latestSystolic.getMeasurementValue();
-            long timestamp = latestSystolic.getTimestamp();
+        if (systolic != null) {
+            double systolicValue = systolic.getLatest();
+            long timestamp = systolic.getEndTime();
             
             // Critical high systolic BP
             if (systolicValue >= HIGH_SYSTOLIC_BP_THRESHOLD) {
@@ -204,16 +159,15 @@ public class AlertGenerator {
             }
             
             // Check for systolic BP trend
-            if (systolicRecords.size() >= BP_TREND_CONSECUTIVE_READINGS) {
-                checkBPTrend(patientId, systolicRecords, "systolic");
+            if (systolic.getCount() >= BP_TREND_CONSECUTIVE_READINGS) {
+                checkBPTrend(patientId, systolic, "systolic");
             }
         }
         
         // Check diastolic blood pressure
-        if (diastolicRecords != null && !diastolicRecords.isEmpty()) {
-            PatientRecord latestDiastolic = diastolicRecords.get(diastolicRecords.size() - 1);
-            double diastolicValue = latestDiastolic.getMeasurementValue();
-            long timestamp = latestDiastolic.getTimestamp();
+        if (diastolic != null) {
+            double diastolicValue = diastolic.getLatest();
+            long timestamp = diastolic.getEndTime();
             
             // Critical high diastolic BP
             if (diastolicValue >= HIGH_DIASTOLIC_BP_THRESHOLD) {
@@ -242,8 +196,8 @@ public class AlertGenerator {
             }
             
             // Check for diastolic BP trend
-            if (diastolicRecords.size() >= BP_TREND_CONSECUTIVE_READINGS) {
-                checkBPTrend(patientId, diastolicRecords, "diastolic");
+            if (diastolic.getCount() >= BP_TREND_CONSECUTIVE_READINGS) {
+                checkBPTrend(patientId, diastolic, "diastolic");
             }
         }
     }
@@ -252,35 +206,15 @@ public class AlertGenerator {
      * Check for blood pressure trends (increasing or decreasing).
      * 
      * @param patientId the ID of the patient
-     * @param records the BP records to check
+     * @param window the statistics of the last {@code BP_TREND_CONSECUTIVE_READINGS}
+     *               BP readings
      * @param bpType whether this is "systolic" or "diastolic" pressure
      */
-    private void checkBPTrend(int patientId, List<PatientRecord> records, String bpType) {
-        int size = records.size();
-        
-        // Get the last BP_TREND_CONSECUTIVE_READINGS readings
-        List<PatientRecord> recentReadings = records.subList(size - BP_TREND_CONSECUTIVE_READINGS, size);
-        
-        boolean increasing = true;
-        boolean decreasing = true;
-        
-        // Check if each reading changes by more than BP_TREND_CHANGE_THRESHOLD
-        for (int i = 1; i < recentReadings.size(); i++) {
-            double current = recentReadings.get(i).getMeasurementValue();
-            double previous = recentReadings.get(i - 1).getMeasurementValue();
-            
-            // For increasing trend
-            if (current - previous <= BP_TREND_CHANGE_THRESHOLD) {
-                increasing = false;
-            }
-            
-            // For decreasing trend
-            if (previous - current <= BP_TREND_CHANGE_THRESHOLD) {
-                decreasing = false;
-            }
-        }
+    private void checkBPTrend(int patientId, WindowStats window, String bpType) {
         
-        PatientRecord latest = recentReadings.get(recentReadings.size() - 1);
+        // Every reading must change by more than BP_TREND_CHANGE_THRESHOLD
+        boolean increasing = window.getMinChange() > BP_TREND_CHANGE_THRESHOLD;
+        boolean decreasing = window.getMaxChange() < -BP_TREND_CHANGE_THRESHOLD;
         
         // Handle increasing trend alert
         if (increasing) {
@@ -288,7 +222,7 @@ public class AlertGenerator {
                 patientId,
                 AlertType.BP_INCREASING_TREND,
                 "Increasing trend in " + bpType + " blood pressure detected over " + BP_TREND_CONSECUTIVE_READINGS + " readings",
-                latest.getTimestamp(),
+                window.getEndTime(),
                 AlertSeverity.MEDIUM
             ));
         } else {
@@ -301,7 +235,7 @@ public class AlertGenerator {
                 patientId,
                 AlertType.BP_DECREASING_TREND,
                 "Decreasing trend in " + bpType + " blood pressure detected over " + BP_TREND_CONSECUTIVE_READINGS + " readings",
-                latest.getTimestamp(),
+                window.getEndTime(),
                 AlertSeverity.MEDIUM
             ));
         } else {
@@ -312,16 +246,13 @@ public class AlertGenerator {
     /**
      * Check for oxygen saturation related alerts.
      * 
-     * @param patientId the ID of the patient to check
+     * @param patient the patient to check
      */
-    private void checkOxygenSaturationAlerts(int patientId) {
-        Map<String, List<PatientRecord>> recordsByType = patientRecordHistory.get(patientId);
-        if (recordsByType == null) return;
-        
-        List<PatientRecord> oxygenRecords = recordsByType.get("OxygenSaturation");
+    private void checkOxygenSaturationAlerts(Patient patient) {
+        int patientId = patient.getPatientId();
+        PatientRecord latestOxygen = patient.getLatest(RecordTypeRegistry.OXYGEN_SATURATION);
         
-        if (oxygenRecords != null && !oxygenRecords.isEmpty()) {
-            PatientRecord latestOxygen = oxygenRecords.get(oxygenRecords.size() - 1);
+        if (latestOxygen != null) {
             double oxygenValue = latestOxygen.getMeasurementValue();
             long timestamp = latestOxygen.getTimestamp();
             
@@ -335,124 +266,108 @@ public class AlertGenerator {
             }
             
             // Check for rapid drop in oxygen
-            if (oxygenRecords.size() >= 2) {
-                checkOxygenRapidDrop(patientId, oxygenRecords);
-            }
+            checkOxygenRapidDrop(patient, latestOxygen);
         }
     }
     
     /**
-     * Check for rapid drops in oxygen saturation.
+     * Check for rapid drops in oxygen saturation: a fall of at least
+     * {@code OXYGEN_DROP_THRESHOLD} from any reading in the preceding time
+     * window to the latest reading.
      * 
-     * @param patientId the ID of the patient
-     * @param records the oxygen saturation records to check
+     * @param patient the patient to check
+     * @param latest the latest oxygen saturation record
      */
-    private void checkOxygenRapidDrop(int patientId, List<PatientRecord> records) {
-        PatientRecord latest = records.get(records.size() - 1);
+    private void checkOxygenRapidDrop(Patient patient, PatientRecord latest) {
+        int patientId = patient.getPatientId();
         double latestValue = latest.getMeasurementValue();
         long latestTime = latest.getTimestamp();
         
-        // Find readings within the time window
-        for (int i = records.size() - 2; i >= 0; i--) {
-            PatientRecord earlier = records.get(i);
-            long earlierTime = earlier.getTimestamp();
-            
-            // Only check records within the time window
-            if (latestTime - earlierTime > OXYGEN_DROP_TIME_WINDOW_MS) {
-                break;
-            }
-            
-            double earlierValue = earlier.getMeasurementValue();
-            double drop = earlierValue - latestValue;
-            
-            if (drop >= OXYGEN_DROP_THRESHOLD) {
-                triggerAlert(new Alert(
-                    patientId,
-                    AlertType.RAPID_OXYGEN_DROP,
-                    "Rapid drop in oxygen saturation of " + String.format("%.1f", drop) + "% within 10 minutes",
-                    latestTime,
-                    AlertSeverity.HIGH
-                ));
-                return;
-            }
-        }
+        // Highest reading within the time window, kept up to date by the series
+        WindowStats window = patient.getWindowStats(RecordTypeRegistry.OXYGEN_SATURATION, OXYGEN_DROP_WINDOW);
+        double drop = window.getMax() - latestValue;
         
-        // No rapid drop found
-        resolveAlert(patientId, AlertType.RAPID_OXYGEN_DROP);
+        if (drop >= OXYGEN_DROP_THRESHOLD) {
+            triggerAlert(new Alert(
+                patientId,
+                AlertType.RAPID_OXYGEN_DROP,
+                "Rapid drop in oxygen saturation of " + String.format("%.1f", drop) + "% within 10 minutes",
+                latestTime,
+                AlertSeverity.HIGH
+            ));
+        } else {
+            // No rapid drop found
+            resolveAlert(patientId, AlertType.RAPID_OXYGEN_DROP);
+        }
     }
     
     /**
-     * Check for combined alerts such as Hypotensive Hypoxemia.
+     * Check for combined alerts such as Hypotensive Hypoxemia. The latest
+     * blood pressure is only paired with an oxygen saturation taken within
+     * a minute of it, so readings hours apart never make a condition.
      * 
-     * @param patientId the ID of the patient to check
+     * @param patient the patient to check
      */
-    private void checkCombinedAlerts(int patientId) {
-        Map<String, List<PatientRecord>> recordsByType = patientRecordHistory.get(patientId);
-        if (recordsByType == null) return;
-        
-        List<PatientRecord> systolicRecords = recordsByType.get("SystolicBP");
-        List<PatientRecord> oxygenRecords = recordsByType.get("OxygenSaturation");
-        
-        if (systolicRecords != null && !systolicRecords.isEmpty() && 
-            oxygenRecords != null && !oxygenRecords.isEmpty()) {
-            
-            PatientRecord latestSystolic = systolicRecords.get(systolicRecords.size() - 1);
-            PatientRecord latestOxygen = oxygenRecords.get(oxygenRecords.size() - 1);
-            
-            double systolicValue = latestSystolic.getMeasurementValue();
-            double oxygenValue = latestOxygen.getMeasurementValue();
-            
-            // Check for hypotensive hypoxemia - low BP and low oxygen
-            if (systolicValue < LOW_SYSTOLIC_BP_THRESHOLD && oxygenValue < LOW_OXYGEN_THRESHOLD) {
-                triggerAlert(new Alert(
-                    patientId,
-                    AlertType.HYPOTENSIVE_HYPOXEMIA,
-                    "Critical condition: Hypotensive Hypoxemia detected - Low blood pressure (" + 
-                        systolicValue + " mmHg) and low oxygen saturation (" + oxygenValue + "%)",
-                    Math.max(latestSystolic.getTimestamp(), latestOxygen.getTimestamp()),
-                    AlertSeverity.CRITICAL
-                ));
-            } else {
+    private void checkCombinedAlerts(Patient patient) {
+        int patientId = patient.getPatientId();
+        PatientRecord latestSystolic = patient.getLatest(RecordTypeRegistry.SYSTOLIC_BP);
+        if (latestSystolic == null) {
+            return;
+        }
+
+        // Pair the latest blood pressure with the saturation taken closest to it
+        long timestamp = latestSystolic.getTimestamp();
+        double[] aligned = new double[2];
+        long[] alignedTimestamps = new long[2];
+        int rows = COMBINED_ALIGNMENT.join(patient, timestamp, timestamp, (timestamps, values) -> {
+            System.arraycopy(values, 0, aligned, 0, 2);
+            System.arraycopy(timestamps, 0, alignedTimestamps, 0, 2);
+        });
+        if (rows == 0) {
+            if (patient.getLatest(RecordTypeRegistry.OXYGEN_SATURATION) != null) {
                 resolveAlert(patientId, AlertType.HYPOTENSIVE_HYPOXEMIA);
             }
+            return;
+        }
+
+        double systolicValue = aligned[0];
+        double oxygenValue = aligned[1];
+
+        // Check for hypotensive hypoxemia - low BP and low oxygen
+        if (systolicValue < LOW_SYSTOLIC_BP_THRESHOLD && oxygenValue < LOW_OXYGEN_THRESHOLD) {
+            triggerAlert(new Alert(
+                patientId,
+                AlertType.HYPOTENSIVE_HYPOXEMIA,
+                "Critical condition: Hypotensive Hypoxemia detected - Low blood pressure (" + 
+                    systolicValue + " mmHg) and low oxygen saturation (" + oxygenValue + "%)",
+                Math.max(alignedTimestamps[0], alignedTimestamps[1]),
+                AlertSeverity.CRITICAL
+            ));
+        } else {
+            resolveAlert(patientId, AlertType.HYPOTENSIVE_HYPOXEMIA);
         }
     }
     
     /**
      * Check for ECG abnormalities using a sliding window approach.
      * 
-     * @param patientId the ID of the patient to check
+     * @param patient the patient to check
      */
-    private void checkECGAlerts(int patientId) {
-        Map<String, List<PatientRecord>> recordsByType = patientRecordHistory.get(patientId);
-        if (recordsByType == null) return;
-        
-        List<PatientRecord> ecgRecords = recordsByType.get("ECG");
+    private void checkECGAlerts(Patient patient) {
+        int patientId = patient.getPatientId();
+        // The most recent window of ECG data, summarized as readings arrive
+        WindowStats window = patient.getWindowStats(RecordTypeRegistry.ECG, ECG_WINDOW);
         
-        if (ecgRecords != null && ecgRecords.size() >= ECG_WINDOW_SIZE) {
-            // Get the most recent window of ECG data
-            List<PatientRecord> window = ecgRecords.subList(ecgRecords.size() - ECG_WINDOW_SIZE, ecgRecords.size());
-            
-            // Calculate mean and standard deviation
-            double sum = 0, sumOfSquares = 0;
-            
-            for (PatientRecord record : window) {
-                double value = record.getMeasurementValue();
-                sum += value;
-                sumOfSquares += value * value;
-            }
-            
-            double mean = sum / ECG_WINDOW_SIZE;
-            double variance = (sumOfSquares / ECG_WINDOW_SIZE) - (mean * mean);
-            double stdDev = Math.sqrt(variance);
+        if (window != null && window.getCount() == ECG_WINDOW_SIZE) {
+            double mean = window.getMean();
+            double stdDev = window.getStandardDeviation();
             
             // Check the most recent value against the mean + threshold * stdDev
-            PatientRecord latest = window.get(window.size() - 1);
-            double latestValue = latest.getMeasurementValue();
+            double latestValue = window.getLatest();
             
             if (Math.abs(latestValue - mean) > ECG_ABNORMAL_THRESHOLD * stdDev) {
                 AlertFactory factory = AlertFactory.getFactory("ecg");
-                Alert alert = factory.createAlert(patientId, "abnormal_peak", latest.getTimestamp(), latestValue);
+                Alert alert = factory.createAlert(patientId, "abnormal_peak", window.getEndTime(), latestValue);
                 triggerAlert(alert);
             } else {
                 resolveAlert(patientId, AlertType.ECG_ABNORMAL_PEAK);
@@ -463,16 +378,13 @@ public class AlertGenerator {
     /**
      * Check for manually triggered alerts.
      * 
-     * @param patientId the ID of the patient to check
+     * @param patient the patient to check
      */
-    private void checkManuallyTriggeredAlerts(int patientId) {
-        Map<String, List<PatientRecord>> recordsByType = patientRecordHistory.get(patientId);
-        if (recordsByType == null) return;
-        
-        List<PatientRecord> alertRecords = recordsByType.get("Alert");
+    private void checkManuallyTriggeredAlerts(Patient patient) {
+        int patientId = patient.getPatientId();
+        PatientRecord latestAlert = patient.getLatest(RecordTypeRegistry.ALERT);
         
-        if (alertRecords != null && !alertRecords.isEmpty()) {
-            PatientRecord latestAlert = alertRecords.get(alertRecords.size() - 1);
+        if (latestAlert != null) {
             String alertStatus = latestAlert.getAdditionalInfo();
             
             if ("triggered".equalsIgnoreCase(alertStatus)) {
@@ -499,11 +411,7 @@ public class AlertGenerator {
         int patientId = alert.getPatientId();
         AlertType alertType = alert.getType();
         
-        Map<AlertType, Alert> patientAlerts = activeAlerts.get(patientId);
-        if (patientAlerts == null) {
-            patientAlerts = new HashMap<>();
-            activeAlerts.put(patientId, patientAlerts);
-        }
+        Map<AlertType, Alert> patientAlerts = activeAlerts.computeIfAbsent(patientId, id -> new ConcurrentHashMap<>());
         
         // If alert is already active, update it
         if (patientAlerts.containsKey(alertType)) {
@@ -5,6 +5,7 @@ import com.alerts.Alert;
 import com.alerts.AlertSeverity;
 import com.alerts.AlertType;
 import com.data_management.PatientRecord;
+import com.data_management.RecordTypeRegistry;
 
 /**
  * Strategy for monitoring blood pressure and generating alerts.
@@ -27,11 +28,11 @@ public class BloodPressureStrategy implements AlertStrategy {
         }
         
         PatientRecord latest = records.get(records.size() - 1);
-        String recordType = latest.getRecordType();
+        int recordType = latest.getRecordTypeId();
         double value = latest.getMeasurementValue();
         long timestamp = latest.getTimestamp();
         
-        if (recordType.equals("SystolicBP")) {
+        if (recordType == RecordTypeRegistry.SYSTOLIC_BP) {
             // Critical high systolic BP
             if (value >= HIGH_SYSTOLIC_BP_THRESHOLD) {
                 return new Alert(
@@ -54,7 +55,7 @@ public class BloodPressureStrategy implements AlertStrategy {
                 );
             }
             
-        } else if (recordType.equals("DiastolicBP")) {
+        } else if (recordType == RecordTypeRegistry.DIASTOLIC_BP) {
             // Critical high diastolic BP
             if (value >= HIGH_DIASTOLIC_BP_THRESHOLD) {
                 return new Alert(
@@ -5,14 +5,11 @@ import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import com.cardio_generator.generators.*;
 import com.cardio_generator.outputs.*;
-import java.util.Collections;
-import java.util.List;
 import java.util.Random;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.ArrayList;
 
 /**
  * Runs the health data simulation for all patients.
@@ -59,8 +56,8 @@ public class HealthDataSimulator {
         
         parseArguments(args);
         scheduler = Executors.newScheduledThreadPool(patientCount * 4);
-        List<Integer> patientIds = initializePatientIds(patientCount);
-        Collections.shuffle(patientIds);
+        int[] patientIds = initializePatientIds(patientCount);
+        shuffle(patientIds);
         scheduleTasksForPatients(patientIds);
     }
 
@@ -146,25 +143,39 @@ public class HealthDataSimulator {
     }
 
     /**
-     * Makes a list of patient IDs from 1 to patientCount.
+     * Makes an array of patient IDs from 1 to patientCount.
      *
      * @param patientCount number of patients
-     * @return list of patient IDs
+     * @return array of patient IDs
      */
-    private static List<Integer> initializePatientIds(int patientCount) {
-        List<Integer> patientIds = new ArrayList<>();
-        for (int i = 1; i <= patientCount; i++) {
-            patientIds.add(i);
+    private static int[] initializePatientIds(int patientCount) {
+        int[] patientIds = new int[patientCount];
+        for (int i = 0; i < patientCount; i++) {
+            patientIds[i] = i + 1;
         }
         return patientIds;
     }
 
+    /**
+     * Shuffles patient IDs in place (Fisher-Yates), without boxing them.
+     *
+     * @param patientIds array of patient IDs
+     */
+    private static void shuffle(int[] patientIds) {
+        for (int i = patientIds.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int swap = patientIds[i];
+            patientIds[i] = patientIds[j];
+            patientIds[j] = swap;
+        }
+    }
+
     /**
      * Schedules data generation tasks for each patient.
      *
-     * @param patientIds list of patient IDs
+     * @param patientIds array of patient IDs
      */
-    private static void scheduleTasksForPatients(List<Integer> patientIds) {
+    private static void scheduleTasksForPatients(int[] patientIds) {
         ECGDataGenerator ecgDataGenerator = new ECGDataGenerator(patientCount);
         BloodSaturationDataGenerator bloodSaturationDataGenerator = new BloodSaturationDataGenerator(patientCount);
         BloodPressureDataGenerator bloodPressureDataGenerator = new BloodPressureDataGenerator(patientCount);
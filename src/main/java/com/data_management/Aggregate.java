@@ -0,0 +1,121 @@
+package com.data_management;
+
+/**
+ * Summary of the readings of one record type that fall into one rollup
+ * bucket.
+ */
+public class Aggregate {
+    private final long startTime;
+    private final long endTime;
+    private final long count;
+    private final double min;
+    private final double max;
+    private final double sum;
+
+    /**
+     * Constructs a new Aggregate.
+     *
+     * @param startTime the start of the bucket, inclusive, in milliseconds since UNIX epoch
+     * @param endTime   the end of the bucket, exclusive
+     * @param count     the number of readings in the bucket
+     * @param min       the smallest reading
+     * @param max       the largest reading
+     * @param sum       the sum of the readings
+     */
+    public Aggregate(long startTime, long endTime, long count, double min, double max, double sum) {
+        this.startTime = startTime;
+        this.endTime = endTime;
+        this.count = count;
+        this.min = min;
+        this.max = max;
+        this.sum = sum;
+    }
+
+    /**
+     * Returns the start of the bucket.
+     *
+     * @return the start time, inclusive, in milliseconds since UNIX epoch
+     */
+    public long getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * Returns the end of the bucket.
+     *
+     * @return the end time, exclusive, in milliseconds since UNIX epoch
+     */
+    public long getEndTime() {
+        return endTime;
+    }
+
+    /**
+     * Returns the number of readings in the bucket.
+     *
+     * @return the reading count
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the smallest reading in the bucket.
+     *
+     * @return the minimum value
+     */
+    public double getMin() {
+        return min;
+    }
+
+    /**
+     * Returns the largest reading in the bucket.
+     *
+     * @return the maximum value
+     */
+    public double getMax() {
+        return max;
+    }
+
+    /**
+     * Returns the sum of the readings in the bucket.
+     *
+     * @return the sum
+     */
+    public double getSum() {
+        return sum;
+    }
+
+    /**
+     * Returns the mean of the readings in the bucket.
+     *
+     * @return the mean value
+     */
+    public double getMean() {
+        return sum / count;
+    }
+
+    /**
+     * Combines the summaries of two sets of readings, e.g. partial results
+     * of a query split across threads.
+     *
+     * @param a one summary, or {@code null}
+     * @param b the other summary, or {@code null}
+     * @return the summary of both, or the non-null one
+     */
+    static Aggregate merge(Aggregate a, Aggregate b) {
+        if (a == null) {
+            return b;
+        }
+        if (b == null) {
+            return a;
+        }
+        return new Aggregate(Math.min(a.startTime, b.startTime), Math.max(a.endTime, b.endTime),
+                a.count + b.count, Math.min(a.min, b.min), Math.max(a.max, b.max), a.sum + b.sum);
+    }
+
+    @Override
+    public String toString() {
+        return "Aggregate{startTime=" + startTime + ", count=" + count + ", min=" + min
+                + ", max=" + max + ", mean=" + getMean() + "}";
+    }
+}
@@ -0,0 +1,21 @@
+package com.data_management;
+
+/**
+ * Receives the rows of an {@link AsOfJoin}, one per reading of its driving
+ * record type, with the readings of the other record types aligned to it.
+ */
+@FunctionalInterface
+public interface AlignedReadingVisitor {
+    /**
+     * Called for each row in timestamp order. Both arrays are reused for the
+     * next row, so they must be copied if kept beyond the call.
+     *
+     * @param timestamps the time of the reading of each record type, in the
+     *                   order the join lists them; the first is the driving
+     *                   reading, and {@link Long#MIN_VALUE} marks a record
+     *                   type with no reading within the tolerance
+     * @param values     the value of each reading, {@link Double#NaN} where
+     *                   there is none
+     */
+    void visit(long[] timestamps, double[] values);
+}
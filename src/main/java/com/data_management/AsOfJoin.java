@@ -0,0 +1,225 @@
+package com.data_management;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Aligns the readings of several record types of one patient by time. Each
+ * reading of the first, driving record type yields a row holding, for every
+ * other record type, the reading matched to it within a tolerance (see
+ * {@link JoinMatch}), e.g. the oxygen saturation taken closest to each blood
+ * pressure reading.
+ *
+ * <p>Every series is sorted, so the join is a single merge walk: one cursor
+ * per record type, each advanced only forwards. It costs O(n + m) for n
+ * driving and m other readings, never a scan of one series per reading of
+ * another, and creates no objects per row.
+ *
+ * <pre>
+ * AsOfJoin join = new AsOfJoin("SystolicBP", "OxygenSaturation")
+ *         .setTolerance(1, TimeUnit.MINUTES).setMatch(JoinMatch.NEAREST);
+ * storage.joinAsOf(patientId, join, start, end,
+ *         (timestamps, values) -> check(values[0], values[1]));
+ * </pre>
+ *
+ * <p>A join is configured once and may then be run by several threads at
+ * once.
+ */
+public class AsOfJoin {
+    private final int[] typeIds;
+    private long toleranceMillis;
+    private JoinMatch match = JoinMatch.PREVIOUS;
+    private boolean requireAll = true;
+
+    /**
+     * Creates a join of record types by name.
+     *
+     * @param drivingType the record type whose readings make the rows
+     * @param otherTypes  the record types aligned to each driving reading
+     * @throws IllegalArgumentException if no other record type is given
+     */
+    public AsOfJoin(String drivingType, String... otherTypes) {
+        this(idsOf(drivingType, otherTypes));
+    }
+
+    /**
+     * Creates a join of interned record types.
+     *
+     * @param typeIds the record type ids from {@link RecordTypeRegistry}; the
+     *                first is the driving one
+     * @throws IllegalArgumentException if fewer than two are given
+     */
+    public AsOfJoin(int... typeIds) {
+        if (typeIds.length < 2) {
+            throw new IllegalArgumentException("A join needs at least two record types");
+        }
+        this.typeIds = typeIds.clone();
+    }
+
+    private static int[] idsOf(String drivingType, String[] otherTypes) {
+        RecordTypeRegistry registry = RecordTypeRegistry.getInstance();
+        int[] ids = new int[otherTypes.length + 1];
+        ids[0] = registry.idOf(drivingType);
+        for (int i = 0; i < otherTypes.length; i++) {
+            ids[i + 1] = registry.idOf(otherTypes[i]);
+        }
+        return ids;
+    }
+
+    /**
+     * Sets how far from a driving reading another reading may be to be
+     * matched. The default of zero only matches equal timestamps.
+     *
+     * @param tolerance the largest time difference
+     * @param unit      the unit of {@code tolerance}
+     * @return this join
+     * @throws IllegalArgumentException if the tolerance is negative
+     */
+    public AsOfJoin setTolerance(long tolerance, TimeUnit unit) {
+        if (tolerance < 0) {
+            throw new IllegalArgumentException("Tolerance must not be negative: " + tolerance);
+        }
+        this.toleranceMillis = unit.toMillis(tolerance);
+        return this;
+    }
+
+    /**
+     * Sets which reading is matched to a driving reading. The default is
+     * {@link JoinMatch#PREVIOUS}.
+     *
+     * @param match the matching rule
+     * @return this join
+     */
+    public AsOfJoin setMatch(JoinMatch match) {
+        if (match == null) {
+            throw new IllegalArgumentException("Match must not be null");
+        }
+        this.match = match;
+        return this;
+    }
+
+    /**
+     * Sets whether rows missing a match for some record type are skipped,
+     * as in an inner join, or passed on with the gap marked, as in a left
+     * join. By default they are skipped.
+     *
+     * @param requireAll whether every record type must be matched
+     * @return this join
+     */
+    public AsOfJoin setRequireAll(boolean requireAll) {
+        this.requireAll = requireAll;
+        return this;
+    }
+
+    /**
+     * Returns the number of record types in a row.
+     *
+     * @return the width of a row
+     */
+    public int getWidth() {
+        return typeIds.length;
+    }
+
+    /**
+     * Returns the largest time difference of a match.
+     *
+     * @return the tolerance, in milliseconds
+     */
+    public long getToleranceMillis() {
+        return toleranceMillis;
+    }
+
+    /**
+     * Returns which reading is matched to a driving reading.
+     *
+     * @return the matching rule
+     */
+    public JoinMatch getMatch() {
+        return match;
+    }
+
+    /**
+     * Returns whether rows missing a match are skipped.
+     *
+     * @return {@code true} if every record type must be matched
+     */
+    public boolean isRequireAll() {
+        return requireAll;
+    }
+
+    /**
+     * Runs the join over the driving readings of a patient within a time
+     * range. Readings of the other record types are matched up to the
+     * tolerance outside the range.
+     *
+     * @param patient   the patient whose readings are joined
+     * @param startTime the start of the range, inclusive
+     * @param endTime   the end of the range, inclusive
+     * @param visitor   receives each row in timestamp order
+     * @return the number of rows passed to the visitor
+     */
+    public int join(Patient patient, long startTime, long endTime, AlignedReadingVisitor visitor) {
+        int width = typeIds.length;
+        long tolerance = toleranceMillis;
+        boolean nearest = match == JoinMatch.NEAREST;
+        RecordCursor driver = patient.openCursor(typeIds[0], startTime, endTime, new RecordCursor());
+        long from = startTime < Long.MIN_VALUE + tolerance ? Long.MIN_VALUE : startTime - tolerance;
+        long to = !nearest ? endTime : endTime > Long.MAX_VALUE - tolerance ? Long.MAX_VALUE : endTime + tolerance;
+
+        // Per other record type: the last reading at or before the driving one, and the one after it
+        RecordCursor[] cursors = new RecordCursor[width];
+        boolean[] hasPrevious = new boolean[width];
+        long[] previousTimestamps = new long[width];
+        double[] previousValues = new double[width];
+        boolean[] hasNext = new boolean[width];
+        long[] nextTimestamps = new long[width];
+        double[] nextValues = new double[width];
+        for (int i = 1; i < width; i++) {
+            cursors[i] = patient.openCursor(typeIds[i], from, to, new RecordCursor());
+            hasNext[i] = cursors[i].next();
+            if (hasNext[i]) {
+                nextTimestamps[i] = cursors[i].getTimestamp();
+                nextValues[i] = cursors[i].getValue();
+            }
+        }
+
+        long[] timestamps = new long[width];
+        double[] values = new double[width];
+        int rows = 0;
+        while (driver.next()) {
+            long timestamp = driver.getTimestamp();
+            timestamps[0] = timestamp;
+            values[0] = driver.getValue();
+            boolean complete = true;
+            for (int i = 1; i < width; i++) {
+                while (hasNext[i] && nextTimestamps[i] <= timestamp) {
+                    hasPrevious[i] = true;
+                    previousTimestamps[i] = nextTimestamps[i];
+                    previousValues[i] = nextValues[i];
+                    hasNext[i] = cursors[i].next();
+                    if (hasNext[i]) {
+                        nextTimestamps[i] = cursors[i].getTimestamp();
+                        nextValues[i] = cursors[i].getValue();
+                    }
+                }
+                long gap = hasPrevious[i] ? timestamp - previousTimestamps[i] : Long.MAX_VALUE;
+                timestamps[i] = Long.MIN_VALUE;
+                values[i] = Double.NaN;
+                if (gap <= tolerance) {
+                    timestamps[i] = previousTimestamps[i];
+                    values[i] = previousValues[i];
+                }
+                if (nearest && hasNext[i] && nextTimestamps[i] - timestamp <= tolerance
+                        && nextTimestamps[i] - timestamp < gap) {
+                    timestamps[i] = nextTimestamps[i];
+                    values[i] = nextValues[i];
+                }
+                complete &= timestamps[i] != Long.MIN_VALUE;
+            }
+            if (complete || !requireAll) {
+                visitor.visit(timestamps, values);
+                rows++;
+            }
+        }
+        return rows;
+    }
+}
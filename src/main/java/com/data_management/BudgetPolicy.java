@@ -0,0 +1,19 @@
+package com.data_management;
+
+/**
+ * What {@link DataStorage} does once its estimated memory use exceeds the
+ * configured {@link MemoryBudget}.
+ */
+public enum BudgetPolicy {
+    /** New readings are dropped, and counted, until memory is freed again. */
+    REJECT,
+    /** The oldest readings across all patients are evicted, whole chunks at a time. */
+    EVICT_OLDEST,
+    /**
+     * The oldest raw readings are replaced by one mean reading per bucket of
+     * the budget's downsampling resolution; rollups, and so aggregate and
+     * quantile queries, are unaffected except at finer resolutions. If that
+     * is not enough, the oldest readings are evicted.
+     */
+    DOWNSAMPLE
+}
@@ -0,0 +1,72 @@
+package com.data_management;
+
+import java.util.Arrays;
+
+/**
+ * The newest timestamp and estimated size of every chunk across the
+ * storage, collected to decide how far back the memory budget must evict
+ * or downsample.
+ */
+class ChunkAges {
+    private long[] ends = new long[64];
+    private long[] bytes = new long[64];
+    private int size;
+
+    /**
+     * Records one chunk.
+     *
+     * @param end        the newest timestamp in the chunk
+     * @param chunkBytes the chunk's estimated size
+     */
+    void add(long end, long chunkBytes) {
+        if (size == ends.length) {
+            ends = Arrays.copyOf(ends, size * 2);
+            bytes = Arrays.copyOf(bytes, size * 2);
+        }
+        ends[size] = end;
+        bytes[size++] = chunkBytes;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the earliest cutoff such that the chunks whose readings are
+     * all older than it hold at least {@code target} bytes, or every chunk
+     * if they hold less.
+     *
+     * @param target the bytes to free
+     * @return the cutoff timestamp, or {@code Long.MIN_VALUE} if there are no
+     *         chunks
+     */
+    long cutoffFreeing(long target) {
+        if (size == 0) {
+            return Long.MIN_VALUE;
+        }
+        long[] sorted = Arrays.copyOf(ends, size);
+        Arrays.sort(sorted);
+        // The bytes freed grow with the cutoff, so binary-search the chunk ends
+        int low = 0;
+        int high = size - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (bytesOlderThan(sorted[mid] + 1) >= target) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return sorted[low] + 1;
+    }
+
+    private long bytesOlderThan(long cutoff) {
+        long total = 0;
+        for (int i = 0; i < size; i++) {
+            if (ends[i] < cutoff) {
+                total += bytes[i];
+            }
+        }
+        return total;
+    }
+}
@@ -0,0 +1,47 @@
+package com.data_management;
+
+/**
+ * Creates the chunks that back a {@link RecordSeries}, deciding where their
+ * readings are stored.
+ */
+interface ChunkAllocator {
+    /** Allocates chunks on the Java heap. */
+    ChunkAllocator HEAP = HeapSeriesChunk::new;
+
+    /**
+     * Allocates chunks on the Java heap and compresses each one once it is
+     * full (see {@link CompressedSeriesChunk}).
+     */
+    ChunkAllocator COMPRESSED_HEAP = new ChunkAllocator() {
+        @Override
+        public SeriesChunk allocate(int capacity) {
+            return new HeapSeriesChunk(capacity);
+        }
+
+        @Override
+        public SeriesChunk seal(SeriesChunk chunk) {
+            return new CompressedSeriesChunk(chunk);
+        }
+    };
+
+    /**
+     * Allocates an empty chunk.
+     *
+     * @param capacity the maximum number of readings in the chunk
+     * @return the new chunk
+     */
+    SeriesChunk allocate(int capacity);
+
+    /**
+     * Returns the form in which a full chunk that will never be appended to
+     * again is kept. The series publishes the returned chunk in place of the
+     * full one and then releases the full one if they differ. By default the
+     * chunk is kept as it is.
+     *
+     * @param chunk a full, uncompressed chunk
+     * @return the chunk to keep
+     */
+    default SeriesChunk seal(SeriesChunk chunk) {
+        return chunk;
+    }
+}
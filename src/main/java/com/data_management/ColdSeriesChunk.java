@@ -0,0 +1,136 @@
+package com.data_management;
+
+/**
+ * A sealed chunk whose readings were moved to disk by a {@link ColdStore}.
+ * Only the location of its compressed bit stream and the first and last
+ * readings stay in memory, so chunk-boundary checks and range lookups never
+ * touch the disk. Any other access pages the chunk in through the store's
+ * cache and delegates to the {@link CompressedSeriesChunk} read back.
+ */
+final class ColdSeriesChunk extends SeriesChunk {
+    // Object header, the two sizes, the store and segment references and the fields below
+    static final int OVERHEAD_BYTES = 16 + 8 + 2 * 8 + 8 + 4 + 4 * 8;
+
+    private final ColdStore store;
+    private final ColdStore.Segment segment;
+    private final long offset;
+    private final int wordCount;
+    private final long firstTimestamp;
+    private final double firstValue;
+    private final long lastTimestamp;
+    private final double lastValue;
+
+    ColdSeriesChunk(ColdStore store, ColdStore.Segment segment, long offset, CompressedSeriesChunk source) {
+        super(source.size());
+        this.store = store;
+        this.segment = segment;
+        this.offset = offset;
+        this.wordCount = source.words().length;
+        this.firstTimestamp = source.firstTimestamp();
+        this.firstValue = source.firstValue();
+        this.lastTimestamp = source.lastTimestamp();
+        this.lastValue = source.lastValue();
+        publish(source.size());
+    }
+
+    ColdStore.Segment segment() {
+        return segment;
+    }
+
+    long offset() {
+        return offset;
+    }
+
+    int wordCount() {
+        return wordCount;
+    }
+
+    /**
+     * Returns the readings, from the page cache or read back from disk.
+     *
+     * @return the chunk as it was before it was moved to disk
+     * @throws java.io.UncheckedIOException if the chunk cannot be read
+     */
+    CompressedSeriesChunk page() {
+        return store.page(this);
+    }
+
+    /**
+     * Recreates the in-memory chunk from its bit stream.
+     *
+     * @param words the bit stream read from disk
+     * @return the restored chunk
+     */
+    CompressedSeriesChunk restore(long[] words) {
+        return new CompressedSeriesChunk(size(), words, firstTimestamp, firstValue, lastTimestamp, lastValue);
+    }
+
+    @Override
+    boolean isCompressed() {
+        return true;
+    }
+
+    @Override
+    void write(int index, long timestamp, double value) {
+        throw new UnsupportedOperationException("Cold chunks are read-only");
+    }
+
+    @Override
+    long timestampAt(int index) {
+        if (index == 0) {
+            return firstTimestamp;
+        }
+        if (index == size() - 1) {
+            return lastTimestamp;
+        }
+        return page().timestampAt(index);
+    }
+
+    @Override
+    double valueAt(int index) {
+        if (index == 0) {
+            return firstValue;
+        }
+        if (index == size() - 1) {
+            return lastValue;
+        }
+        return page().valueAt(index);
+    }
+
+    @Override
+    int lowerBound(long timestamp, int size) {
+        if (timestamp <= firstTimestamp) {
+            return 0;
+        }
+        if (timestamp > lastTimestamp) {
+            return size;
+        }
+        return page().lowerBound(timestamp, size);
+    }
+
+    @Override
+    boolean forEachInRange(long startTime, long endTime, int size, RecordVisitor visitor) {
+        if (lastTimestamp < startTime) {
+            return true;
+        }
+        if (firstTimestamp > endTime) {
+            return false;
+        }
+        return page().forEachInRange(startTime, endTime, size, visitor);
+    }
+
+    @Override
+    void decode(long[] timestamps, double[] values, int offset, int count) {
+        page().decode(timestamps, values, offset, count);
+    }
+
+    @Override
+    void release() {
+        store.free(this);
+    }
+
+    @Override
+    long residentBytes() {
+        return OVERHEAD_BYTES;
+    }
+}
@@ -0,0 +1,298 @@
+package com.data_management;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the sealed chunks of inactive patients on local disk for tiered
+ * storage (see {@link DataStorage#enableTiering}).
+ *
+ * <p>Chunks are appended, in their compressed form, to segment files of up
+ * to {@link #SEGMENT_BYTES}. Each chunk moved to disk is replaced in its
+ * series by a {@link ColdSeriesChunk} recording where its bit stream lies,
+ * so the chunk arrays of the series are the index of the store. Reading a
+ * cold chunk pages it into an LRU cache of limited size, so repeated queries
+ * over the same history only read it once.
+ *
+ * <p>The files are a cache of memory, not a durable copy: they are deleted
+ * when the store is opened or closed, and persistence still relies on
+ * snapshots and the write-ahead log. A segment whose chunks have all been
+ * dropped is deleted on the next {@link #reclaim()}, which gives queries
+ * still reading it time to finish.
+ */
+class ColdStore {
+    static final String SEGMENT_PREFIX = "cold-";
+    static final String SEGMENT_SUFFIX = ".seg";
+    static final long SEGMENT_BYTES = 64L << 20;
+
+    private final Path directory;
+    private final long pageCacheBytes;
+    private final List<Segment> segments = new ArrayList<>(); // Guarded by this.
+    private Segment current;                                  // Guarded by this; null until the first write.
+    private long nextSequence;                                // Guarded by this.
+    private long coldBytes;                                   // Live bytes on disk; guarded by this.
+    private boolean closed;                                   // Guarded by this.
+    private int pins;                                         // Open storage snapshots; guarded by this.
+
+    // Paged-in chunks in access order; guarded by the map itself.
+    private final LinkedHashMap<ColdSeriesChunk, CompressedSeriesChunk> pageCache =
+            new LinkedHashMap<>(256, 0.75f, true);
+    private long cachedBytes; // Guarded by pageCache.
+    private final AtomicLong pageIns = new AtomicLong();
+
+    /**
+     * Opens a store in {@code directory}, deleting any segments left behind
+     * by a previous process.
+     *
+     * @param directory      where the segment files are kept
+     * @param pageCacheBytes how much memory holds paged-in chunks
+     * @throws IOException if the directory cannot be prepared
+     */
+    ColdStore(Path directory, long pageCacheBytes) throws IOException {
+        this.directory = directory;
+        this.pageCacheBytes = pageCacheBytes;
+        Files.createDirectories(directory);
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path stale : stream) {
+                Files.delete(stale);
+            }
+        }
+    }
+
+    /**
+     * Appends chunks to the current segment, all in one write.
+     *
+     * @param chunks the compressed chunks to move to disk
+     * @param count  the number of chunks to write
+     * @return the cold chunks replacing them, in the same order
+     * @throws IOException if the segment cannot be written
+     */
+    synchronized ColdSeriesChunk[] write(CompressedSeriesChunk[] chunks, int count) throws IOException {
+        if (closed) {
+            throw new IOException("Cold store is closed");
+        }
+        long bytes = 0;
+        for (int i = 0; i < count; i++) {
+            bytes += (long) chunks[i].words().length * Long.BYTES;
+        }
+        if (current == null || (current.size > 0 && current.size + bytes > SEGMENT_BYTES)) {
+            current = openSegment();
+        }
+        ByteBuffer buffer = ByteBuffer.allocate((int) bytes).order(ByteOrder.LITTLE_ENDIAN);
+        ColdSeriesChunk[] cold = new ColdSeriesChunk[count];
+        for (int i = 0; i < count; i++) {
+            cold[i] = new ColdSeriesChunk(this, current, current.size + buffer.position(), chunks[i]);
+            buffer.asLongBuffer().put(chunks[i].words());
+            buffer.position(buffer.position() + chunks[i].words().length * Long.BYTES);
+        }
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            current.channel.write(buffer, current.size + buffer.position());
+        }
+        current.size += bytes;
+        current.liveBytes += bytes;
+        coldBytes += bytes;
+        return cold;
+    }
+
+    private Segment openSegment() throws IOException {
+        Path path = directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, nextSequence++, SEGMENT_SUFFIX));
+        Segment segment = new Segment(path, FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE));
+        segments.add(segment);
+        return segment;
+    }
+
+    /**
+     * Returns the readings of a cold chunk, from the cache or read back from
+     * its segment. The disk is read without holding any lock, so concurrent
+     * queries page in chunks in parallel.
+     *
+     * @param chunk the cold chunk
+     * @return the chunk as it was before it was moved to disk
+     * @throws UncheckedIOException if the segment cannot be read
+     */
+    CompressedSeriesChunk page(ColdSeriesChunk chunk) {
+        synchronized (pageCache) {
+            CompressedSeriesChunk cached = pageCache.get(chunk);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(chunk.wordCount() * Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            while (buffer.hasRemaining()) {
+                if (chunk.segment().channel.read(buffer, chunk.offset() + buffer.position()) < 0) {
+                    throw new IOException("Truncated cold segment: " + chunk.segment().path);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error paging in cold readings", e);
+        }
+        buffer.flip();
+        long[] words = new long[chunk.wordCount()];
+        buffer.asLongBuffer().get(words);
+        CompressedSeriesChunk paged = chunk.restore(words);
+        pageIns.incrementAndGet();
+        synchronized (pageCache) {
+            if (pageCache.put(chunk, paged) == null) {
+                cachedBytes += paged.residentBytes();
+            }
+            Iterator<Map.Entry<ColdSeriesChunk, CompressedSeriesChunk>> eldest = pageCache.entrySet().iterator();
+            while (cachedBytes > pageCacheBytes && eldest.hasNext()) {
+                cachedBytes -= eldest.next().getValue().residentBytes();
+                eldest.remove();
+            }
+        }
+        return paged;
+    }
+
+    /**
+     * Drops a cold chunk that its series no longer holds.
+     *
+     * @param chunk the released chunk
+     */
+    void free(ColdSeriesChunk chunk) {
+        synchronized (pageCache) {
+            CompressedSeriesChunk cached = pageCache.remove(chunk);
+            if (cached != null) {
+                cachedBytes -= cached.residentBytes();
+            }
+        }
+        long bytes = (long) chunk.wordCount() * Long.BYTES;
+        synchronized (this) {
+            chunk.segment().liveBytes -= bytes;
+            coldBytes -= bytes;
+        }
+    }
+
+    /**
+     * Deletes the segments, other than the one being written, whose chunks
+     * have all been dropped.
+     *
+     * @return the number of segments deleted
+     */
+    synchronized int reclaim() {
+        if (pins > 0) {
+            return 0; // A snapshot may still read chunks its series have dropped
+        }
+        int deleted = 0;
+        for (Iterator<Segment> it = segments.iterator(); it.hasNext();) {
+            Segment segment = it.next();
+            if (segment != current && segment.liveBytes == 0) {
+                it.remove();
+                segment.delete();
+                deleted++;
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * Returns the bytes on disk still held by cold chunks.
+     *
+     * @return the live size of the segments
+     */
+    synchronized long getColdBytes() {
+        return coldBytes;
+    }
+
+    /**
+     * Returns the bytes of paged-in chunks held in the cache.
+     *
+     * @return the size of the page cache
+     */
+    long getCachedBytes() {
+        synchronized (pageCache) {
+            return cachedBytes;
+        }
+    }
+
+    /**
+     * Returns how many chunks were read back from disk.
+     *
+     * @return the number of page-ins
+     */
+    long getPageInCount() {
+        return pageIns.get();
+    }
+
+    /**
+     * Keeps every segment on disk, even once all of its chunks are dropped,
+     * until {@link #unpin()} is called. Storage snapshots pin the store so
+     * the cold chunks they captured stay readable.
+     */
+    synchronized void pin() {
+        pins++;
+    }
+
+    /**
+     * Releases a pin taken by {@link #pin()}. The segments of a store closed
+     * while it was pinned are deleted when the last pin is released.
+     */
+    synchronized void unpin() {
+        if (--pins == 0 && closed) {
+            deleteSegments();
+        }
+    }
+
+    /**
+     * Closes and deletes every segment, once no snapshot pins the store.
+     * Cold chunks still held by a series can no longer be read afterwards.
+     */
+    synchronized void close() {
+        closed = true;
+        if (pins == 0) {
+            deleteSegments();
+        }
+    }
+
+    private void deleteSegments() {
+        for (Segment segment : segments) {
+            segment.delete();
+        }
+        segments.clear();
+        current = null;
+        synchronized (pageCache) {
+            pageCache.clear();
+            cachedBytes = 0;
+        }
+    }
+
+    /**
+     * One append-only segment file.
+     */
+    static final class Segment {
+        final Path path;
+        final FileChannel channel;
+        long size;      // Guarded by the store.
+        long liveBytes; // Bytes of chunks not yet dropped; guarded by the store.
+
+        Segment(Path path, FileChannel channel) {
+            this.path = path;
+            this.channel = channel;
+        }
+
+        void delete() {
+            try {
+                channel.close();
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                System.err.println("Error deleting cold segment " + path + ": " + e.getMessage());
+            }
+        }
+    }
+}
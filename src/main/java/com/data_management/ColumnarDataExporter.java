@@ -0,0 +1,195 @@
+package com.data_management;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Writes the readings of a {@link DataStorage} to a compact binary columnar
+ * archive, which {@link ColumnarDataReader} loads back in bulk.
+ *
+ * <p>Layout, all primitives little-endian and every block 8-byte aligned:
+ * <pre>
+ * int magic, int version, int flags, int typeCount,
+ * long indexOffset, int seriesCount, int reserved
+ * per type: int typeId, short nameLength, UTF-8 name; then padding
+ * per series, one column block:
+ *   raw:        long[count] timestamps, double[count] values
+ *   compressed: per chunk: int count, int wordCount, long firstTimestamp,
+ *               double firstValue, long lastTimestamp, double lastValue,
+ *               long[wordCount] words
+ * per series, the index: int patientId, int typeId, int count, int encoding,
+ *                        long minTimestamp, long maxTimestamp,
+ *                        long blockOffset, long blockBytes
+ * </pre>
+ * The index at the end lets a reader select series without touching the
+ * blocks of the others. Raw blocks can be memory-mapped and copied straight
+ * into chunks; compressed blocks use the encoding of
+ * {@link CompressedSeriesChunk}, so chunks already compressed in memory are
+ * written as they are.
+ */
+public class ColumnarDataExporter {
+    static final int MAGIC = 0x41434443; // "CDCA"
+    static final int VERSION = 1;
+    static final int FLAG_COMPRESSED = 1;
+    static final int ENCODING_RAW = 0;
+    static final int ENCODING_COMPRESSED = 1;
+    static final int HEADER_BYTES = 32;
+    static final int INDEX_OFFSET_POSITION = 16;
+    static final int CHUNK_HEADER_BYTES = 40;
+    static final int INDEX_ENTRY_BYTES = 48;
+
+    private final Path file;
+    private final boolean compressed;
+
+    /**
+     * Creates an exporter that writes raw columns.
+     *
+     * @param file the archive to write; an existing file is replaced
+     */
+    public ColumnarDataExporter(Path file) {
+        this(file, false);
+    }
+
+    /**
+     * Creates an exporter.
+     *
+     * @param file       the archive to write; an existing file is replaced
+     * @param compressed whether to compress the columns; a compressed archive
+     *                   is several times smaller but is decoded on import
+     */
+    public ColumnarDataExporter(Path file, boolean compressed) {
+        this.file = file;
+        this.compressed = compressed;
+    }
+
+    /**
+     * Writes every reading currently in {@code storage}. The readings are
+     * read from a {@link StorageSnapshot}, so the archive is a consistent cut
+     * of all patients while ingestion continues; additional info attached to
+     * readings is not exported.
+     *
+     * @param storage the storage to export
+     * @return the number of readings written
+     * @throws IOException if the archive cannot be written
+     */
+    public long export(DataStorage storage) throws IOException {
+        RecordTypeRegistry recordTypes = RecordTypeRegistry.getInstance();
+        long readings = 0;
+        try (StorageSnapshot snapshot = storage.getSnapshot();
+                FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            List<SeriesView> views = new ArrayList<>();
+            List<Integer> patientIds = new ArrayList<>();
+            Map<Integer, String> typeNames = new TreeMap<>();
+            for (int patientId : snapshot.getPatientIds()) {
+                for (SeriesView view : snapshot.seriesViews(patientId)) {
+                    views.add(view);
+                    patientIds.add(patientId);
+                    typeNames.put(view.getTypeId(), recordTypes.nameOf(view.getTypeId()));
+                }
+            }
+
+            StorageSnapshotFile.ChannelWriter out = new StorageSnapshotFile.ChannelWriter(channel);
+            out.ensure(HEADER_BYTES).putInt(MAGIC).putInt(VERSION).putInt(compressed ? FLAG_COMPRESSED : 0)
+                    .putInt(typeNames.size()).putLong(0).putInt(0).putInt(0); // Index patched in below
+            for (Map.Entry<Integer, String> type : typeNames.entrySet()) {
+                byte[] name = type.getValue().getBytes(StandardCharsets.UTF_8);
+                out.ensure(6 + name.length).putInt(type.getKey()).putShort((short) name.length).put(name);
+            }
+            pad(out);
+
+            ByteBuffer index = ByteBuffer.allocate(views.size() * INDEX_ENTRY_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            long[] timestamps = new long[RecordSeries.MAX_CHUNK_CAPACITY];
+            double[] values = new double[RecordSeries.MAX_CHUNK_CAPACITY];
+            for (int s = 0; s < views.size(); s++) {
+                SeriesView view = views.get(s);
+                long blockOffset = out.position();
+                if (compressed) {
+                    writeCompressed(out, view, timestamps, values);
+                } else {
+                    writeRaw(out, view, timestamps, values);
+                }
+                int last = view.chunkCount() - 1;
+                index.putInt(patientIds.get(s)).putInt(view.getTypeId()).putInt(view.size())
+                        .putInt(compressed ? ENCODING_COMPRESSED : ENCODING_RAW)
+                        .putLong(view.chunk(0).timestampAt(0))
+                        .putLong(view.chunk(last).timestampAt(view.chunkSize(last) - 1))
+                        .putLong(blockOffset).putLong(out.position() - blockOffset);
+                readings += view.size();
+            }
+
+            long indexOffset = out.position();
+            out.flush();
+            index.flip();
+            while (index.hasRemaining()) {
+                channel.write(index);
+            }
+
+            ByteBuffer patch = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN);
+            patch.putLong(indexOffset).putInt(views.size()).flip();
+            while (patch.hasRemaining()) {
+                channel.write(patch, INDEX_OFFSET_POSITION + patch.position());
+            }
+            channel.force(true);
+        }
+        return readings;
+    }
+
+    private static void writeRaw(StorageSnapshotFile.ChannelWriter out, SeriesView view, long[] timestamps,
+            double[] values) throws IOException {
+        // One column after the other, so chunks are decoded once per column
+        for (int c = 0; c < view.chunkCount(); c++) {
+            int n = view.chunkSize(c);
+            view.chunk(c).decode(timestamps, values, 0, n);
+            out.putLongs(timestamps, 0, n);
+        }
+        for (int c = 0; c < view.chunkCount(); c++) {
+            int n = view.chunkSize(c);
+            view.chunk(c).decode(timestamps, values, 0, n);
+            out.putDoubles(values, 0, n);
+        }
+    }
+
+    private static void writeCompressed(StorageSnapshotFile.ChannelWriter out, SeriesView view, long[] timestamps,
+            double[] values) throws IOException {
+        for (int c = 0; c < view.chunkCount(); c++) {
+            int n = view.chunkSize(c);
+            if (n == 0) {
+                continue;
+            }
+            SeriesChunk chunk = view.chunk(c);
+            if (chunk instanceof ColdSeriesChunk) {
+                chunk = ((ColdSeriesChunk) chunk).page(); // Already encoded on disk
+            }
+            CompressedSeriesChunk encoded;
+            if (chunk.isCompressed()) {
+                encoded = (CompressedSeriesChunk) chunk;
+            } else {
+                chunk.decode(timestamps, values, 0, n);
+                HeapSeriesChunk copy = new HeapSeriesChunk(n);
+                copy.append(timestamps, values, 0, n);
+                encoded = new CompressedSeriesChunk(copy);
+            }
+            long[] words = encoded.words();
+            out.ensure(CHUNK_HEADER_BYTES).putInt(n).putInt(words.length)
+                    .putLong(encoded.firstTimestamp()).putDouble(encoded.firstValue())
+                    .putLong(encoded.lastTimestamp()).putDouble(encoded.lastValue());
+            out.putLongs(words, 0, words.length);
+        }
+    }
+
+    private static void pad(StorageSnapshotFile.ChannelWriter out) throws IOException {
+        while (out.position() % Long.BYTES != 0) {
+            out.ensure(1).put((byte) 0);
+        }
+    }
+}
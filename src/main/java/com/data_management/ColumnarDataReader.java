@@ -0,0 +1,202 @@
+package com.data_management;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Implementation of DataReader that imports a columnar archive written by
+ * {@link ColumnarDataExporter}.
+ *
+ * <p>The archive is memory-mapped in large regions. Each raw series block is
+ * viewed in place as a timestamp and a value column, and a series that is
+ * still empty in the storage copies them straight into its chunks, with no
+ * per-reading parsing or object allocation. Compressed blocks are decoded
+ * chunk by chunk first. Series that already hold readings take the regular
+ * batch path instead, so readings already stored are kept and duplicates
+ * are counted.
+ *
+ * <p>Imported readings are not delivered to subscribers. If the storage is
+ * persistent, a snapshot is written once the import completes.
+ */
+public class ColumnarDataReader implements DataReader {
+    private static final long REGION_BYTES = 1L << 30; // Mapped at once; larger series blocks get their own mapping
+
+    private final Path file;
+    private final ReadingFilter filter;
+
+    /**
+     * Creates a reader that imports every series of an archive.
+     *
+     * @param file the archive to read
+     */
+    public ColumnarDataReader(Path file) {
+        this(file, ReadingFilter.all());
+    }
+
+    /**
+     * Creates a reader that imports only the series a filter accepts. Series
+     * are selected from the archive's index, so skipped ones are never read.
+     *
+     * @param file   the archive to read
+     * @param filter selects the patients and record types to import
+     */
+    public ColumnarDataReader(Path file, ReadingFilter filter) {
+        if (filter == null) {
+            throw new IllegalArgumentException("Filter must not be null");
+        }
+        this.file = file;
+        this.filter = filter;
+    }
+
+    @Override
+    public void readData(DataStorage dataStorage) throws IOException {
+        importData(dataStorage);
+    }
+
+    /**
+     * Imports the archive into {@code dataStorage}.
+     *
+     * @param dataStorage the storage where data will be stored
+     * @return the number of readings stored; readings already in the storage
+     *         are not stored again
+     * @throws IOException if the archive cannot be read or is not a columnar
+     *                     archive
+     */
+    public long importData(DataStorage dataStorage) throws IOException {
+        RecordTypeRegistry recordTypes = RecordTypeRegistry.getInstance();
+        dataStorage.awaitShards(); // Queued readings go first, as they would without the import
+        long stored = 0;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedRegion archive = new MappedRegion(channel);
+            ByteBuffer header = archive.slice(0, ColumnarDataExporter.HEADER_BYTES);
+            if (header.getInt() != ColumnarDataExporter.MAGIC
+                    || header.getInt() != ColumnarDataExporter.VERSION) {
+                throw new IOException("Not a columnar archive: " + file);
+            }
+            header.getInt(); // Flags; each series records its own encoding
+            int typeCount = header.getInt();
+            long indexOffset = header.getLong();
+            int seriesCount = header.getInt();
+
+            // Map the archive's type ids to this process' ids
+            long position = ColumnarDataExporter.HEADER_BYTES;
+            Map<Integer, Integer> typeIds = new HashMap<>();
+            for (int t = 0; t < typeCount; t++) {
+                ByteBuffer type = archive.slice(position, 6);
+                int archiveTypeId = type.getInt();
+                byte[] name = new byte[type.getShort()];
+                archive.slice(position + 6, name.length).get(name);
+                typeIds.put(archiveTypeId, recordTypes.idOf(new String(name, StandardCharsets.UTF_8)));
+                position += 6 + name.length;
+            }
+
+            ByteBuffer index = ByteBuffer.allocate(seriesCount * ColumnarDataExporter.INDEX_ENTRY_BYTES)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            while (index.hasRemaining()) {
+                if (channel.read(index, indexOffset + index.position()) < 0) {
+                    throw new IOException("Truncated columnar archive: " + file);
+                }
+            }
+            index.flip();
+            for (int s = 0; s < seriesCount; s++) {
+                int patientId = index.getInt();
+                Integer typeId = typeIds.get(index.getInt());
+                int count = index.getInt();
+                int encoding = index.getInt();
+                index.getLong(); // Minimum timestamp
+                index.getLong(); // Maximum timestamp
+                long blockOffset = index.getLong();
+                long blockBytes = index.getLong();
+                if (typeId == null) {
+                    throw new IOException("Unknown record type in columnar archive: " + file);
+                }
+                if (!filter.accepts(patientId, typeId)) {
+                    continue;
+                }
+                ByteBuffer block = archive.slice(blockOffset, blockBytes);
+                LongBuffer timestamps;
+                DoubleBuffer values;
+                if (encoding == ColumnarDataExporter.ENCODING_RAW) {
+                    timestamps = block.asLongBuffer().limit(count);
+                    values = block.position(count * Long.BYTES).slice().order(ByteOrder.LITTLE_ENDIAN)
+                            .asDoubleBuffer();
+                } else if (encoding == ColumnarDataExporter.ENCODING_COMPRESSED) {
+                    long[] decodedTimestamps = new long[count];
+                    double[] decodedValues = new double[count];
+                    decode(block, decodedTimestamps, decodedValues);
+                    timestamps = LongBuffer.wrap(decodedTimestamps);
+                    values = DoubleBuffer.wrap(decodedValues);
+                } else {
+                    throw new IOException("Unknown series encoding " + encoding + " in columnar archive: " + file);
+                }
+                stored += dataStorage.importSeries(patientId, typeId, timestamps, values, count);
+            }
+        }
+        dataStorage.finishImport();
+        return stored;
+    }
+
+    /**
+     * Decodes a compressed series block, chunk by chunk.
+     */
+    private static void decode(ByteBuffer block, long[] timestamps, double[] values) {
+        int offset = 0;
+        while (block.hasRemaining()) {
+            int count = block.getInt();
+            long[] words = new long[block.getInt()];
+            long firstTimestamp = block.getLong();
+            double firstValue = block.getDouble();
+            long lastTimestamp = block.getLong();
+            double lastValue = block.getDouble();
+            block.asLongBuffer().get(words);
+            block.position(block.position() + words.length * Long.BYTES);
+            new CompressedSeriesChunk(count, words, firstTimestamp, firstValue, lastTimestamp, lastValue)
+                    .decode(timestamps, values, offset, count);
+            offset += count;
+        }
+    }
+
+    /**
+     * Maps the archive a large region at a time and hands out little-endian
+     * slices of it, so many small series do not cost one mapping each.
+     */
+    private static final class MappedRegion {
+        private final FileChannel channel;
+        private final long fileSize;
+        private MappedByteBuffer region;
+        private long regionStart;
+
+        MappedRegion(FileChannel channel) throws IOException {
+            this.channel = channel;
+            this.fileSize = channel.size();
+        }
+
+        ByteBuffer slice(long position, long bytes) throws IOException {
+            if (position < 0 || bytes < 0 || position + bytes > fileSize) {
+                throw new IOException("Truncated columnar archive");
+            }
+            if (bytes > Integer.MAX_VALUE) {
+                throw new IOException("Columnar block too large to map: " + bytes + " bytes");
+            }
+            if (region == null || position < regionStart || position + bytes > regionStart + region.capacity()) {
+                long size = Math.max(bytes, Math.min(REGION_BYTES, fileSize - position));
+                region = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+                regionStart = position;
+            }
+            int start = (int) (position - regionStart);
+            ByteBuffer slice = region.duplicate();
+            slice.position(start).limit(start + (int) bytes);
+            return slice.slice().order(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+}
@@ -0,0 +1,346 @@
+package com.data_management;
+
+import java.util.Arrays;
+
+/**
+ * A sealed, read-only chunk whose readings are bit-packed in the style of
+ * Facebook's Gorilla time-series store. Vital signs arrive at near-regular
+ * intervals and change slowly, so most readings shrink from 16 bytes to a
+ * couple of bits for the timestamp and a dozen or so for the value.
+ *
+ * <p>Timestamps are stored as delta-of-deltas: a reading taken exactly one
+ * interval after the previous one costs a single bit. Values are XORed with
+ * the previous value: a repeated value costs one bit, and otherwise only the
+ * meaningful bits of the XOR are written, reusing the previous bit window
+ * when they fit in it.
+ *
+ * <p>The stream can only be decoded from the start, so the chunk is meant to
+ * be scanned ({@link #forEachInRange}, {@link #decode}); the first and last
+ * readings are kept aside so chunk-boundary checks stay O(1).
+ */
+final class CompressedSeriesChunk extends SeriesChunk {
+    // Object header, fields, the word array header and the padding around them
+    static final int OVERHEAD_BYTES = 16 + 8 + 4 * 8 + 16;
+
+    private final long[] words; // The bit stream, most significant bit first.
+    private final long firstTimestamp;
+    private final double firstValue;
+    private final long lastTimestamp;
+    private final double lastValue;
+
+    /**
+     * Compresses the published readings of a full chunk.
+     *
+     * @param source the chunk to compress; it is left unchanged
+     */
+    CompressedSeriesChunk(SeriesChunk source) {
+        super(source.size());
+        int count = source.size();
+        if (count == 0) {
+            throw new IllegalArgumentException("Cannot compress an empty chunk");
+        }
+        BitWriter out = new BitWriter(count);
+        long previousTimestamp = source.timestampAt(0);
+        long previousDelta = 0;
+        long previousBits = Double.doubleToRawLongBits(source.valueAt(0));
+        int windowLeading = Long.SIZE + 1; // No window yet
+        int windowTrailing = 0;
+        for (int i = 1; i < count; i++) {
+            long timestamp = source.timestampAt(i);
+            long delta = timestamp - previousTimestamp;
+            long zigzag = zigzag(delta - previousDelta);
+            if (zigzag == 0) {
+                out.write(0, 1);
+            } else if (zigzag >>> 7 == 0) {
+                out.write(0b10L << 7 | zigzag, 9);
+            } else if (zigzag >>> 9 == 0) {
+                out.write(0b110L << 9 | zigzag, 12);
+            } else if (zigzag >>> 12 == 0) {
+                out.write(0b1110L << 12 | zigzag, 16);
+            } else {
+                out.write(0b1111L, 4);
+                out.write(zigzag, 64);
+            }
+            previousTimestamp = timestamp;
+            previousDelta = delta;
+
+            long bits = Double.doubleToRawLongBits(source.valueAt(i));
+            long xor = bits ^ previousBits;
+            if (xor == 0) {
+                out.write(0, 1);
+            } else {
+                int leading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+                int trailing = Long.numberOfTrailingZeros(xor);
+                if (leading >= windowLeading && trailing >= windowTrailing) {
+                    out.write(0b10L, 2);
+                    out.write(xor >>> windowTrailing, Long.SIZE - windowLeading - windowTrailing);
+                } else {
+                    int meaningful = Long.SIZE - leading - trailing;
+                    out.write(0b11L << 11 | (long) leading << 6 | (meaningful - 1), 13);
+                    out.write(xor >>> trailing, meaningful);
+                    windowLeading = leading;
+                    windowTrailing = trailing;
+                }
+            }
+            previousBits = bits;
+        }
+        this.words = out.toArray();
+        this.firstTimestamp = source.timestampAt(0);
+        this.firstValue = source.valueAt(0);
+        this.lastTimestamp = source.timestampAt(count - 1);
+        this.lastValue = source.valueAt(count - 1);
+        publish(count);
+    }
+
+    /**
+     * Recreates a chunk from a bit stream written by another chunk, e.g. one
+     * read back from a {@link ColumnarDataExporter columnar archive}.
+     *
+     * @param count          the number of readings in the stream
+     * @param words          the bit stream, as returned by {@link #words()}
+     * @param firstTimestamp the timestamp of the first reading
+     * @param firstValue     the value of the first reading
+     * @param lastTimestamp  the timestamp of the last reading
+     * @param lastValue      the value of the last reading
+     */
+    CompressedSeriesChunk(int count, long[] words, long firstTimestamp, double firstValue, long lastTimestamp,
+            double lastValue) {
+        super(count);
+        if (count == 0) {
+            throw new IllegalArgumentException("Cannot restore an empty chunk");
+        }
+        this.words = words;
+        this.firstTimestamp = firstTimestamp;
+        this.firstValue = firstValue;
+        this.lastTimestamp = lastTimestamp;
+        this.lastValue = lastValue;
+        publish(count);
+    }
+
+    /**
+     * Returns the bit stream; callers must not modify it.
+     *
+     * @return the encoded readings after the first
+     */
+    long[] words() {
+        return words;
+    }
+
+    long firstTimestamp() {
+        return firstTimestamp;
+    }
+
+    double firstValue() {
+        return firstValue;
+    }
+
+    long lastTimestamp() {
+        return lastTimestamp;
+    }
+
+    double lastValue() {
+        return lastValue;
+    }
+
+    @Override
+    boolean isCompressed() {
+        return true;
+    }
+
+    @Override
+    void write(int index, long timestamp, double value) {
+        throw new UnsupportedOperationException("Compressed chunks are read-only");
+    }
+
+    /**
+     * Returns a timestamp. The first and last are kept aside; any other
+     * position decodes the chunk, so callers should scan instead.
+     */
+    @Override
+    long timestampAt(int index) {
+        if (index == 0) {
+            return firstTimestamp;
+        }
+        if (index == size() - 1) {
+            return lastTimestamp;
+        }
+        long[] timestamps = new long[size()];
+        decode(timestamps, new double[size()], 0, size());
+        return timestamps[index];
+    }
+
+    /**
+     * Returns a value. The first and last are kept aside; any other position
+     * decodes the chunk, so callers should scan instead.
+     */
+    @Override
+    double valueAt(int index) {
+        if (index == 0) {
+            return firstValue;
+        }
+        if (index == size() - 1) {
+            return lastValue;
+        }
+        double[] values = new double[size()];
+        decode(new long[size()], values, 0, size());
+        return values[index];
+    }
+
+    @Override
+    int lowerBound(long timestamp, int size) {
+        if (timestamp <= firstTimestamp) {
+            return 0;
+        }
+        if (timestamp > lastTimestamp) {
+            return size;
+        }
+        return decode(Long.MIN_VALUE, timestamp - 1, null, null, null, 0);
+    }
+
+    @Override
+    boolean forEachInRange(long startTime, long endTime, int size, RecordVisitor visitor) {
+        if (lastTimestamp < startTime) {
+            return true;
+        }
+        return decode(startTime, endTime, visitor, null, null, 0) == size;
+    }
+
+    @Override
+    void decode(long[] timestamps, double[] values, int offset, int count) {
+        decode(Long.MIN_VALUE, Long.MAX_VALUE, null, timestamps, values, offset);
+    }
+
+    @Override
+    long residentBytes() {
+        return OVERHEAD_BYTES + 8L * words.length;
+    }
+
+    /**
+     * Decodes the readings in order. Readings within the range are passed to
+     * {@code visitor} if it is given, and every reading is copied into the
+     * arrays, from {@code offset} on, if they are given. Decoding stops at the
+     * first reading after {@code endTime}.
+     *
+     * @return the index of the first reading after {@code endTime}, or the
+     *         chunk size if there is none
+     */
+    private int decode(long startTime, long endTime, RecordVisitor visitor, long[] timestampsOut,
+            double[] valuesOut, int offset) {
+        int count = size();
+        long position = 0;
+        long timestamp = firstTimestamp;
+        long delta = 0;
+        long bits = Double.doubleToRawLongBits(firstValue);
+        int windowLeading = 0;
+        int windowTrailing = 0;
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                long zigzag;
+                int control = (int) readBits(words, position, 4); // Up to four prefix bits at once
+                if (control < 0b1000) {
+                    zigzag = 0;
+                    position += 1;
+                } else if (control < 0b1100) {
+                    zigzag = readBits(words, position + 2, 7);
+                    position += 9;
+                } else if (control < 0b1110) {
+                    zigzag = readBits(words, position + 3, 9);
+                    position += 12;
+                } else if (control == 0b1110) {
+                    zigzag = readBits(words, position + 4, 12);
+                    position += 16;
+                } else {
+                    zigzag = readBits(words, position + 4, 64);
+                    position += 68;
+                }
+                delta += (zigzag >>> 1) ^ -(zigzag & 1);
+                timestamp += delta;
+
+                control = (int) readBits(words, position, 2);
+                if (control < 0b10) {
+                    position += 1;
+                } else {
+                    if (control == 0b10) {
+                        position += 2;
+                    } else {
+                        long header = readBits(words, position + 2, 11);
+                        windowLeading = (int) (header >>> 6);
+                        windowTrailing = Long.SIZE - windowLeading - ((int) (header & 0x3F) + 1);
+                        position += 13;
+                    }
+                    int meaningful = Long.SIZE - windowLeading - windowTrailing;
+                    bits ^= readBits(words, position, meaningful) << windowTrailing;
+                    position += meaningful;
+                }
+            }
+            if (timestamp > endTime) {
+                return i;
+            }
+            double value = Double.longBitsToDouble(bits);
+            if (timestampsOut != null) {
+                timestampsOut[offset + i] = timestamp;
+                valuesOut[offset + i] = value;
+            }
+            if (visitor != null && timestamp >= startTime) {
+                visitor.visit(timestamp, value);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Reads {@code count} bits, between 1 and 64, starting at a bit position.
+     */
+    private static long readBits(long[] words, long position, int count) {
+        int word = (int) (position >>> 6);
+        int offset = (int) (position & 63);
+        long value = (words[word] << offset) >>> (Long.SIZE - count);
+        int available = Long.SIZE - offset;
+        if (count > available) {
+            value |= words[word + 1] >>> (Long.SIZE - (count - available));
+        }
+        return value;
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    /**
+     * Appends bits to a growing word array, most significant bit first.
+     */
+    private static final class BitWriter {
+        private long[] words;
+        private long position;
+
+        BitWriter(int readings) {
+            this.words = new long[Math.max(4, readings / 4)]; // About 16 bits per reading
+        }
+
+        void write(long value, int count) {
+            if (count == 0) {
+                return;
+            }
+            int word = (int) (position >>> 6);
+            if (word + 1 >= words.length) {
+                words = Arrays.copyOf(words, words.length + (words.length >> 1) + 2);
+            }
+            if (count < Long.SIZE) {
+                value &= (1L << count) - 1;
+            }
+            int available = Long.SIZE - (int) (position & 63);
+            if (count <= available) {
+                words[word] |= value << (available - count);
+            } else {
+                words[word] |= value >>> (count - available);
+                words[word + 1] |= value << (Long.SIZE - (count - available));
+            }
+            position += count;
+        }
+
+        long[] toArray() {
+            // One spare word lets readBits look one word ahead at the end of the stream
+            return Arrays.copyOf(words, (int) ((position + 63) >>> 6) + 1);
+        }
+    }
+}
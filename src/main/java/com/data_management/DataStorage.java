@@ -1,9 +1,28 @@
 package com.data_management;
 
+import java.io.IOException;
+import java.nio.DoubleBuffer;
+import java.nio.LongBuffer;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Collector;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import com.alerts.AlertGenerator;
 
 /**
@@ -12,31 +31,137 @@ import com.alerts.AlertGenerator;
  * This class serves as a repository for all patient records, organized by
  * patient IDs.
  * Implemented as a Singleton to ensure a single global instance.
+ * Safe for concurrent use: readers (e.g. alert evaluation) can query while
+ * data readers keep ingesting on other threads.
+ * Old readings are expired according to a {@link RetentionPolicy}, either on
+ * demand or by a background task, without blocking ingestion.
+ *
+ * <p>Readings are kept on the Java heap by default. Starting the JVM with
+ * {@code -Ddata.storage.mode=OFF_HEAP} (optionally with
+ * {@code -Ddata.storage.offHeapBudget=<bytes>}) keeps them in direct memory
+ * instead, so that the garbage collector never traverses them.
+ * On the heap, every chunk of readings is compressed once it is full (see
+ * {@link #setCompression(boolean)}); {@code -Ddata.storage.compression=false}
+ * keeps full chunks uncompressed.
+ *
+ * <p>With {@link #enablePersistence(Path, long, TimeUnit)} every reading is
+ * also written to a group-committed write-ahead log, and periodic snapshots
+ * let a restarted process recover its history quickly.
+ *
+ * <p>With {@link #setShardCount(int)} (or {@code -Ddata.storage.shards=<n>})
+ * patients are partitioned across shards, each with a single writer thread
+ * that owns all writes to its patients. Adding a reading then only enqueues
+ * it, and ingest threads never contend on series locks. Queries for a
+ * patient first wait for that patient's shard to apply what was queued
+ * before them; queries over all patients wait for every shard.
+ *
+ * <p>Instead of polling, consumers can {@link #subscribe(ReadingFilter,
+ * ReadingListener) subscribe} to have newly stored readings pushed to them
+ * in batches per patient and record type.
+ *
+ * <p>{@link #getMemoryUsage()} estimates the memory held per patient and per
+ * record type. With {@link #setMemoryBudget(MemoryBudget)} (or
+ * {@code -Ddata.storage.memoryBudget=<bytes>} and optionally
+ * {@code -Ddata.storage.budgetPolicy=<policy>}) the estimate is capped: once
+ * exceeded, new readings are rejected, or the oldest readings are evicted or
+ * downsampled in the background.
+ *
+ * <p>With {@link #enableTiering(Path, TieringOptions)} only the most recently
+ * queried patients keep their whole history in memory. The older sealed
+ * chunks of the others are moved to files on local disk, and queries that
+ * reach them page them back in transparently.
+ *
+ * <p>Reports over many patients run asynchronously with
+ * {@link #queryAsync(Collector, QueryOptions)} and the summaries built on
+ * it: the patients are split across a pool of worker threads, each thread
+ * folds its share into a partial result, and the partial results are
+ * combined when the last thread finishes.
+ *
+ * <p>{@link #getSnapshot()} returns a consistent, point-in-time view of
+ * every patient without copying readings or pausing ingest: it advances a
+ * version clock, and the first write to each series after that keeps a view
+ * of the series as it was before.
  */
 public class DataStorage {
-    private Map<Integer, Patient> patientMap; // Stores patient objects indexed by their unique patient ID.
+    static final String MODE_PROPERTY = "data.storage.mode";
+    static final String BUDGET_PROPERTY = "data.storage.offHeapBudget";
+    static final String SHARDS_PROPERTY = "data.storage.shards";
+    static final String COMPRESSION_PROPERTY = "data.storage.compression";
+    static final String MEMORY_BUDGET_PROPERTY = "data.storage.memoryBudget";
+    static final String BUDGET_POLICY_PROPERTY = "data.storage.budgetPolicy";
+    private static final int MAX_BUDGET_ROUNDS = 8; // Rollups shrink less than estimated, so eviction may repeat
+    private static final int SHARD_MAILBOX_CAPACITY = 1 << 16;
+    private static final int QUERY_BATCHES_PER_THREAD = 8; // Patients are claimed in batches, several per thread
+
+    private final PatientDirectory<Patient> patientDirectory = new PatientDirectory<>(); // Patients by their ID.
+    private final RecordTypeRegistry recordTypes = RecordTypeRegistry.getInstance();
+    private volatile RetentionPolicy retentionPolicy = new RetentionPolicy();
+    private ScheduledExecutorService retentionScheduler;
+    private final AtomicLong evictedRecords = new AtomicLong();
+    private final AtomicLong duplicateRecords = new AtomicLong();
+    private final AtomicLong rejectedRecords = new AtomicLong();
+    private final MemoryAccount memoryAccount = new MemoryAccount();
+    private volatile MemoryBudget memoryBudget; // Null when memory use is not limited.
+    private final Object budgetLock = new Object(); // Serializes budget enforcement passes.
+    private final AtomicBoolean budgetEnforcementQueued = new AtomicBoolean();
+    private ExecutorService budgetExecutor; // Runs enforcement off the ingest path; created on first use.
+    private volatile StorageMode storageMode = StorageMode.HEAP;
+    private volatile boolean compression = true;
+    private volatile ChunkAllocator chunkAllocator = ChunkAllocator.COMPRESSED_HEAP;
+    private volatile StoragePersistence persistence;
+    private volatile WriteAheadLog wal;
+    private volatile StorageShard[] shards; // Null unless sharded ingest is enabled.
+    private volatile LatestValueIndex[] latestIndexes = new LatestValueIndex[0]; // By type id; built on first query.
+    private volatile Subscription[] subscriptions = new Subscription[0]; // Replaced, never mutated.
+    private ExecutorService subscriptionExecutor; // Default delivery pool; created on first use.
+    private volatile ColdStore coldStore; // Null unless tiering is enabled.
+    private volatile TieringOptions tieringOptions;
+    private ScheduledExecutorService tieringScheduler;
+    private final Object tieringLock = new Object(); // Serializes tiering passes.
+    private ForkJoinPool queryPool; // Runs asynchronous queries; created on first use.
+    private final VersionClock versionClock = new VersionClock(); // Advanced by each storage snapshot.
+    private final Object snapshotLock = new Object(); // Serializes storage snapshots.
     
     // Singleton instance
-    private static DataStorage instance;
+    private static volatile DataStorage instance;
 
     /**
      * Private constructor for Singleton pattern.
      * Initializes the underlying storage structure.
      */
     private DataStorage() {
-        this.patientMap = new HashMap<>();
+        setCompression(!"false".equalsIgnoreCase(System.getProperty(COMPRESSION_PROPERTY)));
+        String mode = System.getProperty(MODE_PROPERTY);
+        if (mode != null) {
+            long budget = Long.getLong(BUDGET_PROPERTY, Long.MAX_VALUE);
+            setStorageMode(StorageMode.valueOf(mode.trim().toUpperCase()), budget);
+        }
+        setShardCount(Integer.getInteger(SHARDS_PROPERTY, 0));
+        Long budget = Long.getLong(MEMORY_BUDGET_PROPERTY);
+        if (budget != null) {
+            String policy = System.getProperty(BUDGET_POLICY_PROPERTY, BudgetPolicy.EVICT_OLDEST.name());
+            setMemoryBudget(new MemoryBudget(budget, BudgetPolicy.valueOf(policy.trim().toUpperCase())));
+        }
     }
     
     /**
-     * Gets the singleton instance of DataStorage.
+     * Gets the singleton instance of DataStorage. Only the first call locks,
+     * so ingest threads can look the instance up on every reading.
      *
      * @return the singleton instance
      */
-    public static synchronized DataStorage getInstance() {
-        if (instance == null) {
-            instance = new DataStorage();
+    public static DataStorage getInstance() {
+        DataStorage storage = instance;
+        if (storage == null) {
+            synchronized (DataStorage.class) {
+                storage = instance;
+                if (storage == null) {
+                    storage = new DataStorage();
+                    instance = storage;
+                }
+            }
         }
-        return instance;
+        return storage;
     }
 
     /**
@@ -44,6 +169,8 @@ public class DataStorage {
      * If the patient does not exist, a new Patient object is created and added to
      * the storage.
      * Otherwise, the new data is added to the existing patient's records.
+     * The record type is interned once here and the reading is stored in the
+     * patient's columnar series without allocating a {@link PatientRecord}.
      *
      * @param patientId        the unique identifier of the patient
      * @param measurementValue the value of the health metric being recorded
@@ -53,12 +180,231 @@ public class DataStorage {
      *                         milliseconds since the Unix epoch
      */
     public void addPatientData(int patientId, double measurementValue, String recordType, long timestamp) {
-        Patient patient = patientMap.get(patientId);
-        if (patient == null) {
-            patient = new Patient(patientId);
-            patientMap.put(patientId, patient);
+        addPatientData(patientId, measurementValue, recordTypes.idOf(recordType), timestamp);
+    }
+
+    /**
+     * Stores a reading whose record type has already been resolved with
+     * {@link RecordTypeRegistry#idOf(String)}, so no type name is hashed.
+     *
+     * @param patientId        the unique identifier of the patient
+     * @param measurementValue the value of the health metric being recorded
+     * @param recordTypeId     the record type id
+     * @param timestamp        the time at which the measurement was taken, in
+     *                         milliseconds since the Unix epoch
+     */
+    public void addPatientData(int patientId, double measurementValue, int recordTypeId, long timestamp) {
+        StorageShard[] current = shards;
+        if (current != null) {
+            current[shardIndex(patientId, current.length)].enqueue(patientId, recordTypeId, timestamp,
+                    measurementValue);
+            return;
+        }
+        if (rejectsReadings()) {
+            rejectedRecords.incrementAndGet();
+            return;
+        }
+        Patient patient = getOrCreatePatient(patientId);
+        WriteAheadLog log = wal;
+        boolean stored = log == null
+                ? patient.addRecord(measurementValue, recordTypeId, timestamp)
+                : patient.addRecord(measurementValue, recordTypeId, timestamp, log);
+        if (!stored) {
+            duplicateRecords.incrementAndGet();
+            return;
+        }
+        indexLatest(patientId, recordTypeId, timestamp, measurementValue);
+        if (isSubscribed(patientId, recordTypeId)) {
+            publish(patientId, recordTypeId, new long[] {timestamp}, new double[] {measurementValue}, 0, 1);
+        }
+    }
+
+    /**
+     * Stores a batch of readings. The batch is grouped by patient and then by
+     * record type, so each series is locked once and receives its readings as
+     * one run, instead of one lookup and lock per reading as with
+     * {@link #addPatientData(int, double, String, long)}. Readings of the same
+     * series keep their order within the batch.
+     *
+     * @param batch the readings to store; its readings are left unchanged
+     */
+    public void addBatch(RecordBatch batch) {
+        if (batch.size() == 0) {
+            return;
+        }
+        StorageShard[] current = shards;
+        if (current == null) {
+            applyBatch(batch);
+            return;
+        }
+        int groups = batch.group();
+        long[] timestamps = batch.groupedTimestamps();
+        double[] values = batch.groupedValues();
+        for (int g = 0; g < groups; g++) {
+            int patientId = batch.groupPatientId(g);
+            int typeId = batch.groupTypeId(g);
+            StorageShard shard = current[shardIndex(patientId, current.length)];
+            for (int i = batch.groupStart(g), end = i + batch.groupSize(g); i < end; i++) {
+                shard.enqueue(patientId, typeId, timestamps[i], values[i]);
+            }
+        }
+    }
+
+    /**
+     * Stores a batch directly on the calling thread. Used by
+     * {@link #addBatch(RecordBatch)} when not sharded, and by each shard's
+     * writer for the readings it has drained.
+     *
+     * @param batch the readings to store
+     */
+    void applyBatch(RecordBatch batch) {
+        if (rejectsReadings()) {
+            rejectedRecords.addAndGet(batch.size());
+            return;
+        }
+        int groups = batch.group();
+        long[] timestamps = batch.groupedTimestamps();
+        double[] values = batch.groupedValues();
+        WriteAheadLog log = wal;
+        StoredReadings published = null;
+        for (int g = 0; g < groups; g++) {
+            int typeId = batch.groupTypeId(g);
+            int start = batch.groupStart(g);
+            int end = start + batch.groupSize(g);
+            Patient patient = getOrCreatePatient(batch.groupPatientId(g));
+            StoredReadings stored = null;
+            if (isSubscribed(patient.getPatientId(), typeId)) {
+                if (published == null) {
+                    published = new StoredReadings(batch.size());
+                }
+                stored = published;
+                stored.clear();
+            }
+            int storedCount;
+            try {
+                storedCount = patient.addRecords(typeId, timestamps, values, start, end - start, log, stored);
+            } catch (RuntimeException e) {
+                // E.g. an exhausted off-heap budget: the rest of this run and the later runs are lost
+                long lost = end - start - patient.seriesFor(typeId).countStored(timestamps, start, end - start);
+                for (int later = g + 1; later < groups; later++) {
+                    lost += batch.groupSize(later);
+                }
+                rejectedRecords.addAndGet(lost);
+                throw e;
+            }
+            if (storedCount < end - start) {
+                duplicateRecords.addAndGet(end - start - storedCount);
+            }
+            if (stored != null && stored.count > 0) {
+                publish(patient.getPatientId(), typeId, stored.timestamps, stored.values, 0, stored.count);
+            }
+            LatestValueIndex[] indexes = latestIndexes;
+            if (storedCount == 0 || typeId >= indexes.length || indexes[typeId] == null) {
+                continue;
+            }
+            if (storedCount == end - start) {
+                int newest = start;
+                for (int i = start + 1; i < end; i++) {
+                    if (timestamps[i] >= timestamps[newest]) {
+                        newest = i;
+                    }
+                }
+                indexes[typeId].update(patient.getPatientId(), timestamps[newest], values[newest]);
+            } else {
+                // A dropped duplicate may carry the newest timestamp, so ask the series
+                PatientRecord latest = patient.getLatest(typeId);
+                indexes[typeId].update(patient.getPatientId(), latest.getTimestamp(), latest.getMeasurementValue());
+            }
+        }
+    }
+
+    /**
+     * Collects the readings a series reports as stored, so they can be
+     * published once the series lock is released.
+     */
+    private static final class StoredReadings implements RecordVisitor {
+        final long[] timestamps;
+        final double[] values;
+        int count;
+
+        StoredReadings(int capacity) {
+            timestamps = new long[capacity];
+            values = new double[capacity];
+        }
+
+        @Override
+        public void visit(long timestamp, double value) {
+            timestamps[count] = timestamp;
+            values[count++] = value;
+        }
+
+        void clear() {
+            count = 0;
+        }
+    }
+
+    /**
+     * Passes a stored reading to the latest-value index of its record type,
+     * if that index exists.
+     */
+    private void indexLatest(int patientId, int recordTypeId, long timestamp, double value) {
+        LatestValueIndex[] indexes = latestIndexes;
+        if (recordTypeId < indexes.length && indexes[recordTypeId] != null) {
+            indexes[recordTypeId].update(patientId, timestamp, value);
+        }
+    }
+
+    /**
+     * Returns the patient with the given ID, creating it if needed.
+     *
+     * @param patientId the unique identifier of the patient
+     * @return the stored patient
+     */
+    Patient getOrCreatePatient(int patientId) {
+        return patientDirectory.computeIfAbsent(patientId,
+                id -> new Patient(id, chunkAllocator, memoryAccount, versionClock));
+    }
+
+    /**
+     * Imports one series of readings in bulk, as read by a
+     * {@link ColumnarDataReader}. Into an empty series, sorted columns are
+     * copied straight into its chunks; otherwise they are added like a batch,
+     * dropping duplicates. Imported readings are not delivered to
+     * subscribers. Call {@link #finishImport()} once every series is in.
+     *
+     * @param patientId    the patient the readings belong to
+     * @param recordTypeId the record type id from {@link RecordTypeRegistry}
+     * @param timestamps   the timestamp column, positioned at the first reading
+     * @param values       the value column, positioned at the first reading
+     * @param count        the number of readings
+     * @return the number of readings stored
+     */
+    int importSeries(int patientId, int recordTypeId, LongBuffer timestamps, DoubleBuffer values, int count) {
+        if (rejectsReadings()) {
+            rejectedRecords.addAndGet(count);
+            return 0;
+        }
+        Patient patient = getOrCreatePatient(patientId);
+        int stored = patient.seriesFor(recordTypeId).importColumns(timestamps, values, count, wal, patientId);
+        if (stored < count) {
+            duplicateRecords.addAndGet(count - stored);
+        }
+        return stored;
+    }
+
+    /**
+     * Ends a bulk import: the latest-value indexes are rebuilt on the next
+     * query, and if the storage is persistent a snapshot is written, since
+     * readings loaded into empty series are not logged.
+     *
+     * @throws IOException if the snapshot cannot be written
+     */
+    void finishImport() throws IOException {
+        dropLatestIndexes();
+        StoragePersistence current = persistence;
+        if (current != null) {
+            current.snapshot();
         }
-        patient.addRecord(measurementValue, recordType, timestamp);
     }
 
     /**
@@ -75,27 +421,1385 @@ public class DataStorage {
      *         range
      */
     public List<PatientRecord> getRecords(int patientId, long startTime, long endTime) {
-        Patient patient = patientMap.get(patientId);
+        Patient patient = queriedPatient(patientId);
         if (patient != null) {
             return patient.getRecords(startTime, endTime);
         }
         return new ArrayList<>(); // return an empty list if no patient is found
     }
 
+    /**
+     * Retrieves a patient's records of one record type within a time range,
+     * in timestamp order.
+     *
+     * @param patientId    the unique identifier of the patient
+     * @param recordTypeId the record type id from {@link RecordTypeRegistry}
+     * @param startTime    the start of the time range, in milliseconds since the Unix
+     *                     epoch
+     * @param endTime      the end of the time range, in milliseconds since the Unix
+     *                     epoch
+     * @return the matching records
+     */
+    public List<PatientRecord> getRecords(int patientId, int recordTypeId, long startTime, long endTime) {
+        Patient patient = queriedPatient(patientId);
+        if (patient != null) {
+            return patient.getRecords(recordTypeId, startTime, endTime);
+        }
+        return new ArrayList<>();
+    }
+
+    /**
+     * Looks up a patient for a history query, marking it as recently used so
+     * tiered storage keeps it in memory.
+     *
+     * @param patientId the unique identifier of the patient
+     * @return the patient, or {@code null} if there is none
+     */
+    private Patient queriedPatient(int patientId) {
+        awaitShard(patientId);
+        Patient patient = patientDirectory.get(patientId);
+        if (patient != null) {
+            patient.markUsed();
+        }
+        return patient;
+    }
+
+    /**
+     * Returns a patient's most recent reading of one record type without
+     * scanning its history, e.g. for "current vitals" displays and threshold
+     * checks.
+     *
+     * @param patientId  the unique identifier of the patient
+     * @param recordType the record type, e.g. "HeartRate"
+     * @return the newest reading, or {@code null} if there is none
+     */
+    public PatientRecord getLatest(int patientId, String recordType) {
+        return getLatest(patientId, recordTypes.find(recordType));
+    }
+
+    /**
+     * Returns a patient's most recent reading of one record type.
+     *
+     * @param patientId    the unique identifier of the patient
+     * @param recordTypeId the record type id from {@link RecordTypeRegistry}
+     * @return the newest reading, or {@code null} if there is none
+     */
+    public PatientRecord getLatest(int patientId, int recordTypeId) {
+        awaitShard(patientId);
+        Patient patient = patientDirectory.get(patientId);
+        return patient == null ? null : patient.getLatest(recordTypeId);
+    }
+
+    /**
+     * Returns the statistics of a sliding window over a patient's newest
+     * readings of one record type, kept up to date at ingest once queried
+     * (see {@link Patient#getWindowStats(int, WindowSpec)}).
+     *
+     * @param patientId  the unique identifier of the patient
+     * @param recordType the record type, e.g. "ECG"
+     * @param window     the extent of the window
+     * @return the statistics, or {@code null} if there are no readings
+     */
+    public WindowStats getWindowStats(int patientId, String recordType, WindowSpec window) {
+        return getWindowStats(patientId, recordTypes.find(recordType), window);
+    }
+
+    /**
+     * Returns the statistics of a sliding window over a patient's newest
+     * readings of one record type.
+     *
+     * @param patientId    the unique identifier of the patient
+     * @param recordTypeId the record type id from {@link RecordTypeRegistry}
+     * @param window       the extent of the window
+     * @return the statistics, or {@code null} if there are no readings
+     */
+    public WindowStats getWindowStats(int patientId, int recordTypeId, WindowSpec window) {
+        awaitShard(patientId);
+        Patient patient = patientDirectory.get(patientId);
+        return patient == null ? null : patient.getWindowStats(recordTypeId, window);
+    }
+
+    /**
+     * Returns a patient's most recent readings of one record type, in
+     * timestamp order. Short requests, as used by trend checks, are served
+     * from the newest readings kept aside at ingest.
+     *
+     * @param patientId  the unique identifier of the patient
+     * @param recordType the record type, e.g. "SystolicBP"
+     * @param count      the maximum number of readings to return
+     * @return the newest readings, oldest first
+     * @throws IllegalArgumentException if {@code count} is negative
+     */
+    public List<PatientRecord> getLastN(int patientId, String recordType, int count) {
+        return getLastN(patientId, recordTypes.find(recordType), count);
+    }
+
+    /**
+     * Returns a patient's most recent readings of one record type, in
+     * timestamp order.
+     *
+     * @param patientId    the unique identifier of the patient
+     * @param recordTypeId the record type id from {@link RecordTypeRegistry}
+     * @param count        the maximum number of readings to return
+     * @return the newest readings, oldest first
+     * @throws IllegalArgumentException if {@code count} is negative
+     */
+    public List<PatientRecord> getLastN(int patientId, int recordTypeId, int count) {
+        awaitShard(patientId);
+        Patient patient = patientDirectory.get(patientId);
+        if (patient != null) {
+            return patient.getLastN(recordTypeId, count);
+        }
+        if (count < 0) {
+            throw new IllegalArgumentException("Count must not be negative: " + count);
+        }
+        return new ArrayList<>();
+    }
+
+    /**
+     * Streams a patient's readings of one record type within a time range to
+     * a visitor, in timestamp order. Unlike {@link #getRecords(int, long, long)}
+     * no lists or record objects are created, so hot paths such as alert
+     * evaluation can query without producing garbage.
+     *
+     * @param patientId  the unique identifier of the patient
+     * @param recordType the record type, e.g. "ECG"
+     * @param startTime  the start of the time range, in milliseconds since the Unix
+     *                   epoch
+     * @param endTime    the end of the time range, in milliseconds since the Unix
+     *                   epoch
+     * @param visitor    receives each reading
+     */
+    public void forEachInRange(int patientId, String recordType, long startTime, long endTime,
+            RecordVisitor visitor) {
+        Patient patient = queriedPatient(patientId);
+        if (patient != null) {
+            patient.forEachInRange(recordType, startTime, endTime, visitor);
+        }
+    }
+
+    /**
+     * Opens a reusable cursor over a patient's readings of one record type
+     * within a time range.
+     *
+     * @param patientId  the unique identifier of the patient
+     * @param recordType the record type, e.g. "ECG"
+     * @param startTime  the start of the time range, in milliseconds since the Unix
+     *                   epoch
+     * @param endTime    the end of the time range, in milliseconds since the Unix
+     *                   epoch
+     * @param cursor     the cursor to position; any previous position is discarded
+     * @return {@code cursor}, for chaining
+     */
+    public RecordCursor openCursor(int patientId, String recordType, long startTime, long endTime,
+            RecordCursor cursor) {
+        Patient patient = queriedPatient(patientId);
+        if (patient != null) {
+            return patient.openCursor(recordType, startTime, endTime, cursor);
+        }
+        cursor.clear();
+        return cursor;
+    }
+
+    /**
+     * Aligns a patient's readings of several record types by time, e.g. for
+     * conditions that combine vital signs or for exports with one column per
+     * signal. See {@link AsOfJoin} for how readings are matched.
+     *
+     * @param patientId the unique identifier of the patient
+     * @param join      the record types to align and how
+     * @param startTime the start of the range of driving readings, in
+     *                  milliseconds since the Unix epoch
+     * @param endTime   the end of the range of driving readings, in
+     *                  milliseconds since the Unix epoch
+     * @param visitor   receives each row in timestamp order
+     * @return the number of rows passed to the visitor
+     */
+    public int joinAsOf(int patientId, AsOfJoin join, long startTime, long endTime, AlignedReadingVisitor visitor) {
+        Patient patient = queriedPatient(patientId);
+        return patient == null ? 0 : join.join(patient, startTime, endTime, visitor);
+    }
+
+    /**
+     * Retrieves per-bucket min, max, mean and count of one record type for a
+     * patient. The buckets are maintained as readings are added, so a long
+     * range costs one entry per bucket rather than one per reading.
+     *
+     * @param patientId  the unique identifier of the patient
+     * @param recordType the record type, e.g. "HeartRate"
+     * @param startTime  the start of the time range, in milliseconds since the Unix
+     *                   epoch
+     * @param endTime    the end of the time range, in milliseconds since the Unix
+     *                   epoch
+     * @param resolution the bucket width
+     * @return the buckets overlapping the range, in time order
+     */
+    public List<Aggregate> getAggregates(int patientId, String recordType, long startTime, long endTime,
+            Resolution resolution) {
+        Patient patient = queriedPatient(patientId);
+        if (patient != null) {
+            return patient.getAggregates(recordType, startTime, endTime, resolution);
+        }
+        return new ArrayList<>();
+    }
+
+    /**
+     * Estimates percentiles of one record type for a patient over a time
+     * range, e.g. the 5th, 50th and 95th percentile heart rate of the last
+     * day. Whole hours are answered from quantile sketches kept at ingest,
+     * so a long range costs one merge per hour, not a sort of its readings.
+     * Each estimate is within {@link QuantileSketch#RELATIVE_ACCURACY} of a
+     * reading at that rank.
+     *
+     * @param patientId  the unique identifier of the patient
+     * @param recordType the record type, e.g. "HeartRate"
+     * @param startTime  the start of the time range, in milliseconds since the Unix
+     *                   epoch
+     * @param endTime    the end of the time range, in milliseconds since the Unix
+     *                   epoch
+     * @param quantiles  the fractions to estimate, each between 0 and 1
+     * @return the estimates in the order requested, NaN if there are no
+     *         readings in the range
+     * @throws IllegalArgumentException if a fraction is outside [0, 1]
+     */
+    public double[] getQuantiles(int patientId, String recordType, long startTime, long endTime,
+            double... quantiles) {
+        QuantileSketch sketch = getQuantileSketch(patientId, recordType, startTime, endTime);
+        double[] estimates = new double[quantiles.length];
+        for (int i = 0; i < quantiles.length; i++) {
+            estimates[i] = sketch.getQuantile(quantiles[i]);
+        }
+        return estimates;
+    }
+
+    /**
+     * Returns a quantile sketch of one record type for a patient over a time
+     * range. Sketches of several patients or ranges can be combined with
+     * {@link QuantileSketch#merge(QuantileSketch)}, e.g. for ward-level
+     * reports.
+     *
+     * @param patientId  the unique identifier of the patient
+     * @param recordType the record type, e.g. "HeartRate"
+     * @param startTime  the start of the time range, in milliseconds since the Unix
+     *                   epoch
+     * @param endTime    the end of the time range, in milliseconds since the Unix
+     *                   epoch
+     * @return a new sketch, empty if there are no readings in the range
+     */
+    public QuantileSketch getQuantileSketch(int patientId, String recordType, long startTime, long endTime) {
+        Patient patient = queriedPatient(patientId);
+        if (patient != null) {
+            return patient.getQuantileSketch(recordType, startTime, endTime);
+        }
+        return new QuantileSketch();
+    }
+
+    /**
+     * Finds every patient whose latest reading of a record type lies within a
+     * value range, e.g. all patients whose latest SpO2 is below 92.
+     *
+     * <p>Answered from an index of each patient's latest value, kept sorted
+     * by value and updated as readings are added, so the cost depends on the
+     * number of matches rather than the number of patients. The index for a
+     * record type is built from the stored readings on its first query;
+     * after that, only readings added through this class update it.
+     *
+     * @param recordType the record type, e.g. "OxygenSaturation"
+     * @param minValue   the lowest matching value, inclusive; use
+     *                   {@link Double#NEGATIVE_INFINITY} for no lower bound
+     * @param maxValue   the highest matching value, inclusive; use
+     *                   {@link Double#POSITIVE_INFINITY} for no upper bound
+     * @return the matching patients' latest readings, in ascending value order
+     */
+    public List<PatientRecord> findPatientsByLatest(String recordType, double minValue, double maxValue) {
+        return findPatientsByLatest(recordType, minValue, maxValue, Long.MIN_VALUE);
+    }
+
+    /**
+     * Finds every patient whose latest reading of a record type lies within a
+     * value range and was taken at or after {@code sinceTime}, e.g. all
+     * patients with a latest systolic pressure above 180 from the last 10
+     * minutes.
+     *
+     * @param recordType the record type, e.g. "SystolicBP"
+     * @param minValue   the lowest matching value, inclusive
+     * @param maxValue   the highest matching value, inclusive
+     * @param sinceTime  the oldest matching timestamp, in milliseconds since
+     *                   the Unix epoch
+     * @return the matching patients' latest readings, in ascending value order
+     */
+    public List<PatientRecord> findPatientsByLatest(String recordType, double minValue, double maxValue,
+            long sinceTime) {
+        List<PatientRecord> matches = new ArrayList<>();
+        int typeId = recordTypes.find(recordType);
+        if (typeId < 0) {
+            return matches; // Never stored, so no patient has a reading and there is nothing to index
+        }
+        awaitShards();
+        latestIndex(typeId).collect(minValue, maxValue, sinceTime, matches);
+        return matches;
+    }
+
+    /**
+     * Returns the built latest-value index of a record type, building it
+     * first if needed.
+     */
+    private LatestValueIndex latestIndex(int typeId) {
+        LatestValueIndex[] indexes = latestIndexes;
+        if (typeId < indexes.length && indexes[typeId] != null && indexes[typeId].isBuilt()) {
+            return indexes[typeId];
+        }
+        return buildLatestIndex(typeId);
+    }
+
+    /**
+     * Publishes an index to the ingest path first and only then fills it from
+     * the stored readings, so no reading added meanwhile is missed; the index
+     * keeps whichever reading is newer.
+     */
+    private synchronized LatestValueIndex buildLatestIndex(int typeId) {
+        LatestValueIndex[] indexes = latestIndexes;
+        if (typeId < indexes.length && indexes[typeId] != null && indexes[typeId].isBuilt()) {
+            return indexes[typeId];
+        }
+        LatestValueIndex index = new LatestValueIndex(typeId);
+        LatestValueIndex[] updated = Arrays.copyOf(indexes, Math.max(indexes.length, typeId + 1));
+        updated[typeId] = index;
+        latestIndexes = updated;
+        for (Patient patient : patientDirectory.values()) {
+            PatientRecord latest = patient.getLatest(typeId);
+            if (latest != null) {
+                index.update(patient.getPatientId(), latest.getTimestamp(), latest.getMeasurementValue());
+            }
+        }
+        index.markBuilt();
+        return index;
+    }
+
+    /**
+     * Discards the latest-value indexes after the stored readings were
+     * replaced wholesale; they are rebuilt on the next query.
+     */
+    private synchronized void dropLatestIndexes() {
+        latestIndexes = new LatestValueIndex[0];
+    }
+
+    /**
+     * Summarizes each patient's readings of one record type over a time
+     * range, e.g. the mean heart rate of every patient over the last 12
+     * hours, with the default {@link QueryOptions}.
+     *
+     * @param recordType the record type, e.g. "HeartRate"
+     * @param startTime  the start of the time range, in milliseconds since UNIX epoch
+     * @param endTime    the end of the time range, in milliseconds since UNIX epoch
+     * @return a future of the summaries by patient ID; patients without
+     *         readings in the range are left out
+     */
+    public CompletableFuture<Map<Integer, Aggregate>> summarizeAsync(String recordType, long startTime,
+            long endTime) {
+        return summarizeAsync(recordType, startTime, endTime, new QueryOptions());
+    }
+
+    /**
+     * Summarizes each patient's readings of one record type over a time
+     * range. Whole hours are read from the rollups, so each patient costs
+     * little more than the readings in the hours at either end of the range.
+     *
+     * @param recordType the record type, e.g. "HeartRate"
+     * @param startTime  the start of the time range, in milliseconds since UNIX epoch
+     * @param endTime    the end of the time range, in milliseconds since UNIX epoch
+     * @param options    how many threads the query may use
+     * @return a future of the summaries by patient ID
+     */
+    public CompletableFuture<Map<Integer, Aggregate>> summarizeAsync(String recordType, long startTime,
+            long endTime, QueryOptions options) {
+        int typeId = recordTypes.find(recordType);
+        if (typeId < 0) {
+            return CompletableFuture.completedFuture(new HashMap<>()); // Never stored, so no patient has readings
+        }
+        return queryAsync(Collector.<Patient, Map<Integer, Aggregate>>of(HashMap::new, (summaries, patient) -> {
+            Aggregate summary = patient.getSummary(typeId, startTime, endTime);
+            if (summary != null) {
+                summaries.put(patient.getPatientId(), summary);
+            }
+        }, (a, b) -> {
+            a.putAll(b);
+            return a;
+        }), options);
+    }
+
+    /**
+     * Summarizes the readings of one record type of all patients together
+     * over a time range, e.g. the ward's mean heart rate, with the default
+     * {@link QueryOptions}.
+     *
+     * @param recordType the record type, e.g. "HeartRate"
+     * @param startTime  the start of the time range, in milliseconds since UNIX epoch
+     * @param endTime    the end of the time range, in milliseconds since UNIX epoch
+     * @return a future of the summary, or of {@code null} if there are no
+     *         readings in the range
+     */
+    public CompletableFuture<Aggregate> aggregateAsync(String recordType, long startTime, long endTime) {
+        return aggregateAsync(recordType, startTime, endTime, new QueryOptions());
+    }
+
+    /**
+     * Summarizes the readings of one record type of all patients together
+     * over a time range. Each thread merges the summaries of its patients,
+     * so only one partial summary per thread is left to combine.
+     *
+     * @param recordType the record type, e.g. "HeartRate"
+     * @param startTime  the start of the time range, in milliseconds since UNIX epoch
+     * @param endTime    the end of the time range, in milliseconds since UNIX epoch
+     * @param options    how many threads the query may use
+     * @return a future of the summary, or of {@code null} if there are no
+     *         readings in the range
+     */
+    public CompletableFuture<Aggregate> aggregateAsync(String recordType, long startTime, long endTime,
+            QueryOptions options) {
+        int typeId = recordTypes.find(recordType);
+        if (typeId < 0) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return queryAsync(Collector.<Patient, Aggregate[], Aggregate>of(() -> new Aggregate[1],
+                (partial, patient) -> partial[0] = Aggregate.merge(partial[0],
+                        patient.getSummary(typeId, startTime, endTime)),
+                (a, b) -> {
+                    a[0] = Aggregate.merge(a[0], b[0]);
+                    return a;
+                },
+                partial -> partial[0]), options);
+    }
+
+    /**
+     * Runs a query over every patient on the query pool. Up to
+     * {@link QueryOptions#getParallelism()} threads of the pool claim
+     * batches of patients as they go, so a thread that drew patients with
+     * long histories does not hold up the others, and each folds its
+     * patients into its own partial result with {@code collector}. The
+     * partial results are combined, in no particular order, when the last
+     * thread finishes. The pool is shared by all queries and has one thread
+     * fewer than there are processors, leaving one for ingest.
+     *
+     * <p>Reading patients here does not count as use for tiered storage, so
+     * reports do not pull every patient into the hot set. Cancelling the
+     * future stops the query after the batches being scanned.
+     *
+     * @param collector folds patients into partial results and combines them
+     * @param options   how many threads the query may use
+     * @param <A>       the type of the partial results
+     * @param <R>       the type of the result
+     * @return a future of the result, completed exceptionally if the
+     *         collector throws
+     */
+    public <A, R> CompletableFuture<R> queryAsync(Collector<Patient, A, R> collector, QueryOptions options) {
+        awaitShards();
+        Patient[] patients = patientDirectory.values().toArray(new Patient[0]);
+        int threads = Math.max(1, Math.min(options.getParallelism(), patients.length));
+        int batchSize = Math.max(1, patients.length / (threads * QUERY_BATCHES_PER_THREAD));
+        CompletableFuture<R> result = new CompletableFuture<>();
+        AtomicInteger nextPatient = new AtomicInteger();
+        AtomicInteger running = new AtomicInteger(threads);
+        List<A> partials = new ArrayList<>(threads); // Guarded by itself.
+        ForkJoinPool pool = queryPool();
+        for (int t = 0; t < threads; t++) {
+            pool.execute(() -> {
+                try {
+                    A partial = collector.supplier().get();
+                    int from;
+                    while (!result.isDone() && (from = nextPatient.getAndAdd(batchSize)) < patients.length) {
+                        for (int i = from; i < Math.min(from + batchSize, patients.length); i++) {
+                            collector.accumulator().accept(partial, patients[i]);
+                        }
+                    }
+                    synchronized (partials) {
+                        partials.add(partial);
+                    }
+                    if (running.decrementAndGet() == 0 && !result.isDone()) {
+                        synchronized (partials) {
+                            A combined = partials.get(0);
+                            for (int i = 1; i < partials.size(); i++) {
+                                combined = collector.combiner().apply(combined, partials.get(i));
+                            }
+                            result.complete(collector.finisher().apply(combined));
+                        }
+                    }
+                } catch (RuntimeException | Error e) {
+                    result.completeExceptionally(e);
+                }
+            });
+        }
+        return result;
+    }
+
+    private synchronized ForkJoinPool queryPool() {
+        if (queryPool == null) {
+            int threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+            queryPool = new ForkJoinPool(threads, pool -> {
+                ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                thread.setName("data-storage-query-" + thread.getPoolIndex());
+                thread.setDaemon(true);
+                return thread;
+            }, null, true);
+        }
+        return queryPool;
+    }
+
+    /**
+     * Subscribes a listener to newly stored readings, with the default
+     * {@link SubscriptionOptions}.
+     *
+     * @param filter   selects the readings to deliver
+     * @param listener receives the readings
+     * @return the subscription, to be cancelled when no longer needed
+     */
+    public Subscription subscribe(ReadingFilter filter, ReadingListener listener) {
+        return subscribe(filter, listener, new SubscriptionOptions());
+    }
+
+    /**
+     * Subscribes a listener to newly stored readings. Every reading stored
+     * from now on that the filter accepts is queued for the listener, which
+     * is called on the options' executor with one {@link ReadingUpdate} per
+     * patient and record type; duplicates dropped at ingest are not
+     * delivered. Readings restored from persistence are not delivered
+     * either.
+     *
+     * @param filter   selects the readings to deliver
+     * @param listener receives the readings
+     * @param options  the executor, queue capacity and overflow policy
+     * @return the subscription, to be cancelled when no longer needed
+     */
+    public Subscription subscribe(ReadingFilter filter, ReadingListener listener, SubscriptionOptions options) {
+        if (filter == null || listener == null) {
+            throw new IllegalArgumentException("Filter and listener must not be null");
+        }
+        Executor executor = options.getExecutor() != null ? options.getExecutor() : defaultSubscriptionExecutor();
+        Subscription subscription = new Subscription(this, filter, listener, options, executor);
+        synchronized (this) {
+            Subscription[] current = subscriptions;
+            Subscription[] updated = Arrays.copyOf(current, current.length + 1);
+            updated[current.length] = subscription;
+            subscriptions = updated;
+        }
+        return subscription;
+    }
+
+    /**
+     * Removes a subscription; called by {@link Subscription#cancel()}.
+     *
+     * @param subscription the subscription to remove
+     */
+    synchronized void unsubscribe(Subscription subscription) {
+        Subscription[] current = subscriptions;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] == subscription) {
+                Subscription[] updated = new Subscription[current.length - 1];
+                System.arraycopy(current, 0, updated, 0, i);
+                System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+                subscriptions = updated;
+                return;
+            }
+        }
+    }
+
+    private synchronized Executor defaultSubscriptionExecutor() {
+        if (subscriptionExecutor == null) {
+            subscriptionExecutor = Executors.newCachedThreadPool(task -> {
+                Thread thread = new Thread(task, "data-storage-subscription");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return subscriptionExecutor;
+    }
+
+    private boolean isSubscribed(int patientId, int recordTypeId) {
+        for (Subscription subscription : subscriptions) {
+            if (subscription.accepts(patientId, recordTypeId)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Queues stored readings of one series for every subscription that
+     * wants them. Called after the series lock is released.
+     */
+    private void publish(int patientId, int recordTypeId, long[] timestamps, double[] values, int offset,
+            int count) {
+        for (Subscription subscription : subscriptions) {
+            if (subscription.accepts(patientId, recordTypeId)) {
+                subscription.offer(patientId, recordTypeId, timestamps, values, offset, count);
+            }
+        }
+    }
+
     /**
      * Retrieves a collection of all patients stored in the data storage.
      *
      * @return a list of all patients
      */
     public List<Patient> getAllPatients() {
-        return new ArrayList<>(patientMap.values());
+        awaitShards();
+        return patientDirectory.values();
+    }
+
+    /**
+     * Retrieves a single patient, e.g. the one named in a
+     * {@link ReadingUpdate}.
+     *
+     * @param patientId the unique identifier of the patient
+     * @return the patient, or {@code null} if no readings were stored for it
+     */
+    public Patient getPatient(int patientId) {
+        awaitShard(patientId);
+        return patientDirectory.get(patientId);
+    }
+
+    /**
+     * Selects where readings are stored. The mode can only be changed while
+     * the storage is empty, i.e. at startup or right after {@link #reset()}.
+     *
+     * @param mode        the storage mode
+     * @param budgetBytes the maximum direct memory used in
+     *                    {@link StorageMode#OFF_HEAP} mode; ignored for
+     *                    {@link StorageMode#HEAP}
+     * @throws IllegalStateException if the storage already holds patients
+     */
+    public synchronized void setStorageMode(StorageMode mode, long budgetBytes) {
+        awaitShards();
+        if (!patientDirectory.isEmpty()) {
+            throw new IllegalStateException("Storage mode can only be changed while the storage is empty");
+        }
+        this.chunkAllocator = mode == StorageMode.OFF_HEAP
+                ? new OffHeapChunkAllocator(budgetBytes)
+                : heapAllocator();
+        this.storageMode = mode;
+    }
+
+    /**
+     * Enables or disables compression of full chunks in
+     * {@link StorageMode#HEAP} mode. Compressed chunks take roughly a tenth of
+     * the memory of slowly changing, regularly sampled vital signs and are
+     * decoded transparently by queries. Off-heap readings are never
+     * compressed, since that would move them back onto the heap. Like the
+     * storage mode, this can only be changed while the storage is empty.
+     *
+     * @param enabled whether full chunks are compressed
+     * @throws IllegalStateException if the storage already holds patients
+     */
+    public synchronized void setCompression(boolean enabled) {
+        awaitShards();
+        if (!patientDirectory.isEmpty()) {
+            throw new IllegalStateException("Compression can only be changed while the storage is empty");
+        }
+        this.compression = enabled;
+        if (storageMode == StorageMode.HEAP) {
+            this.chunkAllocator = heapAllocator();
+        }
+    }
+
+    /**
+     * Returns whether full heap chunks are compressed.
+     *
+     * @return {@code true} if compression is enabled
+     */
+    public boolean isCompressionEnabled() {
+        return compression;
+    }
+
+    private ChunkAllocator heapAllocator() {
+        return compression ? ChunkAllocator.COMPRESSED_HEAP : ChunkAllocator.HEAP;
+    }
+
+    /**
+     * Returns where readings are currently stored.
+     *
+     * @return the storage mode
+     */
+    public StorageMode getStorageMode() {
+        return storageMode;
+    }
+
+    /**
+     * Returns the direct memory currently reserved for readings. Always zero
+     * in {@link StorageMode#HEAP} mode.
+     *
+     * @return the reserved off-heap bytes
+     */
+    public long getOffHeapBytes() {
+        ChunkAllocator allocator = chunkAllocator;
+        return allocator instanceof OffHeapChunkAllocator
+                ? ((OffHeapChunkAllocator) allocator).getReservedBytes()
+                : 0;
+    }
+
+    /**
+     * Partitions patients across {@code count} shards, each with its own
+     * writer thread and mailbox, or returns to storing readings on the
+     * calling thread when {@code count} is zero. Readings still queued in the
+     * previous shards are stored before this returns.
+     *
+     * <p>A patient always maps to the same shard, so its readings are
+     * applied by one thread in the order they were enqueued. Ingest scales
+     * with the number of shards as long as the readings are spread over
+     * enough patients.
+     *
+     * @param count the number of shards, or zero to disable sharding
+     * @throws IllegalArgumentException if {@code count} is negative
+     * @throws RuntimeException the first failure to store readings queued in
+     *                          the previous shards (see {@link #flush()})
+     */
+    public synchronized void setShardCount(int count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("Shard count must not be negative: " + count);
+        }
+        StorageShard[] previous = shards;
+        if (count == 0) {
+            shards = null;
+        } else {
+            StorageShard[] created = new StorageShard[count];
+            for (int i = 0; i < count; i++) {
+                created[i] = new StorageShard(i, SHARD_MAILBOX_CAPACITY, this);
+            }
+            shards = created;
+        }
+        if (previous != null) {
+            RuntimeException failure = null;
+            for (StorageShard shard : previous) {
+                shard.shutdown();
+                RuntimeException shardFailure = shard.takeFailure();
+                if (failure == null) {
+                    failure = shardFailure;
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of shards, or zero if readings are stored on the
+     * calling thread.
+     *
+     * @return the shard count
+     */
+    public int getShardCount() {
+        StorageShard[] current = shards;
+        return current == null ? 0 : current.length;
+    }
+
+    /**
+     * Blocks until every reading added before this call has been stored and
+     * is visible to queries. Returns immediately when not sharded.
+     *
+     * <p>Readings a shard's writer thread failed to store, e.g. because an
+     * off-heap budget ran out, are counted as rejected; the first such
+     * failure since the last flush is rethrown here, as adding the readings
+     * directly would have thrown it to the caller.
+     *
+     * @throws RuntimeException the first failure to store queued readings
+     */
+    public void flush() {
+        awaitShards();
+        StorageShard[] current = shards;
+        if (current != null) {
+            RuntimeException failure = null;
+            for (StorageShard shard : current) {
+                RuntimeException shardFailure = shard.takeFailure();
+                if (failure == null) {
+                    failure = shardFailure;
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    /**
+     * Waits until every queued reading has been stored, without reporting
+     * failures; used before queries and maintenance, which should not fail
+     * because earlier writes did.
+     */
+    void awaitShards() {
+        StorageShard[] current = shards;
+        if (current != null) {
+            for (StorageShard shard : current) {
+                shard.awaitApplied();
+            }
+        }
+    }
+
+    /**
+     * Waits for the shard owning a patient, so a query sees every reading
+     * of that patient added before it.
+     */
+    private void awaitShard(int patientId) {
+        StorageShard[] current = shards;
+        if (current != null) {
+            current[shardIndex(patientId, current.length)].awaitApplied();
+        }
+    }
+
+    private static int shardIndex(int patientId, int shardCount) {
+        int hash = patientId * 0x9E3779B9; // Spreads consecutive ids evenly
+        return (int) (((hash ^ (hash >>> 16)) & 0xFFFFFFFFL) % shardCount);
+    }
+
+    /**
+     * Makes the storage durable. Any history previously persisted in
+     * {@code directory} is recovered first: the latest snapshot is
+     * memory-mapped and the write-ahead log written after it is replayed.
+     * From then on every reading is logged, and a snapshot is taken every
+     * {@code snapshotInterval}.
+     *
+     * @param directory        where the log and snapshots are kept
+     * @param snapshotInterval the time between snapshots
+     * @param unit             the unit of {@code snapshotInterval}
+     * @throws IOException           if the persisted data cannot be read
+     * @throws IllegalStateException if the storage is not empty or is already
+     *                               persistent
+     */
+    public synchronized void enablePersistence(Path directory, long snapshotInterval, TimeUnit unit) throws IOException {
+        if (persistence != null) {
+            throw new IllegalStateException("Persistence is already enabled");
+        }
+        awaitShards();
+        if (!patientDirectory.isEmpty()) {
+            throw new IllegalStateException("Persistence must be enabled before data is added");
+        }
+        StoragePersistence recovered = new StoragePersistence(directory, this, 10);
+        this.wal = recovered.recover();
+        dropLatestIndexes(); // Recovered readings bypass the ingest path
+        this.persistence = recovered;
+        recovered.startSnapshots(snapshotInterval, unit);
+    }
+
+    /**
+     * Writes a snapshot now and drops the log segments it replaces.
+     *
+     * @throws IOException if the snapshot cannot be written
+     * @throws IllegalStateException if persistence is not enabled
+     */
+    public void snapshot() throws IOException {
+        StoragePersistence current = requirePersistence();
+        awaitShards();
+        current.snapshot();
+    }
+
+    /**
+     * Takes a consistent, point-in-time view of every patient. The snapshot
+     * holds every reading stored before the call and none of the readings
+     * stored after it, even while other threads keep adding, expiring or
+     * moving readings; writers are never blocked. Taking it costs one view
+     * per series, not a copy of the readings.
+     *
+     * <p>This is an in-memory view; {@link #snapshot()} is what persists the
+     * storage to disk.
+     *
+     * @return the snapshot, to be closed once read when tiering is enabled
+     */
+    public StorageSnapshot getSnapshot() {
+        awaitShards();
+        synchronized (snapshotLock) {
+            ColdStore store = coldStore;
+            if (store != null) {
+                store.pin(); // Before the cut, so no chunk it shares can be deleted
+            }
+            long version = versionClock.advance();
+            long takenAt = System.currentTimeMillis();
+            PatientDirectory<SeriesView[]> seriesByPatient = new PatientDirectory<>();
+            for (Patient patient : patientDirectory.values()) {
+                List<SeriesView> views = patient.seriesViewsAt(version);
+                if (views.isEmpty()) {
+                    continue;
+                }
+                int types = 0;
+                for (SeriesView view : views) {
+                    types = Math.max(types, view.getTypeId() + 1);
+                }
+                SeriesView[] series = new SeriesView[types];
+                for (SeriesView view : views) {
+                    series[view.getTypeId()] = view;
+                }
+                seriesByPatient.computeIfAbsent(patient.getPatientId(), id -> series);
+            }
+            return new StorageSnapshot(version, takenAt, seriesByPatient, store);
+        }
+    }
+
+    /**
+     * Blocks until every reading added so far is durable on disk.
+     *
+     * @throws IOException if the log cannot be written
+     * @throws IllegalStateException if persistence is not enabled
+     */
+    public void syncPersistence() throws IOException {
+        StoragePersistence current = requirePersistence();
+        awaitShards();
+        current.sync();
+    }
+
+    /**
+     * Flushes and closes the write-ahead log. Data already in memory is kept,
+     * but further readings are no longer persisted.
+     *
+     * @throws IOException if the final commit fails
+     */
+    public synchronized void disablePersistence() throws IOException {
+        StoragePersistence current = persistence;
+        if (current != null) {
+            awaitShards(); // Queued readings are still logged
+            wal = null;
+            persistence = null;
+            current.close();
+        }
+    }
+
+    private StoragePersistence requirePersistence() {
+        StoragePersistence current = persistence;
+        if (current == null) {
+            throw new IllegalStateException("Persistence is not enabled");
+        }
+        return current;
+    }
+
+    /**
+     * Enables tiered storage with the default {@link TieringOptions}.
+     *
+     * @param directory where the history of inactive patients is kept
+     * @throws IOException           if the directory cannot be prepared
+     * @throws IllegalStateException if tiering is already enabled
+     */
+    public void enableTiering(Path directory) throws IOException {
+        enableTiering(directory, new TieringOptions());
+    }
+
+    /**
+     * Enables tiered storage: the
+     * {@link TieringOptions#getHotPatients() most recently queried patients}
+     * stay in memory, and the sealed chunks of all others, except those in
+     * the hot window, are moved to files in {@code directory} by periodic
+     * passes (see {@link #enforceTiering()}). A query that reaches moved
+     * readings pages the chunks it needs into a bounded cache, and marks the
+     * patient as used, so no more of its history is moved while it stays in
+     * the hot set.
+     *
+     * <p>Patients are ranked by the history queries of this class
+     * ({@code getRecords}, {@code forEachInRange}, {@code openCursor},
+     * {@code getAggregates} and the quantile queries); latest-value queries
+     * and ingestion never touch moved readings and do not count. The files
+     * hold a copy of memory, not a durable one: they are deleted when tiering
+     * is disabled or the process restarts.
+     *
+     * @param directory where the history of inactive patients is kept
+     * @param options   the size of the hot set and how often passes run
+     * @throws IOException           if the directory cannot be prepared
+     * @throws IllegalStateException if tiering is already enabled
+     */
+    public synchronized void enableTiering(Path directory, TieringOptions options) throws IOException {
+        if (coldStore != null) {
+            throw new IllegalStateException("Tiering is already enabled");
+        }
+        tieringOptions = options;
+        coldStore = new ColdStore(directory, options.getPageCacheBytes());
+        long interval = options.getIntervalMillis();
+        if (interval > 0) {
+            tieringScheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, "data-storage-tiering");
+                thread.setDaemon(true);
+                return thread;
+            });
+            tieringScheduler.scheduleAtFixedRate(() -> {
+                try {
+                    enforceTiering();
+                } catch (IOException | RuntimeException e) {
+                    System.err.println("Error moving inactive patients to disk: " + e.getMessage());
+                }
+            }, interval, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Moves the history of every patient outside the hot set to disk now,
+     * apart from its hot window. Chunks already on disk are left there, so
+     * repeated passes only write chunks sealed since the last one.
+     *
+     * @return the number of readings moved to disk by this pass
+     * @throws IOException           if the chunks cannot be written
+     * @throws IllegalStateException if tiering is not enabled
+     */
+    public long enforceTiering() throws IOException {
+        synchronized (tieringLock) {
+            ColdStore store = coldStore;
+            TieringOptions options = tieringOptions;
+            if (store == null) {
+                throw new IllegalStateException("Tiering is not enabled");
+            }
+            awaitShards();
+            store.reclaim();
+            List<Patient> patients = patientDirectory.values();
+            if (patients.size() <= options.getHotPatients()) {
+                return 0;
+            }
+            // Most recently used first; the ones past the hot set go cold
+            patients.sort(Comparator.comparingLong(Patient::getLastUsed).reversed());
+            long moved = 0;
+            for (int i = options.getHotPatients(); i < patients.size(); i++) {
+                moved += patients.get(i).spill(store, options.getHotWindowMillis());
+            }
+            return moved;
+        }
+    }
+
+    /**
+     * Reads every reading moved to disk back into memory, stops the
+     * background passes and deletes the files.
+     */
+    public synchronized void disableTiering() {
+        if (tieringScheduler != null) {
+            tieringScheduler.shutdownNow();
+            tieringScheduler = null;
+        }
+        synchronized (tieringLock) {
+            ColdStore store = coldStore;
+            if (store == null) {
+                return;
+            }
+            awaitShards();
+            for (Patient patient : patientDirectory.values()) {
+                patient.pageIn();
+            }
+            coldStore = null;
+            tieringOptions = null;
+            store.close();
+        }
+    }
+
+    /**
+     * Returns the bytes of readings currently kept on disk by tiered storage.
+     *
+     * @return the bytes on disk, zero if tiering is not enabled
+     */
+    public long getColdBytes() {
+        ColdStore store = coldStore;
+        return store == null ? 0 : store.getColdBytes();
+    }
+
+    /**
+     * Returns how many chunks queries have read back from disk since tiering
+     * was enabled; chunks served from the page cache are not counted.
+     *
+     * @return the number of page-ins, zero if tiering is not enabled
+     */
+    public long getColdPageInCount() {
+        ColdStore store = coldStore;
+        return store == null ? 0 : store.getPageInCount();
+    }
+
+    /**
+     * Sets the retention policy applied by {@link #enforceRetention()}.
+     *
+     * @param retentionPolicy the policy defining how long each record type is kept
+     */
+    public void setRetentionPolicy(RetentionPolicy retentionPolicy) {
+        this.retentionPolicy = retentionPolicy;
+    }
+
+    /**
+     * Returns the retention policy currently in use.
+     *
+     * @return the retention policy
+     */
+    public RetentionPolicy getRetentionPolicy() {
+        return retentionPolicy;
+    }
+
+    /**
+     * Expires readings older than the retention of their record type, relative
+     * to the current time. Only whole chunks are dropped, and ingestion into
+     * other series carries on while a series is being trimmed.
+     *
+     * @return the number of readings evicted by this pass
+     */
+    public long enforceRetention() {
+        RetentionPolicy policy = retentionPolicy;
+        long now = System.currentTimeMillis();
+        long evicted = 0;
+        awaitShards();
+        for (Patient patient : patientDirectory.values()) {
+            evicted += patient.expireRecords(policy, now);
+        }
+        for (LatestValueIndex index : latestIndexes) {
+            long retention = index == null ? RetentionPolicy.KEEP_FOREVER : policy.getRetentionMillis(index.getTypeId());
+            if (retention != RetentionPolicy.KEEP_FOREVER) {
+                index.expireBefore(now - retention);
+            }
+        }
+        evictedRecords.addAndGet(evicted);
+        return evicted;
+    }
+
+    /**
+     * Starts a background task that enforces the retention policy periodically.
+     * Calling this again replaces the previous schedule.
+     *
+     * @param period how often retention is enforced
+     * @param unit   the unit of {@code period}
+     */
+    public synchronized void startRetentionEnforcement(long period, TimeUnit unit) {
+        stopRetentionEnforcement();
+        retentionScheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "data-storage-retention");
+            thread.setDaemon(true);
+            return thread;
+        });
+        retentionScheduler.scheduleAtFixedRate(() -> {
+            try {
+                enforceRetention();
+            } catch (RuntimeException e) {
+                System.err.println("Error enforcing retention: " + e.getMessage());
+            }
+        }, period, period, unit);
+    }
+
+    /**
+     * Stops the background retention task, if running.
+     */
+    public synchronized void stopRetentionEnforcement() {
+        if (retentionScheduler != null) {
+            retentionScheduler.shutdownNow();
+            retentionScheduler = null;
+        }
+    }
+
+    /**
+     * Limits the estimated memory used by stored readings. With
+     * {@link BudgetPolicy#REJECT} new readings are dropped while the limit is
+     * exceeded; otherwise exceeding it starts
+     * {@link #enforceMemoryBudget()} on a background thread, so ingest never
+     * waits for eviction.
+     *
+     * @param budget the budget, or {@code null} to remove the limit
+     */
+    public synchronized void setMemoryBudget(MemoryBudget budget) {
+        memoryBudget = budget;
+        if (budget == null) {
+            memoryAccount.setLimit(Long.MAX_VALUE, null);
+        } else if (budget.getPolicy() == BudgetPolicy.REJECT) {
+            memoryAccount.setLimit(budget.getMaxBytes(), null);
+        } else {
+            memoryAccount.setLimit(budget.getMaxBytes(), this::requestBudgetEnforcement);
+            if (memoryAccount.isExceeded()) {
+                requestBudgetEnforcement();
+            }
+        }
+    }
+
+    /**
+     * Returns the memory budget currently in force.
+     *
+     * @return the budget, or {@code null} if memory use is not limited
+     */
+    public MemoryBudget getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    /**
+     * Estimates the memory used by stored readings, per patient and per
+     * record type. Each series is measured under its own lock, so ingestion
+     * carries on while the report is built.
+     *
+     * @return the memory usage report
+     */
+    public MemoryUsage getMemoryUsage() {
+        awaitShards();
+        Map<Integer, Long> bytesByPatient = new HashMap<>();
+        Map<Integer, Long> bytesByTypeId = new HashMap<>();
+        long total = 0;
+        for (Patient patient : patientDirectory.values()) {
+            long bytes = patient.addResidentBytesByType(bytesByTypeId);
+            bytesByPatient.put(patient.getPatientId(), bytes);
+            total += bytes;
+        }
+        Map<String, Long> bytesByType = new HashMap<>();
+        for (Map.Entry<Integer, Long> entry : bytesByTypeId.entrySet()) {
+            bytesByType.put(recordTypes.nameOf(entry.getKey()), entry.getValue());
+        }
+        MemoryBudget budget = memoryBudget;
+        return new MemoryUsage(total, budget == null ? Long.MAX_VALUE : budget.getMaxBytes(), bytesByPatient,
+                bytesByType);
+    }
+
+    /**
+     * Frees memory if the estimated usage exceeds the budget, bringing it
+     * down to the budget's target: the oldest chunks across all patients are
+     * evicted or, with {@link BudgetPolicy#DOWNSAMPLE}, downsampled first.
+     * Does nothing without a budget or with {@link BudgetPolicy#REJECT}.
+     * Evicted and downsampled-away readings count as evicted.
+     *
+     * @return the number of readings removed by this pass
+     */
+    public long enforceMemoryBudget() {
+        MemoryBudget budget = memoryBudget;
+        if (budget == null || budget.getPolicy() == BudgetPolicy.REJECT) {
+            return 0;
+        }
+        awaitShards();
+        long removed = 0;
+        synchronized (budgetLock) {
+            if (budget.getPolicy() == BudgetPolicy.DOWNSAMPLE) {
+                for (int round = 0; round < MAX_BUDGET_ROUNDS; round++) {
+                    long excess = memoryAccount.getBytes() - budget.getTargetBytes();
+                    ChunkAges ages = excess > 0 ? collectChunkAges(true) : null;
+                    if (ages == null || ages.size() == 0) {
+                        break;
+                    }
+                    long cutoff = ages.cutoffFreeing(excess);
+                    long downsampled = 0;
+                    for (Patient patient : patientDirectory.values()) {
+                        downsampled += patient.downsampleBefore(cutoff, budget.getDownsampleResolution());
+                    }
+                    removed += downsampled;
+                    evictedRecords.addAndGet(downsampled);
+                }
+            }
+            for (int round = 0; round < MAX_BUDGET_ROUNDS; round++) {
+                long excess = memoryAccount.getBytes() - budget.getTargetBytes();
+                ChunkAges ages = excess > 0 ? collectChunkAges(false) : null;
+                if (ages == null || ages.size() == 0) {
+                    break;
+                }
+                long cutoff = ages.cutoffFreeing(excess);
+                long evicted = 0;
+                for (Patient patient : patientDirectory.values()) {
+                    evicted += patient.evictBefore(cutoff);
+                }
+                if (evicted == 0) {
+                    break; // Only what cannot be evicted is left
+                }
+                removed += evicted;
+                evictedRecords.addAndGet(evicted); // Counted as the usage drops, not once the pass is over
+                for (LatestValueIndex index : latestIndexes) {
+                    if (index != null) {
+                        index.expireBefore(cutoff);
+                    }
+                }
+            }
+        }
+        return removed;
+    }
+
+    private ChunkAges collectChunkAges(boolean downsampling) {
+        ChunkAges ages = new ChunkAges();
+        for (Patient patient : patientDirectory.values()) {
+            patient.collectChunkAges(ages, downsampling);
+        }
+        return ages;
+    }
+
+    /**
+     * Queues one background enforcement pass unless one is already queued.
+     * Called from within series locks, so it only hands the work off.
+     */
+    private void requestBudgetEnforcement() {
+        if (!budgetEnforcementQueued.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            budgetExecutor().execute(() -> {
+                budgetEnforcementQueued.set(false); // Growth from now on queues another pass
+                try {
+                    enforceMemoryBudget();
+                } catch (RuntimeException e) {
+                    System.err.println("Error enforcing memory budget: " + e.getMessage());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            budgetEnforcementQueued.set(false);
+            System.err.println("Error scheduling memory budget enforcement: " + e.getMessage());
+        }
+    }
+
+    private synchronized Executor budgetExecutor() {
+        if (budgetExecutor == null) {
+            budgetExecutor = Executors.newSingleThreadExecutor(task -> {
+                Thread thread = new Thread(task, "data-storage-budget");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return budgetExecutor;
+    }
+
+    /**
+     * Returns whether new readings must be dropped because a
+     * {@link BudgetPolicy#REJECT} budget is exceeded.
+     */
+    private boolean rejectsReadings() {
+        MemoryBudget budget = memoryBudget;
+        return budget != null && budget.getPolicy() == BudgetPolicy.REJECT && memoryAccount.isExceeded();
+    }
+
+    /**
+     * Returns the number of readings dropped since the last reset because a
+     * {@link BudgetPolicy#REJECT} memory budget was exceeded, or because
+     * storing a batch of them failed part way, e.g. when an off-heap budget
+     * ran out.
+     *
+     * @return the rejected reading count
+     */
+    public long getRejectedRecordCount() {
+        return rejectedRecords.get();
+    }
+
+    /**
+     * Returns the total number of readings evicted by retention or the
+     * memory budget since the last reset.
+     *
+     * @return the evicted reading count
+     */
+    public long getEvictedRecordCount() {
+        return evictedRecords.get();
+    }
+
+    /**
+     * Returns the number of readings dropped since the last reset because
+     * their patient already had a reading of the same type with the same
+     * timestamp, e.g. after a file was read again or a WebSocket reconnected.
+     *
+     * @return the suppressed duplicate count
+     */
+    public long getDuplicateRecordCount() {
+        return duplicateRecords.get();
+    }
+
+    /**
+     * Estimates the bytes currently held by stored readings, on or off the heap.
+     *
+     * @return the estimated resident size in bytes
+     */
+    public long getResidentBytes() {
+        awaitShards();
+        long bytes = 0;
+        for (Patient patient : patientDirectory.values()) {
+            bytes += patient.residentBytes();
+        }
+        return bytes;
     }
 
     /**
      * Resets the data storage by clearing all patient records.
      */
     public void reset() {
-        patientMap.clear();
+        releaseAll();
+        evictedRecords.set(0);
+        duplicateRecords.set(0);
+        rejectedRecords.set(0);
     }
 
     /**
@@ -103,7 +1807,37 @@ public class DataStorage {
      * Primarily used for testing purposes.
      */
     public void clearAllData() {
-        patientMap.clear();
+        releaseAll();
+        evictedRecords.set(0);
+        duplicateRecords.set(0);
+        rejectedRecords.set(0);
+    }
+
+    /**
+     * Removes all patients and returns their chunks to the allocator. When
+     * persistent, an empty snapshot replaces the persisted history so the
+     * cleared data does not come back after a restart.
+     */
+    private void releaseAll() {
+        awaitShards(); // Otherwise queued readings would reappear after the clear
+        StorageShard[] currentShards = shards;
+        if (currentShards != null) {
+            for (StorageShard shard : currentShards) {
+                shard.takeFailure(); // The readings it concerns are cleared anyway
+            }
+        }
+        for (Patient patient : patientDirectory.clear()) {
+            patient.release();
+        }
+        dropLatestIndexes();
+        StoragePersistence current = persistence;
+        if (current != null) {
+            try {
+                current.snapshot();
+            } catch (IOException e) {
+                System.err.println("Error persisting cleared storage: " + e.getMessage());
+            }
+        }
     }
 
     /**
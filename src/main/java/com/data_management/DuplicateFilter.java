@@ -0,0 +1,233 @@
+package com.data_management;
+
+import java.util.Arrays;
+
+/**
+ * Remembers which timestamps a {@link RecordSeries} already holds, so that a
+ * reading delivered twice (a file read again, a reconnecting WebSocket) is
+ * dropped before it is stored or logged. Guarded by the owning series' lock.
+ *
+ * <p>The timestamps of the last {@link #WINDOW_CAPACITY} stored readings are
+ * kept in a small open-addressing hash set, which answers repeats of recent
+ * readings exactly in O(1). Older timestamps go into a bloom filter that is
+ * only built once the series first sees a reading at or before its newest
+ * timestamp; a bloom hit is then confirmed against the stored readings by
+ * the series, so a false positive never drops a reading.
+ */
+class DuplicateFilter {
+    static final int WINDOW_CAPACITY = 32;
+    private static final long EMPTY = Long.MIN_VALUE; // Never remembered, see remember(long)
+    private static final int BLOOM_BITS_PER_KEY = 10;
+    private static final int BLOOM_HASHES = 3;
+    private static final int MIN_BLOOM_KEYS = 1024;
+
+    // Linear-probing hash set of the window, plus the window in arrival order for eviction.
+    private final long[] table = new long[WINDOW_CAPACITY * 2];
+    private final long[] arrivals = new long[WINDOW_CAPACITY];
+    private int oldestArrival;
+    private int windowSize;
+
+    private long[] bloom;     // Null until first needed
+    private int bloomKeys;    // Keys added to the bloom filter
+    private int bloomCapacity;
+
+    // The last compressed chunk decoded to confirm a bloom hit; replays tend to hit it repeatedly.
+    private SeriesChunk decodedChunk;
+    private long[] decodedTimestamps;
+    private double[] decodedValues;
+
+    DuplicateFilter() {
+        Arrays.fill(table, EMPTY);
+    }
+
+    /**
+     * Returns whether a timestamp is among the recently stored ones.
+     *
+     * @param timestamp the timestamp to look up
+     * @return {@code true} if a reading with this timestamp was stored recently
+     */
+    boolean inWindow(long timestamp) {
+        int mask = table.length - 1;
+        for (int i = slot(timestamp); table[i] != EMPTY; i = (i + 1) & mask) {
+            if (table[i] == timestamp) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    boolean hasBloom() {
+        return bloom != null;
+    }
+
+    /**
+     * Returns whether a timestamp may have been stored. Only valid once the
+     * bloom filter was built with {@link #buildBloom(int)}.
+     *
+     * @param timestamp the timestamp to look up
+     * @return {@code false} if the timestamp was certainly never stored
+     */
+    boolean mightContain(long timestamp) {
+        long hash = mix(timestamp);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32) | 1;
+        int mask = (bloom.length << 6) - 1;
+        for (int k = 0; k < BLOOM_HASHES; k++) {
+            int bit = (h1 + k * h2) & mask;
+            if ((bloom[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Creates an empty bloom filter sized for the series; the caller then
+     * adds every stored timestamp with {@link #addToBloom(long)}.
+     *
+     * @param storedReadings the number of readings the series holds
+     */
+    void buildBloom(int storedReadings) {
+        bloomCapacity = Math.max(MIN_BLOOM_KEYS, storedReadings * 2);
+        long bits = Long.highestOneBit((long) bloomCapacity * BLOOM_BITS_PER_KEY - 1) << 1;
+        bloom = new long[(int) Math.min(bits >>> 6, 1 << 22)];
+        bloomKeys = 0;
+    }
+
+    void addToBloom(long timestamp) {
+        long hash = mix(timestamp);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32) | 1;
+        int mask = (bloom.length << 6) - 1;
+        for (int k = 0; k < BLOOM_HASHES; k++) {
+            int bit = (h1 + k * h2) & mask;
+            bloom[bit >>> 6] |= 1L << bit;
+        }
+        bloomKeys++;
+    }
+
+    /**
+     * Records the timestamp of a reading about to be stored. Once the bloom
+     * filter holds more keys than it was sized for it is dropped, to be
+     * rebuilt larger when next needed.
+     *
+     * @param timestamp the timestamp of the stored reading
+     */
+    void remember(long timestamp) {
+        if (bloom != null) {
+            addToBloom(timestamp);
+            if (bloomKeys > bloomCapacity) {
+                bloom = null;
+            }
+        }
+        if (timestamp == EMPTY) {
+            return; // Left to the bloom filter and the series
+        }
+        if (windowSize == WINDOW_CAPACITY) {
+            removeFromTable(arrivals[oldestArrival]);
+            oldestArrival = (oldestArrival + 1) % WINDOW_CAPACITY;
+            windowSize--;
+        }
+        arrivals[(oldestArrival + windowSize) % WINDOW_CAPACITY] = timestamp;
+        windowSize++;
+        int mask = table.length - 1;
+        int i = slot(timestamp);
+        while (table[i] != EMPTY) {
+            i = (i + 1) & mask;
+        }
+        table[i] = timestamp;
+    }
+
+    /**
+     * Returns the timestamps of a compressed chunk, decoding it only if it is
+     * not the chunk decoded last.
+     *
+     * @param chunk a sealed chunk
+     * @return the chunk's timestamps; the first {@code chunk.size()} are valid
+     */
+    long[] timestampsOf(SeriesChunk chunk) {
+        if (chunk != decodedChunk) {
+            if (decodedTimestamps == null || decodedTimestamps.length < chunk.size()) {
+                decodedTimestamps = new long[Math.max(chunk.size(), RecordSeries.MAX_CHUNK_CAPACITY)];
+                decodedValues = new double[decodedTimestamps.length];
+            }
+            chunk.decode(decodedTimestamps, decodedValues, 0, chunk.size());
+            decodedChunk = chunk;
+        }
+        return decodedTimestamps;
+    }
+
+    /**
+     * Forgets recent timestamps older than {@code cutoff}, whose readings
+     * retention has just expired, so they may be stored again.
+     *
+     * @param cutoff the oldest timestamp still stored in the series
+     */
+    void expireBefore(long cutoff) {
+        int kept = 0;
+        for (int i = 0; i < windowSize; i++) {
+            long timestamp = arrivals[(oldestArrival + i) % WINDOW_CAPACITY];
+            if (timestamp >= cutoff) {
+                arrivals[kept++] = timestamp;
+            }
+        }
+        oldestArrival = 0;
+        windowSize = kept;
+        Arrays.fill(table, EMPTY);
+        int mask = table.length - 1;
+        for (int k = 0; k < kept; k++) {
+            int i = slot(arrivals[k]);
+            while (table[i] != EMPTY) {
+                i = (i + 1) & mask;
+            }
+            table[i] = arrivals[k];
+        }
+        decodedChunk = null;
+    }
+
+    /**
+     * Forgets every timestamp.
+     */
+    void clear() {
+        Arrays.fill(table, EMPTY);
+        oldestArrival = 0;
+        windowSize = 0;
+        bloom = null;
+        decodedChunk = null;
+        decodedTimestamps = null;
+        decodedValues = null;
+    }
+
+    /**
+     * Removes a key with backward-shift deletion, which keeps every probe
+     * sequence unbroken without tombstones.
+     */
+    private void removeFromTable(long timestamp) {
+        int mask = table.length - 1;
+        int hole = slot(timestamp);
+        while (table[hole] != timestamp) {
+            hole = (hole + 1) & mask;
+        }
+        for (int i = (hole + 1) & mask; table[i] != EMPTY; i = (i + 1) & mask) {
+            int home = slot(table[i]);
+            boolean reachable = hole <= i ? (home <= hole || home > i) : (home <= hole && home > i);
+            if (reachable) {
+                table[hole] = table[i];
+                hole = i;
+            }
+        }
+        table[hole] = EMPTY;
+    }
+
+    private int slot(long timestamp) {
+        return (int) mix(timestamp) & (table.length - 1);
+    }
+
+    private static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        return key ^ (key >>> 33);
+    }
+}
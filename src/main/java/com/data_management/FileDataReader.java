@@ -15,6 +15,8 @@ import java.util.stream.Collectors;
  */
 public class FileDataReader implements DataReader {
     
+    private static final int BATCH_SIZE = 4096; // Readings handed to storage at once
+    
     private final String outputDirectory;
     
     /**
@@ -53,6 +55,7 @@ public class FileDataReader implements DataReader {
      * @throws IOException if an error occurs while reading the file
      */
     private void processFile(File file, DataStorage dataStorage) throws IOException {
+        RecordBatch batch = new RecordBatch(BATCH_SIZE);
         try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
             String line;
             
@@ -71,7 +74,11 @@ public class FileDataReader implements DataReader {
                         String recordType = parts[2].trim();
                         long timestamp = Long.parseLong(parts[3].trim());
                         
-                        dataStorage.addPatientData(patientId, measurementValue, recordType, timestamp);
+                        batch.add(patientId, recordType, timestamp, measurementValue);
+                        if (batch.size() == BATCH_SIZE) {
+                            dataStorage.addBatch(batch);
+                            batch.clear();
+                        }
                     } else {
                         System.err.println("Skipping malformed line: " + line);
                     }
@@ -79,6 +86,9 @@ public class FileDataReader implements DataReader {
                     System.err.println("Error parsing line: " + line + " - " + e.getMessage());
                 }
             }
+        } finally {
+            // Store whatever was parsed, even if reading the rest of the file failed
+            dataStorage.addBatch(batch);
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,54 @@
+package com.data_management;
+
+import java.nio.DoubleBuffer;
+import java.nio.LongBuffer;
+
+/**
+ * A chunk whose columns are plain {@code long[]} and {@code double[]} arrays
+ * on the Java heap.
+ */
+class HeapSeriesChunk extends SeriesChunk {
+    // Object header, two array references, capacity and size fields, and two array headers
+    static final int OVERHEAD_BYTES = 16 + 8 + 8 + 2 * 16;
+
+    private final long[] timestamps;
+    private final double[] values;
+
+    /**
+     * Creates an empty heap chunk.
+     *
+     * @param capacity the maximum number of readings in this chunk
+     */
+    HeapSeriesChunk(int capacity) {
+        super(capacity);
+        this.timestamps = new long[capacity];
+        this.values = new double[capacity];
+    }
+
+    @Override
+    void write(int index, long timestamp, double value) {
+        timestamps[index] = timestamp;
+        values[index] = value;
+    }
+
+    @Override
+    void copyColumns(LongBuffer timestamps, DoubleBuffer values, int count) {
+        timestamps.get(this.timestamps, 0, count);
+        values.get(this.values, 0, count);
+    }
+
+    @Override
+    long timestampAt(int index) {
+        return timestamps[index];
+    }
+
+    @Override
+    double valueAt(int index) {
+        return values[index];
+    }
+
+    @Override
+    long residentBytes() {
+        return OVERHEAD_BYTES + 16L * capacity();
+    }
+}
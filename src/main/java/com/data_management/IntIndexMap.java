@@ -0,0 +1,111 @@
+package com.data_management;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * An insert-only map from {@code int} keys to non-negative {@code int}
+ * values, with open addressing and linear probing over two primitive
+ * arrays, so neither lookups nor inserts box the key or allocate an entry.
+ *
+ * <p>Built for one writer at a time and any number of concurrent readers:
+ * a slot's key is written before its value, and readers take a slot without
+ * a value as empty, so a reader that finds a value also sees its key.
+ * Growth publishes a rehashed table as a whole.
+ */
+class IntIndexMap {
+    private static final int INITIAL_CAPACITY = 16; // A power of two
+    private static final int ABSENT = 0;            // Values are stored plus one, so zero marks a free slot
+
+    private volatile Table table = new Table(INITIAL_CAPACITY);
+    private int size; // Guarded by the writer
+
+    /**
+     * Returns the value of a key.
+     *
+     * @param key the key
+     * @return the value, or -1 if the key is not in the map
+     */
+    int get(int key) {
+        Table current = table;
+        int mask = current.keys.length - 1;
+        for (int slot = hash(key) & mask;; slot = (slot + 1) & mask) {
+            int stored = current.values.get(slot);
+            if (stored == ABSENT) {
+                return -1;
+            }
+            if (current.keys[slot] == key) {
+                return stored - 1;
+            }
+        }
+    }
+
+    /**
+     * Adds a key that is not in the map yet. Must not be called by two
+     * threads at once.
+     *
+     * @param key   the key
+     * @param value the value, at least zero
+     */
+    void put(int key, int value) {
+        if ((size + 1) * 4 > table.keys.length * 3) {
+            Table grown = new Table(table.keys.length * 2);
+            Table current = table;
+            for (int slot = 0; slot < current.keys.length; slot++) {
+                int stored = current.values.get(slot);
+                if (stored != ABSENT) {
+                    grown.insert(current.keys[slot], stored);
+                }
+            }
+            table = grown;
+        }
+        table.insert(key, value + 1);
+        size++;
+    }
+
+    /**
+     * Returns the number of keys in the map.
+     *
+     * @return the key count
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Estimates the bytes held by the map.
+     *
+     * @return the estimated size in bytes
+     */
+    long residentBytes() {
+        return 8L * table.keys.length;
+    }
+
+    /**
+     * Spreads consecutive keys apart, so runs of ids do not form long probe
+     * sequences.
+     */
+    private static int hash(int key) {
+        int hash = key * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    private static final class Table {
+        final int[] keys;
+        final AtomicIntegerArray values;
+
+        Table(int capacity) {
+            keys = new int[capacity];
+            values = new AtomicIntegerArray(capacity);
+        }
+
+        void insert(int key, int stored) {
+            int mask = keys.length - 1;
+            int slot = hash(key) & mask;
+            while (values.get(slot) != ABSENT) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            values.set(slot, stored); // Publishes the key with it
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.data_management;
+
+/**
+ * Which reading of another record type an {@link AsOfJoin} aligns with a
+ * driving reading.
+ */
+public enum JoinMatch {
+    /**
+     * The latest reading at or before the driving reading, i.e. the value
+     * that was known at that time.
+     */
+    PREVIOUS,
+    /**
+     * The closest reading on either side of the driving reading; of two
+     * equally close, the earlier one.
+     */
+    NEAREST
+}
@@ -0,0 +1,138 @@
+package com.data_management;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Indexes the latest reading of one record type for every patient, sorted by
+ * value, so population queries such as "latest SpO2 below 92" are answered
+ * with a range scan over the matching patients instead of a pass over all
+ * of them.
+ *
+ * <p>Updates come from the ingest path and only ever replace a patient's
+ * entry with a newer reading. The new entry is added to the value order
+ * before the old one is removed, so a concurrent query never misses a
+ * patient; it skips entries that are no longer current instead.
+ */
+class LatestValueIndex {
+    private static final Comparator<Entry> BY_VALUE = Comparator.<Entry>comparingDouble(entry -> entry.value)
+            .thenComparingInt(entry -> entry.patientId)
+            .thenComparingLong(entry -> entry.timestamp);
+
+    private final int typeId;
+    private final PatientDirectory<Latest> byPatient = new PatientDirectory<>();
+    private final NavigableSet<Entry> byValue = new ConcurrentSkipListSet<>(BY_VALUE);
+    private volatile boolean built; // Set once the index covers readings stored before it existed.
+
+    /**
+     * Creates an empty index.
+     *
+     * @param typeId the record type whose latest readings are indexed
+     */
+    LatestValueIndex(int typeId) {
+        this.typeId = typeId;
+    }
+
+    /**
+     * Records a reading, unless the patient already has a newer one indexed.
+     *
+     * @param patientId the patient the reading belongs to
+     * @param timestamp the time of the reading
+     * @param value     the measured value
+     */
+    void update(int patientId, long timestamp, double value) {
+        Latest latest = byPatient.computeIfAbsent(patientId, id -> new Latest());
+        Entry current = latest.entry;
+        if (current != null && timestamp < current.timestamp) {
+            return; // Late reading: the latest value is unchanged
+        }
+        synchronized (latest) {
+            Entry old = latest.entry;
+            if (old != null && (timestamp < old.timestamp
+                    || (timestamp == old.timestamp && Double.compare(value, old.value) == 0))) {
+                return;
+            }
+            Entry entry = new Entry(patientId, value, timestamp);
+            byValue.add(entry);
+            latest.entry = entry;
+            if (old != null) {
+                byValue.remove(old);
+            }
+        }
+    }
+
+    /**
+     * Forgets the patients whose latest reading is older than {@code cutoff}:
+     * retention has expired every reading of theirs.
+     *
+     * @param cutoff the oldest timestamp retention keeps
+     */
+    void expireBefore(long cutoff) {
+        for (Latest latest : byPatient.values()) {
+            synchronized (latest) {
+                Entry entry = latest.entry;
+                if (entry != null && entry.timestamp < cutoff) {
+                    byValue.remove(entry);
+                    latest.entry = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds the latest readings whose value lies within a range to
+     * {@code out}, in ascending value order.
+     *
+     * @param minValue  the lowest matching value, inclusive
+     * @param maxValue  the highest matching value, inclusive
+     * @param sinceTime the oldest matching timestamp, inclusive
+     * @param out       the list receiving the matching readings
+     */
+    void collect(double minValue, double maxValue, long sinceTime, List<PatientRecord> out) {
+        if (!(minValue <= maxValue)) {
+            return;
+        }
+        Entry from = new Entry(Integer.MIN_VALUE, minValue, Long.MIN_VALUE);
+        Entry to = new Entry(Integer.MAX_VALUE, maxValue, Long.MAX_VALUE);
+        for (Entry entry : byValue.subSet(from, true, to, true)) {
+            Latest latest = byPatient.get(entry.patientId);
+            if (entry.timestamp >= sinceTime && latest != null && latest.entry == entry) {
+                out.add(new PatientRecord(entry.patientId, entry.value, typeId, entry.timestamp, ""));
+            }
+        }
+    }
+
+    int getTypeId() {
+        return typeId;
+    }
+
+    boolean isBuilt() {
+        return built;
+    }
+
+    void markBuilt() {
+        built = true;
+    }
+
+    /**
+     * A patient's slot in the index; updates of one patient are serialized
+     * on it.
+     */
+    private static final class Latest {
+        volatile Entry entry; // Null until the first reading and after expiry
+    }
+
+    private static final class Entry {
+        final int patientId;
+        final double value;
+        final long timestamp;
+
+        Entry(int patientId, double value, long timestamp) {
+            this.patientId = patientId;
+            this.value = value;
+            this.timestamp = timestamp;
+        }
+    }
+}
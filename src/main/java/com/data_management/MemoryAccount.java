@@ -0,0 +1,54 @@
+package com.data_management;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A running estimate of the bytes held by a group of {@link RecordSeries},
+ * kept current without walking them. Each series reports the change in its
+ * own estimate whenever its chunk array changes, i.e. about once per chunk
+ * rather than once per reading.
+ */
+class MemoryAccount {
+    private final AtomicLong bytes = new AtomicLong();
+    private volatile long limit = Long.MAX_VALUE;
+    private volatile Runnable onExceeded;
+
+    /**
+     * Applies a change reported by a series. Growth past the limit runs the
+     * exceeded callback on the reporting thread, which may hold a series
+     * lock, so the callback must only hand work off.
+     *
+     * @param delta the change in bytes
+     */
+    void add(long delta) {
+        if (delta == 0) {
+            return;
+        }
+        long total = bytes.addAndGet(delta);
+        if (delta > 0 && total > limit) {
+            Runnable callback = onExceeded;
+            if (callback != null) {
+                callback.run();
+            }
+        }
+    }
+
+    long getBytes() {
+        return bytes.get();
+    }
+
+    boolean isExceeded() {
+        return bytes.get() > limit;
+    }
+
+    /**
+     * Sets the limit and what to do when growth exceeds it.
+     *
+     * @param limit      the limit in bytes, or {@code Long.MAX_VALUE} for none
+     * @param onExceeded called when growth exceeds the limit, or {@code null}
+     */
+    void setLimit(long limit, Runnable onExceeded) {
+        this.onExceeded = onExceeded;
+        this.limit = limit;
+    }
+}
@@ -0,0 +1,107 @@
+package com.data_management;
+
+/**
+ * A limit on the estimated memory used by the readings in
+ * {@link DataStorage}, and the {@link BudgetPolicy} applied when it is
+ * exceeded. Evicting and downsampling policies free memory until usage is
+ * back down to the target fraction of the limit, so they do not run again
+ * after every chunk.
+ */
+public class MemoryBudget {
+    public static final double DEFAULT_TARGET_FRACTION = 0.9;
+
+    private final long maxBytes;
+    private final BudgetPolicy policy;
+    private Resolution downsampleResolution = Resolution.MINUTE;
+    private double targetFraction = DEFAULT_TARGET_FRACTION;
+
+    /**
+     * Creates a budget.
+     *
+     * @param maxBytes the most bytes the stored readings may use, as
+     *                 estimated by {@link DataStorage#getMemoryUsage()}
+     * @param policy   what to do when the limit is exceeded
+     * @throws IllegalArgumentException if the limit is not positive or the
+     *                                  policy is missing
+     */
+    public MemoryBudget(long maxBytes, BudgetPolicy policy) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("Memory budget must be positive: " + maxBytes);
+        }
+        if (policy == null) {
+            throw new IllegalArgumentException("Budget policy must not be null");
+        }
+        this.maxBytes = maxBytes;
+        this.policy = policy;
+    }
+
+    /**
+     * Sets the resolution older readings are reduced to by
+     * {@link BudgetPolicy#DOWNSAMPLE}.
+     *
+     * @param downsampleResolution one reading is kept per bucket of this width
+     * @return this budget
+     */
+    public MemoryBudget setDownsampleResolution(Resolution downsampleResolution) {
+        if (downsampleResolution == null) {
+            throw new IllegalArgumentException("Downsampling resolution must not be null");
+        }
+        this.downsampleResolution = downsampleResolution;
+        return this;
+    }
+
+    /**
+     * Sets how far below the limit evicting and downsampling bring usage.
+     *
+     * @param targetFraction the target, as a fraction of the limit in (0, 1]
+     * @return this budget
+     */
+    public MemoryBudget setTargetFraction(double targetFraction) {
+        if (!(targetFraction > 0 && targetFraction <= 1)) {
+            throw new IllegalArgumentException("Target fraction must be in (0, 1]: " + targetFraction);
+        }
+        this.targetFraction = targetFraction;
+        return this;
+    }
+
+    /**
+     * Returns the most bytes the stored readings may use.
+     *
+     * @return the limit in bytes
+     */
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Returns what happens when the limit is exceeded.
+     *
+     * @return the policy
+     */
+    public BudgetPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Returns the resolution older readings are reduced to when
+     * downsampling.
+     *
+     * @return the downsampling resolution
+     */
+    public Resolution getDownsampleResolution() {
+        return downsampleResolution;
+    }
+
+    /**
+     * Returns how far below the limit evicting and downsampling bring usage.
+     *
+     * @return the target, as a fraction of the limit
+     */
+    public double getTargetFraction() {
+        return targetFraction;
+    }
+
+    long getTargetBytes() {
+        return (long) (maxBytes * targetFraction);
+    }
+}
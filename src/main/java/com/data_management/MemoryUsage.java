@@ -0,0 +1,110 @@
+package com.data_management;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Estimated memory used by the readings in {@link DataStorage}, broken down
+ * per patient and per record type, as returned by
+ * {@link DataStorage#getMemoryUsage()}. Estimates cover chunks, reorder
+ * buffers, recent-reading windows, rollups and quantile sketches, on or off
+ * the heap.
+ */
+public class MemoryUsage {
+    private final long totalBytes;
+    private final long budgetBytes;
+    private final Map<Integer, Long> bytesByPatient;
+    private final Map<String, Long> bytesByRecordType;
+
+    /**
+     * Creates a report that takes ownership of the given maps.
+     *
+     * @param totalBytes        the estimated total
+     * @param budgetBytes       the configured limit, or {@code Long.MAX_VALUE}
+     * @param bytesByPatient    the estimate per patient ID
+     * @param bytesByRecordType the estimate per record type name
+     */
+    MemoryUsage(long totalBytes, long budgetBytes, Map<Integer, Long> bytesByPatient,
+            Map<String, Long> bytesByRecordType) {
+        this.totalBytes = totalBytes;
+        this.budgetBytes = budgetBytes;
+        this.bytesByPatient = Collections.unmodifiableMap(bytesByPatient);
+        this.bytesByRecordType = Collections.unmodifiableMap(bytesByRecordType);
+    }
+
+    /**
+     * Returns the estimated bytes used by all stored readings.
+     *
+     * @return the total in bytes
+     */
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * Returns the limit of the configured {@link MemoryBudget}.
+     *
+     * @return the limit in bytes, or {@code Long.MAX_VALUE} if there is none
+     */
+    public long getBudgetBytes() {
+        return budgetBytes;
+    }
+
+    /**
+     * Returns the estimated bytes used per patient.
+     *
+     * @return an unmodifiable map from patient ID to bytes
+     */
+    public Map<Integer, Long> getBytesByPatient() {
+        return bytesByPatient;
+    }
+
+    /**
+     * Returns the estimated bytes used per record type, over all patients.
+     *
+     * @return an unmodifiable map from record type name to bytes
+     */
+    public Map<String, Long> getBytesByRecordType() {
+        return bytesByRecordType;
+    }
+
+    /**
+     * Returns the estimated bytes used by one patient.
+     *
+     * @param patientId the patient ID
+     * @return the bytes, or 0 if the patient has no readings
+     */
+    public long getPatientBytes(int patientId) {
+        return bytesByPatient.getOrDefault(patientId, 0L);
+    }
+
+    /**
+     * Returns the estimated bytes used by one record type.
+     *
+     * @param recordType the record type, e.g. "ECG"
+     * @return the bytes, or 0 if no reading of that type is stored
+     */
+    public long getRecordTypeBytes(String recordType) {
+        RecordTypeRegistry recordTypes = RecordTypeRegistry.getInstance();
+        int typeId = recordTypes.find(recordType);
+        return typeId < 0 ? 0 : bytesByRecordType.getOrDefault(recordTypes.nameOf(typeId), 0L);
+    }
+
+    /**
+     * Returns the patients using the most memory, largest first.
+     *
+     * @param count the most patients to return
+     * @return the patient IDs
+     */
+    public List<Integer> getLargestPatients(int count) {
+        List<Map.Entry<Integer, Long>> entries = new ArrayList<>(bytesByPatient.entrySet());
+        entries.sort(Map.Entry.<Integer, Long>comparingByValue().reversed());
+        List<Integer> largest = new ArrayList<>();
+        for (int i = 0; i < Math.min(count, entries.size()); i++) {
+            largest.add(entries.get(i).getKey());
+        }
+        return largest;
+    }
+}
@@ -0,0 +1,53 @@
+package com.data_management;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Allocates chunks in direct memory within a fixed byte budget.
+ * Each chunk gets its own direct buffer, so the native memory of a dropped
+ * chunk is only freed once no concurrent reader can still be using it.
+ */
+class OffHeapChunkAllocator implements ChunkAllocator {
+    private final long budgetBytes;
+    private final AtomicLong reservedBytes = new AtomicLong();
+
+    /**
+     * Creates an allocator limited to {@code budgetBytes} of direct memory.
+     *
+     * @param budgetBytes the maximum number of bytes reserved at once
+     */
+    OffHeapChunkAllocator(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+    }
+
+    @Override
+    public SeriesChunk allocate(int capacity) {
+        int bytes = capacity * (Long.BYTES + Double.BYTES);
+        long reserved = reservedBytes.addAndGet(bytes);
+        if (reserved > budgetBytes) {
+            reservedBytes.addAndGet(-bytes);
+            throw new IllegalStateException("Off-heap storage budget of " + budgetBytes + " bytes exhausted");
+        }
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+        return new OffHeapSeriesChunk(capacity, buffer, this);
+    }
+
+    /**
+     * Returns a released chunk's bytes to the budget.
+     *
+     * @param bytes the number of bytes released
+     */
+    void release(int bytes) {
+        reservedBytes.addAndGet(-bytes);
+    }
+
+    long getReservedBytes() {
+        return reservedBytes.get();
+    }
+
+    long getBudgetBytes() {
+        return budgetBytes;
+    }
+}
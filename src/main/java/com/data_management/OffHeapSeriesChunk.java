@@ -0,0 +1,73 @@
+package com.data_management;
+
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.LongBuffer;
+
+/**
+ * A chunk whose columns live in a direct {@link ByteBuffer}, outside the Java
+ * heap, so the garbage collector never traverses the readings. The buffer
+ * holds the timestamp column followed by the value column.
+ */
+class OffHeapSeriesChunk extends SeriesChunk {
+    // Chunk object plus its DirectByteBuffer wrapper and cleaner
+    static final int HEAP_OVERHEAD_BYTES = 32 + 64 + 32;
+
+    private final ByteBuffer buffer;
+    private final OffHeapChunkAllocator allocator;
+    private final int valuesOffset;
+
+    /**
+     * Wraps an allocated direct buffer as a chunk.
+     *
+     * @param capacity  the maximum number of readings in this chunk
+     * @param buffer    a direct buffer of {@code 16 * capacity} bytes
+     * @param allocator the allocator to return the reservation to on release
+     */
+    OffHeapSeriesChunk(int capacity, ByteBuffer buffer, OffHeapChunkAllocator allocator) {
+        super(capacity);
+        this.buffer = buffer;
+        this.allocator = allocator;
+        this.valuesOffset = capacity * Long.BYTES;
+    }
+
+    @Override
+    void write(int index, long timestamp, double value) {
+        buffer.putLong(index * Long.BYTES, timestamp);
+        buffer.putDouble(valuesOffset + index * Double.BYTES, value);
+    }
+
+    @Override
+    void copyColumns(LongBuffer timestamps, DoubleBuffer values, int count) {
+        ByteBuffer target = buffer.duplicate().order(buffer.order());
+        target.asLongBuffer().put(timestamps.slice().limit(count));
+        target.position(valuesOffset);
+        target.slice().order(buffer.order()).asDoubleBuffer().put(values.slice().limit(count));
+        timestamps.position(timestamps.position() + count);
+        values.position(values.position() + count);
+    }
+
+    @Override
+    long timestampAt(int index) {
+        return buffer.getLong(index * Long.BYTES);
+    }
+
+    @Override
+    double valueAt(int index) {
+        return buffer.getDouble(valuesOffset + index * Double.BYTES);
+    }
+
+    @Override
+    long residentBytes() {
+        return HEAP_OVERHEAD_BYTES + buffer.capacity();
+    }
+
+    /**
+     * Returns this chunk's reservation to the allocator's budget. The native
+     * memory itself is freed once no reader holds the chunk any more.
+     */
+    @Override
+    void release() {
+        allocator.release(buffer.capacity());
+    }
+}
@@ -0,0 +1,18 @@
+package com.data_management;
+
+/**
+ * What a {@link Subscription} does with new readings when its queue is full
+ * because the listener falls behind ingestion.
+ */
+public enum OverflowPolicy {
+    /** Discards the oldest queued readings to make room; ingest never waits. */
+    DROP_OLDEST,
+    /** Discards the new readings; ingest never waits. */
+    DROP_NEWEST,
+    /**
+     * Makes the ingesting thread wait for room. No reading is lost, but a
+     * slow listener slows ingestion down, and a listener must not add
+     * readings it would itself receive.
+     */
+    BLOCK
+}
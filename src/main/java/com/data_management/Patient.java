@@ -1,6 +1,9 @@
 package com.data_management;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -9,20 +12,68 @@ import java.util.Map;
  * Represents a patient and manages their medical records.
  * This class stores patient-specific data, allowing for the addition and
  * retrieval of medical records based on specified criteria.
+ * Readings are kept in one columnar {@link RecordSeries} per record type;
+ * {@link PatientRecord} objects are only created when records are requested.
+ * A patient may be written by several threads and read by many others at the
+ * same time: writers to the same series are serialized on that series and
+ * readers work from published snapshots without taking locks.
  */
 public class Patient {
     private int patientId;
-    private List<PatientRecord> patientRecords;
+    private final ChunkAllocator chunkAllocator;
+    private final MemoryAccount memory;
+    private final VersionClock clock;
+    private volatile RecordSeries[] seriesByType; // Indexed by the record type id; replaced on growth, never shrunk.
+    private volatile long lastUsed = System.nanoTime(); // When the patient was last queried, for tiered storage.
 
     /**
      * Constructs a new Patient with a specified ID.
-     * Initializes an empty list of patient records.
+     * Initializes an empty set of record series.
      *
      * @param patientId the unique identifier for the patient
      */
     public Patient(int patientId) {
+        this(patientId, ChunkAllocator.HEAP);
+    }
+
+    /**
+     * Constructs a new Patient whose readings are stored in chunks from the
+     * given allocator.
+     *
+     * @param patientId      the unique identifier for the patient
+     * @param chunkAllocator creates the chunks holding the patient's readings
+     */
+    Patient(int patientId, ChunkAllocator chunkAllocator) {
+        this(patientId, chunkAllocator, new MemoryAccount());
+    }
+
+    /**
+     * Constructs a new Patient whose series report their estimated size to
+     * a storage-wide account.
+     *
+     * @param patientId      the unique identifier for the patient
+     * @param chunkAllocator creates the chunks holding the patient's readings
+     * @param memory         the account of the storage the patient belongs to
+     */
+    Patient(int patientId, ChunkAllocator chunkAllocator, MemoryAccount memory) {
+        this(patientId, chunkAllocator, memory, new VersionClock());
+    }
+
+    /**
+     * Constructs a new Patient whose series can be read as of a version of
+     * the storage-wide clock, for consistent snapshots of the storage.
+     *
+     * @param patientId      the unique identifier for the patient
+     * @param chunkAllocator creates the chunks holding the patient's readings
+     * @param memory         the account of the storage the patient belongs to
+     * @param clock          the version clock of the storage
+     */
+    Patient(int patientId, ChunkAllocator chunkAllocator, MemoryAccount memory, VersionClock clock) {
         this.patientId = patientId;
-        this.patientRecords = new ArrayList<>();
+        this.chunkAllocator = chunkAllocator;
+        this.memory = memory;
+        this.clock = clock;
+        this.seriesByType = new RecordSeries[8];
     }
 
     /**
@@ -44,10 +95,56 @@ public class Patient {
      *                         "BloodPressure"
      * @param timestamp        the time at which the measurement was taken, in
      *                         milliseconds since UNIX epoch
+     * @return {@code false} if a record with this type and timestamp already
+     *         existed, in which case the new one was dropped
+     */
+    public boolean addRecord(double measurementValue, String recordType, long timestamp) {
+        return addRecord(measurementValue, RecordTypeRegistry.getInstance().idOf(recordType), timestamp);
+    }
+
+    /**
+     * Adds a new record for an already interned record type.
+     *
+     * @param measurementValue the measurement value to store in the record
+     * @param typeId           the record type id from {@link RecordTypeRegistry}
+     * @param timestamp        the time at which the measurement was taken, in
+     *                         milliseconds since UNIX epoch
+     * @return {@code false} if a record with this type and timestamp already
+     *         existed, in which case the new one was dropped
+     */
+    public boolean addRecord(double measurementValue, int typeId, long timestamp) {
+        return seriesFor(typeId).append(timestamp, measurementValue);
+    }
+
+    /**
+     * Adds a new record and logs it to a write-ahead log in the same step.
+     *
+     * @param measurementValue the measurement value to store in the record
+     * @param typeId           the record type id from {@link RecordTypeRegistry}
+     * @param timestamp        the time at which the measurement was taken
+     * @param wal              the write-ahead log to record the reading in
+     * @return {@code false} if a record with this type and timestamp already
+     *         existed, in which case the new one was dropped
+     */
+    boolean addRecord(double measurementValue, int typeId, long timestamp, WriteAheadLog wal) {
+        return seriesFor(typeId).append(timestamp, measurementValue, wal, patientId);
+    }
+
+    /**
+     * Adds a run of readings of one record type, taking the series lock once.
+     *
+     * @param typeId     the record type id from {@link RecordTypeRegistry}
+     * @param timestamps the timestamp column
+     * @param values     the value column
+     * @param offset     the position of the first reading in the columns
+     * @param count      the number of readings
+     * @param wal        the write-ahead log, or {@code null} if not persistent
+     * @param stored     receives each reading that was stored, or {@code null}
+     * @return the number of readings stored; the others were duplicates
      */
-    public void addRecord(double measurementValue, String recordType, long timestamp) {
-        PatientRecord record = new PatientRecord(this.patientId, measurementValue, recordType, timestamp);
-        this.patientRecords.add(record);
+    int addRecords(int typeId, long[] timestamps, double[] values, int offset, int count, WriteAheadLog wal,
+            RecordVisitor stored) {
+        return seriesFor(typeId).appendAll(timestamps, values, offset, count, wal, patientId, stored);
     }
 
     /**
@@ -57,16 +154,19 @@ public class Patient {
      * @param recordType the type of record
      * @param timestamp the time at which the measurement was taken
      * @param additionalInfo additional information associated with the record
+     * @return {@code false} if a record with this type and timestamp already
+     *         existed, in which case the new one was dropped
      */
-    public void addRecord(double measurementValue, String recordType, long timestamp, String additionalInfo) {
-        PatientRecord record = new PatientRecord(this.patientId, measurementValue, recordType, timestamp, additionalInfo);
-        this.patientRecords.add(record);
+    public boolean addRecord(double measurementValue, String recordType, long timestamp, String additionalInfo) {
+        int typeId = RecordTypeRegistry.getInstance().idOf(recordType);
+        return seriesFor(typeId).append(timestamp, measurementValue, additionalInfo);
     }
 
     /**
      * Retrieves a list of PatientRecord objects for this patient that fall within a
      * specified time range.
-     * The method filters records based on the start and end times provided.
+     * The method filters records based on the start and end times provided
+     * and returns them in timestamp order.
      *
      * @param startTime the start of the time range, in milliseconds since UNIX
      *                  epoch
@@ -76,13 +176,33 @@ public class Patient {
      */
     public List<PatientRecord> getRecords(long startTime, long endTime) {
         List<PatientRecord> filteredRecords = new ArrayList<>();
-        for (PatientRecord record : patientRecords) {
-            if (record.getTimestamp() >= startTime && record.getTimestamp() <= endTime) {
-                filteredRecords.add(record);
+        for (RecordSeries series : seriesByType) {
+            if (series != null) {
+                series.collect(patientId, startTime, endTime, filteredRecords);
             }
         }
+        // Each series is already sorted, so this only merges the per-type runs
+        filteredRecords.sort(Comparator.comparingLong(PatientRecord::getTimestamp));
         return filteredRecords;
     }
+
+    /**
+     * Retrieves the records of one record type that fall within a time range,
+     * in timestamp order.
+     *
+     * @param typeId    the record type id from {@link RecordTypeRegistry}
+     * @param startTime the start of the time range, in milliseconds since UNIX epoch
+     * @param endTime   the end of the time range, in milliseconds since UNIX epoch
+     * @return the matching records
+     */
+    public List<PatientRecord> getRecords(int typeId, long startTime, long endTime) {
+        List<PatientRecord> records = new ArrayList<>();
+        RecordSeries series = existingSeries(typeId);
+        if (series != null) {
+            series.collect(patientId, startTime, endTime, records);
+        }
+        return records;
+    }
     
     /**
      * Gets all records for this patient organized by record type.
@@ -91,13 +211,15 @@ public class Patient {
      */
     public Map<String, List<PatientRecord>> getRecordsByType() {
         Map<String, List<PatientRecord>> recordsByType = new HashMap<>();
+        RecordTypeRegistry registry = RecordTypeRegistry.getInstance();
         
-        for (PatientRecord record : patientRecords) {
-            String recordType = record.getRecordType();
-            if (!recordsByType.containsKey(recordType)) {
-                recordsByType.put(recordType, new ArrayList<>());
+        for (RecordSeries series : seriesByType) {
+            if (series != null && series.size() > 0) {
+                String recordType = registry.nameOf(series.getTypeId());
+                List<PatientRecord> records = new ArrayList<>(series.size());
+                series.collect(patientId, Long.MIN_VALUE, Long.MAX_VALUE, records);
+                recordsByType.put(recordType, records);
             }
-            recordsByType.get(recordType).add(record);
         }
         
         return recordsByType;
@@ -109,6 +231,459 @@ public class Patient {
      * @return a list of all patient records
      */
     public List<PatientRecord> getAllRecords() {
-        return new ArrayList<>(patientRecords);
+        return getRecords(Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * Returns the most recent reading of one record type. The newest readings
+     * of every series are kept aside as they are added, so this never scans
+     * the history.
+     *
+     * @param recordType the record type, e.g. "OxygenSaturation"
+     * @return the reading with the highest timestamp, or {@code null} if there
+     *         is none
+     */
+    public PatientRecord getLatest(String recordType) {
+        return getLatest(RecordTypeRegistry.getInstance().find(recordType));
+    }
+
+    /**
+     * Returns the most recent reading of one record type.
+     *
+     * @param typeId the record type id from {@link RecordTypeRegistry}
+     * @return the reading with the highest timestamp, or {@code null} if there
+     *         is none
+     */
+    public PatientRecord getLatest(int typeId) {
+        RecordSeries series = existingSeries(typeId);
+        return series == null ? null : series.latest(patientId);
+    }
+
+    /**
+     * Returns the most recent readings of one record type, in timestamp
+     * order. Up to {@link RecordSeries#RECENT_CAPACITY} readings are served
+     * without scanning the history.
+     *
+     * @param recordType the record type, e.g. "ECG"
+     * @param count      the maximum number of readings to return
+     * @return the newest readings, oldest first; fewer than {@code count} if
+     *         the patient has fewer
+     * @throws IllegalArgumentException if {@code count} is negative
+     */
+    public List<PatientRecord> getLastN(String recordType, int count) {
+        return getLastN(RecordTypeRegistry.getInstance().find(recordType), count);
+    }
+
+    /**
+     * Returns the most recent readings of one record type, in timestamp
+     * order.
+     *
+     * @param typeId the record type id from {@link RecordTypeRegistry}
+     * @param count  the maximum number of readings to return
+     * @return the newest readings, oldest first
+     * @throws IllegalArgumentException if {@code count} is negative
+     */
+    public List<PatientRecord> getLastN(int typeId, int count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("Count must not be negative: " + count);
+        }
+        List<PatientRecord> records = new ArrayList<>(Math.min(count, RecordSeries.RECENT_CAPACITY));
+        RecordSeries series = existingSeries(typeId);
+        if (series != null && count > 0) {
+            series.collectLast(patientId, count, records);
+        }
+        return records;
+    }
+
+    /**
+     * Returns the statistics of a sliding window over the newest readings of
+     * one record type: mean, variance, extremes and the extremes of the
+     * changes between consecutive readings. The series keeps the window up
+     * to date as readings arrive, so repeated checks cost the same however
+     * large the window is.
+     *
+     * @param recordType the record type, e.g. "ECG"
+     * @param window     the extent of the window
+     * @return the statistics, or {@code null} if there are no readings
+     */
+    public WindowStats getWindowStats(String recordType, WindowSpec window) {
+        return getWindowStats(RecordTypeRegistry.getInstance().find(recordType), window);
+    }
+
+    /**
+     * Returns the statistics of a sliding window over the newest readings of
+     * one record type.
+     *
+     * @param typeId the record type id from {@link RecordTypeRegistry}
+     * @param window the extent of the window
+     * @return the statistics, or {@code null} if there are no readings
+     */
+    public WindowStats getWindowStats(int typeId, WindowSpec window) {
+        RecordSeries series = existingSeries(typeId);
+        return series == null ? null : series.windowStats(window);
+    }
+
+    /**
+     * Returns per-bucket summaries of one record type over a time range,
+     * read from the rollups maintained at ingest instead of raw readings.
+     *
+     * @param recordType the record type, e.g. "HeartRate"
+     * @param startTime  the start of the time range, in milliseconds since UNIX epoch
+     * @param endTime    the end of the time range, in milliseconds since UNIX epoch
+     * @param resolution the bucket width
+     * @return the buckets overlapping the range, in time order
+     */
+    public List<Aggregate> getAggregates(String recordType, long startTime, long endTime, Resolution resolution) {
+        List<Aggregate> aggregates = new ArrayList<>();
+        RecordSeries series = existingSeries(RecordTypeRegistry.getInstance().find(recordType));
+        if (series != null) {
+            series.aggregate(startTime, endTime, resolution, aggregates);
+        }
+        return aggregates;
+    }
+
+    /**
+     * Summarizes the readings of one record type over a time range: count,
+     * minimum, maximum and mean. Whole hours are read from the rollups
+     * maintained at ingest, so only the hours at either end of the range
+     * are scanned.
+     *
+     * @param recordType the record type, e.g. "HeartRate"
+     * @param startTime  the start of the time range, in milliseconds since UNIX epoch
+     * @param endTime    the end of the time range, in milliseconds since UNIX epoch
+     * @return the summary, or {@code null} if there are no readings in the range
+     */
+    public Aggregate getSummary(String recordType, long startTime, long endTime) {
+        return getSummary(RecordTypeRegistry.getInstance().find(recordType), startTime, endTime);
+    }
+
+    /**
+     * Summarizes the readings of one record type over a time range.
+     *
+     * @param typeId    the record type id from {@link RecordTypeRegistry}
+     * @param startTime the start of the time range, in milliseconds since UNIX epoch
+     * @param endTime   the end of the time range, in milliseconds since UNIX epoch
+     * @return the summary, or {@code null} if there are no readings in the range
+     */
+    public Aggregate getSummary(int typeId, long startTime, long endTime) {
+        RecordSeries series = existingSeries(typeId);
+        return series == null ? null : series.summarize(startTime, endTime);
+    }
+
+    /**
+     * Summarizes the readings of one record type over a time range in a
+     * quantile sketch, mostly merged from the hourly sketches maintained at
+     * ingest rather than sorted from raw readings.
+     *
+     * @param recordType the record type, e.g. "HeartRate"
+     * @param startTime  the start of the time range, in milliseconds since UNIX epoch
+     * @param endTime    the end of the time range, in milliseconds since UNIX epoch
+     * @return a new sketch, empty if there are no readings in the range
+     */
+    public QuantileSketch getQuantileSketch(String recordType, long startTime, long endTime) {
+        RecordSeries series = existingSeries(RecordTypeRegistry.getInstance().find(recordType));
+        return series == null ? new QuantileSketch() : series.quantiles(startTime, endTime);
+    }
+
+    /**
+     * Streams the readings of one record type within a time range to a
+     * visitor, in timestamp order, without creating record objects.
+     *
+     * @param recordType the record type, e.g. "ECG"
+     * @param startTime  the start of the time range, in milliseconds since UNIX epoch
+     * @param endTime    the end of the time range, in milliseconds since UNIX epoch
+     * @param visitor    receives each reading
+     */
+    public void forEachInRange(String recordType, long startTime, long endTime, RecordVisitor visitor) {
+        forEachInRange(RecordTypeRegistry.getInstance().find(recordType), startTime, endTime, visitor);
+    }
+
+    /**
+     * Streams the readings of one record type within a time range to a
+     * visitor, in timestamp order, without creating record objects.
+     *
+     * @param typeId    the record type id from {@link RecordTypeRegistry}
+     * @param startTime the start of the time range, in milliseconds since UNIX epoch
+     * @param endTime   the end of the time range, in milliseconds since UNIX epoch
+     * @param visitor   receives each reading
+     */
+    public void forEachInRange(int typeId, long startTime, long endTime, RecordVisitor visitor) {
+        RecordSeries series = existingSeries(typeId);
+        if (series != null) {
+            series.forEach(startTime, endTime, visitor);
+        }
+    }
+
+    /**
+     * Opens a reusable cursor over the readings of one record type within a
+     * time range.
+     *
+     * @param recordType the record type, e.g. "ECG"
+     * @param startTime  the start of the time range, in milliseconds since UNIX epoch
+     * @param endTime    the end of the time range, in milliseconds since UNIX epoch
+     * @param cursor     the cursor to position; any previous position is discarded
+     * @return {@code cursor}, for chaining
+     */
+    public RecordCursor openCursor(String recordType, long startTime, long endTime, RecordCursor cursor) {
+        return openCursor(RecordTypeRegistry.getInstance().find(recordType), startTime, endTime, cursor);
+    }
+
+    /**
+     * Opens a reusable cursor over the readings of one record type within a
+     * time range.
+     *
+     * @param typeId    the record type id from {@link RecordTypeRegistry}
+     * @param startTime the start of the time range, in milliseconds since UNIX epoch
+     * @param endTime   the end of the time range, in milliseconds since UNIX epoch
+     * @param cursor    the cursor to position; any previous position is discarded
+     * @return {@code cursor}, for chaining
+     */
+    public RecordCursor openCursor(int typeId, long startTime, long endTime, RecordCursor cursor) {
+        RecordSeries series = existingSeries(typeId);
+        if (series != null) {
+            series.openCursor(startTime, endTime, cursor);
+        } else {
+            cursor.clear();
+        }
+        return cursor;
+    }
+
+    /**
+     * Expires readings that are older than the retention configured for their
+     * record type. Whole chunks are dropped at a time.
+     *
+     * @param policy the retention policy to apply
+     * @param now    the current time, in milliseconds since UNIX epoch
+     * @return the number of readings removed
+     */
+    int expireRecords(RetentionPolicy policy, long now) {
+        int evicted = 0;
+        for (RecordSeries series : seriesByType) {
+            if (series != null) {
+                long retention = policy.getRetentionMillis(series.getTypeId());
+                if (retention != RetentionPolicy.KEEP_FOREVER) {
+                    evicted += series.expireBefore(now - retention);
+                }
+            }
+        }
+        return evicted;
+    }
+
+    /**
+     * Evicts, from every series, the chunks whose readings are all older
+     * than {@code cutoff}, to stay within a memory budget.
+     *
+     * @param cutoff the oldest timestamp that must be kept
+     * @return the number of readings removed
+     */
+    int evictBefore(long cutoff) {
+        int evicted = 0;
+        for (RecordSeries series : seriesByType) {
+            if (series != null) {
+                evicted += series.expireBefore(cutoff);
+            }
+        }
+        return evicted;
+    }
+
+    /**
+     * Downsamples, in every series, the chunks whose readings are all older
+     * than {@code cutoff} (see {@link RecordSeries#downsampleBefore}).
+     *
+     * @param cutoff     the oldest timestamp that must be kept raw
+     * @param resolution the width of the buckets readings are reduced to
+     * @return the number of readings removed
+     */
+    int downsampleBefore(long cutoff, Resolution resolution) {
+        int removed = 0;
+        for (RecordSeries series : seriesByType) {
+            if (series != null) {
+                removed += series.downsampleBefore(cutoff, resolution);
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Records the age and size of the chunks of every series.
+     *
+     * @param out          receives the chunks
+     * @param downsampling whether to skip chunks that are already downsampled
+     */
+    void collectChunkAges(ChunkAges out, boolean downsampling) {
+        for (RecordSeries series : seriesByType) {
+            if (series != null) {
+                series.collectChunkAges(out, downsampling);
+            }
+        }
+    }
+
+    /**
+     * Adds the estimated bytes of each of this patient's series to
+     * {@code bytesByType}.
+     *
+     * @param bytesByType the running totals by record type id
+     * @return the bytes of this patient
+     */
+    long addResidentBytesByType(Map<Integer, Long> bytesByType) {
+        long total = 0;
+        for (RecordSeries series : seriesByType) {
+            if (series != null) {
+                long bytes = series.residentBytes();
+                bytesByType.merge(series.getTypeId(), bytes, Long::sum);
+                total += bytes;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Records that the patient's history was just queried, which keeps it
+     * in the hot set of tiered storage.
+     */
+    void markUsed() {
+        lastUsed = System.nanoTime();
+    }
+
+    /**
+     * Returns when the patient was last queried or, if never, created.
+     *
+     * @return a {@link System#nanoTime()} stamp
+     */
+    long getLastUsed() {
+        return lastUsed;
+    }
+
+    /**
+     * Moves the sealed chunks of every series outside the hot window to disk
+     * (see {@link RecordSeries#spill}).
+     *
+     * @param store           where the chunks are written
+     * @param hotWindowMillis how much of the newest history stays in memory
+     * @return the number of readings moved to disk
+     * @throws IOException if the chunks cannot be written
+     */
+    int spill(ColdStore store, long hotWindowMillis) throws IOException {
+        int spilled = 0;
+        for (RecordSeries series : seriesByType) {
+            if (series != null) {
+                spilled += series.spill(store, hotWindowMillis);
+            }
+        }
+        return spilled;
+    }
+
+    /**
+     * Reads every chunk of this patient that was moved to disk back into
+     * memory.
+     */
+    void pageIn() {
+        for (RecordSeries series : seriesByType) {
+            if (series != null) {
+                series.pageIn();
+            }
+        }
+    }
+
+    /**
+     * Captures an immutable view of every non-empty series of this patient.
+     *
+     * @return the series views
+     */
+    List<SeriesView> seriesViews() {
+        List<SeriesView> views = new ArrayList<>();
+        for (RecordSeries series : seriesByType) {
+            if (series != null) {
+                SeriesView view = series.view();
+                if (view.size() > 0) {
+                    views.add(view);
+                }
+            }
+        }
+        return views;
+    }
+
+    /**
+     * Captures the view of every non-empty series of this patient that a
+     * storage snapshot of {@code version} sees.
+     *
+     * @param version the version of the snapshot
+     * @return the series views
+     */
+    List<SeriesView> seriesViewsAt(long version) {
+        List<SeriesView> views = new ArrayList<>();
+        for (RecordSeries series : seriesByType) {
+            if (series != null) {
+                SeriesView view = series.viewAt(version);
+                if (view != null && view.size() > 0) {
+                    views.add(view);
+                }
+            }
+        }
+        return views;
+    }
+
+    /**
+     * Releases all chunks of this patient once it has been removed from
+     * storage.
+     */
+    void release() {
+        for (RecordSeries series : seriesByType) {
+            if (series != null) {
+                series.release();
+            }
+        }
+    }
+
+    /**
+     * Estimates the bytes held by this patient's readings.
+     *
+     * @return the estimated size in bytes
+     */
+    long residentBytes() {
+        long bytes = 0;
+        for (RecordSeries series : seriesByType) {
+            if (series != null) {
+                bytes += series.residentBytes();
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Returns the series for a record type if this patient has one.
+     *
+     * @param typeId the record type id, or -1 for a type that was never registered
+     * @return the series, or {@code null} if no reading of that type was added
+     */
+    private RecordSeries existingSeries(int typeId) {
+        RecordSeries[] current = seriesByType;
+        return typeId >= 0 && typeId < current.length ? current[typeId] : null;
+    }
+
+    /**
+     * Returns the series for a record type, creating it on first use.
+     * The lookup is lock-free once the series exists.
+     *
+     * @param typeId the record type id
+     * @return the series holding readings of that type
+     */
+    RecordSeries seriesFor(int typeId) {
+        RecordSeries[] current = seriesByType;
+        if (typeId < current.length && current[typeId] != null) {
+            return current[typeId];
+        }
+        synchronized (this) {
+            current = seriesByType;
+            if (typeId < current.length && current[typeId] != null) {
+                return current[typeId];
+            }
+            // Copy-on-write so readers iterating the old table are unaffected.
+            RecordSeries[] updated = Arrays.copyOf(current, Math.max(typeId + 1, current.length));
+            RecordSeries series = new RecordSeries(typeId, chunkAllocator, memory, clock);
+            updated[typeId] = series;
+            seriesByType = updated;
+            return series;
+        }
     }
 }
@@ -0,0 +1,223 @@
+package com.data_management;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.IntFunction;
+
+/**
+ * Maps patient IDs to per-patient values without boxing the IDs. Each
+ * patient is given a dense internal index the first time it is added, and
+ * its value lives in an array slot at that index. IDs are mapped to indices
+ * by a plain array when they are small and non-negative, as the IDs the
+ * simulator and hospital feeds assign are; any other ID goes through a
+ * primitive open-addressing map ({@link IntIndexMap}). A lookup is one or
+ * two array reads, where a {@code Map<Integer, V>} boxes every ID outside
+ * the {@code Integer} cache and follows a hash-table entry.
+ *
+ * <p>Lookups never take a lock and may run alongside additions; additions
+ * are serialized on the directory. Patients are only removed all at once,
+ * by {@link #clear()}.
+ *
+ * @param <V> the type of the per-patient values
+ */
+public final class PatientDirectory<V> {
+    private static final int MIN_DIRECT_CAPACITY = 1_024;
+    private static final int DIRECT_IDS_PER_PATIENT = 4; // Direct IDs may be this sparse before using the map
+    private static final int INITIAL_CAPACITY = 16;
+
+    private volatile State<V> state = new State<>();
+
+    /**
+     * The arrays of the directory, replaced as a whole by {@link #clear()}.
+     * Growth replaces a single array; entries are published by the volatile
+     * writes into the atomic arrays, after the value they point to.
+     */
+    private static final class State<V> {
+        volatile AtomicIntegerArray direct = new AtomicIntegerArray(0); // By ID; index + 1, or 0 if absent
+        final IntIndexMap sparse = new IntIndexMap();                   // IDs the direct array does not cover
+        volatile AtomicReferenceArray<V> slots = new AtomicReferenceArray<>(INITIAL_CAPACITY); // By index
+        volatile int[] ids = new int[INITIAL_CAPACITY];                 // By index; written before size
+        volatile int size;
+    }
+
+    /**
+     * Returns the value of a patient.
+     *
+     * @param patientId the ID of the patient
+     * @return the value, or {@code null} if the patient was never added
+     */
+    public V get(int patientId) {
+        State<V> current = state;
+        int index = indexOf(current, patientId);
+        return index < 0 ? null : current.slots.get(index);
+    }
+
+    /**
+     * Returns the value of a patient, adding the patient with a value
+     * created by {@code factory} if it is not in the directory yet.
+     *
+     * @param patientId the ID of the patient
+     * @param factory   creates the value of a new patient from its ID
+     * @return the existing or new value
+     */
+    public V computeIfAbsent(int patientId, IntFunction<? extends V> factory) {
+        V value = get(patientId);
+        if (value != null) {
+            return value;
+        }
+        synchronized (this) {
+            State<V> current = state;
+            int index = indexOf(current, patientId);
+            if (index >= 0) {
+                return current.slots.get(index);
+            }
+            value = factory.apply(patientId);
+            add(current, patientId, value);
+            return value;
+        }
+    }
+
+    /**
+     * Returns the dense internal index of a patient. Indices are assigned in
+     * the order patients are added, from zero, and stay the same until the
+     * directory is cleared, so callers can keep per-patient data in arrays
+     * of their own.
+     *
+     * @param patientId the ID of the patient
+     * @return the index, or -1 if the patient was never added
+     */
+    public int indexOf(int patientId) {
+        return indexOf(state, patientId);
+    }
+
+    /**
+     * Returns the value at an internal index.
+     *
+     * @param index an index below {@link #size()}
+     * @return the value
+     */
+    public V getAt(int index) {
+        return state.slots.get(index);
+    }
+
+    /**
+     * Returns the ID of the patient at an internal index.
+     *
+     * @param index an index below {@link #size()}
+     * @return the patient ID
+     */
+    public int idAt(int index) {
+        return state.ids[index];
+    }
+
+    /**
+     * Returns the number of patients in the directory.
+     *
+     * @return the patient count
+     */
+    public int size() {
+        return state.size;
+    }
+
+    /**
+     * Returns whether no patient has been added.
+     *
+     * @return {@code true} if the directory is empty
+     */
+    public boolean isEmpty() {
+        return state.size == 0;
+    }
+
+    /**
+     * Returns the values of every patient, in the order they were added.
+     *
+     * @return a new list of the values
+     */
+    public List<V> values() {
+        State<V> current = state;
+        int size = current.size;
+        AtomicReferenceArray<V> slots = current.slots;
+        List<V> values = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            values.add(slots.get(i));
+        }
+        return values;
+    }
+
+    /**
+     * Removes every patient.
+     *
+     * @return the values that were removed
+     */
+    public List<V> clear() {
+        synchronized (this) {
+            List<V> removed = values();
+            state = new State<>();
+            return removed;
+        }
+    }
+
+    /**
+     * Estimates the bytes held by the directory itself, not counting the
+     * values.
+     *
+     * @return the estimated size in bytes
+     */
+    public long residentBytes() {
+        State<V> current = state;
+        return 4L * current.direct.length() + current.sparse.residentBytes()
+                + 12L * current.slots.length();
+    }
+
+    private static int indexOf(State<?> current, int patientId) {
+        AtomicIntegerArray direct = current.direct;
+        if (patientId >= 0 && patientId < direct.length()) {
+            int stored = direct.get(patientId);
+            if (stored != 0) {
+                return stored - 1;
+            }
+        }
+        return current.sparse.get(patientId);
+    }
+
+    /**
+     * Adds a patient that is not in the directory. Called with the directory
+     * lock held.
+     */
+    private void add(State<V> current, int patientId, V value) {
+        int index = current.size;
+        if (index == current.slots.length()) {
+            AtomicReferenceArray<V> grown = new AtomicReferenceArray<>(index * 2);
+            for (int i = 0; i < index; i++) {
+                grown.set(i, current.slots.get(i));
+            }
+            current.slots = grown;
+            current.ids = Arrays.copyOf(current.ids, index * 2);
+        }
+        current.ids[index] = patientId;
+        current.slots.set(index, value); // Before the index is published below
+
+        // Small IDs are indexed directly while the array stays proportional to the patient count
+        long directLimit = Math.max(MIN_DIRECT_CAPACITY, (long) DIRECT_IDS_PER_PATIENT * (index + 1));
+        AtomicIntegerArray direct = current.direct;
+        if (patientId >= 0 && patientId < directLimit) {
+            if (patientId >= direct.length()) {
+                int capacity = (int) Math.min(directLimit, Math.max(2L * direct.length(), patientId + 1L));
+                capacity = Math.max(capacity, MIN_DIRECT_CAPACITY);
+                AtomicIntegerArray grown = new AtomicIntegerArray(capacity);
+                for (int id = 0; id < direct.length(); id++) {
+                    grown.set(id, direct.get(id));
+                }
+                current.direct = grown;
+                direct = grown;
+            }
+            direct.set(patientId, index + 1);
+        } else {
+            current.sparse.put(patientId, index);
+        }
+        current.size = index + 1;
+    }
+}
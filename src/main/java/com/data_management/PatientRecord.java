@@ -10,6 +10,7 @@ public class PatientRecord {
     private String recordType;
     private long timestamp;
     private String additionalInfo;
+    private int recordTypeId = -1; // Resolved lazily for records built from a type name.
 
     /**
      * Constructs a new PatientRecord with the specified parameters.
@@ -44,6 +45,22 @@ public class PatientRecord {
         this.additionalInfo = additionalInfo;
     }
 
+    /**
+     * Constructs a record for an already interned record type, as storage
+     * does when it materializes readings.
+     *
+     * @param patientId      the ID of the patient this record belongs to
+     * @param measurementValue the value of the measurement recorded
+     * @param recordTypeId   the interned id of the record type
+     * @param timestamp      the time at which the measurement was taken
+     * @param additionalInfo additional information for the record
+     */
+    PatientRecord(int patientId, double measurementValue, int recordTypeId, long timestamp, String additionalInfo) {
+        this(patientId, measurementValue, RecordTypeRegistry.getInstance().nameOf(recordTypeId), timestamp,
+                additionalInfo);
+        this.recordTypeId = recordTypeId;
+    }
+
     /**
      * Returns the patient ID associated with this record.
      *
@@ -71,6 +88,19 @@ public class PatientRecord {
         return recordType;
     }
 
+    /**
+     * Returns the interned id of this record's type, so callers can compare
+     * types without comparing strings.
+     *
+     * @return the record type id, see {@link RecordTypeRegistry}
+     */
+    public int getRecordTypeId() {
+        if (recordTypeId < 0) {
+            recordTypeId = RecordTypeRegistry.getInstance().idOf(recordType);
+        }
+        return recordTypeId;
+    }
+
     /**
      * Returns the timestamp of this record.
      *
@@ -0,0 +1,235 @@
+package com.data_management;
+
+/**
+ * A mergeable summary of a set of readings that answers quantile queries,
+ * such as the median or the 95th percentile, within a fixed relative error.
+ *
+ * <p>Readings are counted in logarithmic buckets in the manner of an HDR
+ * histogram: the bucket of a value is its binary exponent followed by the
+ * top {@link #SUB_BUCKET_BITS} bits of its mantissa, read straight from the
+ * IEEE 754 bits, so adding a value costs no logarithm. Every quantile is
+ * reported as the middle of its bucket and is therefore within
+ * {@link #RELATIVE_ACCURACY} of a reading at that rank. Two sketches merge
+ * by adding their bucket counts, which loses no accuracy, so the sketch of
+ * any time window can be assembled from the sketches of its parts.
+ *
+ * <p>Memory depends on the spread of the values, not their number: heart
+ * rates between 50 and 150 bpm fit in under 100 buckets. Magnitudes below
+ * {@link #MIN_MAGNITUDE} are counted as zero. Not thread-safe.
+ */
+public class QuantileSketch {
+    /** The number of mantissa bits that select a bucket within a power of two. */
+    public static final int SUB_BUCKET_BITS = 6;
+    /** The largest relative error of a reported quantile, about 0.78%. */
+    public static final double RELATIVE_ACCURACY = 1.0 / (1 << (SUB_BUCKET_BITS + 1));
+    /** Values with a smaller magnitude are counted as zero. */
+    public static final double MIN_MAGNITUDE = 0x1p-20;
+
+    private static final int SHIFT = 52 - SUB_BUCKET_BITS;
+
+    private final Buckets positive = new Buckets();
+    private final Buckets negative = new Buckets(); // By magnitude
+    private long zeroCount;
+    private long count;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    /**
+     * Creates an empty sketch.
+     */
+    public QuantileSketch() {
+    }
+
+    /**
+     * Adds a reading. NaN is ignored.
+     *
+     * @param value the measured value
+     */
+    public void add(double value) {
+        if (Double.isNaN(value)) {
+            return;
+        }
+        if (value >= MIN_MAGNITUDE) {
+            positive.increment(bucketOf(value), 1);
+        } else if (value <= -MIN_MAGNITUDE) {
+            negative.increment(bucketOf(-value), 1);
+        } else {
+            zeroCount++;
+        }
+        count++;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    /**
+     * Adds every reading summarized by another sketch to this one.
+     *
+     * @param other the sketch to merge in; it is left unchanged
+     */
+    public void merge(QuantileSketch other) {
+        if (other.count == 0) {
+            return;
+        }
+        positive.addAll(other.positive);
+        negative.addAll(other.negative);
+        zeroCount += other.zeroCount;
+        count += other.count;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    /**
+     * Returns the number of readings summarized.
+     *
+     * @return the reading count
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the smallest reading, exactly.
+     *
+     * @return the minimum, or NaN if the sketch is empty
+     */
+    public double getMin() {
+        return count == 0 ? Double.NaN : min;
+    }
+
+    /**
+     * Returns the largest reading, exactly.
+     *
+     * @return the maximum, or NaN if the sketch is empty
+     */
+    public double getMax() {
+        return count == 0 ? Double.NaN : max;
+    }
+
+    /**
+     * Estimates the value below which a given fraction of the readings fall,
+     * e.g. 0.95 for the 95th percentile.
+     *
+     * @param quantile the fraction, between 0 and 1 inclusive
+     * @return the estimate, within {@link #RELATIVE_ACCURACY} of the reading
+     *         at that rank, or NaN if the sketch is empty
+     * @throws IllegalArgumentException if the fraction is outside [0, 1]
+     */
+    public double getQuantile(double quantile) {
+        if (!(quantile >= 0 && quantile <= 1)) {
+            throw new IllegalArgumentException("Quantile must be between 0 and 1: " + quantile);
+        }
+        if (count == 0) {
+            return Double.NaN;
+        }
+        long rank = (long) Math.floor(quantile * (count - 1)); // 0-based rank of the wanted reading
+        double estimate;
+        if (rank < negative.total) {
+            // Negative buckets in ascending value order are in descending magnitude order
+            estimate = -valueOf(negative.bucketAtRank(negative.total - 1 - rank));
+        } else if (rank < negative.total + zeroCount) {
+            estimate = 0;
+        } else {
+            estimate = valueOf(positive.bucketAtRank(rank - negative.total - zeroCount));
+        }
+        return Math.max(min, Math.min(max, estimate));
+    }
+
+    /**
+     * Estimates the bytes held by this sketch.
+     *
+     * @return the estimated size in bytes
+     */
+    public long residentBytes() {
+        return 64 + positive.residentBytes() + negative.residentBytes();
+    }
+
+    private static int bucketOf(double magnitude) {
+        return (int) (Double.doubleToRawLongBits(magnitude) >>> SHIFT);
+    }
+
+    /**
+     * Returns the middle of a bucket.
+     */
+    private static double valueOf(int bucket) {
+        double lower = Double.longBitsToDouble((long) bucket << SHIFT);
+        double upper = Double.longBitsToDouble((long) (bucket + 1) << SHIFT);
+        return lower + (upper - lower) / 2;
+    }
+
+    /**
+     * Counts per bucket over the dense range of buckets seen so far.
+     */
+    private static final class Buckets {
+        private int[] counts; // A bucket holds at most Integer.MAX_VALUE readings
+        private int first; // Bucket of counts[0]
+        private long total;
+
+        void increment(int bucket, int amount) {
+            if (counts == null) {
+                counts = new int[8];
+                first = bucket;
+            } else if (bucket < first || bucket >= first + counts.length) {
+                grow(bucket);
+            }
+            counts[bucket - first] += amount;
+            total += amount;
+        }
+
+        void addAll(Buckets other) {
+            if (other.counts == null) {
+                return;
+            }
+            int from = 0;
+            int to = other.counts.length - 1;
+            while (other.counts[from] == 0) {
+                from++;
+            }
+            while (other.counts[to] == 0) {
+                to--;
+            }
+            increment(other.first + from, 0);
+            increment(other.first + to, 0);
+            for (int i = from; i <= to; i++) {
+                counts[other.first + i - first] += other.counts[i];
+            }
+            total += other.total;
+        }
+
+        /**
+         * Returns the bucket holding the reading of a 0-based rank, in
+         * ascending bucket order.
+         */
+        int bucketAtRank(long rank) {
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen > rank) {
+                    return first + i;
+                }
+            }
+            throw new IllegalStateException("Rank beyond the bucket counts: " + rank);
+        }
+
+        long residentBytes() {
+            return counts == null ? 0 : 16 + 4L * counts.length;
+        }
+
+        /**
+         * Widens the range so that it covers a bucket, with some slack on
+         * the side it grows towards.
+         */
+        private void grow(int bucket) {
+            int newFirst = Math.min(first, bucket);
+            int newLast = Math.max(first + counts.length - 1, bucket);
+            int length = newLast - newFirst + 1;
+            int slack = Math.max(8, length / 4);
+            if (bucket < first) {
+                newFirst -= slack;
+            }
+            int[] grown = new int[length + slack];
+            System.arraycopy(counts, 0, grown, first - newFirst, counts.length);
+            counts = grown;
+            first = newFirst;
+        }
+    }
+}
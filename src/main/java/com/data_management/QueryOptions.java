@@ -0,0 +1,37 @@
+package com.data_management;
+
+/**
+ * Execution settings of an asynchronous query over many patients (see
+ * {@link DataStorage#queryAsync(java.util.stream.Collector, QueryOptions)}).
+ * By default a query uses at most half of the processors, so reports
+ * running alongside ingest cannot take every core from it.
+ */
+public class QueryOptions {
+    public static final int DEFAULT_PARALLELISM = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+
+    private int parallelism = DEFAULT_PARALLELISM;
+
+    /**
+     * Sets how many threads the query may use at once.
+     *
+     * @param parallelism the most patients scanned at the same time
+     * @return these options
+     * @throws IllegalArgumentException if the limit is not positive
+     */
+    public QueryOptions setParallelism(int parallelism) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+        }
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    /**
+     * Returns how many threads the query may use at once.
+     *
+     * @return the parallelism limit
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+}
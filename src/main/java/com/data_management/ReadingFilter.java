@@ -0,0 +1,73 @@
+package com.data_management;
+
+import java.util.Arrays;
+
+/**
+ * Selects the readings a {@link Subscription} receives, by patient and
+ * record type. Evaluated on the ingest path for every stored run of
+ * readings, so implementations should be cheap and must not block.
+ */
+@FunctionalInterface
+public interface ReadingFilter {
+    /**
+     * Returns whether readings of a patient and record type are wanted.
+     *
+     * @param patientId    the patient the readings belong to
+     * @param recordTypeId the record type id from {@link RecordTypeRegistry}
+     * @return {@code true} to deliver the readings
+     */
+    boolean accepts(int patientId, int recordTypeId);
+
+    /**
+     * Returns a filter that accepts every reading.
+     *
+     * @return the filter
+     */
+    static ReadingFilter all() {
+        return (patientId, recordTypeId) -> true;
+    }
+
+    /**
+     * Returns a filter that accepts readings of the given record types, for
+     * every patient. Names and aliases are resolved once, here.
+     *
+     * @param recordTypes the record types, e.g. "HeartRate"
+     * @return the filter
+     */
+    static ReadingFilter recordTypes(String... recordTypes) {
+        RecordTypeRegistry registry = RecordTypeRegistry.getInstance();
+        boolean[] wanted = new boolean[0];
+        for (String recordType : recordTypes) {
+            int typeId = registry.idOf(recordType);
+            if (typeId >= wanted.length) {
+                wanted = Arrays.copyOf(wanted, typeId + 1);
+            }
+            wanted[typeId] = true;
+        }
+        boolean[] types = wanted;
+        return (patientId, recordTypeId) -> recordTypeId < types.length && types[recordTypeId];
+    }
+
+    /**
+     * Returns a filter that accepts every reading of the given patients.
+     *
+     * @param patientIds the patients' IDs
+     * @return the filter
+     */
+    static ReadingFilter patients(int... patientIds) {
+        int[] sorted = patientIds.clone();
+        Arrays.sort(sorted);
+        return (patientId, recordTypeId) -> Arrays.binarySearch(sorted, patientId) >= 0;
+    }
+
+    /**
+     * Returns a filter that accepts the readings both filters accept.
+     *
+     * @param other the other filter
+     * @return the combined filter
+     */
+    default ReadingFilter and(ReadingFilter other) {
+        return (patientId, recordTypeId) -> accepts(patientId, recordTypeId)
+                && other.accepts(patientId, recordTypeId);
+    }
+}
@@ -0,0 +1,16 @@
+package com.data_management;
+
+/**
+ * Receives newly stored readings from a {@link Subscription}. Calls for one
+ * subscription never overlap and arrive in the order the readings were
+ * queued, on the subscription's executor.
+ */
+@FunctionalInterface
+public interface ReadingListener {
+    /**
+     * Called with a batch of new readings of one patient and record type.
+     *
+     * @param update the readings; the listener may keep it
+     */
+    void onReadings(ReadingUpdate update);
+}
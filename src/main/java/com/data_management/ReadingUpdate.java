@@ -0,0 +1,100 @@
+package com.data_management;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A batch of newly stored readings of one patient and record type, as
+ * delivered to a {@link ReadingListener}. Readings are in the order they
+ * were stored, which is timestamp order unless some arrived late.
+ */
+public class ReadingUpdate {
+    private final int patientId;
+    private final int recordTypeId;
+    private final long[] timestamps;
+    private final double[] values;
+
+    /**
+     * Creates an update that takes ownership of the given columns.
+     *
+     * @param patientId    the patient the readings belong to
+     * @param recordTypeId the record type id
+     * @param timestamps   the timestamps, one per reading
+     * @param values       the values, one per reading
+     */
+    ReadingUpdate(int patientId, int recordTypeId, long[] timestamps, double[] values) {
+        this.patientId = patientId;
+        this.recordTypeId = recordTypeId;
+        this.timestamps = timestamps;
+        this.values = values;
+    }
+
+    /**
+     * Returns the patient the readings belong to.
+     *
+     * @return the patient ID
+     */
+    public int getPatientId() {
+        return patientId;
+    }
+
+    /**
+     * Returns the record type of the readings.
+     *
+     * @return the record type id from {@link RecordTypeRegistry}
+     */
+    public int getRecordTypeId() {
+        return recordTypeId;
+    }
+
+    /**
+     * Returns the canonical name of the record type.
+     *
+     * @return the record type, e.g. "HeartRate"
+     */
+    public String getRecordType() {
+        return RecordTypeRegistry.getInstance().nameOf(recordTypeId);
+    }
+
+    /**
+     * Returns the number of readings in the update.
+     *
+     * @return the reading count, at least 1
+     */
+    public int size() {
+        return timestamps.length;
+    }
+
+    /**
+     * Returns the timestamp of a reading.
+     *
+     * @param index the position of the reading in the update
+     * @return the timestamp, in milliseconds since UNIX epoch
+     */
+    public long getTimestamp(int index) {
+        return timestamps[index];
+    }
+
+    /**
+     * Returns the value of a reading.
+     *
+     * @param index the position of the reading in the update
+     * @return the measured value
+     */
+    public double getValue(int index) {
+        return values[index];
+    }
+
+    /**
+     * Materializes the readings as records.
+     *
+     * @return one record per reading, in update order
+     */
+    public List<PatientRecord> toRecords() {
+        List<PatientRecord> records = new ArrayList<>(timestamps.length);
+        for (int i = 0; i < timestamps.length; i++) {
+            records.add(new PatientRecord(patientId, values[i], recordTypeId, timestamps[i], ""));
+        }
+        return records;
+    }
+}
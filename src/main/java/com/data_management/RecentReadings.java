@@ -0,0 +1,119 @@
+package com.data_management;
+
+/**
+ * The newest readings of a {@link RecordSeries}, kept in timestamp order in a
+ * small ring so that the latest value and the last few readings can be read
+ * without touching the chunks, which may be compressed. Updated on every
+ * append; a late reading is inserted in place if it is among the newest.
+ * Guarded by the owning series' lock.
+ */
+class RecentReadings {
+    private final long[] timestamps;
+    private final double[] values;
+    private int start; // Ring position of the oldest reading
+    private int size;
+
+    /**
+     * Creates an empty window.
+     *
+     * @param capacity the number of newest readings to keep
+     */
+    RecentReadings(int capacity) {
+        this.timestamps = new long[capacity];
+        this.values = new double[capacity];
+    }
+
+    int size() {
+        return size;
+    }
+
+    int capacity() {
+        return timestamps.length;
+    }
+
+    /**
+     * Adds a reading if it is among the newest, evicting the oldest reading
+     * when the window is full. Readings with equal timestamps keep their
+     * arrival order.
+     *
+     * @param timestamp the time of the reading
+     * @param value     the measured value
+     */
+    void add(long timestamp, double value) {
+        int capacity = timestamps.length;
+        if (size == capacity) {
+            if (timestamp < timestampAt(0)) {
+                return; // Older than everything kept
+            }
+            start = (start + 1) % capacity;
+            size--;
+        }
+        int i = size;
+        while (i > 0 && timestampAt(i - 1) > timestamp) {
+            int from = (start + i - 1) % capacity;
+            int to = (start + i) % capacity;
+            timestamps[to] = timestamps[from];
+            values[to] = values[from];
+            i--;
+        }
+        int slot = (start + i) % capacity;
+        timestamps[slot] = timestamp;
+        values[slot] = value;
+        size++;
+    }
+
+    /**
+     * Adds a sorted run of readings; only the part that can still be among
+     * the newest is looked at.
+     *
+     * @param timestamps the timestamp column
+     * @param values     the value column
+     * @param from       the index of the first reading, inclusive
+     * @param to         the index of the last reading, exclusive
+     */
+    void addSorted(long[] timestamps, double[] values, int from, int to) {
+        for (int i = Math.max(from, to - this.timestamps.length); i < to; i++) {
+            add(timestamps[i], values[i]);
+        }
+    }
+
+    /**
+     * Returns the timestamp at a position, 0 being the oldest kept reading.
+     *
+     * @param index the position in the window
+     * @return the timestamp
+     */
+    long timestampAt(int index) {
+        return timestamps[(start + index) % timestamps.length];
+    }
+
+    /**
+     * Returns the value at a position, 0 being the oldest kept reading.
+     *
+     * @param index the position in the window
+     * @return the value
+     */
+    double valueAt(int index) {
+        return values[(start + index) % values.length];
+    }
+
+    /**
+     * Drops the readings older than {@code cutoff}.
+     *
+     * @param cutoff the oldest timestamp still stored in the series
+     */
+    void expireBefore(long cutoff) {
+        while (size > 0 && timestampAt(0) < cutoff) {
+            start = (start + 1) % timestamps.length;
+            size--;
+        }
+    }
+
+    /**
+     * Removes every reading.
+     */
+    void clear() {
+        start = 0;
+        size = 0;
+    }
+}
@@ -0,0 +1,189 @@
+package com.data_management;
+
+import java.util.Arrays;
+
+/**
+ * A reusable buffer of readings for {@link DataStorage#addBatch(RecordBatch)}.
+ * Readings are held in primitive columns, so filling a batch creates no
+ * objects once its arrays have grown to the working size.
+ *
+ * <pre>
+ * RecordBatch batch = new RecordBatch();
+ * for (...) {
+ *     batch.add(patientId, "ECG", timestamp, value);
+ *     if (batch.size() == 4096) {
+ *         storage.addBatch(batch);
+ *         batch.clear();
+ *     }
+ * }
+ * </pre>
+ *
+ * <p>A batch is not safe for use by several threads at once.
+ */
+public class RecordBatch {
+    private int[] patientIds;
+    private int[] typeIds;
+    private long[] timestamps;
+    private double[] values;
+    private int size;
+
+    // Scratch state of group(), kept so a reused batch is grouped without allocating
+    private long[] tableKeys = new long[0];
+    private int[] tableGroups = new int[0];
+    private int[] readingGroups = new int[0];
+    private long[] groupKeys = new long[0];
+    private int[] groupStarts = new int[1];
+    private long[] groupedTimestamps = new long[0];
+    private double[] groupedValues = new double[0];
+    private int groupCount;
+
+    /**
+     * Creates an empty batch with room for 1024 readings; it grows as needed.
+     */
+    public RecordBatch() {
+        this(1024);
+    }
+
+    /**
+     * Creates an empty batch.
+     *
+     * @param initialCapacity the number of readings to make room for up front
+     */
+    public RecordBatch(int initialCapacity) {
+        int capacity = Math.max(1, initialCapacity);
+        this.patientIds = new int[capacity];
+        this.typeIds = new int[capacity];
+        this.timestamps = new long[capacity];
+        this.values = new double[capacity];
+    }
+
+    /**
+     * Adds a reading to the batch.
+     *
+     * @param patientId  the unique identifier of the patient
+     * @param recordType the record type, e.g. "ECG"
+     * @param timestamp  the time of the reading, in milliseconds since UNIX epoch
+     * @param value      the measured value
+     */
+    public void add(int patientId, String recordType, long timestamp, double value) {
+        add(patientId, RecordTypeRegistry.getInstance().idOf(recordType), timestamp, value);
+    }
+
+    /**
+     * Adds a reading whose record type has already been resolved.
+     *
+     * @param patientId    the unique identifier of the patient
+     * @param recordTypeId the record type id from {@link RecordTypeRegistry}
+     * @param timestamp    the time of the reading, in milliseconds since UNIX epoch
+     * @param value        the measured value
+     */
+    public void add(int patientId, int recordTypeId, long timestamp, double value) {
+        if (size == timestamps.length) {
+            int capacity = size * 2;
+            patientIds = Arrays.copyOf(patientIds, capacity);
+            typeIds = Arrays.copyOf(typeIds, capacity);
+            timestamps = Arrays.copyOf(timestamps, capacity);
+            values = Arrays.copyOf(values, capacity);
+        }
+        patientIds[size] = patientId;
+        typeIds[size] = recordTypeId;
+        timestamps[size] = timestamp;
+        values[size] = value;
+        size++;
+    }
+
+    /**
+     * Returns the number of readings in the batch.
+     *
+     * @return the reading count
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Empties the batch so it can be filled again.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Groups the readings by patient and record type in linear time: each
+     * distinct pair is given a group through a small hash table, then the
+     * readings are counted and scattered into per-group runs. Readings keep
+     * their batch order within a group.
+     *
+     * @return the number of groups
+     */
+    int group() {
+        int tableSize = Integer.highestOneBit(Math.max(size, 1)) << 2; // Load factor at most 1/2
+        if (tableKeys.length < tableSize) {
+            tableKeys = new long[tableSize];
+            tableGroups = new int[tableSize];
+        }
+        if (readingGroups.length < size) {
+            readingGroups = new int[timestamps.length];
+            groupKeys = new long[timestamps.length];
+            groupStarts = new int[timestamps.length + 1];
+            groupedTimestamps = new long[timestamps.length];
+            groupedValues = new double[timestamps.length];
+        }
+        Arrays.fill(tableGroups, 0, tableSize, -1);
+        Arrays.fill(groupStarts, 0, size + 1, 0);
+
+        int mask = tableSize - 1;
+        groupCount = 0;
+        for (int i = 0; i < size; i++) {
+            long key = ((long) patientIds[i] << 32) | (typeIds[i] & 0xFFFFFFFFL);
+            int slot = (int) ((key * 0x9E3779B97F4A7C15L) >>> 40) & mask;
+            while (tableGroups[slot] >= 0 && tableKeys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            if (tableGroups[slot] < 0) {
+                tableKeys[slot] = key;
+                tableGroups[slot] = groupCount;
+                groupKeys[groupCount++] = key;
+            }
+            int group = tableGroups[slot];
+            readingGroups[i] = group;
+            groupStarts[group + 1]++;
+        }
+        for (int g = 0; g < groupCount; g++) {
+            groupStarts[g + 1] += groupStarts[g];
+        }
+        // Scatter, using the table slots of each group as fill cursors
+        int[] cursors = tableGroups;
+        System.arraycopy(groupStarts, 0, cursors, 0, groupCount);
+        for (int i = 0; i < size; i++) {
+            int position = cursors[readingGroups[i]]++;
+            groupedTimestamps[position] = timestamps[i];
+            groupedValues[position] = values[i];
+        }
+        return groupCount;
+    }
+
+    int groupPatientId(int group) {
+        return (int) (groupKeys[group] >> 32);
+    }
+
+    int groupTypeId(int group) {
+        return (int) groupKeys[group];
+    }
+
+    int groupStart(int group) {
+        return groupStarts[group];
+    }
+
+    int groupSize(int group) {
+        return groupStarts[group + 1] - groupStarts[group];
+    }
+
+    long[] groupedTimestamps() {
+        return groupedTimestamps;
+    }
+
+    double[] groupedValues() {
+        return groupedValues;
+    }
+}
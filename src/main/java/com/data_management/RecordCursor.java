@@ -0,0 +1,124 @@
+package com.data_management;
+
+/**
+ * Iterates over the readings of one series within a time range without
+ * creating record objects. A cursor can be reopened any number of times with
+ * {@link DataStorage#openCursor(int, String, long, long, RecordCursor)}, so a
+ * caller that keeps one per thread reads without producing garbage.
+ *
+ * <pre>
+ * RecordCursor cursor = new RecordCursor();
+ * storage.openCursor(patientId, "ECG", start, end, cursor);
+ * while (cursor.next()) {
+ *     process(cursor.getTimestamp(), cursor.getValue());
+ * }
+ * </pre>
+ *
+ * <p>A cursor sees the series as it was when it was opened and is not safe
+ * for use by several threads at once. Compressed chunks are decoded into
+ * buffers the cursor keeps for reuse.
+ */
+public class RecordCursor {
+    private static final SeriesChunk[] NO_CHUNKS = new SeriesChunk[0];
+
+    private SeriesChunk[] chunks = NO_CHUNKS;
+    private int chunkIndex;
+    private int index;
+    private int chunkSize;
+    private long endTime;
+    private long[] decodedTimestamps; // Holds the current chunk if it is compressed; allocated on first use.
+    private double[] decodedValues;
+    private boolean decoded;
+    private long timestamp;
+    private double value;
+
+    /**
+     * Advances to the next reading in the range.
+     *
+     * @return {@code true} if a reading is available, {@code false} once the
+     *         range is exhausted
+     */
+    public boolean next() {
+        while (chunkIndex < chunks.length) {
+            if (index < chunkSize) {
+                SeriesChunk chunk = chunks[chunkIndex];
+                long current = decoded ? decodedTimestamps[index] : chunk.timestampAt(index);
+                if (current > endTime) {
+                    chunkIndex = chunks.length;
+                    return false;
+                }
+                timestamp = current;
+                value = decoded ? decodedValues[index] : chunk.valueAt(index);
+                index++;
+                return true;
+            }
+            chunkIndex++;
+            index = 0;
+            enterChunk();
+        }
+        return false;
+    }
+
+    /**
+     * Reads the size of the chunk at {@code chunkIndex}, decoding it first if
+     * it is compressed.
+     */
+    private void enterChunk() {
+        if (chunkIndex >= chunks.length) {
+            chunkSize = 0;
+            decoded = false;
+            return;
+        }
+        SeriesChunk chunk = chunks[chunkIndex];
+        chunkSize = chunk.size();
+        decoded = chunk.isCompressed();
+        if (decoded) {
+            if (decodedTimestamps == null || decodedTimestamps.length < chunkSize) {
+                decodedTimestamps = new long[Math.max(chunkSize, RecordSeries.MAX_CHUNK_CAPACITY)];
+                decodedValues = new double[decodedTimestamps.length];
+            }
+            chunk.decode(decodedTimestamps, decodedValues, 0, chunkSize);
+        }
+    }
+
+    /**
+     * Returns the timestamp of the current reading.
+     *
+     * @return the time of the reading, in milliseconds since UNIX epoch
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Returns the value of the current reading.
+     *
+     * @return the measured value
+     */
+    public double getValue() {
+        return value;
+    }
+
+    /**
+     * Positions the cursor before the first reading of a range.
+     *
+     * @param chunks     the published chunks of the series
+     * @param firstChunk the index of the first chunk to read
+     * @param firstIndex the index of the first reading within that chunk
+     * @param endTime    the end of the range, inclusive
+     */
+    void reset(SeriesChunk[] chunks, int firstChunk, int firstIndex, long endTime) {
+        this.chunks = chunks;
+        this.chunkIndex = firstChunk;
+        this.index = firstIndex;
+        this.endTime = endTime;
+        enterChunk();
+    }
+
+    /**
+     * Empties the cursor so that {@link #next()} returns {@code false}.
+     */
+    void clear() {
+        reset(NO_CHUNKS, 0, 0, Long.MIN_VALUE);
+    }
+}
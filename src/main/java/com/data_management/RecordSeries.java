@@ -0,0 +1,1432 @@
+package com.data_management;
+
+import java.io.IOException;
+import java.nio.DoubleBuffer;
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Holds all readings of one record type for one patient in columnar form.
+ * Readings are appended into a list of {@link SeriesChunk}s; chunks start
+ * small and double in capacity up to {@link #MAX_CHUNK_CAPACITY} so that
+ * patients with few readings do not pay for large empty arrays.
+ * {@link PatientRecord} objects are only materialized when a caller asks for
+ * them.
+ *
+ * <p>Writers are serialized on the series itself, so each series is its own
+ * lock stripe. Readers never lock: they read the published chunk array and
+ * each chunk's published size, which always describe a consistent prefix of
+ * the series.
+ *
+ * <p>Chunks are kept in timestamp order, so range queries binary-search the
+ * chunk boundaries and then the first chunk, costing O(log n + k). Readings
+ * that arrive older than the newest stored reading are parked in a small
+ * reorder buffer and merged in one pass, either when the buffer fills or
+ * lazily before the next read.
+ *
+ * <p>Old readings are expired a whole chunk at a time (see
+ * {@link #expireBefore(long)}), never one record at a time.
+ *
+ * <p>Once a chunk is full it is sealed: the allocator may replace it with a
+ * compressed copy (see {@link ChunkAllocator#seal(SeriesChunk)}). Scans go
+ * through {@link SeriesChunk#forEachInRange}, so compressed chunks are
+ * decoded sequentially rather than accessed at random.
+ *
+ * <p>Every reading is also folded into a {@link RollupTier} per
+ * {@link Resolution} as it is added, so aggregate queries read buckets
+ * instead of raw readings; the hourly buckets also keep a
+ * {@link QuantileSketch} for percentile queries. The newest {@link #RECENT_CAPACITY} readings
+ * are kept in a {@link RecentReadings} window for latest-value queries.
+ * Each {@link SlidingWindow} a series was queried with is slid forward with
+ * every appended reading too, so window checks never rescan the readings.
+ *
+ * <p>Adds are idempotent: a reading whose timestamp the series already
+ * holds is dropped before it is logged or stored, whatever its value, so the
+ * first delivery wins (see {@link DuplicateFilter}).
+ *
+ * <p>With tiered storage, sealed chunks outside the hot window can be moved
+ * to disk (see {@link #spill}) and are paged back in by the queries that
+ * read them.
+ *
+ * <p>Rollup tiers finer than {@link #COLD_ROLLUP_RESOLUTION} hold about one
+ * bucket per reading, several times the size of the compressed readings, so
+ * they only cover the newest {@link #FINE_ROLLUP_HORIZON_MILLIS} (or the hot
+ * window, if shorter): older buckets are dropped whenever a chunk is sealed
+ * and rebuilt from the readings when queried.
+ */
+class RecordSeries {
+    static final int MIN_CHUNK_CAPACITY = 16;
+    static final int MAX_CHUNK_CAPACITY = 1024;
+    static final int REORDER_CAPACITY = 64;
+    static final int RECENT_CAPACITY = 32;
+    static final Resolution SKETCH_RESOLUTION = Resolution.HOUR; // The rollup tier that keeps quantile sketches
+    static final Resolution COLD_ROLLUP_RESOLUTION = Resolution.MINUTE; // Finer tiers only cover recent readings
+    static final long FINE_ROLLUP_HORIZON_MILLIS = 3_600_000L;          // How much history the finer tiers cover
+    static final int MAX_WINDOWS = 8; // Sliding windows kept per series; the oldest makes room for a new one
+
+    private final int typeId;
+    private final ChunkAllocator allocator;
+    private volatile SeriesChunk[] chunks = new SeriesChunk[0]; // Replaced, never mutated, when a chunk is added.
+    private long lastTimestamp = Long.MIN_VALUE;                 // Newest timestamp in the chunks; writer-only.
+    private long lastLsn = -1;                                   // LSN of the newest logged reading; writer-only.
+    private final MemoryAccount memory;
+    private final VersionClock clock;
+    private long writeVersion;                                   // Clock version of the latest write; writer-only.
+    private SeriesView versionView;                              // The series before that version's first write.
+    private long accountedBytes;                                 // Estimate last reported to memory; writer-only.
+    private long downsampledBefore = Long.MIN_VALUE;             // Older readings are downsampled; writer-only.
+    private long fineRollupsBefore = Long.MIN_VALUE;             // Fine rollups of older readings were dropped.
+
+    // Out-of-order readings waiting to be merged; allocated on first use and guarded by the series lock.
+    private long[] pendingTimestamps;
+    private double[] pendingValues;
+    private volatile int pendingCount;
+
+    // Guarded by the series lock; indexed by Resolution ordinal.
+    private final RollupTier[] rollups = new RollupTier[Resolution.values().length];
+    private final RecentReadings recent = new RecentReadings(RECENT_CAPACITY); // Guarded by the series lock.
+    private final DuplicateFilter duplicates = new DuplicateFilter();          // Guarded by the series lock.
+    private SlidingWindow[] windows = new SlidingWindow[0];                    // Guarded by the series lock.
+
+    // Additional info is rare (e.g. manual alert status), so it is kept in a sparse side table.
+    private volatile Map<Long, String> additionalInfo;
+
+    /**
+     * Creates an empty heap-backed series for the given record type.
+     *
+     * @param typeId the interned id of the record type
+     */
+    RecordSeries(int typeId) {
+        this(typeId, ChunkAllocator.HEAP);
+    }
+
+    /**
+     * Creates an empty series whose chunks come from the given allocator.
+     *
+     * @param typeId    the interned id of the record type
+     * @param allocator creates the chunks holding the readings
+     */
+    RecordSeries(int typeId, ChunkAllocator allocator) {
+        this(typeId, allocator, new MemoryAccount());
+    }
+
+    /**
+     * Creates an empty series that reports its estimated size to a shared
+     * account whenever its chunks change.
+     *
+     * @param typeId    the interned id of the record type
+     * @param allocator creates the chunks holding the readings
+     * @param memory    the account of the storage the series belongs to
+     */
+    RecordSeries(int typeId, ChunkAllocator allocator, MemoryAccount memory) {
+        this(typeId, allocator, memory, new VersionClock());
+    }
+
+    /**
+     * Creates an empty series that also keeps what storage snapshots taken
+     * on the given clock need to see it as it was (see {@link #viewAt}).
+     *
+     * @param typeId    the interned id of the record type
+     * @param allocator creates the chunks holding the readings
+     * @param memory    the account of the storage the series belongs to
+     * @param clock     the version clock of the storage
+     */
+    RecordSeries(int typeId, ChunkAllocator allocator, MemoryAccount memory, VersionClock clock) {
+        this.typeId = typeId;
+        this.allocator = allocator;
+        this.memory = memory;
+        this.clock = clock;
+        this.writeVersion = clock.current(); // Empty until written, so no earlier version needs a view
+        for (Resolution resolution : Resolution.values()) {
+            rollups[resolution.ordinal()] = new RollupTier(resolution, resolution == SKETCH_RESOLUTION);
+        }
+    }
+
+    int getTypeId() {
+        return typeId;
+    }
+
+    /**
+     * Returns the number of readings currently published in this series.
+     *
+     * @return the reading count
+     */
+    int size() {
+        int size = 0;
+        for (SeriesChunk chunk : publishedChunks()) {
+            size += chunk.size();
+        }
+        return size;
+    }
+
+    /**
+     * Adds a reading to the series, unless it holds one with the same
+     * timestamp already. In-order readings go straight to the tail chunk;
+     * late readings go to the reorder buffer.
+     *
+     * @param timestamp the time of the reading, in milliseconds since UNIX epoch
+     * @param value     the measured value
+     * @return {@code false} if the reading was dropped as a duplicate
+     */
+    synchronized boolean append(long timestamp, double value) {
+        if (isDuplicate(timestamp)) {
+            return false;
+        }
+        duplicates.remember(timestamp);
+        store(timestamp, value);
+        return true;
+    }
+
+    /**
+     * Stores a reading already checked by {@link #isDuplicate(long)}.
+     */
+    private void store(long timestamp, double value) {
+        beforeWrite();
+        if (timestamp < lastTimestamp) {
+            if (pendingTimestamps == null) {
+                pendingTimestamps = new long[REORDER_CAPACITY];
+                pendingValues = new double[REORDER_CAPACITY];
+            } else if (pendingCount == REORDER_CAPACITY) {
+                mergePending();
+            }
+            int index = pendingCount;
+            pendingTimestamps[index] = timestamp;
+            pendingValues[index] = value;
+            pendingCount = index + 1;
+        } else {
+            appendToTail(timestamp, value);
+        }
+        // Only once the reading is stored, so a rejected reading is never counted
+        for (RollupTier tier : rollups) {
+            if (!isFine(tier) || timestamp >= firstFineBucket(tier)) {
+                tier.add(timestamp, value);
+            }
+        }
+        recent.add(timestamp, value);
+        for (SlidingWindow window : windows) {
+            window.add(timestamp, value);
+        }
+    }
+
+    private void appendToTail(long timestamp, double value) {
+        writableTail().append(timestamp, value);
+        lastTimestamp = timestamp;
+    }
+
+    /**
+     * Returns the tail chunk, first adding a new one if the tail is full. The
+     * full tail is sealed in the same step.
+     *
+     * @return a chunk with free capacity
+     */
+    private SeriesChunk writableTail() {
+        SeriesChunk[] current = chunks;
+        SeriesChunk tail = current.length == 0 ? null : current[current.length - 1];
+        if (tail == null || tail.isFull()) {
+            SeriesChunk fresh = allocator.allocate(
+                    tail == null ? MIN_CHUNK_CAPACITY : Math.min(tail.capacity() * 2, MAX_CHUNK_CAPACITY));
+            SeriesChunk[] grown = Arrays.copyOf(current, current.length + 1);
+            grown[current.length] = fresh;
+            if (tail != null) {
+                grown[current.length - 1] = seal(tail);
+            }
+            chunks = grown;
+            if (tail != null && grown[current.length - 1] != tail) {
+                tail.release();
+            }
+            if (tail != null) {
+                trimRollups();
+            }
+            account();
+            tail = fresh;
+        }
+        return tail;
+    }
+
+    /**
+     * Returns the form a full chunk is kept in from now on.
+     *
+     * @param chunk a full chunk
+     * @return the chunk itself, or its compressed replacement
+     */
+    private SeriesChunk seal(SeriesChunk chunk) {
+        return chunk.isCompressed() ? chunk : allocator.seal(chunk);
+    }
+
+    /**
+     * Returns whether the series already holds a reading with the given
+     * timestamp. A reading newer than every stored one needs no lookup; the
+     * others are checked against the recent window, then the bloom filter,
+     * and only a bloom hit costs a search of the stored readings.
+     *
+     * @param timestamp the timestamp to look up
+     * @return {@code true} if a reading with this timestamp is stored
+     */
+    private boolean isDuplicate(long timestamp) {
+        if (timestamp > lastTimestamp) {
+            return false;
+        }
+        if (duplicates.inWindow(timestamp)) {
+            return true;
+        }
+        if (!duplicates.hasBloom()) {
+            buildBloom();
+        }
+        return duplicates.mightContain(timestamp) && contains(timestamp);
+    }
+
+    private void buildBloom() {
+        SeriesChunk[] current = chunks;
+        int stored = pendingCount;
+        for (SeriesChunk chunk : current) {
+            stored += chunk.size();
+        }
+        duplicates.buildBloom(stored);
+        for (SeriesChunk chunk : current) {
+            chunk.forEachInRange(Long.MIN_VALUE, Long.MAX_VALUE, chunk.size(),
+                    (timestamp, value) -> duplicates.addToBloom(timestamp));
+        }
+        for (int i = 0; i < pendingCount; i++) {
+            duplicates.addToBloom(pendingTimestamps[i]);
+        }
+    }
+
+    /**
+     * Counts how many of a run of timestamps are stored, e.g. to tell how
+     * much of a run survived a failed {@link #appendAll}.
+     *
+     * @param timestamps the timestamp column
+     * @param offset     the position of the first timestamp
+     * @param count      the number of timestamps
+     * @return the number of them that are stored
+     */
+    synchronized int countStored(long[] timestamps, int offset, int count) {
+        int stored = 0;
+        for (int i = offset; i < offset + count; i++) {
+            if (timestamps[i] <= lastTimestamp && contains(timestamps[i])) {
+                stored++;
+            }
+        }
+        return stored;
+    }
+
+    /**
+     * Searches the stored readings, including the reorder buffer, for a
+     * timestamp.
+     */
+    private boolean contains(long timestamp) {
+        for (int i = 0; i < pendingCount; i++) {
+            if (pendingTimestamps[i] == timestamp) {
+                return true;
+            }
+        }
+        SeriesChunk[] current = chunks;
+        int c = firstChunkEndingAtOrAfter(current, timestamp);
+        if (c == current.length) {
+            return false;
+        }
+        SeriesChunk chunk = current[c];
+        int size = chunk.size();
+        if (chunk.isCompressed()) {
+            return Arrays.binarySearch(duplicates.timestampsOf(chunk), 0, size, timestamp) >= 0;
+        }
+        int index = chunk.lowerBound(timestamp, size);
+        return index < size && chunk.timestampAt(index) == timestamp;
+    }
+
+    /**
+     * Adds a run of readings under a single acquisition of the series lock.
+     * In-order stretches are copied into the tail chunk and published once
+     * per chunk; late readings take the reorder buffer as usual. Readings
+     * whose timestamp is already stored, or repeated within the run, are
+     * dropped.
+     *
+     * @param timestamps the timestamp column
+     * @param values     the value column
+     * @param offset     the position of the first reading in the columns
+     * @param count      the number of readings
+     * @param wal        the log to write to, or {@code null} if not persistent
+     * @param patientId  the owning patient's ID, as recorded in the log
+     * @param stored     receives each reading that was stored, or {@code null}
+     * @return the number of readings stored
+     */
+    synchronized int appendAll(long[] timestamps, double[] values, int offset, int count, WriteAheadLog wal,
+            int patientId, RecordVisitor stored) {
+        int last = offset + count;
+        for (int i = offset; i < last; i++) {
+            if (timestamps[i] <= (i == offset ? lastTimestamp : timestamps[i - 1])) {
+                // The run may repeat stored readings or itself: check and store one at a time
+                return appendEach(timestamps, values, offset, count, wal, patientId, stored);
+            }
+        }
+        beforeWrite();
+        for (int i = offset; i < last; i++) {
+            duplicates.remember(timestamps[i]);
+        }
+        if (wal != null && count > 0) {
+            lastLsn = wal.append(patientId, typeId, timestamps, values, offset, count);
+        }
+        int i = offset;
+        while (i < last) {
+            SeriesChunk tail = writableTail();
+            int limit = Math.min(last, i + tail.capacity() - tail.size());
+            int end = i + 1;
+            while (end < limit && timestamps[end] >= timestamps[end - 1]) {
+                end++;
+            }
+            tail.append(timestamps, values, i, end - i);
+            lastTimestamp = timestamps[end - 1];
+            for (RollupTier tier : rollups) {
+                tier.addSorted(timestamps, values, i, end);
+            }
+            recent.addSorted(timestamps, values, i, end);
+            for (SlidingWindow window : windows) {
+                for (int k = i; k < end; k++) {
+                    window.add(timestamps[k], values[k]);
+                }
+            }
+            i = end;
+        }
+        if (stored != null) {
+            for (int k = offset; k < last; k++) {
+                stored.visit(timestamps[k], values[k]);
+            }
+        }
+        return count;
+    }
+
+    private int appendEach(long[] timestamps, double[] values, int offset, int count, WriteAheadLog wal,
+            int patientId, RecordVisitor stored) {
+        int storedCount = 0;
+        for (int i = offset; i < offset + count; i++) {
+            if (wal == null ? append(timestamps[i], values[i]) : append(timestamps[i], values[i], wal, patientId)) {
+                storedCount++;
+                if (stored != null) {
+                    stored.visit(timestamps[i], values[i]);
+                }
+            }
+        }
+        return storedCount;
+    }
+
+    /**
+     * Logs a reading to the write-ahead log and adds it to the series as one
+     * step, so the series always knows the LSN of its newest logged reading.
+     *
+     * @param timestamp the time of the reading
+     * @param value     the measured value
+     * @param wal       the log to write to
+     * @param patientId the owning patient's ID, as recorded in the log
+     * @return {@code false} if the reading was dropped as a duplicate
+     */
+    synchronized boolean append(long timestamp, double value, WriteAheadLog wal, int patientId) {
+        if (isDuplicate(timestamp)) {
+            return false;
+        }
+        lastLsn = wal.append(patientId, typeId, timestamp, value);
+        duplicates.remember(timestamp);
+        store(timestamp, value);
+        return true;
+    }
+
+    /**
+     * Re-applies a reading from the write-ahead log during recovery, unless
+     * the series already contains it.
+     *
+     * @param lsn       the reading's log sequence number
+     * @param timestamp the time of the reading
+     * @param value     the measured value
+     */
+    synchronized void replay(long lsn, long timestamp, double value) {
+        if (lsn > lastLsn) {
+            append(timestamp, value);
+            lastLsn = lsn;
+        }
+    }
+
+    /**
+     * Bulk-loads sorted readings into an empty series, filling whole chunks
+     * straight from the column buffers.
+     *
+     * @param timestamps the sorted timestamp column
+     * @param values     the value column
+     * @param count      the number of readings to load
+     * @param lsn        the LSN of the newest logged reading being loaded
+     */
+    synchronized void load(LongBuffer timestamps, DoubleBuffer values, int count, long lsn) {
+        if (chunks.length > 0 || pendingCount > 0) {
+            throw new IllegalStateException("Bulk load requires an empty series");
+        }
+        beforeWrite();
+        SeriesChunk[] loaded = new SeriesChunk[(count + MAX_CHUNK_CAPACITY - 1) / MAX_CHUNK_CAPACITY];
+        for (int c = 0; c < loaded.length; c++) {
+            int chunkCount = Math.min(MAX_CHUNK_CAPACITY, count - c * MAX_CHUNK_CAPACITY);
+            loaded[c] = allocator.allocate(capacityFor(chunkCount));
+            loaded[c].load(timestamps, values, chunkCount);
+        }
+        if (count > 0) {
+            SeriesChunk last = loaded[loaded.length - 1];
+            long span = last.timestampAt(last.size() - 1) - loaded[0].timestampAt(0);
+            // Fine tiers are only built for the newest readings, as if the chunks had been sealed one by one
+            fineRollupsBefore = last.timestampAt(last.size() - 1) - Math.min(FINE_ROLLUP_HORIZON_MILLIS, span);
+            for (RollupTier tier : rollups) {
+                long covered = isFine(tier) ? Math.min(span, FINE_ROLLUP_HORIZON_MILLIS) : span;
+                tier.reserve((int) Math.min(count, covered / tier.getWidth() + 2));
+            }
+        }
+        long[] chunkTimestamps = new long[MAX_CHUNK_CAPACITY];
+        double[] chunkValues = new double[MAX_CHUNK_CAPACITY];
+        for (SeriesChunk chunk : loaded) {
+            int n = chunk.size();
+            chunk.decode(chunkTimestamps, chunkValues, 0, n);
+            for (RollupTier tier : rollups) {
+                int from = 0;
+                if (isFine(tier)) {
+                    long firstBucket = firstFineBucket(tier);
+                    while (from < n && chunkTimestamps[from] < firstBucket) {
+                        from++;
+                    }
+                }
+                tier.addSorted(chunkTimestamps, chunkValues, from, n);
+            }
+            recent.addSorted(chunkTimestamps, chunkValues, 0, n);
+        }
+        invalidateWindows();
+        for (int c = 0; c < loaded.length - 1; c++) {
+            SeriesChunk sealed = seal(loaded[c]);
+            if (sealed != loaded[c]) {
+                loaded[c].release();
+                loaded[c] = sealed;
+            }
+        }
+        chunks = loaded;
+        account();
+        if (count > 0) {
+            lastTimestamp = Math.max(lastTimestamp, timestamps.get(timestamps.position() - 1));
+        }
+        lastLsn = Math.max(lastLsn, lsn);
+    }
+
+    /**
+     * Imports readings from column buffers, e.g. a memory-mapped archive.
+     * An empty series takes strictly increasing columns through
+     * {@link #load} without logging them; otherwise the readings are copied
+     * out and added with {@link #appendAll}, so duplicates are dropped and
+     * the readings are logged if {@code wal} is given.
+     *
+     * @param timestamps the timestamp column, positioned at the first reading
+     * @param values     the value column, positioned at the first reading
+     * @param count      the number of readings
+     * @param wal        the log to write to, or {@code null} if not persistent
+     * @param patientId  the owning patient's ID, as recorded in the log
+     * @return the number of readings stored
+     */
+    synchronized int importColumns(LongBuffer timestamps, DoubleBuffer values, int count, WriteAheadLog wal,
+            int patientId) {
+        if (chunks.length == 0 && pendingCount == 0 && isStrictlyIncreasing(timestamps, count)) {
+            load(timestamps, values, count, -1);
+            return count;
+        }
+        long[] copiedTimestamps = new long[count];
+        double[] copiedValues = new double[count];
+        timestamps.get(copiedTimestamps);
+        values.get(copiedValues);
+        return appendAll(copiedTimestamps, copiedValues, 0, count, wal, patientId, null);
+    }
+
+    private static boolean isStrictlyIncreasing(LongBuffer timestamps, int count) {
+        int first = timestamps.position();
+        for (int i = first + 1; i < first + count; i++) {
+            if (timestamps.get(i) <= timestamps.get(i - 1)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Captures an immutable view of the series as it is now.
+     *
+     * @return the view
+     */
+    synchronized SeriesView view() {
+        mergePending();
+        SeriesChunk[] current = chunks;
+        int tailSize = current.length == 0 ? 0 : current[current.length - 1].size();
+        return new SeriesView(typeId, current, tailSize, lastLsn, additionalInfo);
+    }
+
+    /**
+     * Returns the view of the series a storage snapshot of {@code version}
+     * sees: every write made before the clock reached that version, and none
+     * made after. The view is kept by the first write of each version, so
+     * it costs writers one volatile read per write and a view per snapshot.
+     *
+     * @param version a version returned by {@link VersionClock#advance()},
+     *                no older than any version advanced to since
+     * @return the view, or {@code null} if the series was empty then
+     */
+    synchronized SeriesView viewAt(long version) {
+        return writeVersion >= version ? versionView : view();
+    }
+
+    /**
+     * Keeps a view of the series as it is now if this is the first write
+     * since the clock advanced. Called with the series lock held before
+     * anything visible to views changes.
+     */
+    private void beforeWrite() {
+        long version = clock.current();
+        if (version != writeVersion) {
+            versionView = chunks.length == 0 && pendingCount == 0 ? null : view();
+            writeVersion = version;
+        }
+    }
+
+    /**
+     * Appends a reading that carries additional information.
+     *
+     * @param timestamp      the time of the reading
+     * @param value          the measured value
+     * @param additionalInfo additional information associated with the reading
+     * @return {@code false} if the reading was dropped as a duplicate
+     */
+    synchronized boolean append(long timestamp, double value, String additionalInfo) {
+        if (isDuplicate(timestamp)) {
+            return false;
+        }
+        if (additionalInfo != null && !additionalInfo.isEmpty()) {
+            if (this.additionalInfo == null) {
+                this.additionalInfo = new ConcurrentHashMap<>();
+            }
+            // Stored before the reading is published so readers never miss it.
+            this.additionalInfo.put(timestamp, additionalInfo);
+        }
+        duplicates.remember(timestamp);
+        store(timestamp, value);
+        return true;
+    }
+
+    /**
+     * Drops every chunk whose readings are all older than {@code cutoff}.
+     * Readings in a chunk that still holds newer data are kept until the
+     * whole chunk has expired, so no per-record deletion ever happens. The
+     * lock is only held to swap in the shortened chunk array.
+     *
+     * @param cutoff the oldest timestamp that must be kept
+     * @return the number of readings dropped
+     */
+    synchronized int expireBefore(long cutoff) {
+        beforeWrite();
+        mergePending();
+        SeriesChunk[] current = chunks;
+        int expired = 0;
+        int dropped = 0;
+        while (expired < current.length) {
+            SeriesChunk chunk = current[expired];
+            int size = chunk.size();
+            if (size > 0 && chunk.timestampAt(size - 1) >= cutoff) {
+                break;
+            }
+            dropped += size;
+            expired++;
+        }
+        if (expired == 0) {
+            return 0;
+        }
+        chunks = Arrays.copyOfRange(current, expired, current.length);
+        for (int c = 0; c < expired; c++) {
+            current[c].release();
+        }
+        long oldestKept = expired < current.length ? current[expired].timestampAt(0) : Long.MAX_VALUE;
+        for (RollupTier tier : rollups) {
+            tier.expireBefore(oldestKept);
+        }
+        recent.expireBefore(oldestKept);
+        duplicates.expireBefore(oldestKept);
+        invalidateWindows();
+        Map<Long, String> info = additionalInfo;
+        if (info != null) {
+            // Copied rather than trimmed in place, so views taken before keep the info of their readings
+            Map<Long, String> kept = new ConcurrentHashMap<>(info);
+            kept.keySet().removeIf(timestamp -> timestamp < oldestKept);
+            additionalInfo = kept;
+        }
+        account();
+        return dropped;
+    }
+
+    /**
+     * Replaces the readings of every chunk older than {@code cutoff} that was
+     * not downsampled before with one reading per bucket of
+     * {@code resolution}: the mean value, at the time of the bucket's first
+     * reading. Rollups of that resolution and coarser are left as they are,
+     * since they already summarize the raw readings; finer ones are dropped
+     * for the downsampled range. Readings later added within the range are
+     * stored as new readings.
+     *
+     * @param cutoff     the oldest timestamp that must be kept raw
+     * @param resolution the width of the buckets readings are reduced to
+     * @return the number of readings removed
+     */
+    synchronized int downsampleBefore(long cutoff, Resolution resolution) {
+        beforeWrite();
+        mergePending();
+        SeriesChunk[] current = chunks;
+        int first = 0;
+        while (first < current.length && lastTimestampOf(current[first]) < downsampledBefore) {
+            first++;
+        }
+        int end = first;
+        while (end < current.length && lastTimestampOf(current[end]) < cutoff) {
+            end++;
+        }
+        if (end == first) {
+            return 0;
+        }
+
+        // Fold the chunks into bucket means, one chunk at a time
+        long width = resolution.getMillis();
+        long[] chunkTimestamps = new long[MAX_CHUNK_CAPACITY];
+        double[] chunkValues = new double[MAX_CHUNK_CAPACITY];
+        long[] sampledTimestamps = new long[MIN_CHUNK_CAPACITY];
+        double[] sampledValues = new double[MIN_CHUNK_CAPACITY];
+        int sampled = 0;
+        int removed = 0;
+        long bucketEnd = Long.MIN_VALUE;
+        double sum = 0;
+        int count = 0;
+        for (int c = first; c < end; c++) {
+            int size = current[c].size();
+            current[c].decode(chunkTimestamps, chunkValues, 0, size);
+            removed += size;
+            for (int i = 0; i < size; i++) {
+                if (chunkTimestamps[i] >= bucketEnd) {
+                    if (count > 0) {
+                        sampledValues[sampled - 1] = sum / count;
+                    }
+                    if (sampled == sampledTimestamps.length) {
+                        sampledTimestamps = Arrays.copyOf(sampledTimestamps, sampled * 2);
+                        sampledValues = Arrays.copyOf(sampledValues, sampled * 2);
+                    }
+                    sampledTimestamps[sampled++] = chunkTimestamps[i];
+                    bucketEnd = Math.floorDiv(chunkTimestamps[i], width) * width + width;
+                    sum = 0;
+                    count = 0;
+                }
+                sum += chunkValues[i];
+                count++;
+            }
+        }
+        sampledValues[sampled - 1] = sum / count;
+
+        SeriesChunk[] rebuilt = Arrays.copyOf(current, first);
+        int offset = 0;
+        try {
+            while (offset < sampled) {
+                SeriesChunk chunk = allocator.allocate(capacityFor(sampled - offset));
+                int n = Math.min(sampled - offset, chunk.capacity());
+                chunk.append(sampledTimestamps, sampledValues, offset, n);
+                offset += n;
+                SeriesChunk sealed = seal(chunk);
+                if (sealed != chunk) {
+                    chunk.release();
+                }
+                rebuilt = Arrays.copyOf(rebuilt, rebuilt.length + 1);
+                rebuilt[rebuilt.length - 1] = sealed;
+            }
+        } catch (IllegalStateException e) {
+            // Out of storage budget: keep the raw chunks
+            for (int k = first; k < rebuilt.length; k++) {
+                rebuilt[k].release();
+            }
+            throw e;
+        }
+        int kept = current.length - end;
+        rebuilt = Arrays.copyOf(rebuilt, rebuilt.length + kept);
+        System.arraycopy(current, end, rebuilt, rebuilt.length - kept, kept);
+        chunks = rebuilt;
+        for (int c = first; c < end; c++) {
+            current[c].release();
+        }
+
+        long oldestRaw = kept > 0 ? current[end].timestampAt(0) : Long.MAX_VALUE;
+        for (RollupTier tier : rollups) {
+            if (tier.getWidth() < width) {
+                tier.expireBefore(oldestRaw);
+            }
+        }
+        if (kept == 0) {
+            // The newest readings were downsampled too
+            lastTimestamp = sampledTimestamps[sampled - 1];
+            recent.clear();
+            recent.addSorted(sampledTimestamps, sampledValues, 0, sampled);
+        }
+        downsampledBefore = cutoff;
+        invalidateWindows();
+        account();
+        return removed - sampled;
+    }
+
+    /**
+     * Records the age and size of every chunk, or with {@code downsampling}
+     * only of those not downsampled yet. Each chunk is charged its share of
+     * the rollups too, in proportion to its readings, since they shrink with
+     * the chunks.
+     *
+     * @param out          receives the chunks
+     * @param downsampling whether to skip chunks that are already downsampled
+     */
+    synchronized void collectChunkAges(ChunkAges out, boolean downsampling) {
+        mergePending();
+        long rollupBytes = 0;
+        for (RollupTier tier : rollups) {
+            rollupBytes += tier.residentBytes();
+        }
+        int readings = size();
+        for (SeriesChunk chunk : chunks) {
+            long end = lastTimestampOf(chunk);
+            if (!downsampling || end >= downsampledBefore) {
+                out.add(end, chunk.residentBytes() + rollupBytes * chunk.size() / Math.max(1, readings));
+            }
+        }
+    }
+
+    /**
+     * Moves the sealed chunks whose readings are all more than
+     * {@code hotWindowMillis} older than the newest reading to disk. Each is
+     * replaced by a {@link ColdSeriesChunk}, in a new chunk array, so
+     * concurrent readers keep their view; the tail chunk always stays in
+     * memory. Buckets of the finer rollup tiers older than the hot window are
+     * dropped too, and rebuilt from the readings when queried.
+     *
+     * @param store           where the chunks are written
+     * @param hotWindowMillis how much of the newest history stays in memory
+     * @return the number of readings moved to disk
+     * @throws IOException if the chunks cannot be written; the series is
+     *                     left unchanged
+     */
+    synchronized int spill(ColdStore store, long hotWindowMillis) throws IOException {
+        mergePending();
+        SeriesChunk[] current = chunks;
+        int end = 0;
+        while (end < current.length - 1 && lastTimestamp - lastTimestampOf(current[end]) > hotWindowMillis) {
+            end++;
+        }
+        CompressedSeriesChunk[] moving = new CompressedSeriesChunk[end];
+        int[] positions = new int[end];
+        int count = 0;
+        int readings = 0;
+        for (int c = 0; c < end; c++) {
+            SeriesChunk chunk = current[c];
+            if (!(chunk instanceof ColdSeriesChunk) && chunk.size() > 0) {
+                moving[count] = chunk instanceof CompressedSeriesChunk
+                        ? (CompressedSeriesChunk) chunk
+                        : new CompressedSeriesChunk(chunk);
+                positions[count++] = c;
+                readings += chunk.size();
+            }
+        }
+        if (count > 0) {
+            ColdSeriesChunk[] cold = store.write(moving, count);
+            SeriesChunk[] spilled = current.clone();
+            for (int i = 0; i < count; i++) {
+                spilled[positions[i]] = cold[i];
+            }
+            chunks = spilled;
+            for (int i = 0; i < count; i++) {
+                current[positions[i]].release();
+            }
+        }
+        if (current.length > 0 && current[0].size() > 0) {
+            // The difference of two timestamps cannot overflow, unlike lastTimestamp - hotWindowMillis
+            dropFineRollupsBefore(
+                    lastTimestamp - Math.min(hotWindowMillis, lastTimestamp - current[0].timestampAt(0)));
+        }
+        account();
+        return readings;
+    }
+
+    /**
+     * Reads every cold chunk back into memory, e.g. before the store holding
+     * them is closed. Rollups dropped for them stay rebuilt on demand.
+     */
+    synchronized void pageIn() {
+        SeriesChunk[] current = chunks;
+        SeriesChunk[] paged = null;
+        for (int c = 0; c < current.length; c++) {
+            if (current[c] instanceof ColdSeriesChunk) {
+                if (paged == null) {
+                    paged = current.clone();
+                }
+                paged[c] = ((ColdSeriesChunk) current[c]).page();
+            }
+        }
+        if (paged == null) {
+            return;
+        }
+        chunks = paged;
+        for (int c = 0; c < current.length; c++) {
+            if (current[c] != paged[c]) {
+                current[c].release();
+            }
+        }
+        account();
+    }
+
+    /**
+     * Drops the fine rollup buckets older than the fine horizon and gives
+     * back the slack the bucket columns were left with when they doubled.
+     * Called with the series lock held whenever a chunk is sealed.
+     */
+    private void trimRollups() {
+        SeriesChunk[] current = chunks;
+        if (current.length > 0 && current[0].size() > 0) {
+            // The difference of two timestamps cannot overflow, unlike lastTimestamp - FINE_ROLLUP_HORIZON_MILLIS
+            dropFineRollupsBefore(
+                    lastTimestamp - Math.min(FINE_ROLLUP_HORIZON_MILLIS, lastTimestamp - current[0].timestampAt(0)));
+        }
+        for (RollupTier tier : rollups) {
+            tier.trim();
+        }
+    }
+
+    /**
+     * Drops the buckets of the fine rollup tiers that end at or before
+     * {@code cutoff}; {@link #aggregate} rebuilds them from the readings.
+     */
+    private void dropFineRollupsBefore(long cutoff) {
+        if (cutoff > fineRollupsBefore) {
+            for (RollupTier tier : rollups) {
+                if (isFine(tier)) {
+                    tier.expireBefore(cutoff);
+                }
+            }
+            fineRollupsBefore = cutoff;
+        }
+    }
+
+    private static boolean isFine(RollupTier tier) {
+        return tier.getWidth() < COLD_ROLLUP_RESOLUTION.getMillis();
+    }
+
+    /**
+     * Returns the start of the oldest bucket a fine tier still keeps; older
+     * readings are left to {@link #aggregate} to rebuild.
+     */
+    private long firstFineBucket(RollupTier tier) {
+        return fineRollupsBefore == Long.MIN_VALUE
+                ? Long.MIN_VALUE
+                : Math.floorDiv(fineRollupsBefore, tier.getWidth()) * tier.getWidth();
+    }
+
+    private static long lastTimestampOf(SeriesChunk chunk) {
+        int size = chunk.size();
+        return size == 0 ? Long.MIN_VALUE : chunk.timestampAt(size - 1);
+    }
+
+    /**
+     * Reports the change in this series' estimated size since the last
+     * report. Called with the series lock held whenever the chunk array is
+     * replaced; rollups grown in between are picked up then.
+     */
+    private void account() {
+        long bytes = residentBytes();
+        memory.add(bytes - accountedBytes);
+        accountedBytes = bytes;
+    }
+
+    /**
+     * Releases every chunk of a series that is being discarded.
+     */
+    synchronized void release() {
+        beforeWrite();
+        for (SeriesChunk chunk : chunks) {
+            chunk.release();
+        }
+        chunks = new SeriesChunk[0];
+        pendingCount = 0;
+        for (RollupTier tier : rollups) {
+            tier.clear();
+        }
+        recent.clear();
+        duplicates.clear();
+        windows = new SlidingWindow[0];
+        fineRollupsBefore = Long.MIN_VALUE;
+        memory.add(-accountedBytes); // The series is being discarded
+        accountedBytes = 0;
+    }
+
+    /**
+     * Estimates the bytes held by this series' readings.
+     *
+     * @return the estimated size in bytes
+     */
+    synchronized long residentBytes() {
+        long bytes = (pendingTimestamps == null ? 0 : 16L * REORDER_CAPACITY) + 16L * RECENT_CAPACITY;
+        for (SeriesChunk chunk : chunks) {
+            bytes += chunk.residentBytes();
+        }
+        for (RollupTier tier : rollups) {
+            bytes += tier.residentBytes();
+        }
+        for (SlidingWindow window : windows) {
+            bytes += window.residentBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * Adds the rollup buckets overlapping a time range to {@code out}. The
+     * series lock is held only while the buckets are copied, except where
+     * the buckets of a fine tier were dropped for chunks moved to disk: those
+     * are rebuilt from the readings.
+     *
+     * @param startTime  the start of the range, inclusive
+     * @param endTime    the end of the range, inclusive
+     * @param resolution the bucket width
+     * @param out        the list receiving the aggregates
+     */
+    synchronized void aggregate(long startTime, long endTime, Resolution resolution, List<Aggregate> out) {
+        if (startTime > endTime) {
+            return;
+        }
+        RollupTier tier = rollups[resolution.ordinal()];
+        long width = tier.getWidth();
+        if (width < COLD_ROLLUP_RESOLUTION.getMillis() && startTime < fineRollupsBefore
+                && chunks.length > 0 && chunks[0].size() > 0) {
+            mergePending();
+            long kept = Math.floorDiv(fineRollupsBefore, width) * width; // The first bucket the tier still holds
+            long from = Math.floorDiv(Math.max(startTime, chunks[0].timestampAt(0)), width) * width;
+            long to = endTime < kept ? Math.floorDiv(endTime, width) * width + width - 1 : kept - 1;
+            RollupTier rebuilt = new RollupTier(resolution);
+            forEach(from, to, rebuilt::add);
+            rebuilt.collect(from, to, out);
+            if (endTime < kept) {
+                return;
+            }
+            startTime = Math.max(startTime, kept);
+        }
+        tier.collect(startTime, endTime, out);
+    }
+
+    /**
+     * Builds a quantile sketch of the readings within a time range. Hours
+     * lying entirely within the range contribute their precomputed sketch;
+     * only the readings in the partly covered hours at either end are
+     * scanned.
+     *
+     * @param startTime the start of the range, inclusive
+     * @param endTime   the end of the range, inclusive
+     * @return a new sketch of the readings in the range
+     */
+    synchronized QuantileSketch quantiles(long startTime, long endTime) {
+        mergePending();
+        QuantileSketch sketch = new QuantileSketch();
+        SeriesChunk[] current = chunks;
+        if (current.length == 0 || current[0].size() == 0) {
+            return sketch;
+        }
+        // Clamped to the stored readings, which also keeps the range clear of overflow
+        long from = Math.max(startTime, current[0].timestampAt(0));
+        long to = Math.min(endTime, lastTimestamp);
+        if (from > to) {
+            return sketch;
+        }
+        long[] merged = rollups[SKETCH_RESOLUTION.ordinal()].mergeSketches(from, to, sketch);
+        if (merged == null) {
+            forEach(from, to, (timestamp, value) -> sketch.add(value));
+        } else {
+            forEach(from, merged[0] - 1, (timestamp, value) -> sketch.add(value));
+            forEach(merged[1], to, (timestamp, value) -> sketch.add(value));
+        }
+        return sketch;
+    }
+
+    /**
+     * Summarizes the readings within a time range. Hours lying entirely
+     * within the range come from the hourly rollups; only the readings in
+     * the partly covered hours at either end are scanned.
+     *
+     * @param startTime the start of the range, inclusive
+     * @param endTime   the end of the range, inclusive
+     * @return the summary, or {@code null} if no reading lies in the range
+     */
+    synchronized Aggregate summarize(long startTime, long endTime) {
+        mergePending();
+        SeriesChunk[] current = chunks;
+        if (current.length == 0 || current[0].size() == 0) {
+            return null;
+        }
+        // Clamped to the stored readings, which also keeps the range clear of overflow
+        long from = Math.max(startTime, current[0].timestampAt(0));
+        long to = Math.min(endTime, lastTimestamp);
+        if (from > to) {
+            return null;
+        }
+        RollupTier tier = rollups[SKETCH_RESOLUTION.ordinal()];
+        long width = tier.getWidth();
+        long firstStart = Math.floorDiv(from, width) * width;
+        if (firstStart < from) {
+            firstStart += width; // The first hour is only partly covered
+        }
+        long lastEnd = Math.floorDiv(to, width) * width;
+        if (to - lastEnd == width - 1) {
+            lastEnd += width; // The last hour is covered up to its final millisecond
+        }
+        double[] sums = {0, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, 0}; // count, min, max, sum
+        RecordVisitor scan = (timestamp, value) -> {
+            sums[0]++;
+            sums[1] = Math.min(sums[1], value);
+            sums[2] = Math.max(sums[2], value);
+            sums[3] += value;
+        };
+        if (firstStart >= lastEnd) {
+            forEach(from, to, scan);
+        } else {
+            List<Aggregate> hours = new ArrayList<>();
+            tier.collect(firstStart, lastEnd - 1, hours);
+            for (Aggregate hour : hours) {
+                sums[0] += hour.getCount();
+                sums[1] = Math.min(sums[1], hour.getMin());
+                sums[2] = Math.max(sums[2], hour.getMax());
+                sums[3] += hour.getSum();
+            }
+            forEach(from, firstStart - 1, scan);
+            forEach(lastEnd, to, scan);
+        }
+        return sums[0] == 0 ? null : new Aggregate(from, to + 1, (long) sums[0], sums[1], sums[2], sums[3]);
+    }
+
+    /**
+     * Returns the statistics of a sliding window over the newest readings.
+     * The first query with a spec builds the window from the readings; from
+     * then on it is kept up to date as readings are appended, so later
+     * queries only read it. A window is rebuilt once after a late reading
+     * fell into it or readings were expired or downsampled.
+     *
+     * @param spec the extent of the window
+     * @return the statistics, or {@code null} if the series is empty
+     */
+    synchronized WindowStats windowStats(WindowSpec spec) {
+        SlidingWindow window = null;
+        for (SlidingWindow candidate : windows) {
+            if (candidate.spec().equals(spec)) {
+                window = candidate;
+                break;
+            }
+        }
+        if (window == null) {
+            window = new SlidingWindow(spec);
+            SlidingWindow[] grown = windows.length < MAX_WINDOWS
+                    ? Arrays.copyOf(windows, windows.length + 1)
+                    : Arrays.copyOfRange(windows, 1, windows.length + 1);
+            grown[grown.length - 1] = window;
+            windows = grown;
+        }
+        if (window.isStale()) {
+            rebuild(window);
+        }
+        return window.stats();
+    }
+
+    /**
+     * Refills a window from the readings it covers.
+     */
+    private void rebuild(SlidingWindow window) {
+        mergePending();
+        window.clear();
+        SeriesChunk[] current = chunks;
+        if (current.length == 0 || current[current.length - 1].size() == 0) {
+            return;
+        }
+        WindowSpec spec = window.spec();
+        long from;
+        if (spec.isCountBased()) {
+            int c = current.length - 1;
+            int remaining = spec.getReadings();
+            while (c > 0 && remaining > current[c].size()) {
+                remaining -= current[c].size();
+                c--;
+            }
+            from = current[c].timestampAt(Math.max(0, current[c].size() - remaining));
+        } else {
+            long span = spec.getDurationMillis();
+            from = lastTimestamp < Long.MIN_VALUE + span ? Long.MIN_VALUE : lastTimestamp - span;
+        }
+        forEach(from, Long.MAX_VALUE, window::add);
+    }
+
+    private void invalidateWindows() {
+        for (SlidingWindow window : windows) {
+            window.invalidate();
+        }
+    }
+
+    /**
+     * Returns the newest reading of the series.
+     *
+     * @param patientId the owning patient's ID
+     * @return the reading with the highest timestamp, or {@code null} if the
+     *         series is empty
+     */
+    synchronized PatientRecord latest(int patientId) {
+        int size = recent.size();
+        if (size == 0) {
+            return null;
+        }
+        return toRecord(patientId, recent.timestampAt(size - 1), recent.valueAt(size - 1), additionalInfo);
+    }
+
+    /**
+     * Adds the newest {@code count} readings to {@code out}, oldest first.
+     * Up to {@link #RECENT_CAPACITY} readings come straight from the recent
+     * window; longer requests read the end of the chunks.
+     *
+     * @param patientId the owning patient's ID
+     * @param count     the number of readings wanted
+     * @param out       the list receiving the records
+     */
+    synchronized void collectLast(int patientId, int count, List<PatientRecord> out) {
+        int size = recent.size();
+        Map<Long, String> info = additionalInfo;
+        if (count <= size || size < recent.capacity()) {
+            // A window that is not full holds every reading of the series
+            for (int i = Math.max(0, size - count); i < size; i++) {
+                out.add(toRecord(patientId, recent.timestampAt(i), recent.valueAt(i), info));
+            }
+            return;
+        }
+        SeriesChunk[] current = publishedChunks();
+        int c = current.length - 1;
+        int remaining = count;
+        while (c > 0 && remaining > current[c].size()) {
+            remaining -= current[c].size();
+            c--;
+        }
+        long first = current[c].timestampAt(Math.max(0, current[c].size() - remaining));
+        List<PatientRecord> tail = new ArrayList<>();
+        collect(patientId, first, Long.MAX_VALUE, tail);
+        out.addAll(tail.subList(Math.max(0, tail.size() - count), tail.size()));
+    }
+
+    /**
+     * Materializes the readings within a time range as {@link PatientRecord}s
+     * and adds them to {@code out}.
+     *
+     * @param patientId the owning patient's ID
+     * @param startTime the start of the range, inclusive
+     * @param endTime   the end of the range, inclusive
+     * @param out       the list receiving the records
+     */
+    void collect(int patientId, long startTime, long endTime, List<PatientRecord> out) {
+        if (startTime > endTime) {
+            return;
+        }
+        Map<Long, String> info = additionalInfo;
+        forEach(startTime, endTime, (timestamp, value) -> out.add(toRecord(patientId, timestamp, value, info)));
+    }
+
+    /**
+     * Passes the readings within a time range to {@code visitor} without
+     * materializing records.
+     *
+     * @param startTime the start of the range, inclusive
+     * @param endTime   the end of the range, inclusive
+     * @param visitor   receives each reading in timestamp order
+     */
+    void forEach(long startTime, long endTime, RecordVisitor visitor) {
+        if (startTime > endTime) {
+            return;
+        }
+        SeriesChunk[] current = publishedChunks();
+        for (int c = firstChunkEndingAtOrAfter(current, startTime); c < current.length; c++) {
+            SeriesChunk chunk = current[c];
+            if (!chunk.forEachInRange(startTime, endTime, chunk.size(), visitor)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Positions {@code cursor} before the first reading within a time range.
+     *
+     * @param startTime the start of the range, inclusive
+     * @param endTime   the end of the range, inclusive
+     * @param cursor    the cursor to reuse
+     */
+    void openCursor(long startTime, long endTime, RecordCursor cursor) {
+        if (startTime > endTime) {
+            cursor.clear();
+            return;
+        }
+        SeriesChunk[] current = publishedChunks();
+        int first = firstChunkEndingAtOrAfter(current, startTime);
+        int index = first < current.length ? current[first].lowerBound(startTime, current[first].size()) : 0;
+        cursor.reset(current, first, index, endTime);
+    }
+
+    /**
+     * Returns the chunk array after merging any buffered late readings, so the
+     * result is fully sorted.
+     *
+     * @return the published chunks
+     */
+    private SeriesChunk[] publishedChunks() {
+        if (pendingCount > 0) {
+            synchronized (this) {
+                mergePending();
+            }
+        }
+        return chunks;
+    }
+
+    /**
+     * Binary-searches the chunk boundaries for the first chunk whose newest
+     * reading is at or after {@code timestamp}.
+     *
+     * @param current   the chunks to search
+     * @param timestamp the timestamp to look for
+     * @return the chunk index, or {@code current.length} if none qualifies
+     */
+    private static int firstChunkEndingAtOrAfter(SeriesChunk[] current, long timestamp) {
+        int low = 0;
+        int high = current.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            SeriesChunk chunk = current[mid];
+            int size = chunk.size();
+            if (size == 0 || chunk.timestampAt(size - 1) < timestamp) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Merges the reorder buffer into the sorted chunks. Only the chunks from
+     * the earliest late reading onwards are rewritten, into fresh chunks, and
+     * the result is published as a new chunk array so concurrent readers keep
+     * a consistent view. Must be called with the series lock held.
+     */
+    private void mergePending() {
+        int pending = pendingCount;
+        if (pending == 0) {
+            return;
+        }
+        sortPending(pending);
+
+        SeriesChunk[] current = chunks;
+        int first = firstChunkEndingAtOrAfter(current, pendingTimestamps[0] + 1);
+        int existing = 0;
+        for (int c = first; c < current.length; c++) {
+            existing += current[c].size();
+        }
+
+        // Decode the affected chunks behind room for the late readings, then
+        // merge forwards in place; the write position never passes the read position
+        int total = existing + pending;
+        long[] mergedTimestamps = new long[total];
+        double[] mergedValues = new double[total];
+        int decoded = pending;
+        for (int c = first; c < current.length; c++) {
+            int size = current[c].size();
+            current[c].decode(mergedTimestamps, mergedValues, decoded, size);
+            decoded += size;
+        }
+        int read = pending;
+        int p = 0;
+        for (int out = 0; out < total; out++) {
+            if (p == pending || (read < total && mergedTimestamps[read] <= pendingTimestamps[p])) {
+                mergedTimestamps[out] = mergedTimestamps[read];
+                mergedValues[out] = mergedValues[read];
+                read++;
+            } else {
+                mergedTimestamps[out] = pendingTimestamps[p];
+                mergedValues[out] = pendingValues[p];
+                p++;
+            }
+        }
+
+        // Rebuild the rewritten range into new chunks
+        SeriesChunk[] rebuilt = Arrays.copyOf(current, first);
+        int offset = 0;
+        try {
+            while (offset < total) {
+                int remaining = total - offset;
+                SeriesChunk chunk = allocator.allocate(capacityFor(remaining));
+                rebuilt = Arrays.copyOf(rebuilt, rebuilt.length + 1);
+                rebuilt[rebuilt.length - 1] = chunk;
+                int count = Math.min(remaining, chunk.capacity());
+                chunk.append(mergedTimestamps, mergedValues, offset, count);
+                offset += count;
+                if (offset < total) {
+                    // Every chunk but the new tail is full
+                    SeriesChunk sealed = seal(chunk);
+                    if (sealed != chunk) {
+                        rebuilt[rebuilt.length - 1] = sealed;
+                        chunk.release();
+                    }
+                }
+            }
+        } catch (IllegalStateException e) {
+            // Out of storage budget: keep the old chunks and the buffered readings
+            for (int k = first; k < rebuilt.length; k++) {
+                rebuilt[k].release();
+            }
+            throw e;
+        }
+        chunks = rebuilt;
+        for (int k = first; k < current.length; k++) {
+            current[k].release();
+        }
+        lastTimestamp = mergedTimestamps[total - 1];
+        pendingCount = 0;
+        account();
+    }
+
+    /**
+     * Insertion-sorts the reorder buffer; it is small and usually nearly sorted.
+     *
+     * @param count the number of buffered readings
+     */
+    private void sortPending(int count) {
+        for (int i = 1; i < count; i++) {
+            long timestamp = pendingTimestamps[i];
+            double value = pendingValues[i];
+            int j = i - 1;
+            while (j >= 0 && pendingTimestamps[j] > timestamp) {
+                pendingTimestamps[j + 1] = pendingTimestamps[j];
+                pendingValues[j + 1] = pendingValues[j];
+                j--;
+            }
+            pendingTimestamps[j + 1] = timestamp;
+            pendingValues[j + 1] = value;
+        }
+    }
+
+    /**
+     * Picks a chunk capacity for {@code remaining} readings: the next power of
+     * two, clamped to the chunk capacity limits.
+     *
+     * @param remaining the number of readings still to place
+     * @return the capacity of the next chunk
+     */
+    private static int capacityFor(int remaining) {
+        if (remaining >= MAX_CHUNK_CAPACITY) {
+            return MAX_CHUNK_CAPACITY;
+        }
+        return Math.max(MIN_CHUNK_CAPACITY, Integer.highestOneBit(remaining - 1) << 1);
+    }
+
+    private PatientRecord toRecord(int patientId, long timestamp, double value, Map<Long, String> additionalInfo) {
+        String info = additionalInfo == null ? null : additionalInfo.get(timestamp);
+        return new PatientRecord(patientId, value, typeId, timestamp, info == null ? "" : info);
+    }
+}
@@ -0,0 +1,167 @@
+package com.data_management;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Interns record type names (e.g. "ECG", "SystolicBP") into small, dense
+ * integer ids so that storage can index series by id instead of hashing the
+ * type string on every access.
+ * Implemented as a Singleton so ids are stable across all patients.
+ *
+ * <p>The record types the alert rules know about are registered up front
+ * with fixed ids, available as constants. The names the data generators use
+ * for some of them ("SystolicPressure", "DiastolicPressure", "Saturation")
+ * are registered as aliases, so their readings are stored under the same id
+ * and reported with the canonical name.
+ *
+ * <p>Lookups do not lock; only registering a new name does.
+ */
+public class RecordTypeRegistry {
+    /** Id of systolic blood pressure readings ("SystolicBP"). */
+    public static final int SYSTOLIC_BP = 0;
+    /** Id of diastolic blood pressure readings ("DiastolicBP"). */
+    public static final int DIASTOLIC_BP = 1;
+    /** Id of blood oxygen saturation readings ("OxygenSaturation"). */
+    public static final int OXYGEN_SATURATION = 2;
+    /** Id of ECG readings ("ECG"). */
+    public static final int ECG = 3;
+    /** Id of manually triggered or resolved alerts ("Alert"). */
+    public static final int ALERT = 4;
+    /** Id of heart rate readings ("HeartRate"). */
+    public static final int HEART_RATE = 5;
+    /** Id of cholesterol readings ("Cholesterol"). */
+    public static final int CHOLESTEROL = 6;
+    /** Id of white blood cell counts ("WhiteBloodCells"). */
+    public static final int WHITE_BLOOD_CELLS = 7;
+    /** Id of red blood cell counts ("RedBloodCells"). */
+    public static final int RED_BLOOD_CELLS = 8;
+
+    private volatile Map<String, Integer> idsByName; // Replaced, never mutated, when a name is added.
+    private volatile String[] namesById;             // Canonical names, indexed by id.
+    private int typeCount;
+
+    // Singleton instance
+    private static RecordTypeRegistry instance;
+
+    /**
+     * Private constructor for Singleton pattern.
+     */
+    private RecordTypeRegistry() {
+        this.idsByName = new HashMap<>();
+        this.namesById = new String[16];
+        register("SystolicBP");
+        register("DiastolicBP");
+        register("OxygenSaturation");
+        register("ECG");
+        register("Alert");
+        register("HeartRate");
+        register("Cholesterol");
+        register("WhiteBloodCells");
+        register("RedBloodCells");
+        registerAlias("SystolicPressure", "SystolicBP");
+        registerAlias("DiastolicPressure", "DiastolicBP");
+        registerAlias("Saturation", "OxygenSaturation");
+    }
+
+    /**
+     * Gets the singleton instance of RecordTypeRegistry.
+     *
+     * @return the singleton instance
+     */
+    public static synchronized RecordTypeRegistry getInstance() {
+        if (instance == null) {
+            instance = new RecordTypeRegistry();
+        }
+        return instance;
+    }
+
+    /**
+     * Returns the id for a record type or one of its aliases, assigning the
+     * next free id the first time an unknown name is seen.
+     *
+     * @param recordType the record type name
+     * @return the dense integer id of the record type
+     */
+    public int idOf(String recordType) {
+        Integer id = idsByName.get(recordType);
+        return id != null ? id : register(recordType);
+    }
+
+    /**
+     * Returns the id for a record type or one of its aliases without
+     * registering it, so queries for a name that was never stored leave
+     * the registry unchanged.
+     *
+     * @param recordType the record type name
+     * @return the dense integer id of the record type, or -1 if it is unknown
+     */
+    public int find(String recordType) {
+        Integer id = idsByName.get(recordType);
+        return id != null ? id : -1;
+    }
+
+    /**
+     * Returns the canonical record type name registered for an id.
+     *
+     * @param typeId the id returned by {@link #idOf(String)}
+     * @return the record type name
+     */
+    public String nameOf(int typeId) {
+        return namesById[typeId];
+    }
+
+    /**
+     * Returns the number of registered record types. Ids run from zero up to,
+     * but not including, this count.
+     *
+     * @return the number of record types
+     */
+    public synchronized int size() {
+        return typeCount;
+    }
+
+    /**
+     * Makes {@code alias} resolve to the same id as {@code recordType}.
+     *
+     * @param alias      the alternative name
+     * @param recordType the record type the alias stands for
+     * @throws IllegalArgumentException if the alias is already used for a
+     *                                  different record type
+     */
+    public synchronized void registerAlias(String alias, String recordType) {
+        int id = idOf(recordType);
+        Integer existing = idsByName.get(alias);
+        if (existing != null && existing != id) {
+            throw new IllegalArgumentException("Record type name already in use: " + alias);
+        }
+        Map<String, Integer> updated = new HashMap<>(idsByName);
+        updated.put(alias, id);
+        idsByName = updated;
+    }
+
+    /**
+     * Assigns the next free id to a name, unless another thread registered it
+     * first.
+     *
+     * @param recordType the record type name
+     * @return the id of the record type
+     */
+    private synchronized int register(String recordType) {
+        Integer id = idsByName.get(recordType);
+        if (id != null) {
+            return id;
+        }
+        id = typeCount++;
+        if (id == namesById.length) {
+            namesById = Arrays.copyOf(namesById, namesById.length * 2);
+        }
+        namesById[id] = recordType;
+        // Copy-on-write so lock-free lookups always see a consistent map
+        Map<String, Integer> updated = new HashMap<>(idsByName);
+        updated.put(recordType, id);
+        idsByName = updated;
+        return id;
+    }
+}
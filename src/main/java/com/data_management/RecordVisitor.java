@@ -0,0 +1,17 @@
+package com.data_management;
+
+/**
+ * Receives readings one at a time from the streaming query methods, such as
+ * {@link DataStorage#forEachInRange(int, String, long, long, RecordVisitor)}.
+ * Readings are passed as primitives so that no record objects are created.
+ */
+@FunctionalInterface
+public interface RecordVisitor {
+    /**
+     * Called for each reading in timestamp order.
+     *
+     * @param timestamp the time of the reading, in milliseconds since UNIX epoch
+     * @param value     the measured value
+     */
+    void visit(long timestamp, double value);
+}
@@ -0,0 +1,29 @@
+package com.data_management;
+
+/**
+ * The bucket widths at which {@link DataStorage} keeps rollups of every
+ * series.
+ */
+public enum Resolution {
+    /** One bucket per second. */
+    SECOND(1_000L),
+    /** One bucket per minute. */
+    MINUTE(60_000L),
+    /** One bucket per hour. */
+    HOUR(3_600_000L);
+
+    private final long millis;
+
+    Resolution(long millis) {
+        this.millis = millis;
+    }
+
+    /**
+     * Returns the width of one bucket.
+     *
+     * @return the bucket width in milliseconds
+     */
+    public long getMillis() {
+        return millis;
+    }
+}
@@ -0,0 +1,67 @@
+package com.data_management;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Defines how long readings of each record type are kept in
+ * {@link DataStorage}. Record types without an explicit retention are kept
+ * until the storage is reset.
+ */
+public class RetentionPolicy {
+    /** Retention value meaning readings are never expired. */
+    public static final long KEEP_FOREVER = Long.MAX_VALUE;
+
+    private volatile long[] retentionByType = new long[0]; // Indexed by record type id, in milliseconds.
+
+    /**
+     * Creates a policy with the retention periods used on the wards: ECG for
+     * 6 hours, saturation for 48 hours and cholesterol for 30 days.
+     *
+     * @return a new policy with the default clinical retention periods
+     */
+    public static RetentionPolicy clinicalDefaults() {
+        RetentionPolicy policy = new RetentionPolicy();
+        policy.setRetention("ECG", 6, TimeUnit.HOURS);
+        policy.setRetention("Saturation", 48, TimeUnit.HOURS);
+        policy.setRetention("Cholesterol", 30, TimeUnit.DAYS);
+        return policy;
+    }
+
+    /**
+     * Sets how long readings of a record type are kept.
+     *
+     * @param recordType the record type, e.g. "ECG"
+     * @param duration   how long readings are kept
+     * @param unit       the unit of {@code duration}
+     * @return this policy, for chaining
+     */
+    public synchronized RetentionPolicy setRetention(String recordType, long duration, TimeUnit unit) {
+        if (duration <= 0) {
+            throw new IllegalArgumentException("Retention must be positive: " + duration + " " + unit);
+        }
+        int typeId = RecordTypeRegistry.getInstance().idOf(recordType);
+        long[] updated = retentionByType;
+        if (typeId >= updated.length) {
+            int oldLength = updated.length;
+            updated = Arrays.copyOf(updated, typeId + 1);
+            Arrays.fill(updated, oldLength, updated.length, KEEP_FOREVER);
+        } else {
+            updated = updated.clone();
+        }
+        updated[typeId] = unit.toMillis(duration);
+        retentionByType = updated;
+        return this;
+    }
+
+    /**
+     * Returns the retention of a record type.
+     *
+     * @param typeId the record type id
+     * @return the retention in milliseconds, or {@link #KEEP_FOREVER}
+     */
+    long getRetentionMillis(int typeId) {
+        long[] current = retentionByType;
+        return typeId < current.length ? current[typeId] : KEEP_FOREVER;
+    }
+}
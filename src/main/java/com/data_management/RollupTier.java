@@ -0,0 +1,323 @@
+package com.data_management;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Min/max/sum/count buckets of one fixed width for a {@link RecordSeries},
+ * kept in columnar arrays sorted by bucket start.
+ *
+ * <p>Readings are folded in as they are ingested. In-order readings only
+ * touch the newest bucket; a late reading updates, or inserts, the bucket it
+ * belongs to. The tier is guarded by the owning series' lock.
+ *
+ * <p>A tier may also keep a {@link QuantileSketch} per bucket, so quantiles
+ * of a window can be merged from its buckets.
+ */
+class RollupTier {
+    private static final int INITIAL_CAPACITY = 8;
+
+    private final long width;
+    private long[] starts = new long[INITIAL_CAPACITY];
+    private long[] counts = new long[INITIAL_CAPACITY];
+    private double[] mins = new double[INITIAL_CAPACITY];
+    private double[] maxs = new double[INITIAL_CAPACITY];
+    private double[] sums = new double[INITIAL_CAPACITY];
+    private QuantileSketch[] sketches; // Null unless the tier keeps sketches
+    private int size;
+
+    /**
+     * Creates an empty tier without sketches.
+     *
+     * @param resolution the width of each bucket
+     */
+    RollupTier(Resolution resolution) {
+        this(resolution, false);
+    }
+
+    /**
+     * Creates an empty tier.
+     *
+     * @param resolution   the width of each bucket
+     * @param withSketches whether to keep a quantile sketch per bucket
+     */
+    RollupTier(Resolution resolution, boolean withSketches) {
+        this.width = resolution.getMillis();
+        if (withSketches) {
+            sketches = new QuantileSketch[INITIAL_CAPACITY];
+        }
+    }
+
+    long getWidth() {
+        return width;
+    }
+
+    /**
+     * Folds a reading into the bucket covering its timestamp.
+     *
+     * @param timestamp the time of the reading
+     * @param value     the measured value
+     */
+    void add(long timestamp, double value) {
+        int index;
+        if (size > 0 && timestamp >= starts[size - 1] && timestamp - starts[size - 1] < width) {
+            index = size - 1; // The common case: still in the newest bucket
+        } else {
+            index = bucketFor(timestamp);
+        }
+        counts[index]++;
+        mins[index] = Math.min(mins[index], value);
+        maxs[index] = Math.max(maxs[index], value);
+        sums[index] += value;
+        if (sketches != null) {
+            sketches[index].add(value);
+        }
+    }
+
+    /**
+     * Folds a run of readings sorted by timestamp, summarizing each bucket's
+     * share of the run before touching the bucket columns.
+     *
+     * @param timestamps the timestamp column
+     * @param values     the value column
+     * @param from       the index of the first reading, inclusive
+     * @param to         the index of the last reading, exclusive
+     */
+    void addSorted(long[] timestamps, double[] values, int from, int to) {
+        int i = from;
+        long bucketEnd = Long.MIN_VALUE;
+        while (i < to) {
+            // Consecutive buckets are found without dividing, which dominates when buckets are small
+            long bucketStart = i > from && timestamps[i] - bucketEnd < width
+                    ? bucketEnd
+                    : Math.floorDiv(timestamps[i], width) * width;
+            bucketEnd = bucketStart + width;
+            double min = values[i];
+            double max = values[i];
+            double sum = values[i];
+            int end = i + 1;
+            while (end < to && timestamps[end] < bucketEnd) {
+                double value = values[end];
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+                sum += value;
+                end++;
+            }
+            int index = bucketStarting(bucketStart);
+            counts[index] += end - i;
+            mins[index] = Math.min(mins[index], min);
+            maxs[index] = Math.max(maxs[index], max);
+            sums[index] += sum;
+            if (sketches != null) {
+                for (int k = i; k < end; k++) {
+                    sketches[index].add(values[k]);
+                }
+            }
+            i = end;
+        }
+    }
+
+    /**
+     * Returns the index of the bucket covering a timestamp, creating it if
+     * needed.
+     */
+    private int bucketFor(long timestamp) {
+        return bucketStarting(Math.floorDiv(timestamp, width) * width);
+    }
+
+    /**
+     * Returns the index of the bucket starting at {@code start}, creating it
+     * if needed.
+     */
+    private int bucketStarting(long start) {
+        int index;
+        if (size > 0 && starts[size - 1] == start) {
+            index = size - 1;
+        } else if (size == 0 || starts[size - 1] < start) {
+            index = insertBucket(size, start);
+        } else {
+            index = lowerBound(start);
+            if (starts[index] != start) {
+                index = insertBucket(index, start);
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Adds the buckets overlapping a time range to {@code out}.
+     *
+     * @param startTime the start of the range, inclusive
+     * @param endTime   the end of the range, inclusive
+     * @param out       the list receiving the aggregates
+     */
+    void collect(long startTime, long endTime, List<Aggregate> out) {
+        long firstStart = Math.floorDiv(startTime, width) * width;
+        for (int i = lowerBound(firstStart); i < size && starts[i] <= endTime; i++) {
+            out.add(new Aggregate(starts[i], starts[i] + width, counts[i], mins[i], maxs[i], sums[i]));
+        }
+    }
+
+    /**
+     * Merges the sketches of the buckets lying entirely within a time range
+     * into {@code out}. The range must not reach the extremes of {@code long}.
+     *
+     * @param startTime the start of the range, inclusive
+     * @param endTime   the end of the range, inclusive
+     * @param out       the sketch receiving the merged buckets
+     * @return the start of the first and the end (exclusive) of the last
+     *         merged bucket as {@code [start, end]}, or {@code null} if no
+     *         bucket lies within the range
+     */
+    long[] mergeSketches(long startTime, long endTime, QuantileSketch out) {
+        long firstStart = Math.floorDiv(startTime, width) * width;
+        if (firstStart < startTime) {
+            firstStart += width; // The first bucket is only partly covered
+        }
+        long lastEnd = Math.floorDiv(endTime, width) * width;
+        if (endTime - lastEnd == width - 1) {
+            lastEnd += width; // The last bucket is covered up to its final millisecond
+        }
+        if (firstStart >= lastEnd) {
+            return null;
+        }
+        for (int i = lowerBound(firstStart); i < size && starts[i] < lastEnd; i++) {
+            out.merge(sketches[i]);
+        }
+        return new long[] {firstStart, lastEnd};
+    }
+
+    /**
+     * Drops the buckets that end at or before {@code cutoff}.
+     *
+     * @param cutoff the oldest timestamp still stored in the series
+     */
+    void expireBefore(long cutoff) {
+        int expired = lowerBound(cutoff - width + 1);
+        if (expired == 0) {
+            return;
+        }
+        int kept = size - expired;
+        System.arraycopy(starts, expired, starts, 0, kept);
+        System.arraycopy(counts, expired, counts, 0, kept);
+        System.arraycopy(mins, expired, mins, 0, kept);
+        System.arraycopy(maxs, expired, maxs, 0, kept);
+        System.arraycopy(sums, expired, sums, 0, kept);
+        if (sketches != null) {
+            System.arraycopy(sketches, expired, sketches, 0, kept);
+            Arrays.fill(sketches, kept, size, null);
+        }
+        size = kept;
+        if (size < starts.length / 2 && starts.length > INITIAL_CAPACITY) {
+            resize(Math.max(INITIAL_CAPACITY, size + size / 4)); // Give the memory back after a large expiry
+        }
+    }
+
+    /**
+     * Shrinks the bucket columns when more than a third of them is unused,
+     * e.g. after they doubled or after an expiry, keeping a quarter as room
+     * to grow.
+     */
+    void trim() {
+        if (starts.length > INITIAL_CAPACITY && starts.length - size > size / 2) {
+            resize(Math.max(INITIAL_CAPACITY, size + size / 4));
+        }
+    }
+
+    /**
+     * Removes every bucket.
+     */
+    void clear() {
+        if (sketches != null) {
+            Arrays.fill(sketches, 0, size, null);
+        }
+        size = 0;
+    }
+
+    /**
+     * Estimates the bytes held by the bucket columns.
+     *
+     * @return the estimated size in bytes
+     */
+    long residentBytes() {
+        long bytes = 40L * starts.length;
+        if (sketches != null) {
+            bytes += 4L * sketches.length;
+            for (int i = 0; i < size; i++) {
+                bytes += sketches[i].residentBytes();
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Makes room for {@code buckets} more buckets at once, e.g. before a bulk
+     * load whose time span is known, so the columns are not regrown on the
+     * way.
+     *
+     * @param buckets the number of buckets about to be added
+     */
+    void reserve(int buckets) {
+        if (size + buckets > starts.length) {
+            resize(size + buckets);
+        }
+    }
+
+    private void resize(int capacity) {
+        starts = Arrays.copyOf(starts, capacity);
+        counts = Arrays.copyOf(counts, capacity);
+        mins = Arrays.copyOf(mins, capacity);
+        maxs = Arrays.copyOf(maxs, capacity);
+        sums = Arrays.copyOf(sums, capacity);
+        if (sketches != null) {
+            sketches = Arrays.copyOf(sketches, capacity);
+        }
+    }
+
+    /**
+     * Opens an empty bucket at {@code index}, shifting later buckets along.
+     */
+    private int insertBucket(int index, long start) {
+        if (size == starts.length) {
+            resize(size * 2);
+        }
+        int moved = size - index;
+        if (moved > 0) {
+            System.arraycopy(starts, index, starts, index + 1, moved);
+            System.arraycopy(counts, index, counts, index + 1, moved);
+            System.arraycopy(mins, index, mins, index + 1, moved);
+            System.arraycopy(maxs, index, maxs, index + 1, moved);
+            System.arraycopy(sums, index, sums, index + 1, moved);
+            if (sketches != null) {
+                System.arraycopy(sketches, index, sketches, index + 1, moved);
+            }
+        }
+        starts[index] = start;
+        counts[index] = 0;
+        mins[index] = Double.POSITIVE_INFINITY;
+        maxs[index] = Double.NEGATIVE_INFINITY;
+        sums[index] = 0;
+        if (sketches != null) {
+            sketches[index] = new QuantileSketch();
+        }
+        size++;
+        return index;
+    }
+
+    /**
+     * Returns the index of the first bucket starting at or after {@code start}.
+     */
+    private int lowerBound(long start) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (starts[mid] < start) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,206 @@
+package com.data_management;
+
+import java.nio.DoubleBuffer;
+import java.nio.LongBuffer;
+
+/**
+ * A fixed-capacity block of readings stored column-wise, one timestamp
+ * column and one value column. Each reading costs 16 bytes (one long and one
+ * double). Subclasses decide where the columns live (see
+ * {@link HeapSeriesChunk} and {@link OffHeapSeriesChunk}). Once full, a chunk
+ * may be replaced by a {@link CompressedSeriesChunk} holding the same
+ * readings.
+ * A chunk has a single writer; its size is published through a volatile
+ * field after each append, so readers can consume the first {@link #size()}
+ * readings without locking.
+ */
+abstract class SeriesChunk {
+    private final int capacity;
+    private volatile int size; // Published length: readings below it are immutable.
+
+    /**
+     * Creates an empty chunk able to hold {@code capacity} readings.
+     *
+     * @param capacity the maximum number of readings in this chunk
+     */
+    SeriesChunk(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Appends a reading to the end of the chunk. Must only be called by the
+     * series' writer.
+     *
+     * @param timestamp the time of the reading
+     * @param value     the measured value
+     */
+    void append(long timestamp, double value) {
+        int index = size;
+        write(index, timestamp, value);
+        size = index + 1; // Volatile write publishes the reading to readers.
+    }
+
+    /**
+     * Appends a run of readings and publishes them with a single volatile
+     * write. Must only be called by the series' writer.
+     *
+     * @param timestamps the timestamp column
+     * @param values     the value column
+     * @param offset     the position of the first reading in the columns
+     * @param count      the number of readings, at most the free capacity
+     */
+    void append(long[] timestamps, double[] values, int offset, int count) {
+        int index = size;
+        for (int i = 0; i < count; i++) {
+            write(index + i, timestamps[offset + i], values[offset + i]);
+        }
+        size = index + count;
+    }
+
+    /**
+     * Publishes the first {@code count} readings of a chunk that was filled
+     * in one go by its constructor.
+     *
+     * @param count the number of readings written
+     */
+    final void publish(int count) {
+        size = count; // Volatile write publishes the readings.
+    }
+
+    /**
+     * Returns whether the readings are bit-packed, so that random access is
+     * expensive and the chunk should be scanned instead.
+     *
+     * @return {@code true} for compressed chunks
+     */
+    boolean isCompressed() {
+        return false;
+    }
+
+    boolean isFull() {
+        return size == capacity;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Binary-searches the first {@code size} readings, which must be sorted,
+     * for the first one at or after {@code timestamp}.
+     *
+     * @param timestamp the timestamp to look for
+     * @param size      the number of published readings to search
+     * @return the index of the first reading at or after the timestamp, or
+     *         {@code size} if there is none
+     */
+    int lowerBound(long timestamp, int size) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (timestampAt(mid) < timestamp) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Passes the readings from the first one at or after {@code startTime} up
+     * to {@code endTime} to a visitor, in order.
+     *
+     * @param startTime the start of the range, inclusive
+     * @param endTime   the end of the range, inclusive
+     * @param size      the number of published readings to scan
+     * @param visitor   receives each reading
+     * @return {@code false} if a reading after {@code endTime} was reached, so
+     *         later chunks need not be scanned
+     */
+    boolean forEachInRange(long startTime, long endTime, int size, RecordVisitor visitor) {
+        for (int i = lowerBound(startTime, size); i < size; i++) {
+            long timestamp = timestampAt(i);
+            if (timestamp > endTime) {
+                return false;
+            }
+            visitor.visit(timestamp, valueAt(i));
+        }
+        return true;
+    }
+
+    /**
+     * Copies the first {@code count} readings into column arrays.
+     *
+     * @param timestamps receives the timestamps
+     * @param values     receives the values
+     * @param offset     the position in the arrays of the first reading
+     * @param count      the number of published readings to copy
+     */
+    void decode(long[] timestamps, double[] values, int offset, int count) {
+        for (int i = 0; i < count; i++) {
+            timestamps[offset + i] = timestampAt(i);
+            values[offset + i] = valueAt(i);
+        }
+    }
+
+    /**
+     * Fills an empty chunk from column buffers in one bulk copy, e.g. from a
+     * memory-mapped snapshot.
+     *
+     * @param timestamps the timestamp column, positioned at the first reading
+     * @param values     the value column, positioned at the first reading
+     * @param count      the number of readings to copy, at most the capacity
+     */
+    final void load(LongBuffer timestamps, DoubleBuffer values, int count) {
+        copyColumns(timestamps, values, count);
+        size = count; // Volatile write publishes the loaded readings.
+    }
+
+    /**
+     * Copies readings from column buffers into positions 0 to
+     * {@code count - 1}. Subclasses override this with a bulk copy.
+     *
+     * @param timestamps the timestamp column
+     * @param values     the value column
+     * @param count      the number of readings to copy
+     */
+    void copyColumns(LongBuffer timestamps, DoubleBuffer values, int count) {
+        for (int i = 0; i < count; i++) {
+            write(i, timestamps.get(), values.get());
+        }
+    }
+
+    /**
+     * Called once the chunk has been removed from its series, so any
+     * reserved memory can be accounted as free.
+     */
+    void release() {
+        // Heap chunks are reclaimed by the garbage collector
+    }
+
+    /**
+     * Stores a reading at a position that has not been published yet.
+     *
+     * @param index     the position in the chunk
+     * @param timestamp the time of the reading
+     * @param value     the measured value
+     */
+    abstract void write(int index, long timestamp, double value);
+
+    abstract long timestampAt(int index);
+
+    abstract double valueAt(int index);
+
+    /**
+     * Estimates the bytes held by this chunk, including unused capacity.
+     *
+     * @return the estimated size in bytes
+     */
+    abstract long residentBytes();
+}
@@ -0,0 +1,131 @@
+package com.data_management;
+
+import java.util.Map;
+
+/**
+ * An immutable, point-in-time view of a {@link RecordSeries}: the chunk array
+ * published when the view was taken and the number of readings the tail chunk
+ * held at that moment. Later appends and merges never change what the view
+ * sees, because chunks are only ever appended past their published size or
+ * replaced as a whole.
+ */
+final class SeriesView {
+    private final int typeId;
+    private final SeriesChunk[] chunks;
+    private final int tailSize;
+    private final long lastLsn;
+    private final Map<Long, String> additionalInfo; // Null if no reading carries additional info
+
+    SeriesView(int typeId, SeriesChunk[] chunks, int tailSize, long lastLsn, Map<Long, String> additionalInfo) {
+        this.typeId = typeId;
+        this.chunks = chunks;
+        this.tailSize = tailSize;
+        this.lastLsn = lastLsn;
+        this.additionalInfo = additionalInfo;
+    }
+
+    int getTypeId() {
+        return typeId;
+    }
+
+    /**
+     * Returns the LSN of the newest logged reading contained in the view.
+     *
+     * @return the last LSN, or -1 if no logged reading is included
+     */
+    long getLastLsn() {
+        return lastLsn;
+    }
+
+    int chunkCount() {
+        return chunks.length;
+    }
+
+    SeriesChunk chunk(int index) {
+        return chunks[index];
+    }
+
+    /**
+     * Returns how many readings of a chunk belong to the view.
+     *
+     * @param index the chunk index
+     * @return the number of readings visible in that chunk
+     */
+    int chunkSize(int index) {
+        return index == chunks.length - 1 ? tailSize : chunks[index].size();
+    }
+
+    /**
+     * Returns the number of readings in the view.
+     *
+     * @return the reading count
+     */
+    int size() {
+        int size = 0;
+        for (int c = 0; c < chunks.length; c++) {
+            size += chunkSize(c);
+        }
+        return size;
+    }
+
+    /**
+     * Passes the readings of the view within a time range to
+     * {@code visitor}, in timestamp order.
+     *
+     * @param startTime the start of the range, inclusive
+     * @param endTime   the end of the range, inclusive
+     * @param visitor   receives each reading
+     * @return {@code false} if the visitor stopped the scan early
+     */
+    boolean forEachInRange(long startTime, long endTime, RecordVisitor visitor) {
+        if (startTime > endTime) {
+            return true;
+        }
+        // Binary search for the first chunk whose newest visible reading is not too old
+        int low = 0;
+        int high = chunks.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            int size = chunkSize(mid);
+            if (size == 0 || chunks[mid].timestampAt(size - 1) < startTime) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        for (int c = low; c < chunks.length; c++) {
+            if (!chunks[c].forEachInRange(startTime, endTime, chunkSize(c), visitor)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Passes the newest reading of the view to {@code visitor}.
+     *
+     * @param visitor receives the reading
+     * @return {@code false} if the view is empty
+     */
+    boolean latest(RecordVisitor visitor) {
+        for (int c = chunks.length - 1; c >= 0; c--) {
+            int size = chunkSize(c);
+            if (size > 0) {
+                visitor.visit(chunks[c].timestampAt(size - 1), chunks[c].valueAt(size - 1));
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the additional information stored with a reading of the view.
+     *
+     * @param timestamp the time of the reading
+     * @return the information, or an empty string if there is none
+     */
+    String additionalInfo(long timestamp) {
+        String info = additionalInfo == null ? null : additionalInfo.get(timestamp);
+        return info == null ? "" : info;
+    }
+}
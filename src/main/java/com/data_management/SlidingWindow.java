@@ -0,0 +1,298 @@
+package com.data_management;
+
+/**
+ * Statistics of a sliding window over the newest readings of a
+ * {@link RecordSeries}, updated as readings are appended in O(1) amortized
+ * time. The readings in the window are kept in a ring indexed by sequence
+ * number, so the oldest one can be removed when it falls out:
+ * <ul>
+ *   <li>mean and variance are running sums with Welford's update, which
+ *       unlike a sum of squares does not lose precision when the variance is
+ *       small against the mean;</li>
+ *   <li>minimum and maximum, of the values and of the changes between
+ *       consecutive values, come from monotonic deques, whose front is the
+ *       extreme of the window and each entry of which is pushed and popped
+ *       once.</li>
+ * </ul>
+ *
+ * <p>A late reading that falls inside the window cannot be slid in, so it
+ * marks the window stale and the series rebuilds it from its readings on the
+ * next query. Guarded by the owning series' lock.
+ */
+class SlidingWindow {
+    private static final int INITIAL_CAPACITY = 16;
+    private static final long REFRESH_INTERVAL = 1L << 16; // Readings between exact recomputes of the moments
+
+    private final WindowSpec spec;
+    private long[] timestamps = new long[INITIAL_CAPACITY]; // Indexed by sequence number & mask
+    private double[] values = new double[INITIAL_CAPACITY];
+    private long first; // Sequence number of the oldest reading
+    private long next;  // Sequence number of the next reading
+    private double mean;
+    private double m2;  // Sum of squared differences from the mean
+    private boolean stale = true;
+
+    // Sequence numbers; values (or changes) decrease from the front of the maxima and increase in the minima
+    private final SequenceDeque maxima = new SequenceDeque();
+    private final SequenceDeque minima = new SequenceDeque();
+    private final SequenceDeque maxChanges = new SequenceDeque();
+    private final SequenceDeque minChanges = new SequenceDeque();
+
+    SlidingWindow(WindowSpec spec) {
+        this.spec = spec;
+    }
+
+    WindowSpec spec() {
+        return spec;
+    }
+
+    /**
+     * Returns whether the window must be rebuilt before it is read.
+     *
+     * @return {@code true} until the window is rebuilt after it was created,
+     *         cleared or missed a late reading
+     */
+    boolean isStale() {
+        return stale;
+    }
+
+    /**
+     * Marks the window for a rebuild, e.g. after readings were removed.
+     */
+    void invalidate() {
+        stale = true;
+    }
+
+    /**
+     * Empties the window ahead of a rebuild.
+     */
+    void clear() {
+        first = 0;
+        next = 0;
+        mean = 0;
+        m2 = 0;
+        maxima.clear();
+        minima.clear();
+        maxChanges.clear();
+        minChanges.clear();
+        stale = false;
+    }
+
+    /**
+     * Slides a reading into the window and the oldest readings out.
+     *
+     * @param timestamp the time of the reading
+     * @param value     the measured value
+     */
+    void add(long timestamp, double value) {
+        if (stale) {
+            return;
+        }
+        if (next > first && timestamp < newestTimestamp()) {
+            // Late: harmless if it would have fallen out of the window anyway
+            if (!isOutside(timestamp)) {
+                stale = true;
+            }
+            return;
+        }
+        if (next - first == timestamps.length) {
+            grow();
+        }
+        long sequence = next++;
+        int slot = (int) sequence & (timestamps.length - 1);
+        timestamps[slot] = timestamp;
+        values[slot] = value;
+
+        double delta = value - mean;
+        mean += delta / (next - first);
+        m2 += delta * (value - mean);
+
+        while (!maxima.isEmpty() && valueAt(maxima.last()) <= value) {
+            maxima.removeLast();
+        }
+        maxima.addLast(sequence);
+        while (!minima.isEmpty() && valueAt(minima.last()) >= value) {
+            minima.removeLast();
+        }
+        minima.addLast(sequence);
+        if (sequence > first) {
+            double change = changeAt(sequence);
+            while (!maxChanges.isEmpty() && changeAt(maxChanges.last()) <= change) {
+                maxChanges.removeLast();
+            }
+            maxChanges.addLast(sequence);
+            while (!minChanges.isEmpty() && changeAt(minChanges.last()) >= change) {
+                minChanges.removeLast();
+            }
+            minChanges.addLast(sequence);
+        }
+
+        while (isOutside(timestamps[(int) first & (timestamps.length - 1)])) {
+            removeOldest();
+        }
+        if (sequence % REFRESH_INTERVAL == 0) {
+            refreshMoments();
+        }
+    }
+
+    /**
+     * Returns whether a reading at {@code timestamp}, older than the newest
+     * one, lies outside the window.
+     */
+    private boolean isOutside(long timestamp) {
+        if (spec.isCountBased()) {
+            return next - first > spec.getReadings()
+                    || (next - first == spec.getReadings() && timestamp < timestamps[(int) first & (timestamps.length - 1)]);
+        }
+        long newest = newestTimestamp();
+        long span = spec.getDurationMillis();
+        return newest >= Long.MIN_VALUE + span && timestamp < newest - span;
+    }
+
+    private void removeOldest() {
+        double value = valueAt(first);
+        long count = next - first - 1;
+        if (count == 0) {
+            mean = 0;
+            m2 = 0;
+        } else {
+            double delta = value - mean;
+            mean -= delta / count;
+            m2 -= delta * (value - mean);
+        }
+        first++;
+        if (maxima.first() < first) {
+            maxima.removeFirst();
+        }
+        if (minima.first() < first) {
+            minima.removeFirst();
+        }
+        // The change into the oldest reading left with the reading before it
+        if (!maxChanges.isEmpty() && maxChanges.first() <= first) {
+            maxChanges.removeFirst();
+        }
+        if (!minChanges.isEmpty() && minChanges.first() <= first) {
+            minChanges.removeFirst();
+        }
+    }
+
+    /**
+     * Recomputes the mean and variance from the readings, so rounding errors
+     * of removals cannot build up over a long-lived window.
+     */
+    private void refreshMoments() {
+        double sum = 0;
+        for (long s = first; s < next; s++) {
+            sum += valueAt(s);
+        }
+        mean = sum / (next - first);
+        m2 = 0;
+        for (long s = first; s < next; s++) {
+            double delta = valueAt(s) - mean;
+            m2 += delta * delta;
+        }
+    }
+
+    private void grow() {
+        int capacity = timestamps.length * 2;
+        long[] grownTimestamps = new long[capacity];
+        double[] grownValues = new double[capacity];
+        for (long s = first; s < next; s++) {
+            grownTimestamps[(int) s & (capacity - 1)] = timestamps[(int) s & (timestamps.length - 1)];
+            grownValues[(int) s & (capacity - 1)] = values[(int) s & (values.length - 1)];
+        }
+        timestamps = grownTimestamps;
+        values = grownValues;
+    }
+
+    private long newestTimestamp() {
+        return timestamps[(int) (next - 1) & (timestamps.length - 1)];
+    }
+
+    private double valueAt(long sequence) {
+        return values[(int) sequence & (values.length - 1)];
+    }
+
+    private double changeAt(long sequence) {
+        return valueAt(sequence) - valueAt(sequence - 1);
+    }
+
+    /**
+     * Returns the statistics of the readings in the window.
+     *
+     * @return the statistics, or {@code null} if the window is empty
+     */
+    WindowStats stats() {
+        long count = next - first;
+        if (count == 0) {
+            return null;
+        }
+        boolean changes = count > 1;
+        return new WindowStats(count, timestamps[(int) first & (timestamps.length - 1)], newestTimestamp(),
+                valueAt(next - 1), mean, Math.max(0, m2 / count), valueAt(minima.first()), valueAt(maxima.first()),
+                changes ? changeAt(minChanges.first()) : Double.NaN,
+                changes ? changeAt(maxChanges.first()) : Double.NaN);
+    }
+
+    /**
+     * Estimates the bytes held by the window.
+     *
+     * @return the estimated size in bytes
+     */
+    long residentBytes() {
+        return 16L * timestamps.length + maxima.residentBytes() + minima.residentBytes()
+                + maxChanges.residentBytes() + minChanges.residentBytes();
+    }
+
+    /**
+     * A double-ended queue of sequence numbers in a growable ring.
+     */
+    private static final class SequenceDeque {
+        private long[] items = new long[INITIAL_CAPACITY];
+        private int head;
+        private int size;
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        long first() {
+            return items[head];
+        }
+
+        long last() {
+            return items[(head + size - 1) & (items.length - 1)];
+        }
+
+        void addLast(long sequence) {
+            if (size == items.length) {
+                long[] grown = new long[items.length * 2];
+                for (int i = 0; i < size; i++) {
+                    grown[i] = items[(head + i) & (items.length - 1)];
+                }
+                items = grown;
+                head = 0;
+            }
+            items[(head + size) & (items.length - 1)] = sequence;
+            size++;
+        }
+
+        void removeFirst() {
+            head = (head + 1) & (items.length - 1);
+            size--;
+        }
+
+        void removeLast() {
+            size--;
+        }
+
+        void clear() {
+            head = 0;
+            size = 0;
+        }
+
+        long residentBytes() {
+            return 8L * items.length;
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.data_management;
+
+/**
+ * Where {@link DataStorage} keeps the readings of patient series.
+ */
+public enum StorageMode {
+    /** Readings are stored in primitive arrays on the Java heap. */
+    HEAP,
+    /** Readings are stored in direct memory that the garbage collector does not trace. */
+    OFF_HEAP
+}
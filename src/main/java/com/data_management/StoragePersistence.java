@@ -0,0 +1,164 @@
+package com.data_management;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps {@link DataStorage} durable across restarts with a write-ahead log
+ * and periodic snapshots in one directory.
+ *
+ * <p>A snapshot first rotates the log, so every reading in an older segment
+ * is guaranteed to be in the snapshot, and then deletes those segments.
+ * Recovery maps the latest snapshot and replays whatever log segments remain;
+ * readings the snapshot already holds are skipped by their LSN.
+ */
+class StoragePersistence {
+    static final String SNAPSHOT_PREFIX = "snapshot-";
+    static final String SNAPSHOT_SUFFIX = ".bin";
+
+    private final Path directory;
+    private final DataStorage storage;
+    private final long commitIntervalMs;
+    private WriteAheadLog wal;
+    private ScheduledExecutorService snapshotScheduler;
+
+    /**
+     * Creates persistence for {@code storage} in {@code directory}. Nothing is
+     * read or written until {@link #recover()} is called.
+     *
+     * @param directory        where log segments and snapshots are kept
+     * @param storage          the storage being persisted
+     * @param commitIntervalMs how often the log is group-committed
+     */
+    StoragePersistence(Path directory, DataStorage storage, long commitIntervalMs) {
+        this.directory = directory;
+        this.storage = storage;
+        this.commitIntervalMs = commitIntervalMs;
+    }
+
+    /**
+     * Restores the storage from the latest snapshot and the log segments after
+     * it, then opens a new log segment for incoming readings.
+     *
+     * @return the write-ahead log to record new readings in
+     * @throws IOException if the persisted data cannot be read
+     */
+    WriteAheadLog recover() throws IOException {
+        Files.createDirectories(directory);
+        long nextLsn = 0;
+        long snapshotSequence = -1;
+        Path snapshot = latestSnapshot();
+        if (snapshot != null) {
+            nextLsn = StorageSnapshotFile.load(snapshot, storage);
+            snapshotSequence = sequenceOf(snapshot);
+        }
+
+        long lastSegment = snapshotSequence;
+        RecordTypeRegistry recordTypes = RecordTypeRegistry.getInstance();
+        for (long sequence : WriteAheadLog.listSegments(directory)) {
+            long maxLsn = WriteAheadLog.replaySegment(WriteAheadLog.segmentPath(directory, sequence),
+                    (lsn, patientId, recordType, timestamp, value) -> storage.getOrCreatePatient(patientId)
+                            .seriesFor(recordTypes.idOf(recordType)).replay(lsn, timestamp, value));
+            nextLsn = Math.max(nextLsn, maxLsn + 1);
+            lastSegment = Math.max(lastSegment, sequence);
+        }
+
+        wal = new WriteAheadLog(directory, lastSegment + 1, nextLsn, commitIntervalMs);
+        return wal;
+    }
+
+    /**
+     * Writes a snapshot of the storage and drops the log segments it covers.
+     *
+     * @return the number of readings in the snapshot
+     * @throws IOException if the snapshot cannot be written
+     */
+    synchronized long snapshot() throws IOException {
+        long nextLsn = wal.nextLsn();
+        long sequence = wal.rotate();
+        Path target = directory.resolve(String.format("%s%020d%s", SNAPSHOT_PREFIX, sequence, SNAPSHOT_SUFFIX));
+        Path temporary = directory.resolve(target.getFileName() + ".tmp");
+        long readings = StorageSnapshotFile.write(temporary, storage.getAllPatients(), nextLsn);
+        Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        // The new snapshot is durable; older segments and snapshots are obsolete
+        for (long segment : WriteAheadLog.listSegments(directory)) {
+            if (segment < sequence) {
+                Files.deleteIfExists(WriteAheadLog.segmentPath(directory, segment));
+            }
+        }
+        try (DirectoryStream<Path> snapshots = Files.newDirectoryStream(directory, SNAPSHOT_PREFIX + "*")) {
+            for (Path old : snapshots) {
+                if (!old.equals(target)) {
+                    Files.deleteIfExists(old);
+                }
+            }
+        }
+        return readings;
+    }
+
+    /**
+     * Takes a snapshot periodically on a background thread.
+     *
+     * @param period the time between snapshots
+     * @param unit   the unit of {@code period}
+     */
+    synchronized void startSnapshots(long period, TimeUnit unit) {
+        snapshotScheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "data-storage-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        snapshotScheduler.scheduleWithFixedDelay(() -> {
+            try {
+                snapshot();
+            } catch (IOException e) {
+                System.err.println("Error writing storage snapshot: " + e.getMessage());
+            }
+        }, period, period, unit);
+    }
+
+    /**
+     * Blocks until every logged reading is durable.
+     *
+     * @throws IOException if the log cannot be written
+     */
+    void sync() throws IOException {
+        wal.sync();
+    }
+
+    /**
+     * Stops snapshots and closes the log after making it durable.
+     *
+     * @throws IOException if the final commit fails
+     */
+    synchronized void close() throws IOException {
+        if (snapshotScheduler != null) {
+            snapshotScheduler.shutdownNow();
+        }
+        wal.close();
+    }
+
+    private Path latestSnapshot() throws IOException {
+        Path latest = null;
+        try (DirectoryStream<Path> snapshots = Files.newDirectoryStream(directory, SNAPSHOT_PREFIX + "*" + SNAPSHOT_SUFFIX)) {
+            for (Path snapshot : snapshots) {
+                if (latest == null || sequenceOf(snapshot) > sequenceOf(latest)) {
+                    latest = snapshot;
+                }
+            }
+        }
+        return latest;
+    }
+
+    private static long sequenceOf(Path snapshot) {
+        String name = snapshot.getFileName().toString();
+        return Long.parseLong(name.substring(SNAPSHOT_PREFIX.length(), name.length() - SNAPSHOT_SUFFIX.length()));
+    }
+}
@@ -0,0 +1,178 @@
+package com.data_management;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * One partition of the patients of a sharded {@link DataStorage}. Each shard
+ * owns a writer thread and a bounded mailbox; every reading of the shard's
+ * patients is applied by that thread alone, so series locks are never
+ * contended.
+ *
+ * <p>The mailbox is a multi-producer, single-consumer ring of primitive
+ * slots. A producer claims a slot with one atomic increment, fills it and
+ * publishes it by bumping the slot's sequence number, so enqueueing neither
+ * locks nor allocates. When the ring is full, producers wait for the writer
+ * to catch up. The writer drains whole runs of slots into a
+ * {@link RecordBatch} and stores them the same way as
+ * {@link DataStorage#addBatch(RecordBatch)}.
+ */
+class StorageShard {
+    private static final int DRAIN_SIZE = 4096;
+    private static final long IDLE_PARK_NANOS = 1_000_000;
+
+    private final DataStorage storage;
+    private final int mask;
+    private final AtomicLongArray sequences; // Slot i is free for ticket t when it holds t, readable when t + 1.
+    private final int[] patientIds;
+    private final int[] typeIds;
+    private final long[] timestamps;
+    private final double[] values;
+    private final AtomicLong tail = new AtomicLong(); // Next ticket to hand to a producer.
+    private final Thread writer;
+    private final RecordBatch batch = new RecordBatch(DRAIN_SIZE);
+    private final AtomicReference<RuntimeException> failure = new AtomicReference<>(); // First since taken
+
+    private volatile long applied;  // Every ticket below this has been stored.
+    private volatile boolean sleeping;
+    private volatile boolean running = true;
+    private long head;              // Next ticket to drain; writer thread only.
+
+    /**
+     * Creates a shard and starts its writer thread.
+     *
+     * @param index    the shard number, used to name the thread
+     * @param capacity the mailbox size; rounded up to a power of two
+     * @param storage  the storage the readings are applied to
+     */
+    StorageShard(int index, int capacity, DataStorage storage) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.storage = storage;
+        this.mask = size - 1;
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        this.patientIds = new int[size];
+        this.typeIds = new int[size];
+        this.timestamps = new long[size];
+        this.values = new double[size];
+        this.writer = new Thread(this::run, "data-storage-shard-" + index);
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Queues a reading for the writer thread.
+     *
+     * @param patientId the patient the reading belongs to
+     * @param typeId    the record type id
+     * @param timestamp the time of the reading
+     * @param value     the measured value
+     */
+    void enqueue(int patientId, int typeId, long timestamp, double value) {
+        long ticket = tail.getAndIncrement();
+        int slot = (int) ticket & mask;
+        while (sequences.get(slot) != ticket) {
+            // Mailbox full: wait for the writer to free this slot
+            wake();
+            Thread.onSpinWait();
+        }
+        patientIds[slot] = patientId;
+        typeIds[slot] = typeId;
+        timestamps[slot] = timestamp;
+        values[slot] = value;
+        sequences.set(slot, ticket + 1);
+        if (sleeping) {
+            wake();
+        }
+    }
+
+    /**
+     * Blocks until every reading queued before this call has been stored, so
+     * a query issued afterwards sees it.
+     */
+    void awaitApplied() {
+        long target = tail.get();
+        while (applied < target) {
+            if (!writer.isAlive()) {
+                throw new IllegalStateException("Shard writer " + writer.getName() + " has stopped");
+            }
+            wake();
+            Thread.yield();
+        }
+    }
+
+    /**
+     * Returns and forgets the first failure to store drained readings since
+     * the last call. The readings it lost are already counted as rejected.
+     *
+     * @return the failure, or {@code null} if every drained reading was stored
+     */
+    RuntimeException takeFailure() {
+        return failure.getAndSet(null);
+    }
+
+    /**
+     * Stores everything still queued and stops the writer thread.
+     */
+    void shutdown() {
+        running = false;
+        wake();
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void wake() {
+        LockSupport.unpark(writer);
+    }
+
+    private void run() {
+        while (running || head < tail.get()) {
+            if (drain() > 0) {
+                continue;
+            }
+            sleeping = true;
+            if (sequences.get((int) head & mask) != head + 1 && running) {
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+            }
+            sleeping = false;
+        }
+    }
+
+    /**
+     * Moves up to {@link #DRAIN_SIZE} published readings out of the mailbox
+     * and stores them.
+     *
+     * @return the number of readings stored
+     */
+    private int drain() {
+        batch.clear();
+        while (batch.size() < DRAIN_SIZE) {
+            int slot = (int) head & mask;
+            if (sequences.get(slot) != head + 1) {
+                break;
+            }
+            batch.add(patientIds[slot], typeIds[slot], timestamps[slot], values[slot]);
+            sequences.lazySet(slot, head + mask + 1); // Free the slot for the ticket one lap ahead
+            head++;
+        }
+        int drained = batch.size();
+        if (drained > 0) {
+            try {
+                storage.applyBatch(batch);
+            } catch (RuntimeException e) {
+                // E.g. an exhausted off-heap budget; keep serving the other readings and report it on flush
+                System.err.println("Error storing readings on " + writer.getName() + ": " + e.getMessage());
+                failure.compareAndSet(null, e);
+            }
+            applied = head;
+        }
+        return drained;
+    }
+}
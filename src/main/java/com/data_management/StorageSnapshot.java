@@ -0,0 +1,239 @@
+package com.data_management;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * An immutable, point-in-time view of every patient in a
+ * {@link DataStorage}, taken with {@link DataStorage#getSnapshot()}.
+ * The snapshot is a consistent cut: it holds every reading whose write
+ * finished before it was taken, none started after, and if it holds a
+ * reading it holds every reading added before that one was. Readings added,
+ * expired, downsampled or moved to disk afterwards never change what it
+ * returns.
+ *
+ * <p>Taking a snapshot does not copy readings and does not block writers;
+ * it shares the chunks of the series, which keeps chunks dropped from the
+ * storage in memory for as long as the snapshot is reachable. Snapshots of
+ * a storage with tiering enabled keep the files of dropped cold chunks on
+ * disk until they are closed, so they should be closed once read.
+ */
+public final class StorageSnapshot implements AutoCloseable {
+    private static final SeriesView[] NO_SERIES = new SeriesView[0];
+
+    private final long version;
+    private final long takenAt;
+    private final PatientDirectory<SeriesView[]> seriesByPatient; // Indexed by record type id; non-empty series
+    private final ColdStore coldStore;                        // Pinned until close; null unless tiering is enabled
+    private final RecordTypeRegistry recordTypes = RecordTypeRegistry.getInstance();
+    private boolean closed;                                   // Guarded by this
+
+    StorageSnapshot(long version, long takenAt, PatientDirectory<SeriesView[]> seriesByPatient,
+            ColdStore coldStore) {
+        this.version = version;
+        this.takenAt = takenAt;
+        this.seriesByPatient = seriesByPatient;
+        this.coldStore = coldStore;
+    }
+
+    /**
+     * Returns the version of the storage the snapshot shows. Versions of
+     * later snapshots of the same storage are larger.
+     *
+     * @return the snapshot version
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns when the snapshot was taken.
+     *
+     * @return the time in milliseconds since UNIX epoch
+     */
+    public long getTakenAt() {
+        return takenAt;
+    }
+
+    /**
+     * Returns the IDs of the patients with readings in the snapshot.
+     *
+     * @return the patient IDs in ascending order
+     */
+    public List<Integer> getPatientIds() {
+        List<Integer> patientIds = new ArrayList<>(seriesByPatient.size());
+        for (int index = 0; index < seriesByPatient.size(); index++) {
+            patientIds.add(seriesByPatient.idAt(index));
+        }
+        Collections.sort(patientIds);
+        return patientIds;
+    }
+
+    /**
+     * Returns the number of readings in the snapshot.
+     *
+     * @return the reading count
+     */
+    public long getRecordCount() {
+        long count = 0;
+        for (SeriesView[] series : seriesByPatient.values()) {
+            for (SeriesView view : series) {
+                if (view != null) {
+                    count += view.size();
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Retrieves a patient's records of every type within a time range.
+     *
+     * @param patientId the ID of the patient
+     * @param startTime the start of the time range, in milliseconds since UNIX epoch
+     * @param endTime   the end of the time range, in milliseconds since UNIX epoch
+     * @return the records in timestamp order; empty for unknown patients
+     * @throws IllegalStateException if the snapshot is closed
+     */
+    public List<PatientRecord> getRecords(int patientId, long startTime, long endTime) {
+        List<PatientRecord> records = new ArrayList<>();
+        for (SeriesView view : series(patientId)) {
+            if (view != null) {
+                collect(patientId, view, startTime, endTime, records);
+            }
+        }
+        // Each series is already sorted, so this only merges the per-type runs
+        records.sort(Comparator.comparingLong(PatientRecord::getTimestamp));
+        return records;
+    }
+
+    /**
+     * Retrieves a patient's records of one type within a time range.
+     *
+     * @param patientId  the ID of the patient
+     * @param recordType the type of record
+     * @param startTime  the start of the time range, in milliseconds since UNIX epoch
+     * @param endTime    the end of the time range, in milliseconds since UNIX epoch
+     * @return the records in timestamp order; empty for unknown record types
+     * @throws IllegalStateException if the snapshot is closed
+     */
+    public List<PatientRecord> getRecords(int patientId, String recordType, long startTime, long endTime) {
+        return getRecords(patientId, recordTypes.find(recordType), startTime, endTime);
+    }
+
+    /**
+     * Retrieves a patient's records of one type within a time range.
+     *
+     * @param patientId    the ID of the patient
+     * @param recordTypeId the record type id from {@link RecordTypeRegistry}
+     * @param startTime    the start of the time range, in milliseconds since UNIX epoch
+     * @param endTime      the end of the time range, in milliseconds since UNIX epoch
+     * @return the records in timestamp order
+     * @throws IllegalStateException if the snapshot is closed
+     */
+    public List<PatientRecord> getRecords(int patientId, int recordTypeId, long startTime, long endTime) {
+        List<PatientRecord> records = new ArrayList<>();
+        SeriesView view = view(patientId, recordTypeId);
+        if (view != null) {
+            collect(patientId, view, startTime, endTime, records);
+        }
+        return records;
+    }
+
+    /**
+     * Passes a patient's readings of one type within a time range to
+     * {@code visitor} without materializing records.
+     *
+     * @param patientId  the ID of the patient
+     * @param recordType the type of record
+     * @param startTime  the start of the time range, inclusive
+     * @param endTime    the end of the time range, inclusive
+     * @param visitor    receives each reading in timestamp order
+     * @throws IllegalStateException if the snapshot is closed
+     */
+    public void forEachInRange(int patientId, String recordType, long startTime, long endTime, RecordVisitor visitor) {
+        SeriesView view = view(patientId, recordTypes.find(recordType));
+        if (view != null) {
+            view.forEachInRange(startTime, endTime, visitor);
+        }
+    }
+
+    /**
+     * Returns a patient's newest record of one type in the snapshot.
+     *
+     * @param patientId  the ID of the patient
+     * @param recordType the type of record
+     * @return the newest record, or {@code null} if there is none
+     * @throws IllegalStateException if the snapshot is closed
+     */
+    public PatientRecord getLatest(int patientId, String recordType) {
+        SeriesView view = view(patientId, recordTypes.find(recordType));
+        if (view == null) {
+            return null;
+        }
+        PatientRecord[] latest = new PatientRecord[1];
+        view.latest((timestamp, value) -> latest[0] = toRecord(patientId, view, timestamp, value));
+        return latest[0];
+    }
+
+    /**
+     * Returns the views of a patient's series, e.g. to export them.
+     *
+     * @param patientId the ID of the patient
+     * @return the non-empty series views, by record type id
+     * @throws IllegalStateException if the snapshot is closed
+     */
+    List<SeriesView> seriesViews(int patientId) {
+        List<SeriesView> views = new ArrayList<>();
+        for (SeriesView view : series(patientId)) {
+            if (view != null) {
+                views.add(view);
+            }
+        }
+        return views;
+    }
+
+    /**
+     * Releases the files kept for the snapshot. Reading it afterwards fails;
+     * closing it again has no effect.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        if (coldStore != null) {
+            coldStore.unpin();
+        }
+    }
+
+    private SeriesView[] series(int patientId) {
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("Snapshot is closed");
+            }
+        }
+        SeriesView[] series = seriesByPatient.get(patientId);
+        return series == null ? NO_SERIES : series;
+    }
+
+    private SeriesView view(int patientId, int recordTypeId) {
+        SeriesView[] series = series(patientId);
+        return recordTypeId >= 0 && recordTypeId < series.length ? series[recordTypeId] : null; // -1 if unknown
+    }
+
+    private static void collect(int patientId, SeriesView view, long startTime, long endTime,
+            List<PatientRecord> out) {
+        view.forEachInRange(startTime, endTime,
+                (timestamp, value) -> out.add(toRecord(patientId, view, timestamp, value)));
+    }
+
+    private static PatientRecord toRecord(int patientId, SeriesView view, long timestamp, double value) {
+        return new PatientRecord(patientId, value, view.getTypeId(), timestamp, view.additionalInfo(timestamp));
+    }
+}
@@ -0,0 +1,240 @@
+package com.data_management;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads and writes compact binary snapshots of {@link DataStorage}.
+ *
+ * <p>Layout, all primitives little-endian:
+ * <pre>
+ * int magic, int version, long nextLsn
+ * int typeCount, then per type: int typeId, short nameLength, UTF-8 name
+ * per series: int patientId, int typeId, long lastLsn, int count,
+ *             long[count] timestamps, double[count] values
+ * int END_OF_SERIES
+ * </pre>
+ * Series are written column-wise so that loading can map the file and copy
+ * each column straight into the storage's chunks.
+ */
+class StorageSnapshotFile {
+    private static final int MAGIC = 0x53534443; // "CDSS"
+    private static final int VERSION = 1;
+    private static final int END_OF_SERIES = -1;
+    private static final int SERIES_HEADER_BYTES = 4 + 4 + 8 + 4;
+
+    /**
+     * Writes a snapshot of every patient in {@code patients}.
+     *
+     * @param file     the file to write
+     * @param patients the patients to include
+     * @param nextLsn  the first LSN not covered by older log segments
+     * @return the number of readings written
+     * @throws IOException if the file cannot be written
+     */
+    static long write(Path file, Iterable<Patient> patients, long nextLsn) throws IOException {
+        RecordTypeRegistry recordTypes = RecordTypeRegistry.getInstance();
+        long readings = 0;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ChannelWriter out = new ChannelWriter(channel);
+            out.ensure(16).putInt(MAGIC).putInt(VERSION).putLong(nextLsn);
+
+            // Capture every series first so the type table covers them all
+            Map<Patient, List<SeriesView>> views = new HashMap<>();
+            Map<Integer, String> typeNames = new HashMap<>();
+            for (Patient patient : patients) {
+                List<SeriesView> patientViews = patient.seriesViews();
+                views.put(patient, patientViews);
+                for (SeriesView view : patientViews) {
+                    typeNames.put(view.getTypeId(), recordTypes.nameOf(view.getTypeId()));
+                }
+            }
+            out.ensure(4).putInt(typeNames.size());
+            for (Map.Entry<Integer, String> type : typeNames.entrySet()) {
+                byte[] name = type.getValue().getBytes(StandardCharsets.UTF_8);
+                out.ensure(6 + name.length).putInt(type.getKey()).putShort((short) name.length).put(name);
+            }
+
+            // Chunks are copied through these, so compressed chunks are decoded once per column
+            long[] timestamps = new long[RecordSeries.MAX_CHUNK_CAPACITY];
+            double[] values = new double[RecordSeries.MAX_CHUNK_CAPACITY];
+            for (Map.Entry<Patient, List<SeriesView>> entry : views.entrySet()) {
+                for (SeriesView view : entry.getValue()) {
+                    int count = view.size();
+                    out.ensure(SERIES_HEADER_BYTES).putInt(entry.getKey().getPatientId()).putInt(view.getTypeId())
+                            .putLong(view.getLastLsn()).putInt(count);
+                    for (int c = 0; c < view.chunkCount(); c++) {
+                        int n = view.chunkSize(c);
+                        view.chunk(c).decode(timestamps, values, 0, n);
+                        out.putLongs(timestamps, 0, n);
+                    }
+                    for (int c = 0; c < view.chunkCount(); c++) {
+                        int n = view.chunkSize(c);
+                        view.chunk(c).decode(timestamps, values, 0, n);
+                        out.putDoubles(values, 0, n);
+                    }
+                    readings += count;
+                }
+            }
+            out.ensure(4).putInt(END_OF_SERIES);
+            out.flush();
+            channel.force(true);
+        }
+        return readings;
+    }
+
+    /**
+     * Loads a snapshot into {@code storage}, which should be empty. Each
+     * series' columns are memory-mapped and bulk-copied into its chunks.
+     *
+     * @param file    the snapshot file
+     * @param storage the storage to load into
+     * @return the {@code nextLsn} recorded in the snapshot
+     * @throws IOException if the file cannot be read or is not a snapshot
+     */
+    static long load(Path file, DataStorage storage) throws IOException {
+        RecordTypeRegistry recordTypes = RecordTypeRegistry.getInstance();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ChannelReader in = new ChannelReader(channel);
+            ByteBuffer header = in.read(16);
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IOException("Not a storage snapshot: " + file);
+            }
+            long nextLsn = header.getLong();
+
+            // Map the snapshot's type ids to this process' ids
+            int typeCount = in.read(4).getInt();
+            Map<Integer, Integer> typeIds = new HashMap<>();
+            for (int t = 0; t < typeCount; t++) {
+                ByteBuffer type = in.read(6);
+                int snapshotTypeId = type.getInt();
+                byte[] name = new byte[type.getShort()];
+                in.read(name.length).get(name);
+                typeIds.put(snapshotTypeId, recordTypes.idOf(new String(name, StandardCharsets.UTF_8)));
+            }
+
+            while (true) {
+                int patientId = in.read(4).getInt();
+                if (patientId == END_OF_SERIES) {
+                    break;
+                }
+                ByteBuffer series = in.read(SERIES_HEADER_BYTES - 4);
+                int typeId = typeIds.get(series.getInt());
+                long lastLsn = series.getLong();
+                int count = series.getInt();
+                long columnBytes = (long) count * Long.BYTES;
+                LongBuffer timestamps = map(channel, in.position, columnBytes).asLongBuffer();
+                DoubleBuffer values = map(channel, in.position + columnBytes, columnBytes).asDoubleBuffer();
+                storage.getOrCreatePatient(patientId).seriesFor(typeId).load(timestamps, values, count, lastLsn);
+                in.position += 2 * columnBytes;
+            }
+            return nextLsn;
+        }
+    }
+
+    private static ByteBuffer map(FileChannel channel, long position, long size) throws IOException {
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Snapshot column too large to map: " + size + " bytes");
+        }
+        MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+        return mapped.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Buffers little-endian primitives on their way to a channel. Also used
+     * by {@link ColumnarDataExporter}.
+     */
+    static class ChannelWriter {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+        private long flushed; // Bytes handed to the channel so far
+
+        ChannelWriter(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        ByteBuffer ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+            return buffer;
+        }
+
+        /**
+         * Writes a column of longs in bulk.
+         */
+        void putLongs(long[] column, int offset, int count) throws IOException {
+            while (count > 0) {
+                int n = Math.min(count, ensure(Long.BYTES).remaining() / Long.BYTES);
+                buffer.asLongBuffer().put(column, offset, n);
+                buffer.position(buffer.position() + n * Long.BYTES);
+                offset += n;
+                count -= n;
+            }
+        }
+
+        /**
+         * Writes a column of doubles in bulk.
+         */
+        void putDoubles(double[] column, int offset, int count) throws IOException {
+            while (count > 0) {
+                int n = Math.min(count, ensure(Double.BYTES).remaining() / Double.BYTES);
+                buffer.asDoubleBuffer().put(column, offset, n);
+                buffer.position(buffer.position() + n * Double.BYTES);
+                offset += n;
+                count -= n;
+            }
+        }
+
+        /**
+         * Returns the number of bytes written so far, including buffered ones.
+         */
+        long position() {
+            return flushed + buffer.position();
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            flushed += buffer.remaining();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+
+    /**
+     * Reads small little-endian headers at an explicit file position.
+     */
+    private static class ChannelReader {
+        private final FileChannel channel;
+        long position;
+
+        ChannelReader(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        ByteBuffer read(int bytes) throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(bytes).order(ByteOrder.LITTLE_ENDIAN);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0) {
+                    throw new IOException("Unexpected end of snapshot");
+                }
+            }
+            position += bytes;
+            return buffer.flip();
+        }
+    }
+}
@@ -0,0 +1,295 @@
+package com.data_management;
+
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A registration made with
+ * {@link DataStorage#subscribe(ReadingFilter, ReadingListener, SubscriptionOptions)}
+ * that pushes newly stored readings to a listener.
+ *
+ * <p>Ingest threads only copy accepted readings into a bounded ring queue
+ * and, if no delivery is in progress, hand one delivery task to the
+ * executor. The task drains the queue in passes of up to the maximum batch
+ * size, splits each pass into one {@link ReadingUpdate} per patient and
+ * record type, and calls the listener; so the listener never runs on an
+ * ingest thread, calls never overlap, and a busy subscription costs one
+ * task per backlog rather than one per reading. When the queue is full, the
+ * subscription's {@link OverflowPolicy} decides.
+ */
+public class Subscription {
+    private final DataStorage storage;
+    private final ReadingFilter filter;
+    private final ReadingListener listener;
+    private final Executor executor;
+    private final OverflowPolicy overflowPolicy;
+    private final int maxBatchSize;
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    // Ring queue of readings, guarded by this subscription's monitor.
+    private final int[] queuedPatients;
+    private final int[] queuedTypes;
+    private final long[] queuedTimestamps;
+    private final double[] queuedValues;
+    private int head; // Ring position of the oldest queued reading
+    private int size;
+    private boolean draining; // A delivery task is scheduled or running
+    private volatile boolean cancelled;
+
+    // Scratch space of the delivery task; only one task runs at a time.
+    private final int[] batchPatients;
+    private final int[] batchTypes;
+    private final long[] batchTimestamps;
+    private final double[] batchValues;
+    private final int[] batchGroups;
+    private final long[] groupKeys;
+    private final int[] groupSlots;
+
+    /**
+     * Creates a subscription; it receives readings once registered with the
+     * storage.
+     *
+     * @param storage  the storage to unregister from on cancellation
+     * @param filter   selects the readings to deliver
+     * @param listener receives the readings
+     * @param options  the delivery settings
+     * @param executor the executor to deliver on
+     */
+    Subscription(DataStorage storage, ReadingFilter filter, ReadingListener listener, SubscriptionOptions options,
+            Executor executor) {
+        this.storage = storage;
+        this.filter = filter;
+        this.listener = listener;
+        this.executor = executor;
+        this.overflowPolicy = options.getOverflowPolicy();
+        this.maxBatchSize = Math.min(options.getMaxBatchSize(), options.getQueueCapacity());
+        int capacity = options.getQueueCapacity();
+        queuedPatients = new int[capacity];
+        queuedTypes = new int[capacity];
+        queuedTimestamps = new long[capacity];
+        queuedValues = new double[capacity];
+        batchPatients = new int[maxBatchSize];
+        batchTypes = new int[maxBatchSize];
+        batchTimestamps = new long[maxBatchSize];
+        batchValues = new double[maxBatchSize];
+        batchGroups = new int[maxBatchSize];
+        groupKeys = new long[Integer.highestOneBit(maxBatchSize) << 2];
+        groupSlots = new int[groupKeys.length];
+    }
+
+    /**
+     * Stops delivery and unregisters from the storage. Queued readings are
+     * discarded, and ingest threads waiting for room are released.
+     */
+    public void cancel() {
+        storage.unsubscribe(this);
+        synchronized (this) {
+            cancelled = true;
+            size = 0;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Returns whether {@link #cancel()} was called.
+     *
+     * @return {@code true} once cancelled
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Returns the number of readings passed to the listener so far.
+     *
+     * @return the delivered reading count
+     */
+    public long getDeliveredCount() {
+        return delivered.get();
+    }
+
+    /**
+     * Returns the number of readings discarded because the queue was full.
+     *
+     * @return the dropped reading count
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    boolean accepts(int patientId, int recordTypeId) {
+        return filter.accepts(patientId, recordTypeId);
+    }
+
+    /**
+     * Queues a run of stored readings of one patient and record type,
+     * applying the overflow policy if the queue fills up.
+     *
+     * @param patientId    the patient the readings belong to
+     * @param recordTypeId the record type id
+     * @param timestamps   the timestamp column
+     * @param values       the value column
+     * @param offset       the position of the first reading in the columns
+     * @param count        the number of readings
+     */
+    void offer(int patientId, int recordTypeId, long[] timestamps, double[] values, int offset, int count) {
+        int next = offset;
+        int end = offset + count;
+        while (true) {
+            boolean schedule;
+            synchronized (this) {
+                if (cancelled) {
+                    return;
+                }
+                int capacity = queuedTimestamps.length;
+                while (next < end) {
+                    if (size == capacity) {
+                        if (overflowPolicy == OverflowPolicy.DROP_NEWEST) {
+                            dropped.addAndGet(end - next);
+                            next = end;
+                            break;
+                        } else if (overflowPolicy == OverflowPolicy.DROP_OLDEST) {
+                            head = (head + 1) % capacity;
+                            size--;
+                            dropped.incrementAndGet();
+                        } else {
+                            break; // BLOCK: wait for the delivery task below
+                        }
+                    }
+                    int slot = (head + size) % capacity;
+                    queuedPatients[slot] = patientId;
+                    queuedTypes[slot] = recordTypeId;
+                    queuedTimestamps[slot] = timestamps[next];
+                    queuedValues[slot] = values[next];
+                    size++;
+                    next++;
+                }
+                schedule = !draining && size > 0;
+                if (schedule) {
+                    draining = true;
+                } else if (next < end) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        dropped.addAndGet(end - next);
+                        return;
+                    }
+                    continue;
+                }
+            }
+            // Outside the monitor, so a direct executor cannot deliver while holding it
+            if (schedule && !schedule()) {
+                dropped.addAndGet(end - next); // Nothing will make room
+                return;
+            }
+            if (next == end) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Hands a delivery task to the executor.
+     *
+     * @return {@code false} if the executor rejected it; the queued readings
+     *         then wait for the next offer to try again
+     */
+    private boolean schedule() {
+        try {
+            executor.execute(this::drain);
+            return true;
+        } catch (RejectedExecutionException e) {
+            System.err.println("Error scheduling reading delivery: " + e.getMessage());
+            synchronized (this) {
+                draining = false;
+                notifyAll();
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Delivers queued readings until the queue is empty.
+     */
+    private void drain() {
+        while (true) {
+            int count;
+            synchronized (this) {
+                if (cancelled || size == 0) {
+                    draining = false;
+                    return;
+                }
+                count = Math.min(size, maxBatchSize);
+                int capacity = queuedTimestamps.length;
+                for (int i = 0; i < count; i++) {
+                    int slot = (head + i) % capacity;
+                    batchPatients[i] = queuedPatients[slot];
+                    batchTypes[i] = queuedTypes[slot];
+                    batchTimestamps[i] = queuedTimestamps[slot];
+                    batchValues[i] = queuedValues[slot];
+                }
+                head = (head + count) % capacity;
+                size -= count;
+                notifyAll(); // Room for blocked ingest threads
+            }
+            deliver(count);
+        }
+    }
+
+    /**
+     * Splits a pass into one update per patient and record type, keeping
+     * the queue order within each, and passes them to the listener.
+     */
+    private void deliver(int count) {
+        int groups = 0;
+        int[] groupSizes = new int[count];
+        int[] groupFirst = new int[count];
+        Arrays.fill(groupKeys, -1L);
+        int mask = groupKeys.length - 1;
+        for (int i = 0; i < count; i++) {
+            long key = ((long) batchPatients[i] << 32) | (batchTypes[i] & 0xffffffffL);
+            int slot = (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+            while (groupKeys[slot] != -1L && groupKeys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            if (groupKeys[slot] == -1L) {
+                groupKeys[slot] = key;
+                groupSlots[slot] = groups;
+                groupFirst[groups] = i;
+                groups++;
+            }
+            int group = groupSlots[slot];
+            batchGroups[i] = group;
+            groupSizes[group]++;
+        }
+        long[][] timestamps = new long[groups][];
+        double[][] values = new double[groups][];
+        for (int g = 0; g < groups; g++) {
+            timestamps[g] = new long[groupSizes[g]];
+            values[g] = new double[groupSizes[g]];
+            groupSizes[g] = 0; // Reused as the fill position
+        }
+        for (int i = 0; i < count; i++) {
+            int g = batchGroups[i];
+            timestamps[g][groupSizes[g]] = batchTimestamps[i];
+            values[g][groupSizes[g]++] = batchValues[i];
+        }
+        for (int g = 0; g < groups; g++) {
+            if (cancelled) {
+                return;
+            }
+            int first = groupFirst[g];
+            try {
+                listener.onReadings(new ReadingUpdate(batchPatients[first], batchTypes[first], timestamps[g],
+                        values[g]));
+            } catch (RuntimeException e) {
+                System.err.println("Error in reading listener: " + e.getMessage());
+            }
+            delivered.addAndGet(timestamps[g].length);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.data_management;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Delivery settings of a {@link Subscription}. The defaults deliver on a
+ * shared pool of daemon threads, queue up to
+ * {@link #DEFAULT_QUEUE_CAPACITY} readings and drop the oldest when full.
+ */
+public class SubscriptionOptions {
+    public static final int DEFAULT_QUEUE_CAPACITY = 8192;
+    public static final int DEFAULT_MAX_BATCH_SIZE = 1024;
+
+    private Executor executor;
+    private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+    private int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+    private OverflowPolicy overflowPolicy = OverflowPolicy.DROP_OLDEST;
+
+    /**
+     * Sets the executor that runs the listener.
+     *
+     * @param executor the executor, or {@code null} for the shared default
+     * @return these options
+     */
+    public SubscriptionOptions setExecutor(Executor executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    /**
+     * Sets how many readings may wait for delivery.
+     *
+     * @param queueCapacity the queue capacity, in readings
+     * @return these options
+     * @throws IllegalArgumentException if the capacity is not positive
+     */
+    public SubscriptionOptions setQueueCapacity(int queueCapacity) {
+        if (queueCapacity <= 0) {
+            throw new IllegalArgumentException("Queue capacity must be positive: " + queueCapacity);
+        }
+        this.queueCapacity = queueCapacity;
+        return this;
+    }
+
+    /**
+     * Sets how many queued readings are taken at once and split into
+     * per-patient, per-type updates.
+     *
+     * @param maxBatchSize the most readings handled per pass
+     * @return these options
+     * @throws IllegalArgumentException if the size is not positive
+     */
+    public SubscriptionOptions setMaxBatchSize(int maxBatchSize) {
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive: " + maxBatchSize);
+        }
+        this.maxBatchSize = maxBatchSize;
+        return this;
+    }
+
+    /**
+     * Sets what happens to new readings when the queue is full.
+     *
+     * @param overflowPolicy the policy
+     * @return these options
+     */
+    public SubscriptionOptions setOverflowPolicy(OverflowPolicy overflowPolicy) {
+        if (overflowPolicy == null) {
+            throw new IllegalArgumentException("Overflow policy must not be null");
+        }
+        this.overflowPolicy = overflowPolicy;
+        return this;
+    }
+
+    /**
+     * Returns the executor that runs the listener.
+     *
+     * @return the executor, or {@code null} for the shared default
+     */
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Returns how many readings may wait for delivery.
+     *
+     * @return the queue capacity, in readings
+     */
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * Returns how many queued readings are handled per pass.
+     *
+     * @return the most readings handled per pass
+     */
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    /**
+     * Returns what happens to new readings when the queue is full.
+     *
+     * @return the policy
+     */
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+}
@@ -0,0 +1,127 @@
+package com.data_management;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Settings of tiered storage (see
+ * {@link DataStorage#enableTiering(java.nio.file.Path, TieringOptions)}). The
+ * defaults keep the {@link #DEFAULT_HOT_PATIENTS} most recently queried
+ * patients entirely in memory, keep the last hour of every other patient in
+ * memory too, and move the rest of their history to disk once a minute.
+ */
+public class TieringOptions {
+    public static final int DEFAULT_HOT_PATIENTS = 5_000;
+    public static final long DEFAULT_HOT_WINDOW_MS = 3_600_000L;
+    public static final long DEFAULT_PAGE_CACHE_BYTES = 64L << 20;
+    public static final long DEFAULT_INTERVAL_MS = 60_000L;
+
+    private int hotPatients = DEFAULT_HOT_PATIENTS;
+    private long hotWindowMillis = DEFAULT_HOT_WINDOW_MS;
+    private long pageCacheBytes = DEFAULT_PAGE_CACHE_BYTES;
+    private long intervalMillis = DEFAULT_INTERVAL_MS;
+
+    /**
+     * Sets how many of the most recently queried patients keep their whole
+     * history in memory.
+     *
+     * @param hotPatients the size of the hot set
+     * @return these options
+     * @throws IllegalArgumentException if the size is negative
+     */
+    public TieringOptions setHotPatients(int hotPatients) {
+        if (hotPatients < 0) {
+            throw new IllegalArgumentException("Hot patient count must not be negative: " + hotPatients);
+        }
+        this.hotPatients = hotPatients;
+        return this;
+    }
+
+    /**
+     * Sets how much of the newest history of a cold patient stays in
+     * memory, so that alert windows and recent trends never touch the disk.
+     *
+     * @param hotWindow the span kept in memory, before each series' newest
+     *                  reading
+     * @param unit      the unit of {@code hotWindow}
+     * @return these options
+     * @throws IllegalArgumentException if the span is negative
+     */
+    public TieringOptions setHotWindow(long hotWindow, TimeUnit unit) {
+        if (hotWindow < 0) {
+            throw new IllegalArgumentException("Hot window must not be negative: " + hotWindow);
+        }
+        this.hotWindowMillis = unit.toMillis(hotWindow);
+        return this;
+    }
+
+    /**
+     * Sets how much memory holds chunks paged in from disk. The least
+     * recently read chunks are dropped first.
+     *
+     * @param pageCacheBytes the cache size, in bytes
+     * @return these options
+     * @throws IllegalArgumentException if the size is negative
+     */
+    public TieringOptions setPageCacheBytes(long pageCacheBytes) {
+        if (pageCacheBytes < 0) {
+            throw new IllegalArgumentException("Page cache size must not be negative: " + pageCacheBytes);
+        }
+        this.pageCacheBytes = pageCacheBytes;
+        return this;
+    }
+
+    /**
+     * Sets how often inactive patients are moved to disk in the background.
+     *
+     * @param interval the time between passes, or zero to only move them on
+     *                 {@link DataStorage#enforceTiering()}
+     * @param unit     the unit of {@code interval}
+     * @return these options
+     * @throws IllegalArgumentException if the interval is negative
+     */
+    public TieringOptions setInterval(long interval, TimeUnit unit) {
+        if (interval < 0) {
+            throw new IllegalArgumentException("Interval must not be negative: " + interval);
+        }
+        this.intervalMillis = unit.toMillis(interval);
+        return this;
+    }
+
+    /**
+     * Returns how many recently queried patients stay entirely in memory.
+     *
+     * @return the size of the hot set
+     */
+    public int getHotPatients() {
+        return hotPatients;
+    }
+
+    /**
+     * Returns how much of the newest history of a cold patient stays in
+     * memory.
+     *
+     * @return the span, in milliseconds
+     */
+    public long getHotWindowMillis() {
+        return hotWindowMillis;
+    }
+
+    /**
+     * Returns how much memory holds chunks paged in from disk.
+     *
+     * @return the cache size, in bytes
+     */
+    public long getPageCacheBytes() {
+        return pageCacheBytes;
+    }
+
+    /**
+     * Returns how often inactive patients are moved to disk.
+     *
+     * @return the time between passes in milliseconds, or zero if passes
+     *         only run on demand
+     */
+    public long getIntervalMillis() {
+        return intervalMillis;
+    }
+}
@@ -0,0 +1,32 @@
+package com.data_management;
+
+/**
+ * The version of a storage's contents, advanced by each
+ * {@link StorageSnapshot}. Every write to a series happens at the version
+ * current when it takes the series lock; the first write of a new version
+ * saves a view of the series as it was before (see
+ * {@link RecordSeries#viewAt(long)}), so a snapshot sees exactly the writes
+ * of older versions without ever stopping the writers.
+ */
+class VersionClock {
+    private volatile long version;
+
+    /**
+     * Returns the current version.
+     *
+     * @return the version new writes belong to
+     */
+    long current() {
+        return version;
+    }
+
+    /**
+     * Starts a new version. Callers must not advance the clock again until
+     * they have collected the views of the version they started.
+     *
+     * @return the new version; writes of older versions form the snapshot
+     */
+    synchronized long advance() {
+        return ++version;
+    }
+}
@@ -0,0 +1,100 @@
+package com.data_management;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The extent of a sliding window over the newest readings of a series:
+ * either a number of readings or a span of time back from the newest
+ * reading. Series keep the statistics of every window they were queried
+ * with up to date as readings arrive (see
+ * {@link Patient#getWindowStats(int, WindowSpec)}), so a check should use
+ * the same few specs on every evaluation, e.g. as constants.
+ */
+public final class WindowSpec {
+    private final int readings;
+    private final long durationMillis;
+
+    private WindowSpec(int readings, long durationMillis) {
+        this.readings = readings;
+        this.durationMillis = durationMillis;
+    }
+
+    /**
+     * Creates a window over the newest readings.
+     *
+     * @param readings the number of readings in a full window
+     * @return the window spec
+     * @throws IllegalArgumentException if {@code readings} is less than one
+     */
+    public static WindowSpec ofReadings(int readings) {
+        if (readings < 1) {
+            throw new IllegalArgumentException("A window needs at least one reading: " + readings);
+        }
+        return new WindowSpec(readings, 0);
+    }
+
+    /**
+     * Creates a window over the readings taken within a span of time up to
+     * and including the newest one.
+     *
+     * @param duration how far back from the newest reading the window reaches
+     * @param unit     the unit of {@code duration}
+     * @return the window spec
+     * @throws IllegalArgumentException if {@code duration} is negative
+     */
+    public static WindowSpec ofDuration(long duration, TimeUnit unit) {
+        if (duration < 0) {
+            throw new IllegalArgumentException("Duration must not be negative: " + duration);
+        }
+        return new WindowSpec(0, unit.toMillis(duration));
+    }
+
+    /**
+     * Returns whether the window is bounded by a number of readings.
+     *
+     * @return {@code true} for a count window, {@code false} for a time window
+     */
+    public boolean isCountBased() {
+        return readings > 0;
+    }
+
+    /**
+     * Returns the number of readings in a full count window.
+     *
+     * @return the reading count, or zero for a time window
+     */
+    public int getReadings() {
+        return readings;
+    }
+
+    /**
+     * Returns how far back from the newest reading a time window reaches.
+     *
+     * @return the span in milliseconds, or zero for a count window
+     */
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof WindowSpec)) {
+            return false;
+        }
+        WindowSpec other = (WindowSpec) o;
+        return readings == other.readings && durationMillis == other.durationMillis;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * readings + Long.hashCode(durationMillis);
+    }
+
+    @Override
+    public String toString() {
+        return isCountBased() ? "last " + readings + " readings" : "last " + durationMillis + " ms";
+    }
+}
@@ -0,0 +1,154 @@
+package com.data_management;
+
+/**
+ * Summary of the readings in a sliding window (see {@link WindowSpec}), as
+ * maintained by a series while readings arrive.
+ */
+public class WindowStats {
+    private final long count;
+    private final long startTime;
+    private final long endTime;
+    private final double latest;
+    private final double mean;
+    private final double variance;
+    private final double min;
+    private final double max;
+    private final double minChange;
+    private final double maxChange;
+
+    /**
+     * Constructs a new WindowStats.
+     *
+     * @param count     the number of readings in the window
+     * @param startTime the time of the oldest reading, in milliseconds since UNIX epoch
+     * @param endTime   the time of the newest reading, in milliseconds since UNIX epoch
+     * @param latest    the value of the newest reading
+     * @param mean      the mean of the readings
+     * @param variance  the population variance of the readings
+     * @param min       the smallest reading
+     * @param max       the largest reading
+     * @param minChange the smallest difference between consecutive readings
+     * @param maxChange the largest difference between consecutive readings
+     */
+    public WindowStats(long count, long startTime, long endTime, double latest, double mean, double variance,
+            double min, double max, double minChange, double maxChange) {
+        this.count = count;
+        this.startTime = startTime;
+        this.endTime = endTime;
+        this.latest = latest;
+        this.mean = mean;
+        this.variance = variance;
+        this.min = min;
+        this.max = max;
+        this.minChange = minChange;
+        this.maxChange = maxChange;
+    }
+
+    /**
+     * Returns the number of readings in the window.
+     *
+     * @return the reading count
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the time of the oldest reading in the window.
+     *
+     * @return the start time, in milliseconds since UNIX epoch
+     */
+    public long getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * Returns the time of the newest reading in the window.
+     *
+     * @return the end time, in milliseconds since UNIX epoch
+     */
+    public long getEndTime() {
+        return endTime;
+    }
+
+    /**
+     * Returns the value of the newest reading in the window.
+     *
+     * @return the latest value
+     */
+    public double getLatest() {
+        return latest;
+    }
+
+    /**
+     * Returns the mean of the readings in the window.
+     *
+     * @return the mean value
+     */
+    public double getMean() {
+        return mean;
+    }
+
+    /**
+     * Returns the population variance of the readings in the window.
+     *
+     * @return the variance
+     */
+    public double getVariance() {
+        return variance;
+    }
+
+    /**
+     * Returns the population standard deviation of the readings in the
+     * window.
+     *
+     * @return the standard deviation
+     */
+    public double getStandardDeviation() {
+        return Math.sqrt(variance);
+    }
+
+    /**
+     * Returns the smallest reading in the window.
+     *
+     * @return the minimum value
+     */
+    public double getMin() {
+        return min;
+    }
+
+    /**
+     * Returns the largest reading in the window.
+     *
+     * @return the maximum value
+     */
+    public double getMax() {
+        return max;
+    }
+
+    /**
+     * Returns the smallest change from one reading in the window to the
+     * next, e.g. positive if every reading rose.
+     *
+     * @return the minimum change, or {@code NaN} for fewer than two readings
+     */
+    public double getMinChange() {
+        return minChange;
+    }
+
+    /**
+     * Returns the largest change from one reading in the window to the next,
+     * e.g. negative if every reading fell.
+     *
+     * @return the maximum change, or {@code NaN} for fewer than two readings
+     */
+    public double getMaxChange() {
+        return maxChange;
+    }
+
+    @Override
+    public String toString() {
+        return "WindowStats{count=" + count + ", startTime=" + startTime + ", endTime=" + endTime
+                + ", mean=" + mean + ", stdDev=" + getStandardDeviation() + ", min=" + min + ", max=" + max + "}";
+    }
+}
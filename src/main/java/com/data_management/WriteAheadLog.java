@@ -0,0 +1,376 @@
+package com.data_management;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only, group-committed log of every reading added to
+ * {@link DataStorage}.
+ *
+ * <p>Appends only copy the reading into an in-memory buffer. A background
+ * task writes the buffer as one frame ({@code [length][crc32][entries]}) and
+ * forces it to disk every commit interval, so many readings share a single
+ * fsync and a single checksum. {@link #sync()}
+ * blocks until everything appended so far is durable.
+ *
+ * <p>The log is split into segments named {@code wal-<sequence>.log}. Each
+ * reading carries a log sequence number (LSN) so that replay on top of a
+ * snapshot can skip readings the snapshot already contains. Record type ids
+ * are only valid within one process, so each segment declares the names of
+ * the types it uses.
+ */
+class WriteAheadLog {
+    static final String SEGMENT_PREFIX = "wal-";
+    static final String SEGMENT_SUFFIX = ".log";
+
+    private static final byte READING_ENTRY = 1;
+    private static final byte TYPE_ENTRY = 2;
+    private static final int FRAME_HEADER_BYTES = 4 + 4; // payload length, CRC32
+    private static final int READING_BYTES = 1 + 8 + 4 + 4 + 8 + 8; // tag, lsn, patient, type, timestamp, value
+    private static final int MAX_BUFFERED_BYTES = 1 << 20;
+
+    private final Path directory;
+    private final ScheduledExecutorService committer;
+    private final RecordTypeRegistry recordTypes = RecordTypeRegistry.getInstance();
+
+    // Guarded by this; frames are only written to the segment while holding it, so they stay in LSN order
+    private ByteBuffer buffer = newBuffer(64 * 1024);
+    private final BitSet typesDeclared = new BitSet(); // Types declared in the current segment
+    private FileChannel segment;
+    private long segmentSequence;
+    private long nextLsn;
+    private long appendedLsn = -1;
+
+    // Guarded by commitLock
+    private final Object commitLock = new Object();
+    private long durableLsn = -1;
+
+    /**
+     * Opens a new segment in {@code directory} and starts group commits.
+     *
+     * @param directory        the log directory
+     * @param segmentSequence  the sequence number of the first segment to write
+     * @param firstLsn         the LSN given to the first appended reading
+     * @param commitIntervalMs how often buffered readings are forced to disk
+     * @throws IOException if the segment cannot be created
+     */
+    WriteAheadLog(Path directory, long segmentSequence, long firstLsn, long commitIntervalMs) throws IOException {
+        this.directory = directory;
+        this.nextLsn = firstLsn;
+        openSegment(segmentSequence);
+        this.committer = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "data-storage-wal");
+            thread.setDaemon(true);
+            return thread;
+        });
+        committer.scheduleWithFixedDelay(() -> {
+            try {
+                commit();
+            } catch (IOException e) {
+                System.err.println("Error committing write-ahead log: " + e.getMessage());
+            }
+        }, commitIntervalMs, commitIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Buffers a reading for the next group commit.
+     *
+     * @param patientId the patient the reading belongs to
+     * @param typeId    the record type id
+     * @param timestamp the time of the reading
+     * @param value     the measured value
+     * @return the LSN assigned to the reading
+     */
+    synchronized long append(int patientId, int typeId, long timestamp, double value) {
+        if (!typesDeclared.get(typeId)) {
+            declareType(typeId);
+        }
+        return putReading(patientId, typeId, timestamp, value);
+    }
+
+    /**
+     * Buffers a run of readings of one series for the next group commit,
+     * taking the log lock once.
+     *
+     * @param patientId  the patient the readings belong to
+     * @param typeId     the record type id
+     * @param timestamps the timestamp column
+     * @param values     the value column
+     * @param offset     the position of the first reading in the columns
+     * @param count      the number of readings
+     * @return the LSN assigned to the last reading
+     */
+    synchronized long append(int patientId, int typeId, long[] timestamps, double[] values, int offset, int count) {
+        if (!typesDeclared.get(typeId)) {
+            declareType(typeId);
+        }
+        long lsn = appendedLsn;
+        for (int i = offset; i < offset + count; i++) {
+            lsn = putReading(patientId, typeId, timestamps[i], values[i]);
+        }
+        return lsn;
+    }
+
+    private long putReading(int patientId, int typeId, long timestamp, double value) {
+        if (buffer.remaining() < READING_BYTES) {
+            growBuffer();
+        }
+        long lsn = nextLsn++;
+        buffer.put(READING_ENTRY).putLong(lsn).putInt(patientId).putInt(typeId).putLong(timestamp).putDouble(value);
+        appendedLsn = lsn;
+        return lsn;
+    }
+
+    /**
+     * Blocks until every reading appended so far has been forced to disk.
+     *
+     * @throws IOException if writing the log fails
+     */
+    void sync() throws IOException {
+        commit();
+    }
+
+    /**
+     * Commits the buffer and starts a new segment. Every reading appended
+     * before this call is in an older segment.
+     *
+     * @return the sequence number of the new segment
+     * @throws IOException if the segment cannot be switched
+     */
+    long rotate() throws IOException {
+        synchronized (commitLock) {
+            synchronized (this) {
+                writeFrame(buffer, segment);
+                segment.force(false);
+                durableLsn = appendedLsn;
+                segment.close();
+                openSegment(segmentSequence + 1);
+                return segmentSequence;
+            }
+        }
+    }
+
+    /**
+     * Returns the LSN the next appended reading will get.
+     *
+     * @return the next LSN
+     */
+    synchronized long nextLsn() {
+        return nextLsn;
+    }
+
+    /**
+     * Stops group commits, makes all appended readings durable and closes the
+     * current segment.
+     *
+     * @throws IOException if the final commit fails
+     */
+    void close() throws IOException {
+        committer.shutdownNow();
+        synchronized (commitLock) {
+            synchronized (this) {
+                writeFrame(buffer, segment);
+                segment.force(false);
+                segment.close();
+            }
+        }
+    }
+
+    /**
+     * Writes whatever has been buffered as one frame and forces it to disk.
+     * Copying the frame to the OS is quick and done under the append lock;
+     * appenders carry on while the slow fsync runs.
+     */
+    private void commit() throws IOException {
+        synchronized (commitLock) {
+            long lsn;
+            FileChannel channel;
+            synchronized (this) {
+                if (appendedLsn == durableLsn) {
+                    return;
+                }
+                writeFrame(buffer, segment);
+                lsn = appendedLsn;
+                channel = segment;
+            }
+            channel.force(false);
+            durableLsn = lsn;
+        }
+    }
+
+    /**
+     * Writes the entries in {@code entries} as one checksummed frame and
+     * empties the buffer.
+     *
+     * @param entries the buffered entries
+     * @param channel the segment to write to
+     */
+    private static void writeFrame(ByteBuffer entries, FileChannel channel) throws IOException {
+        if (entries.position() == 0) {
+            return;
+        }
+        entries.flip();
+        ByteBuffer header = newBuffer(FRAME_HEADER_BYTES);
+        header.putInt(entries.remaining()).putInt(checksum(entries, 0, entries.remaining())).flip();
+        ByteBuffer[] frame = {header, entries};
+        while (entries.hasRemaining()) {
+            channel.write(frame);
+        }
+        entries.clear();
+    }
+
+    private void declareType(int typeId) {
+        byte[] name = recordTypes.nameOf(typeId).getBytes(StandardCharsets.UTF_8);
+        while (buffer.remaining() < 1 + 4 + 2 + name.length) {
+            growBuffer();
+        }
+        buffer.put(TYPE_ENTRY).putInt(typeId).putShort((short) name.length).put(name);
+        typesDeclared.set(typeId);
+    }
+
+    /**
+     * Makes room in the append buffer. Once the buffer reaches its limit the
+     * appender writes it out itself (without forcing it), which throttles
+     * ingestion to disk speed.
+     */
+    private void growBuffer() {
+        if (buffer.capacity() < MAX_BUFFERED_BYTES) {
+            ByteBuffer larger = newBuffer(buffer.capacity() * 2);
+            buffer.flip();
+            larger.put(buffer);
+            buffer = larger;
+            return;
+        }
+        try {
+            writeFrame(buffer, segment);
+        } catch (IOException e) {
+            throw new IllegalStateException("Error writing write-ahead log: " + e.getMessage(), e);
+        }
+    }
+
+    private void openSegment(long sequence) throws IOException {
+        Files.createDirectories(directory);
+        this.segment = FileChannel.open(segmentPath(directory, sequence),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        this.segmentSequence = sequence;
+        this.typesDeclared.clear();
+    }
+
+    private static ByteBuffer newBuffer(int capacity) {
+        return ByteBuffer.allocate(capacity).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static int checksum(ByteBuffer buffer, int offset, int length) {
+        CRC32 crc = new CRC32();
+        ByteBuffer payload = buffer.duplicate();
+        payload.position(offset).limit(offset + length);
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+
+    static Path segmentPath(Path directory, long sequence) {
+        return directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, sequence, SEGMENT_SUFFIX));
+    }
+
+    /**
+     * Lists the segment sequence numbers present in a directory, in order.
+     *
+     * @param directory the log directory
+     * @return the sorted segment sequence numbers
+     * @throws IOException if the directory cannot be listed
+     */
+    static List<Long> listSegments(Path directory) throws IOException {
+        List<Long> sequences = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return sequences;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                sequences.add(Long.parseLong(name.substring(SEGMENT_PREFIX.length(),
+                        name.length() - SEGMENT_SUFFIX.length())));
+            }
+        }
+        sequences.sort(null);
+        return sequences;
+    }
+
+    /**
+     * Receives the readings found while replaying the log.
+     */
+    interface ReplayHandler {
+        /**
+         * Called for every intact reading, in log order.
+         *
+         * @param lsn        the reading's log sequence number
+         * @param patientId  the patient the reading belongs to
+         * @param recordType the record type name
+         * @param timestamp  the time of the reading
+         * @param value      the measured value
+         */
+        void onReading(long lsn, int patientId, String recordType, long timestamp, double value);
+    }
+
+    /**
+     * Replays one segment. Reading stops at the first torn or corrupted
+     * frame, which can only be the tail of the last write before a crash.
+     *
+     * @param path    the segment file
+     * @param handler receives each reading
+     * @return the highest LSN seen, or -1 if the segment holds no readings
+     * @throws IOException if the segment cannot be read
+     */
+    static long replaySegment(Path path, ReplayHandler handler) throws IOException {
+        Map<Integer, String> typeNames = new HashMap<>();
+        long maxLsn = -1;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            while (data.remaining() >= FRAME_HEADER_BYTES) {
+                int length = data.getInt();
+                int crc = data.getInt();
+                if (length <= 0 || length > data.remaining() || checksum(data, data.position(), length) != crc) {
+                    System.err.println("Stopping replay at damaged frame in " + path);
+                    break;
+                }
+                int end = data.position() + length;
+                while (data.position() < end) {
+                    byte tag = data.get();
+                    if (tag == TYPE_ENTRY) {
+                        int typeId = data.getInt();
+                        byte[] name = new byte[data.getShort()];
+                        data.get(name);
+                        typeNames.put(typeId, new String(name, StandardCharsets.UTF_8));
+                    } else if (tag == READING_ENTRY) {
+                        long lsn = data.getLong();
+                        int patientId = data.getInt();
+                        String recordType = typeNames.get(data.getInt());
+                        long timestamp = data.getLong();
+                        double value = data.getDouble();
+                        handler.onReading(lsn, patientId, recordType, timestamp, value);
+                        maxLsn = Math.max(maxLsn, lsn);
+                    } else {
+                        throw new IOException("Unknown write-ahead log entry " + tag + " in " + path);
+                    }
+                }
+            }
+        }
+        return maxLsn;
+    }
+}
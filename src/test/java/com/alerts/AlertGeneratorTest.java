@@ -11,6 +11,7 @@ import java.util.ArrayList;
 import com.data_management.DataStorage;
 import com.data_management.Patient;
 import com.data_management.PatientRecord;
+import com.data_management.Subscription;
 
 /**
  * Tests for the AlertGenerator class.
@@ -257,6 +258,31 @@ public class AlertGeneratorTest {
         assertTrue(foundCombinedAlert, "Should find a HYPOTENSIVE_HYPOXEMIA alert");
     }
     
+    @Test
+    @DisplayName("Test hypotensive hypoxemia needs readings taken close together")
+    public void testHypotensiveHypoxemiaNeedsAlignedReadings() {
+        long now = System.currentTimeMillis();
+        patient.addRecord(91.0, "OxygenSaturation", now - 3_600_000L);
+        patient.addRecord(98.0, "OxygenSaturation", now - 20_000L);
+        patient.addRecord(85.0, "SystolicBP", now - 2 * 3_600_000L);
+        patient.addRecord(85.0, "SystolicBP", now);
+        patient.addRecord(97.0, "OxygenSaturation", now + 30_000L);
+
+        alertGenerator.evaluateData(patient);
+        for (Alert alert : alertGenerator.getActiveAlertsForPatient(PATIENT_ID)) {
+            assertNotEquals(AlertType.HYPOTENSIVE_HYPOXEMIA, alert.getType(),
+                    "An old low saturation should not be paired with the latest blood pressure");
+        }
+
+        patient.addRecord(90.0, "OxygenSaturation", now + 10_000L);
+        alertGenerator.evaluateData(patient);
+        boolean found = false;
+        for (Alert alert : alertGenerator.getActiveAlertsForPatient(PATIENT_ID)) {
+            found |= alert.getType() == AlertType.HYPOTENSIVE_HYPOXEMIA;
+        }
+        assertTrue(found, "The saturation closest to the blood pressure should be used");
+    }
+    
     @Test
     @DisplayName("Test ECG abnormal peak alert")
     public void testECGAbnormalPeakAlert() {
@@ -374,4 +400,42 @@ public class AlertGeneratorTest {
         assertTrue(foundPatient1Alert, "Should find alert for patient 1");
         assertTrue(foundPatient2Alert, "Should find alert for patient 2");
     }
-}
\ No newline at end of file
+
+    @Test
+    @DisplayName("Test readings named like the simulator's reach the alert rules")
+    public void testSimulatorRecordTypeNames() {
+        Patient simulated = new Patient(789);
+        simulated.addRecord(185.0, "SystolicPressure", System.currentTimeMillis());
+        simulated.addRecord(90.0, "Saturation", System.currentTimeMillis());
+        
+        alertGenerator.evaluateData(simulated);
+        
+        List<AlertType> types = new ArrayList<>();
+        for (Alert alert : alertGenerator.getActiveAlertsForPatient(789)) {
+            types.add(alert.getType());
+        }
+        assertTrue(types.contains(AlertType.HIGH_SYSTOLIC_BP), "SystolicPressure should be read as SystolicBP");
+        assertTrue(types.contains(AlertType.LOW_OXYGEN_SATURATION), "Saturation should be read as OxygenSaturation");
+    }
+
+    @Test
+    @DisplayName("Test monitoring raises alerts as readings arrive")
+    public void testStartMonitoring() throws InterruptedException {
+        dataStorage.clearAllData();
+        Subscription subscription = alertGenerator.startMonitoring();
+        try {
+            dataStorage.addPatientData(PATIENT_ID, 88.0, "OxygenSaturation", System.currentTimeMillis());
+            long deadline = System.currentTimeMillis() + 5_000;
+            while (alertGenerator.getActiveAlertsForPatient(PATIENT_ID).isEmpty()
+                    && System.currentTimeMillis() < deadline) {
+                Thread.sleep(1);
+            }
+            List<Alert> alerts = alertGenerator.getActiveAlertsForPatient(PATIENT_ID);
+            assertEquals(AlertType.LOW_OXYGEN_SATURATION, alerts.get(0).getType(),
+                    "A low saturation reading should raise an alert without polling");
+        } finally {
+            subscription.cancel();
+            dataStorage.clearAllData();
+        }
+    }
+}
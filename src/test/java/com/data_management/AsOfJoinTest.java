@@ -0,0 +1,156 @@
+package com.data_management;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for aligning the readings of several record types by time.
+ */
+public class AsOfJoinTest {
+
+    private static final int PATIENT_ID = 21;
+
+    private DataStorage storage;
+
+    @BeforeEach
+    public void setup() {
+        storage = DataStorage.getInstance();
+        storage.clearAllData();
+    }
+
+    private List<long[]> rows(AsOfJoin join, long startTime, long endTime) {
+        List<long[]> rows = new ArrayList<>();
+        storage.joinAsOf(PATIENT_ID, join, startTime, endTime, (timestamps, values) -> {
+            long[] row = new long[2 * timestamps.length];
+            for (int i = 0; i < timestamps.length; i++) {
+                row[2 * i] = timestamps[i];
+                row[2 * i + 1] = Double.isNaN(values[i]) ? -1 : (long) values[i];
+            }
+            rows.add(row);
+        });
+        return rows;
+    }
+
+    @Test
+    @DisplayName("Test previous and nearest matching within the tolerance")
+    public void testMatching() {
+        storage.addPatientData(PATIENT_ID, 80, "SystolicBP", 10_000);
+        storage.addPatientData(PATIENT_ID, 85, "SystolicBP", 70_000);
+        storage.addPatientData(PATIENT_ID, 90, "SystolicBP", 200_000);
+        storage.addPatientData(PATIENT_ID, 97, "OxygenSaturation", 5_000);
+        storage.addPatientData(PATIENT_ID, 96, "OxygenSaturation", 12_000);
+        storage.addPatientData(PATIENT_ID, 95, "OxygenSaturation", 64_000);
+        storage.addPatientData(PATIENT_ID, 94, "OxygenSaturation", 72_000);
+
+        AsOfJoin join = new AsOfJoin("SystolicBP", "OxygenSaturation").setTolerance(10, TimeUnit.SECONDS);
+        List<long[]> previous = rows(join, 0, Long.MAX_VALUE);
+        assertEquals(2, previous.size(), "Readings without a match should be skipped");
+        assertArrayEquals(new long[] {10_000, 80, 5_000, 97}, previous.get(0), "The reading before should match");
+        assertArrayEquals(new long[] {70_000, 85, 64_000, 95}, previous.get(1), "The reading before should match");
+
+        join.setMatch(JoinMatch.NEAREST);
+        List<long[]> nearest = rows(join, 0, Long.MAX_VALUE);
+        assertEquals(2, nearest.size(), "Readings without a match should be skipped");
+        assertArrayEquals(new long[] {10_000, 80, 12_000, 96}, nearest.get(0), "The closest reading should match");
+        assertArrayEquals(new long[] {70_000, 85, 72_000, 94}, nearest.get(1), "The closest reading should match");
+
+        // Matches may lie outside the range, driving readings may not
+        List<long[]> narrow = rows(join, 70_000, 70_000);
+        assertEquals(1, narrow.size(), "Only driving readings in range should make rows");
+        assertArrayEquals(new long[] {70_000, 85, 72_000, 94}, narrow.get(0), "Matches may lie past the range");
+
+        join.setTolerance(0, TimeUnit.SECONDS);
+        assertEquals(0, rows(join, 0, Long.MAX_VALUE).size(), "No timestamps are equal");
+        assertEquals(0, storage.joinAsOf(PATIENT_ID + 1, join, 0, Long.MAX_VALUE, (timestamps, values) -> {
+            fail("Unknown patients should have no rows");
+        }), "Unknown patients should have no rows");
+        assertThrows(IllegalArgumentException.class, () -> new AsOfJoin("SystolicBP"),
+                "A join needs two record types");
+        assertThrows(IllegalArgumentException.class, () -> join.setTolerance(-1, TimeUnit.SECONDS),
+                "Negative tolerances should be rejected");
+    }
+
+    @Test
+    @DisplayName("Test rows missing a match are kept when not every record type is required")
+    public void testLeftJoin() {
+        for (int i = 0; i < 4; i++) {
+            storage.addPatientData(PATIENT_ID, 60 + i, "HeartRate", 1_000L * i);
+        }
+        storage.addPatientData(PATIENT_ID, 98, "OxygenSaturation", 900);
+        storage.addPatientData(PATIENT_ID, 120, "SystolicBP", 2_000);
+
+        AsOfJoin join = new AsOfJoin("HeartRate", "OxygenSaturation", "SystolicBP")
+                .setTolerance(1, TimeUnit.SECONDS).setRequireAll(false);
+        assertEquals(3, join.getWidth(), "Every record type should have a column");
+        List<long[]> rows = rows(join, 0, Long.MAX_VALUE);
+        assertEquals(4, rows.size(), "Every driving reading should make a row");
+        assertArrayEquals(new long[] {0, 60, Long.MIN_VALUE, -1, Long.MIN_VALUE, -1}, rows.get(0),
+                "Gaps should be marked");
+        assertArrayEquals(new long[] {1_000, 61, 900, 98, Long.MIN_VALUE, -1}, rows.get(1),
+                "Each record type should be matched on its own");
+        assertArrayEquals(new long[] {2_000, 62, Long.MIN_VALUE, -1, 2_000, 120}, rows.get(2),
+                "Each record type should be matched on its own");
+        assertArrayEquals(new long[] {3_000, 63, Long.MIN_VALUE, -1, 2_000, 120}, rows.get(3),
+                "Each record type should be matched on its own");
+
+        join.setRequireAll(true);
+        assertEquals(0, rows(join, 0, Long.MAX_VALUE).size(), "No row has every record type");
+    }
+
+    @Test
+    @DisplayName("Test the merge walk matches a scan of every reading")
+    public void testMatchesScan() {
+        Random random = new Random(21);
+        int readings = 200_000;
+        long[] saturationTimes = new long[readings];
+        double[] saturationValues = new double[readings];
+        long time = 0;
+        RecordBatch batch = new RecordBatch();
+        for (int i = 0; i < readings; i++) {
+            time += 1 + random.nextInt(2_000);
+            saturationTimes[i] = time;
+            saturationValues[i] = 85 + random.nextInt(15);
+            batch.add(PATIENT_ID, "OxygenSaturation", time, saturationValues[i]);
+            if (i % 60 == 0) {
+                batch.add(PATIENT_ID, "SystolicBP", time + random.nextInt(30_000), 80 + random.nextInt(60));
+            }
+        }
+        storage.addBatch(batch);
+
+        AsOfJoin join = new AsOfJoin("SystolicBP", "OxygenSaturation").setTolerance(1, TimeUnit.SECONDS)
+                .setMatch(JoinMatch.NEAREST).setRequireAll(false);
+        long[] matched = new long[2];
+        storage.joinAsOf(PATIENT_ID, join, 0, Long.MAX_VALUE, (timestamps, values) -> {
+            // The nearest saturation by binary search over every reading
+            int index = Arrays.binarySearch(saturationTimes, timestamps[0]);
+            int after = index >= 0 ? index : -index - 1;
+            int before = index >= 0 ? index : after - 1;
+            long expected = Long.MIN_VALUE;
+            if (before >= 0 && timestamps[0] - saturationTimes[before] <= 1_000) {
+                expected = saturationTimes[before];
+            }
+            if (after < readings && saturationTimes[after] - timestamps[0] <= 1_000
+                    && (expected == Long.MIN_VALUE || saturationTimes[after] - timestamps[0]
+                            < timestamps[0] - expected)) {
+                expected = saturationTimes[after];
+            }
+            assertEquals(expected, timestamps[1], "The nearest reading should be matched");
+            if (expected != Long.MIN_VALUE) {
+                matched[0]++;
+            }
+            matched[1]++;
+        });
+        assertTrue(matched[0] > 0, "Some readings should be matched");
+
+        int rows = join.join(storage.getPatient(PATIENT_ID), 0, Long.MAX_VALUE, (timestamps, values) -> { });
+        assertEquals(matched[1], rows, "Every driving reading should make a row");
+    }
+}
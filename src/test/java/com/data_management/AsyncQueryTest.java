@@ -0,0 +1,151 @@
+package com.data_management;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collector;
+
+/**
+ * Tests for the asynchronous queries over many patients.
+ */
+public class AsyncQueryTest {
+
+    private static final long HOUR = 3_600_000L;
+
+    private DataStorage storage;
+
+    @BeforeEach
+    public void setup() {
+        storage = DataStorage.getInstance();
+        storage.clearAllData();
+    }
+
+    /**
+     * Adds one heart rate reading every {@code step} ms for each patient.
+     */
+    private void ingest(int patients, long duration, long step) {
+        RecordBatch batch = new RecordBatch();
+        for (long time = 0; time < duration; time += step) {
+            for (int patientId = 1; patientId <= patients; patientId++) {
+                batch.add(patientId, "HeartRate", time + patientId, 60 + (time / step * 7 + patientId) % 50);
+            }
+            if (batch.size() >= 4_096) {
+                storage.addBatch(batch);
+                batch.clear();
+            }
+        }
+        storage.addBatch(batch);
+    }
+
+    @Test
+    @DisplayName("Test summaries match a scan of every patient's readings")
+    public void testMatchesScan() throws Exception {
+        ingest(50, 13 * HOUR, 10_000);
+        long start = HOUR / 2 + 123;
+        long end = 12 * HOUR + 4_567;
+        Map<Integer, Aggregate> summaries = storage.summarizeAsync("HeartRate", start, end).get();
+        assertEquals(50, summaries.size(), "Every patient should be summarized");
+
+        long totalCount = 0;
+        double totalSum = 0;
+        double max = Double.NEGATIVE_INFINITY;
+        for (Patient patient : storage.getAllPatients()) {
+            List<PatientRecord> records = storage.getRecords(patient.getPatientId(), start, end);
+            double sum = 0;
+            for (PatientRecord record : records) {
+                sum += record.getMeasurementValue();
+                max = Math.max(max, record.getMeasurementValue());
+            }
+            Aggregate summary = summaries.get(patient.getPatientId());
+            assertEquals(records.size(), summary.getCount(), "Counts should match");
+            assertEquals(sum / records.size(), summary.getMean(), 1e-9, "Means should match");
+            totalCount += records.size();
+            totalSum += sum;
+        }
+
+        Aggregate ward = storage.aggregateAsync("HeartRate", start, end, new QueryOptions().setParallelism(3)).get();
+        assertEquals(totalCount, ward.getCount(), "Partial counts should be merged");
+        assertEquals(totalSum / totalCount, ward.getMean(), 1e-9, "Partial sums should be merged");
+        assertEquals(max, ward.getMax(), "Partial maximums should be merged");
+        assertNull(storage.aggregateAsync("HeartRate", 20 * HOUR, 21 * HOUR).get(),
+                "A range without readings should have no summary");
+        assertTrue(storage.summarizeAsync("ECG", 0, Long.MAX_VALUE).get().isEmpty(),
+                "A record type without readings should have no summaries");
+        int types = RecordTypeRegistry.getInstance().size();
+        assertTrue(storage.summarizeAsync("NoSuchVitalSign", 0, Long.MAX_VALUE).get().isEmpty(),
+                "An unknown record type should have no summaries");
+        assertNull(storage.aggregateAsync("NoSuchVitalSign", 0, Long.MAX_VALUE).get(),
+                "An unknown record type should have no summary");
+        assertNull(storage.getPatient(1).getSummary("NoSuchVitalSign", 0, Long.MAX_VALUE),
+                "Patients should not find it either");
+        assertEquals(types, RecordTypeRegistry.getInstance().size(), "Queries should not register record types");
+    }
+
+    @Test
+    @DisplayName("Test a query uses no more threads than its parallelism and reports failures")
+    public void testParallelismLimit() throws Exception {
+        ingest(200, HOUR, 60_000);
+        AtomicInteger active = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        Collector<Patient, int[], Integer> slow = Collector.of(() -> new int[1], (count, patient) -> {
+            assertTrue(Thread.currentThread().getName().startsWith("data-storage-query-"),
+                    "Queries should run on the query pool");
+            peak.accumulateAndGet(active.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            active.decrementAndGet();
+            count[0]++;
+        }, (a, b) -> {
+            a[0] += b[0];
+            return a;
+        }, count -> count[0]);
+
+        assertEquals(200, storage.queryAsync(slow, new QueryOptions().setParallelism(2)).get().intValue(),
+                "Every patient should be visited once");
+        assertTrue(peak.get() <= 2, "At most two patients should be scanned at once: " + peak.get());
+
+        Collector<Patient, int[], Integer> failing = Collector.of(() -> new int[1], (count, patient) -> {
+            throw new IllegalStateException("Query failed");
+        }, (a, b) -> a, count -> count[0]);
+        ExecutionException e = assertThrows(ExecutionException.class,
+                () -> storage.queryAsync(failing, new QueryOptions()).get(), "Failures should reach the future");
+        assertTrue(e.getCause() instanceof IllegalStateException, "The collector's exception should be reported");
+        assertThrows(IllegalArgumentException.class, () -> new QueryOptions().setParallelism(0),
+                "Parallelism must be positive");
+    }
+
+    @Test
+    @DisplayName("Test a ward report from async summaries matches a single-threaded scan")
+    public void testReportMatchesScan() throws Exception {
+        int patients = 400;
+        ingest(patients, 13 * HOUR, 10_000);
+        long start = HOUR;
+        long end = 13 * HOUR - 1;
+
+        double scanned = 0;
+        for (Patient patient : storage.getAllPatients()) {
+            double sum = 0;
+            List<PatientRecord> records = storage.getRecords(patient.getPatientId(), start, end);
+            for (PatientRecord record : records) {
+                sum += record.getMeasurementValue();
+            }
+            scanned += sum / records.size();
+        }
+        Map<Integer, Aggregate> summaries = storage.summarizeAsync("HeartRate", start, end).get();
+        double summarized = 0;
+        for (Aggregate summary : summaries.values()) {
+            summarized += summary.getMean();
+        }
+        assertEquals(patients, summaries.size(), "Every patient should be in the report");
+        assertEquals(scanned, summarized, 1e-6, "Both reports should find the same means");
+    }
+}
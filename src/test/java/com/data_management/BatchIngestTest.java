@@ -0,0 +1,79 @@
+package com.data_management;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Tests for batch ingestion through DataStorage.addBatch.
+ */
+public class BatchIngestTest {
+
+    private static final int PATIENTS = 50;
+    private static final int READINGS = 200_000;
+    private static final String[] TYPES = {"ECG", "SystolicBP", "OxygenSaturation", "HeartRate"};
+
+    private DataStorage storage;
+
+    @BeforeEach
+    public void setup() {
+        storage = DataStorage.getInstance();
+        storage.clearAllData();
+    }
+
+    @Test
+    @DisplayName("Test a batch stores the same readings as adding them one by one")
+    public void testBatchMatchesSingleReadings() {
+        Random random = new Random(3);
+        RecordBatch batch = new RecordBatch(16); // Small, so the batch has to grow
+        for (int i = 0; i < 10_000; i++) {
+            int patientId = random.nextInt(20) - 5; // Include negative ids
+            String type = TYPES[random.nextInt(TYPES.length)];
+            long timestamp = random.nextInt(10) == 0 ? random.nextInt(i + 1) : i; // Some late readings
+            batch.add(patientId, type, timestamp, i);
+            storage.addPatientData(patientId + 1_000, i, type, timestamp);
+        }
+        storage.addBatch(batch);
+
+        for (int patientId = -5; patientId < 15; patientId++) {
+            List<PatientRecord> batched = storage.getRecords(patientId, Long.MIN_VALUE, Long.MAX_VALUE);
+            List<PatientRecord> single = storage.getRecords(patientId + 1_000, Long.MIN_VALUE, Long.MAX_VALUE);
+            assertEquals(single.size(), batched.size(), "Batch should store every reading");
+            for (int i = 0; i < single.size(); i++) {
+                assertEquals(single.get(i).getTimestamp(), batched.get(i).getTimestamp(), "Timestamps should match");
+                assertEquals(single.get(i).getRecordType(), batched.get(i).getRecordType(), "Types should match");
+            }
+            for (String type : TYPES) {
+                assertEquals(storage.getAggregates(patientId + 1_000, type, 0, Long.MAX_VALUE, Resolution.HOUR).size(),
+                        storage.getAggregates(patientId, type, 0, Long.MAX_VALUE, Resolution.HOUR).size(),
+                        "Rollups should be maintained for batches");
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Test every reading of a large archive-like batch stream is stored")
+    public void testLargeBatchStream() {
+        RecordTypeRegistry registry = RecordTypeRegistry.getInstance();
+        RecordBatch batch = new RecordBatch(4096);
+        for (int i = 0; i < READINGS; i++) {
+            // Archive-like input: interleaved patients and types in time order
+            batch.add(i % PATIENTS, registry.idOf(TYPES[(i / PATIENTS) % TYPES.length]), i, i * 0.5);
+            if (batch.size() == 4096) {
+                storage.addBatch(batch);
+                batch.clear();
+            }
+        }
+        storage.addBatch(batch);
+
+        long stored = 0;
+        for (Patient patient : storage.getAllPatients()) {
+            stored += patient.getAllRecords().size();
+        }
+        assertEquals(READINGS, stored, "Every batched reading should be stored");
+    }
+}
@@ -0,0 +1,165 @@
+package com.data_management;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests for exporting DataStorage to a columnar archive and importing it back.
+ */
+public class ColumnarArchiveTest {
+
+    private DataStorage storage;
+    private Path archive;
+
+    @BeforeEach
+    public void setup() throws IOException {
+        storage = DataStorage.getInstance();
+        storage.clearAllData();
+        archive = Files.createTempFile("data-storage", ".cdca");
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        storage.clearAllData();
+        Files.deleteIfExists(archive);
+    }
+
+    /**
+     * Adds two record types for three patients, including a late reading.
+     */
+    private void populate() {
+        RecordBatch batch = new RecordBatch();
+        for (int i = 0; i < 5_000; i++) {
+            for (int patientId = 1; patientId <= 3; patientId++) {
+                batch.add(patientId, "HeartRate", 1_000L * i, 60 + (i + patientId) % 40);
+                batch.add(patientId, "ECG", 1_000L * i + 7, Math.sin(i / 10.0) * patientId);
+            }
+        }
+        storage.addBatch(batch);
+        storage.addPatientData(2, 99.5, "HeartRate", 1_500L); // Late
+    }
+
+    @Test
+    @DisplayName("Test raw and compressed archives restore every reading and rollup")
+    public void testRoundTrip() throws IOException {
+        populate();
+        List<PatientRecord> expected = storage.getRecords(2, 0, Long.MAX_VALUE);
+        List<Aggregate> expectedHours = storage.getAggregates(2, "ECG", 0, Long.MAX_VALUE, Resolution.HOUR);
+
+        for (boolean compressed : new boolean[] {false, true}) {
+            populate();
+            assertEquals(30_001, new ColumnarDataExporter(archive, compressed).export(storage),
+                    "Every reading should be exported");
+            long archiveBytes = Files.size(archive);
+            storage.clearAllData();
+
+            new ColumnarDataReader(archive).readData(storage);
+            List<PatientRecord> restored = storage.getRecords(2, 0, Long.MAX_VALUE);
+            assertEquals(expected.size(), restored.size(), "Every reading should be imported");
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.get(i).getTimestamp(), restored.get(i).getTimestamp(), "Timestamps should match");
+                assertEquals(expected.get(i).getMeasurementValue(), restored.get(i).getMeasurementValue(),
+                        "Values should match");
+                assertEquals(expected.get(i).getRecordType(), restored.get(i).getRecordType(), "Types should match");
+            }
+            List<Aggregate> hours = storage.getAggregates(2, "ECG", 0, Long.MAX_VALUE, Resolution.HOUR);
+            assertEquals(expectedHours.size(), hours.size(), "Rollups should be rebuilt");
+            assertEquals(expectedHours.get(0).getMean(), hours.get(0).getMean(), 1e-9,
+                    "Rollups should be rebuilt");
+            assertEquals(60 + (4_999 + 3) % 40, storage.getLatest(3, "HeartRate").getMeasurementValue(),
+                    "Latest values should be restored");
+            assertEquals(1, storage.findPatientsByLatest("HeartRate", 62, 62).size(),
+                    "Population queries should see imported readings");
+            if (compressed) {
+                assertTrue(archiveBytes < 30_001L * 16 / 2, "Compressed archives should be small: " + archiveBytes);
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Test importing into non-empty storage keeps stored readings and drops duplicates")
+    public void testImportIntoExistingData() throws IOException {
+        populate();
+        new ColumnarDataExporter(archive).export(storage);
+        storage.clearAllData();
+        storage.addPatientData(1, -1, "HeartRate", 0);            // Also in the archive; stored first
+        storage.addPatientData(1, 75, "HeartRate", 10_000_000L); // Only in storage
+
+        long stored = new ColumnarDataReader(archive).importData(storage);
+        assertEquals(30_000, stored, "Every reading not already stored should be imported");
+        assertEquals(1, storage.getDuplicateRecordCount(), "The repeated reading should be counted");
+        assertEquals(-1, storage.getRecords(1, RecordTypeRegistry.getInstance().idOf("HeartRate"), 0, 0).get(0)
+                .getMeasurementValue(), "The reading stored first should win");
+        assertEquals(5_001, storage.getLastN(1, "HeartRate", 10_000).size(), "Both sources should be kept");
+    }
+
+    @Test
+    @DisplayName("Test a filtered import reads only the selected series")
+    public void testFilteredImport() throws IOException {
+        populate();
+        new ColumnarDataExporter(archive, true).export(storage);
+        storage.clearAllData();
+
+        ReadingFilter filter = ReadingFilter.patients(2).and(ReadingFilter.recordTypes("HeartRate"));
+        assertEquals(5_001, new ColumnarDataReader(archive, filter).importData(storage),
+                "Only the selected series should be imported");
+        assertEquals(1, storage.getAllPatients().size(), "Only the selected patient should be created");
+        assertEquals(5_001, storage.getRecords(2, 0, Long.MAX_VALUE).size(), "Other types should be skipped");
+    }
+
+    @Test
+    @DisplayName("Test archives that are not columnar are rejected")
+    public void testRejectsOtherFiles() throws IOException {
+        Files.write(archive, new byte[64]);
+        assertThrows(IOException.class, () -> new ColumnarDataReader(archive).readData(storage),
+                "Unknown files should be rejected");
+    }
+
+    @Test
+    @DisplayName("Test a bulk import of many patients round-trips every series")
+    public void testBulkImportRoundTrip() throws IOException {
+        int patients = 100;
+        int readingsPerSeries = 5_000;
+        String[] types = {"HeartRate", "ECG"};
+        RecordBatch batch = new RecordBatch(patients * types.length);
+        for (int i = 0; i < readingsPerSeries; i++) {
+            for (int patientId = 0; patientId < patients; patientId++) {
+                for (String type : types) {
+                    batch.add(patientId, type, 1_000L * i, 60 + (i * 7 + patientId) % 50);
+                }
+            }
+            storage.addBatch(batch);
+            batch.clear();
+        }
+        long readings = new ColumnarDataExporter(archive).export(storage);
+        assertEquals((long) patients * types.length * readingsPerSeries, readings, "Every reading should be exported");
+        List<List<PatientRecord>> expected = new ArrayList<>();
+        for (int patientId = 0; patientId < patients; patientId++) {
+            expected.add(storage.getRecords(patientId, 0, Long.MAX_VALUE));
+        }
+
+        storage.clearAllData();
+        assertEquals(readings, new ColumnarDataReader(archive).importData(storage), "Every reading should be imported");
+        assertEquals(patients, storage.getAllPatients().size(), "Every patient should be restored");
+        for (int patientId = 0; patientId < patients; patientId++) {
+            List<PatientRecord> restored = storage.getRecords(patientId, 0, Long.MAX_VALUE);
+            assertEquals(expected.get(patientId).size(), restored.size(), "Every reading should be restored");
+            for (int i = 0; i < restored.size(); i++) {
+                PatientRecord before = expected.get(patientId).get(i);
+                PatientRecord after = restored.get(i);
+                assertEquals(before.getTimestamp(), after.getTimestamp(), "Timestamps should match");
+                assertEquals(before.getMeasurementValue(), after.getMeasurementValue(), "Values should match");
+                assertEquals(before.getRecordType(), after.getRecordType(), "Types should match");
+            }
+        }
+    }
+}
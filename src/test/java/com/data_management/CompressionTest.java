@@ -0,0 +1,120 @@
+package com.data_management;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Tests for compressed chunks: exact round trips, queries over sealed
+ * chunks, and the compression ratio of simulated vital signs.
+ */
+public class CompressionTest {
+
+    private static final int READINGS = 100_000;
+
+    @Test
+    @DisplayName("Test compressed chunks return exactly the readings they were built from")
+    public void testRoundTrip() {
+        HeapSeriesChunk source = new HeapSeriesChunk(RecordSeries.MAX_CHUNK_CAPACITY);
+        Random random = new Random(7);
+        double[] specials = {Double.NaN, -0.0, 0.0, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY,
+                Double.MIN_VALUE, Double.MAX_VALUE};
+        long timestamp = -5_000;
+        for (int i = 0; i < source.capacity(); i++) {
+            // Regular intervals with jitter, gaps and occasional huge jumps
+            timestamp += i % 100 == 99 ? 1L << 40 : i % 10 == 9 ? random.nextInt(100_000) : 1_000;
+            double value = i % 50 == 0 ? specials[(i / 50) % specials.length]
+                    : i % 3 == 0 ? random.nextDouble() : 95 + i % 4;
+            source.append(timestamp, value);
+        }
+        CompressedSeriesChunk compressed = new CompressedSeriesChunk(source);
+
+        long[] timestamps = new long[source.size()];
+        double[] values = new double[source.size()];
+        compressed.decode(timestamps, values, 0, source.size());
+        for (int i = 0; i < source.size(); i++) {
+            assertEquals(source.timestampAt(i), timestamps[i], "Timestamp " + i + " should round-trip");
+            assertEquals(Double.doubleToRawLongBits(source.valueAt(i)), Double.doubleToRawLongBits(values[i]),
+                    "Value " + i + " should round-trip bit for bit");
+        }
+        assertEquals(source.timestampAt(500), compressed.timestampAt(500), "Random access should decode");
+        assertEquals(200, compressed.lowerBound(source.timestampAt(200), source.size()),
+                "Lower bound should find an existing timestamp");
+    }
+
+    @Test
+    @DisplayName("Test queries and late readings span compressed chunks")
+    public void testQueriesOverCompressedChunks() {
+        RecordSeries series = new RecordSeries(RecordTypeRegistry.ECG, ChunkAllocator.COMPRESSED_HEAP);
+        for (int i = 0; i < 10_000; i++) {
+            series.append(1_000L * i, i % 7);
+        }
+        series.append(2_500, -1); // Late reading inside a compressed chunk
+
+        List<PatientRecord> records = new ArrayList<>();
+        series.collect(1, 1_500_000, 3_000_000, records);
+        assertEquals(1_501, records.size(), "Range should cover readings in several chunks");
+        assertEquals(1_500_000L, records.get(0).getTimestamp(), "Range should start at the first match");
+        assertEquals((1_500 % 7), records.get(0).getMeasurementValue(), "Values should be decoded");
+
+        RecordCursor cursor = new RecordCursor();
+        series.openCursor(0, 3_000, cursor);
+        double[] expected = {0, 1, 2, -1, 3};
+        for (double value : expected) {
+            assertTrue(cursor.next(), "Cursor should reach every reading in range");
+            assertEquals(value, cursor.getValue(), "Late reading should be merged into order");
+        }
+        assertFalse(cursor.next(), "Cursor should stop at the end of the range");
+        assertEquals(10_001, series.size(), "No reading should be lost");
+    }
+
+    @Test
+    @DisplayName("Test the compression ratio of simulated vital signs")
+    public void testCompressionRatio() {
+        Random random = new Random(42);
+        double saturation = 97;
+        double systolic = 120;
+        long[] timestamps = new long[READINGS];
+        double[][] signals = new double[3][READINGS];
+        for (int i = 0; i < READINGS; i++) {
+            // Same shapes as the simulator's generators: one reading a second, small integer steps
+            timestamps[i] = 1_700_000_000_000L + 1_000L * i;
+            saturation = Math.min(Math.max(saturation + random.nextInt(3) - 1, 90), 100);
+            systolic = Math.min(Math.max(systolic + random.nextInt(5) - 2, 90), 180);
+            signals[0][i] = saturation;
+            signals[1][i] = systolic;
+            signals[2][i] = Math.round(Math.sin(i * 0.3) * 100) / 100.0; // ECG sampled to 0.01 mV
+        }
+        String[] names = {"Saturation", "SystolicBP", "ECG"};
+        for (int s = 0; s < signals.length; s++) {
+            RecordSeries plain = new RecordSeries(0, ChunkAllocator.HEAP);
+            RecordSeries compressed = new RecordSeries(0, ChunkAllocator.COMPRESSED_HEAP);
+            plain.appendAll(timestamps, signals[s], 0, READINGS, null, 1, null);
+            compressed.appendAll(timestamps, signals[s], 0, READINGS, null, 1, null);
+            double ratio = (double) chunkBytes(plain) / chunkBytes(compressed);
+            if (s < 2) {
+                assertTrue(ratio > 8, names[s] + " should compress well, got " + ratio);
+            }
+            assertEquals(sum(plain), sum(compressed), "Compressed scans should see the same values");
+        }
+    }
+
+    private static long chunkBytes(RecordSeries series) {
+        long bytes = 0;
+        SeriesView view = series.view();
+        for (int c = 0; c < view.chunkCount(); c++) {
+            bytes += view.chunk(c).residentBytes();
+        }
+        return bytes;
+    }
+
+    private static double sum(RecordSeries series) {
+        double[] total = new double[1];
+        series.forEach(Long.MIN_VALUE, Long.MAX_VALUE, (timestamp, value) -> total[0] += value);
+        return total[0];
+    }
+}
@@ -0,0 +1,127 @@
+package com.data_management;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Stress tests for concurrent ingest and evaluation on DataStorage.
+ */
+public class DataStorageConcurrencyTest {
+
+    private static final int PATIENTS_PER_WRITER = 20;
+    private static final int READINGS_PER_PATIENT = 5_000;
+
+    private DataStorage storage;
+
+    @BeforeEach
+    public void setup() {
+        storage = DataStorage.getInstance();
+        storage.clearAllData();
+    }
+
+    @Test
+    @DisplayName("Test readers never fail while writers ingest")
+    public void testConcurrentWritersAndReaders() throws Exception {
+        int writers = 4;
+        int readers = 4;
+        AtomicBoolean writing = new AtomicBoolean(true);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        ExecutorService executor = Executors.newFixedThreadPool(writers + readers);
+        CountDownLatch writersDone = new CountDownLatch(writers);
+
+        for (int w = 0; w < writers; w++) {
+            int writer = w;
+            executor.submit(() -> {
+                try {
+                    // Every writer also shares patient 0 with the others
+                    for (int i = 0; i < READINGS_PER_PATIENT; i++) {
+                        storage.addPatientData(0, i, "HeartRate", writer * (long) READINGS_PER_PATIENT + i);
+                        storage.addPatientData(writer + 1, i, "ECG", i);
+                    }
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                } finally {
+                    writersDone.countDown();
+                }
+            });
+        }
+        for (int r = 0; r < readers; r++) {
+            executor.submit(() -> {
+                try {
+                    while (writing.get()) {
+                        for (Patient patient : storage.getAllPatients()) {
+                            List<PatientRecord> records = patient.getRecords(0, Long.MAX_VALUE);
+                            for (PatientRecord record : records) {
+                                assertNotNull(record.getRecordType(), "Published records must be complete");
+                            }
+                            patient.getRecordsByType();
+                        }
+                    }
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                }
+            });
+        }
+
+        assertTrue(writersDone.await(60, TimeUnit.SECONDS), "Writers should finish");
+        writing.set(false);
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS), "Readers should finish");
+
+        assertNull(failure.get(), "No thread should fail: " + failure.get());
+        assertEquals(writers * READINGS_PER_PATIENT, storage.getRecords(0, 0, Long.MAX_VALUE).size(),
+                "No reading on the shared patient should be lost");
+        for (int w = 0; w < writers; w++) {
+            assertEquals(READINGS_PER_PATIENT, storage.getRecords(w + 1, 0, Long.MAX_VALUE).size(),
+                    "No reading on a writer's own patient should be lost");
+        }
+    }
+
+    @Test
+    @DisplayName("Test writers on disjoint patients store every reading")
+    public void testDisjointWriters() throws Exception {
+        int writers = 4;
+        ingest(writers);
+        assertEquals(writers * PATIENTS_PER_WRITER, storage.getAllPatients().size(),
+                "Every patient should be stored");
+        for (Patient patient : storage.getAllPatients()) {
+            assertEquals(READINGS_PER_PATIENT, patient.getAllRecords().size(),
+                    "No reading of patient " + patient.getPatientId() + " should be lost");
+        }
+    }
+
+    /**
+     * Ingests readings for disjoint patients from several threads.
+     *
+     * @param writers the number of writer threads
+     */
+    private void ingest(int writers) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(writers);
+        CountDownLatch start = new CountDownLatch(1);
+        for (int w = 0; w < writers; w++) {
+            int firstPatient = w * PATIENTS_PER_WRITER;
+            executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < READINGS_PER_PATIENT; i++) {
+                    for (int p = 0; p < PATIENTS_PER_WRITER; p++) {
+                        storage.addPatientData(firstPatient + p, i, "Saturation", i);
+                    }
+                }
+                return null;
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(60, TimeUnit.SECONDS), "Ingest should finish");
+    }
+}
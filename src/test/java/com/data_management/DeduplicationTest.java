@@ -0,0 +1,93 @@
+package com.data_management;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import java.util.List;
+
+/**
+ * Tests for the suppression of duplicate readings at ingest.
+ */
+public class DeduplicationTest {
+
+    private DataStorage storage;
+
+    @BeforeEach
+    public void setup() {
+        storage = DataStorage.getInstance();
+        storage.clearAllData();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        storage.clearAllData();
+    }
+
+    @Test
+    @DisplayName("Test re-delivered readings are dropped and counted, keeping the first value")
+    public void testRedeliveryIsIdempotent() {
+        int readings = 5_000;
+        for (int i = 0; i < readings; i++) {
+            storage.addPatientData(1, 95, "OxygenSaturation", 1_000L * i);
+        }
+        for (int i = 0; i < readings; i++) {
+            // E.g. the same file read again, with values rounded differently
+            storage.addPatientData(1, 94.5, "OxygenSaturation", 1_000L * i);
+        }
+        storage.addPatientData(1, 120, "HeartRate", 0L);
+
+        List<PatientRecord> records = storage.getRecords(1, 0, Long.MAX_VALUE);
+        assertEquals(readings + 1, records.size(), "Each patient, type and timestamp should be stored once");
+        assertEquals(95.0, storage.getLatest(1, "OxygenSaturation").getMeasurementValue(),
+                "The first delivery should win");
+        assertEquals(readings, storage.getDuplicateRecordCount(), "Every repeat should be counted");
+
+        storage.clearAllData();
+        assertEquals(0, storage.getDuplicateRecordCount(), "Clearing should reset the count");
+    }
+
+    @Test
+    @DisplayName("Test batches drop readings already stored and repeats within the batch")
+    public void testBatchDuplicates() {
+        storage.addPatientData(1, 80, "HeartRate", 2_000L);
+
+        RecordBatch batch = new RecordBatch();
+        batch.add(1, "HeartRate", 1_000L, 81);
+        batch.add(1, "HeartRate", 2_000L, 82); // Already stored
+        batch.add(1, "HeartRate", 3_000L, 83);
+        batch.add(1, "HeartRate", 3_000L, 84); // Repeated within the batch
+        batch.add(2, "HeartRate", 3_000L, 85); // Another patient
+        storage.addBatch(batch);
+        storage.addBatch(batch);
+
+        assertEquals(3, storage.getRecords(1, 0, Long.MAX_VALUE).size(), "Patient 1 should have three readings");
+        assertEquals(1, storage.getRecords(2, 0, Long.MAX_VALUE).size(), "Patient 2 should have one reading");
+        assertEquals(83.0, storage.getLatest(1, "HeartRate").getMeasurementValue(),
+                "The first reading of a repeated timestamp should be kept");
+        assertEquals(7, storage.getDuplicateRecordCount(), "Every dropped reading should be counted");
+    }
+
+    @Test
+    @DisplayName("Test late readings with new timestamps are never dropped")
+    public void testLateReadingsAreKept() {
+        int readings = 20_000;
+        for (int i = 0; i < readings; i++) {
+            storage.addPatientData(1, i, "ECG", 20L * i);
+        }
+        for (int i = 0; i < readings; i++) {
+            // Older than the newest stored reading, so the bloom filter and the chunks are consulted
+            storage.addPatientData(1, i, "ECG", 20L * i + 10);
+        }
+        assertEquals(0, storage.getDuplicateRecordCount(), "No late reading is a duplicate");
+        assertEquals(2 * readings, storage.getRecords(1, 0, Long.MAX_VALUE).size(),
+                "Every late reading should be stored");
+
+        for (int i = 0; i < readings; i++) {
+            storage.addPatientData(1, i, "ECG", 10L * i);
+        }
+        assertEquals(readings, storage.getDuplicateRecordCount(), "Repeats of old readings should be found");
+    }
+}
@@ -0,0 +1,149 @@
+package com.data_management;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for the latest-value and last-N queries of DataStorage.
+ */
+public class LatestValueTest {
+
+    private DataStorage storage;
+
+    @BeforeEach
+    public void setup() {
+        storage = DataStorage.getInstance();
+        storage.clearAllData();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        storage.clearAllData();
+    }
+
+    @Test
+    @DisplayName("Test latest and last-N readings follow timestamps, including late readings")
+    public void testLatestAndLastN() {
+        storage.addPatientData(1, 97, "OxygenSaturation", 1_000L);
+        storage.addPatientData(1, 95, "OxygenSaturation", 3_000L);
+        storage.addPatientData(1, 96, "OxygenSaturation", 2_000L); // Late reading
+
+        PatientRecord latest = storage.getLatest(1, "OxygenSaturation");
+        assertEquals(3_000L, latest.getTimestamp(), "Latest should be the newest timestamp, not the last added");
+        assertEquals(95.0, latest.getMeasurementValue(), "Latest value should match");
+        assertEquals("OxygenSaturation", latest.getRecordType(), "Record type should be reported");
+
+        List<PatientRecord> lastTwo = storage.getLastN(1, "Saturation", 2);
+        assertEquals(2, lastTwo.size(), "Two readings should be returned");
+        assertEquals(2_000L, lastTwo.get(0).getTimestamp(), "Late reading should be placed in order");
+        assertEquals(3_000L, lastTwo.get(1).getTimestamp(), "Readings should be oldest first");
+        assertEquals(3, storage.getLastN(1, "OxygenSaturation", 10).size(), "Short series should be returned whole");
+
+        assertNull(storage.getLatest(1, "HeartRate"), "Missing record type should have no latest reading");
+        assertNull(storage.getLatest(2, "OxygenSaturation"), "Missing patient should have no latest reading");
+        assertTrue(storage.getLastN(2, "OxygenSaturation", 5).isEmpty(), "Missing patient should have no readings");
+        assertThrows(IllegalArgumentException.class, () -> storage.getLastN(1, "OxygenSaturation", -1),
+                "Negative counts should be rejected");
+    }
+
+    @Test
+    @DisplayName("Test last-N beyond the recent window reads compressed history")
+    public void testLastNBeyondWindow() {
+        for (int i = 0; i < 5_000; i++) {
+            storage.addPatientData(1, i, "ECG", i);
+        }
+        List<PatientRecord> last = storage.getLastN(1, "ECG", 1_500);
+        assertEquals(1_500, last.size(), "Every requested reading should be returned");
+        assertEquals(3_500L, last.get(0).getTimestamp(), "Oldest returned reading should be first");
+        assertEquals(4_999.0, last.get(1_499).getMeasurementValue(), "Newest reading should be last");
+
+        List<PatientRecord> window = storage.getLastN(1, "ECG", RecordSeries.RECENT_CAPACITY);
+        assertEquals(5_000L - RecordSeries.RECENT_CAPACITY, window.get(0).getTimestamp(),
+                "The recent window should match the history");
+    }
+
+    @Test
+    @DisplayName("Test the latest reading is cleared with the series")
+    public void testLatestAfterRetentionAndClear() {
+        long now = System.currentTimeMillis();
+        storage.addPatientData(1, 120, "HeartRate", now - 10_000_000L);
+        storage.setRetentionPolicy(new RetentionPolicy().setRetention("HeartRate", 1_000, TimeUnit.SECONDS));
+        storage.enforceRetention();
+        assertNull(storage.getLatest(1, "HeartRate"), "Expired readings should not be reported as latest");
+        storage.setRetentionPolicy(new RetentionPolicy());
+
+        storage.addPatientData(1, 80, "HeartRate", now);
+        storage.clearAllData();
+        assertNull(storage.getLatest(1, "HeartRate"), "Cleared readings should not be reported as latest");
+    }
+
+    @Test
+    @DisplayName("Test queries for a record type that was never stored do not register it")
+    public void testUnknownRecordType() {
+        storage.addPatientData(1, 97, "OxygenSaturation", 1_000L);
+        RecordTypeRegistry registry = RecordTypeRegistry.getInstance();
+        int size = registry.size();
+        assertNull(storage.getLatest(1, "NoSuchVitalSign"), "An unknown record type should have no latest reading");
+        assertTrue(storage.getLastN(1, "NoSuchVitalSign", 5).isEmpty(),
+                "An unknown record type should have no readings");
+        assertNull(storage.getPatient(1).getLatest("NoSuchVitalSign"), "Patients should not find it either");
+        assertTrue(storage.getPatient(1).getLastN("NoSuchVitalSign", 5).isEmpty(),
+                "Patients should not find it either");
+        assertEquals(size, registry.size(), "Queries should not register record types");
+        assertEquals(-1, registry.find("NoSuchVitalSign"), "The queried name should stay unknown");
+    }
+
+    @Test
+    @DisplayName("Test latest-value lookups do not depend on how long the history is")
+    public void testLatestIndependentOfHistory() {
+        int[] lengths = {1, 100, 10_000, 200_000};
+        for (int p = 0; p < lengths.length; p++) {
+            for (int i = 0; i < lengths[p]; i++) {
+                storage.addPatientData(p, 90 + i % 10, RecordTypeRegistry.OXYGEN_SATURATION, 1_000L * (i + 1));
+            }
+            storage.addPatientData(p, 50, RecordTypeRegistry.OXYGEN_SATURATION, 500L); // Late, not the latest
+        }
+
+        for (int i = 0; i < 20_000; i++) {
+            storage.getLatest(i % lengths.length, RecordTypeRegistry.OXYGEN_SATURATION); // Warms up every path
+        }
+        long[] bytesPerLookup = new long[lengths.length];
+        for (int p = 0; p < lengths.length; p++) {
+            PatientRecord latest = storage.getLatest(p, RecordTypeRegistry.OXYGEN_SATURATION);
+            assertEquals(1_000L * lengths[p], latest.getTimestamp(), "Latest should be the newest reading");
+            assertEquals(90 + (lengths[p] - 1) % 10, latest.getMeasurementValue(), "Latest value should match");
+            bytesPerLookup[p] = Long.MAX_VALUE;
+            for (int attempt = 0; attempt < 5; attempt++) {
+                long allocated = allocatedBytes();
+                for (int i = 0; i < 1_000; i++) {
+                    storage.getLatest(p, RecordTypeRegistry.OXYGEN_SATURATION);
+                }
+                bytesPerLookup[p] = Math.min(bytesPerLookup[p], (allocatedBytes() - allocated) / 1_000);
+            }
+        }
+        // A lookup that walked the history would allocate or decode in proportion to it
+        assertTrue(bytesPerLookup[lengths.length - 1] <= bytesPerLookup[0] + 8,
+                "A long history should cost a lookup no more than a single reading: "
+                        + Arrays.toString(bytesPerLookup));
+    }
+
+    /**
+     * Returns the bytes allocated by this thread so far, or 0 where the JVM
+     * cannot tell.
+     */
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+}
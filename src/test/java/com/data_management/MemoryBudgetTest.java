@@ -0,0 +1,146 @@
+package com.data_management;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import java.util.List;
+
+/**
+ * Tests for memory accounting and the memory budget of DataStorage.
+ */
+public class MemoryBudgetTest {
+
+    private static final long HOUR = 3_600_000L;
+
+    private DataStorage storage;
+
+    @BeforeEach
+    public void setup() {
+        storage = DataStorage.getInstance();
+        storage.setMemoryBudget(null);
+        storage.clearAllData();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        storage.setMemoryBudget(null);
+        storage.clearAllData();
+    }
+
+    /**
+     * Adds one reading per second for each patient, oldest first.
+     */
+    private void ingest(int patients, String recordType, long startTime, int seconds) {
+        RecordBatch batch = new RecordBatch();
+        for (int i = 0; i < seconds; i++) {
+            for (int patientId = 1; patientId <= patients; patientId++) {
+                batch.add(patientId, recordType, startTime + 1_000L * i, 60 + (i * 7 + patientId) % 40);
+            }
+            if (batch.size() >= 4_096) {
+                storage.addBatch(batch);
+                batch.clear();
+            }
+        }
+        storage.addBatch(batch);
+    }
+
+    @Test
+    @DisplayName("Test memory usage is reported per patient and per record type")
+    public void testAccounting() {
+        ingest(3, "HeartRate", 0, 200);
+        ingest(1, "ECG", 0, 20_000);
+
+        MemoryUsage usage = storage.getMemoryUsage();
+        long byPatient = usage.getBytesByPatient().values().stream().mapToLong(Long::longValue).sum();
+        long byType = usage.getBytesByRecordType().values().stream().mapToLong(Long::longValue).sum();
+        assertEquals(usage.getTotalBytes(), byPatient, "Patients should add up to the total");
+        assertEquals(usage.getTotalBytes(), byType, "Record types should add up to the total");
+        assertEquals(storage.getResidentBytes(), usage.getTotalBytes(), "The total should match the resident size");
+        assertTrue(usage.getRecordTypeBytes("ECG") > usage.getRecordTypeBytes("HeartRate"),
+                "The larger record type should use more memory");
+        assertEquals(List.of(1), usage.getLargestPatients(1), "The patient with ECG should be the largest");
+        assertTrue(usage.getPatientBytes(2) > 0, "Every patient should be accounted for");
+        assertEquals(0, usage.getPatientBytes(99), "Unknown patients use nothing");
+        assertEquals(0, usage.getRecordTypeBytes("NoSuchVitalSign"), "Unknown record types use nothing");
+        assertEquals(-1, RecordTypeRegistry.getInstance().find("NoSuchVitalSign"),
+                "Looking up usage should not register record types");
+        assertEquals(Long.MAX_VALUE, usage.getBudgetBytes(), "No budget should be reported");
+
+        storage.clearAllData();
+        assertEquals(0, storage.getMemoryUsage().getTotalBytes(), "Cleared storage should use nothing");
+    }
+
+    @Test
+    @DisplayName("Test the reject policy drops new readings once the budget is exceeded")
+    public void testReject() {
+        ingest(2, "HeartRate", 0, 5_000);
+        long used = storage.getMemoryUsage().getTotalBytes();
+        storage.setMemoryBudget(new MemoryBudget(used / 2, BudgetPolicy.REJECT));
+
+        ingest(2, "HeartRate", 10_000_000L, 100);
+        storage.addPatientData(3, 80, "HeartRate", 0);
+        assertEquals(201, storage.getRejectedRecordCount(), "Readings should be rejected over budget");
+        assertNull(storage.getLatest(3, "HeartRate"), "A new patient should not be admitted");
+        assertEquals(5_000, storage.getRecords(1, 0, Long.MAX_VALUE).size(), "Stored readings should be kept");
+
+        storage.setMemoryBudget(new MemoryBudget(used * 2, BudgetPolicy.REJECT));
+        storage.addPatientData(3, 80, "HeartRate", 0);
+        assertNotNull(storage.getLatest(3, "HeartRate"), "Readings should be accepted within budget");
+    }
+
+    @Test
+    @DisplayName("Test the evict policy removes the oldest readings in the background")
+    public void testEvictOldest() throws InterruptedException {
+        ingest(4, "HeartRate", 0, 4 * 3_600);
+        long used = storage.getMemoryUsage().getTotalBytes();
+        MemoryBudget budget = new MemoryBudget(used / 2, BudgetPolicy.EVICT_OLDEST);
+        storage.setMemoryBudget(budget);
+
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (storage.getMemoryUsage().getTotalBytes() > budget.getMaxBytes()
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        long remaining = storage.getMemoryUsage().getTotalBytes();
+        assertTrue(remaining <= budget.getMaxBytes(), "Usage should be brought within budget: " + remaining);
+        assertTrue(storage.getEvictedRecordCount() > 0, "Evicted readings should be counted");
+        for (int patientId = 1; patientId <= 4; patientId++) {
+            List<PatientRecord> records = storage.getRecords(patientId, 0, Long.MAX_VALUE);
+            assertTrue(records.get(0).getTimestamp() > HOUR, "The oldest readings of every patient should go");
+            assertEquals(4 * HOUR - 1_000, records.get(records.size() - 1).getTimestamp(),
+                    "The newest readings should be kept");
+        }
+    }
+
+    @Test
+    @DisplayName("Test the downsample policy keeps one reading per minute and leaves hourly rollups intact")
+    public void testDownsample() {
+        ingest(1, "HeartRate", 0, 6 * 3_600);
+        List<Aggregate> hours = storage.getAggregates(1, "HeartRate", 0, Long.MAX_VALUE, Resolution.HOUR);
+        long used = storage.getMemoryUsage().getTotalBytes();
+        storage.setMemoryBudget(new MemoryBudget(used / 2, BudgetPolicy.DOWNSAMPLE));
+        storage.enforceMemoryBudget();
+
+        long remaining = storage.getMemoryUsage().getTotalBytes();
+        assertTrue(remaining <= used / 2, "Usage should be brought within budget: " + remaining);
+        List<PatientRecord> records = storage.getRecords(1, 0, Long.MAX_VALUE);
+        assertEquals(0, records.get(0).getTimestamp(), "The oldest minute should still have a reading");
+        assertEquals(60_000, records.get(1).getTimestamp(), "Old readings should be one per minute");
+        assertEquals(6 * HOUR - 1_000, records.get(records.size() - 1).getTimestamp(),
+                "The newest readings should be kept raw");
+        assertEquals(6 * 3_600 - records.size(), storage.getEvictedRecordCount(),
+                "Downsampled readings should be counted");
+
+        List<Aggregate> after = storage.getAggregates(1, "HeartRate", 0, Long.MAX_VALUE, Resolution.HOUR);
+        assertEquals(hours.size(), after.size(), "Hourly rollups should be kept");
+        for (int i = 0; i < hours.size(); i++) {
+            assertEquals(hours.get(i).getCount(), after.get(i).getCount(), "Hourly counts should be unchanged");
+            assertEquals(hours.get(i).getMean(), after.get(i).getMean(), 1e-9, "Hourly means should be unchanged");
+        }
+        assertThrows(IllegalArgumentException.class, () -> new MemoryBudget(0, BudgetPolicy.DOWNSAMPLE),
+                "Empty budgets should be rejected");
+    }
+}
@@ -0,0 +1,70 @@
+package com.data_management;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import java.util.List;
+
+/**
+ * Tests for the off-heap storage mode of DataStorage.
+ */
+public class OffHeapStorageTest {
+
+    private DataStorage storage;
+
+    @BeforeEach
+    public void setup() {
+        storage = DataStorage.getInstance();
+        storage.clearAllData();
+        storage.setStorageMode(StorageMode.OFF_HEAP, 1 << 20);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        storage.clearAllData();
+        storage.setStorageMode(StorageMode.HEAP, 0);
+    }
+
+    @Test
+    @DisplayName("Test readings round-trip through direct memory")
+    public void testReadAndWrite() {
+        for (int i = 0; i < 5_000; i++) {
+            storage.addPatientData(1, i * 0.25, "ECG", 1_000L + i);
+        }
+        storage.addPatientData(1, 42.0, "ECG", 500L); // Late reading
+
+        List<PatientRecord> records = storage.getRecords(1, 0, Long.MAX_VALUE);
+        assertEquals(5_001, records.size(), "All readings should be stored");
+        assertEquals(500L, records.get(0).getTimestamp(), "Late reading should be merged first");
+        assertEquals(42.0, records.get(0).getMeasurementValue(), "Late value should be kept");
+        assertEquals(1_000L + 4_999, records.get(5_000).getTimestamp(), "Last reading should be newest");
+        assertEquals(4_999 * 0.25, records.get(5_000).getMeasurementValue(), "Values should be kept");
+        assertEquals(1, storage.getAllPatients().size(), "Patient should be listed");
+        assertTrue(storage.getOffHeapBytes() >= 5_001 * 16, "Readings should be held off-heap");
+    }
+
+    @Test
+    @DisplayName("Test the budget is enforced and returned on clear")
+    public void testBudget() {
+        assertThrows(IllegalStateException.class, () -> {
+            for (int i = 0; i < 1_000_000; i++) {
+                storage.addPatientData(i % 100, i, "ECG", i);
+            }
+        }, "Exceeding the budget should fail");
+        assertTrue(storage.getOffHeapBytes() <= 1 << 20, "Reserved bytes should stay within the budget");
+
+        storage.clearAllData();
+        assertEquals(0, storage.getOffHeapBytes(), "Clearing should release every chunk");
+    }
+
+    @Test
+    @DisplayName("Test the mode cannot change while data is stored")
+    public void testModeChangeRequiresEmptyStorage() {
+        storage.addPatientData(1, 1.0, "ECG", 1L);
+        assertThrows(IllegalStateException.class, () -> storage.setStorageMode(StorageMode.HEAP, 0));
+        assertEquals(StorageMode.OFF_HEAP, storage.getStorageMode(), "Mode should be unchanged");
+    }
+}
@@ -0,0 +1,148 @@
+package com.data_management;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Tests for the patient directory mapping patient IDs to dense indices.
+ */
+public class PatientDirectoryTest {
+
+    private static final int PATIENTS = 100_000;
+
+    @Test
+    @DisplayName("Test small, sparse and negative IDs map to dense indices")
+    public void testDenseIndices() {
+        PatientDirectory<String> directory = new PatientDirectory<>();
+        Random random = new Random(25);
+        List<Integer> added = new ArrayList<>();
+        Set<Integer> seen = new HashSet<>();
+        for (int i = 0; i < 20_000; i++) {
+            int patientId = i % 3 == 0 ? random.nextInt() : i % 3 == 1 ? -i : i;
+            if (seen.add(patientId)) {
+                assertNull(directory.get(patientId), "A new ID should not be found");
+                assertEquals("patient-" + patientId, directory.computeIfAbsent(patientId, id -> "patient-" + id),
+                        "A new ID should get the factory's value");
+                added.add(patientId);
+            }
+        }
+        assertEquals(added.size(), directory.size(), "Every distinct ID should be added once");
+        for (int index = 0; index < added.size(); index++) {
+            int patientId = added.get(index);
+            assertEquals(index, directory.indexOf(patientId), "Indices should be assigned in order");
+            assertEquals(patientId, directory.idAt(index), "Indices should map back to their ID");
+            assertEquals("patient-" + patientId, directory.get(patientId), "Values should be found by ID");
+            assertSame(directory.getAt(index), directory.computeIfAbsent(patientId, id -> "other"),
+                    "An existing ID should keep its value");
+        }
+        assertEquals(-1, directory.indexOf(Integer.MIN_VALUE + 1), "Unknown IDs should have no index");
+        assertEquals(added.size(), directory.values().size(), "Values should list every patient");
+
+        List<String> removed = directory.clear();
+        assertEquals(added.size(), removed.size(), "Clearing should return every value");
+        assertTrue(directory.isEmpty(), "The directory should be empty after clearing");
+        assertNull(directory.get(added.get(0)), "Cleared IDs should not be found");
+    }
+
+    @Test
+    @DisplayName("Test concurrent additions and lookups see each patient once")
+    public void testConcurrentAdditions() throws Exception {
+        PatientDirectory<int[]> directory = new PatientDirectory<>();
+        int threads = 4;
+        List<Thread> workers = new ArrayList<>();
+        List<Throwable> failures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int seed = t;
+            Thread worker = new Thread(() -> {
+                try {
+                    Random random = new Random(seed);
+                    for (int i = 0; i < 50_000; i++) {
+                        // Overlapping ranges, dense and sparse, so threads race to add the same IDs
+                        int patientId = random.nextBoolean() ? random.nextInt(30_000) : random.nextInt(30_000) * 7_919;
+                        int[] value = directory.computeIfAbsent(patientId, id -> new int[] {id});
+                        assertEquals(patientId, value[0], "Each ID should map to its own value");
+                        assertSame(value, directory.get(patientId), "A found value should stay the same");
+                    }
+                } catch (Throwable e) {
+                    synchronized (failures) {
+                        failures.add(e);
+                    }
+                }
+            });
+            worker.start();
+            workers.add(worker);
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        assertTrue(failures.isEmpty(), "Workers should not fail: " + failures);
+        Set<Integer> ids = new HashSet<>();
+        for (int index = 0; index < directory.size(); index++) {
+            assertTrue(ids.add(directory.idAt(index)), "No ID should be added twice");
+            assertEquals(index, directory.indexOf(directory.idAt(index)), "Indices should be consistent");
+        }
+    }
+
+    @Test
+    @DisplayName("Test lookups at 100k dense and sparse patients find every patient without allocating")
+    public void testLookupsDoNotAllocate() {
+        int[] denseIds = new int[PATIENTS];
+        int[] sparseIds = new int[PATIENTS];
+        Random random = new Random(25);
+        Set<Integer> distinct = new HashSet<>();
+        for (int i = 0; i < PATIENTS; i++) {
+            denseIds[i] = i + 1;
+            int sparse;
+            do {
+                sparse = 1_000_000 + random.nextInt(Integer.MAX_VALUE - 1_000_000);
+            } while (!distinct.add(sparse));
+            sparseIds[i] = sparse;
+        }
+        for (int[] ids : new int[][] {denseIds, sparseIds}) {
+            PatientDirectory<Object> directory = new PatientDirectory<>();
+            Object[] patients = new Object[ids.length];
+            for (int i = 0; i < ids.length; i++) {
+                Object patient = new Object();
+                patients[i] = patient;
+                directory.computeIfAbsent(ids[i], id -> patient);
+            }
+
+            long lookups = 20L * PATIENTS;
+            long directoryBytes = Long.MAX_VALUE;
+            int found = 0;
+            for (int attempt = 0; attempt < 5; attempt++) {
+                long allocated = allocatedBytes();
+                for (int round = 0; round < 20; round++) {
+                    for (int i = 0; i < ids.length; i++) {
+                        if (directory.get(ids[i]) == patients[i]) {
+                            found++;
+                        }
+                    }
+                }
+                directoryBytes = Math.min(directoryBytes, allocatedBytes() - allocated);
+            }
+            assertEquals(5 * lookups, found, "Every patient should be found");
+            assertTrue(directoryBytes < lookups / 100, "Directory lookups should not allocate: " + directoryBytes);
+        }
+    }
+
+    /**
+     * Returns the bytes allocated by this thread so far, or 0 where the JVM
+     * cannot tell.
+     */
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+}
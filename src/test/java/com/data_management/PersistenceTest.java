@@ -0,0 +1,143 @@
+package com.data_management;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Tests for write-ahead log and snapshot persistence of DataStorage.
+ */
+public class PersistenceTest {
+
+    private DataStorage storage;
+    private Path directory;
+
+    @BeforeEach
+    public void setup() throws IOException {
+        storage = DataStorage.getInstance();
+        storage.clearAllData();
+        directory = Files.createTempDirectory("data-storage");
+        storage.enablePersistence(directory, 1, TimeUnit.HOURS);
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        storage.disablePersistence();
+        storage.clearAllData();
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    /**
+     * Simulates a restart: drops everything in memory and recovers from disk.
+     */
+    private void restart() throws IOException {
+        storage.disablePersistence();
+        storage.clearAllData();
+        storage.enablePersistence(directory, 1, TimeUnit.HOURS);
+    }
+
+    @Test
+    @DisplayName("Test readings are recovered from the write-ahead log")
+    public void testRecoverFromLog() throws IOException {
+        for (int i = 0; i < 1_000; i++) {
+            storage.addPatientData(1, i, "ECG", 1_000L + i);
+            storage.addPatientData(2, i * 2.0, "HeartRate", 1_000L + i);
+        }
+        storage.syncPersistence();
+        restart();
+
+        List<PatientRecord> ecg = storage.getRecords(1, 0, Long.MAX_VALUE);
+        assertEquals(1_000, ecg.size(), "All logged readings should be recovered");
+        assertEquals(999.0, ecg.get(999).getMeasurementValue(), "Values should be recovered");
+        assertEquals("ECG", ecg.get(0).getRecordType(), "Record type should be recovered");
+        assertEquals(1_000, storage.getRecords(2, 0, Long.MAX_VALUE).size(), "Second patient should be recovered");
+    }
+
+    @Test
+    @DisplayName("Test recovery combines the snapshot with the log written after it")
+    public void testRecoverFromSnapshotAndLog() throws IOException {
+        for (int i = 0; i < 5_000; i++) {
+            storage.addPatientData(1, i, "Saturation", 10_000L + i);
+        }
+        storage.snapshot();
+        for (int i = 0; i < 100; i++) {
+            storage.addPatientData(1, -i, "Saturation", 20_000L + i);
+        }
+        storage.addPatientData(1, 7.5, "Saturation", 500L); // Late reading after the snapshot
+        storage.syncPersistence();
+        restart();
+
+        List<PatientRecord> records = storage.getRecords(1, 0, Long.MAX_VALUE);
+        assertEquals(5_101, records.size(), "Snapshot and log readings should both be recovered");
+        assertEquals(500L, records.get(0).getTimestamp(), "Late reading should be merged into order");
+        assertEquals(7.5, records.get(0).getMeasurementValue(), "Late value should be recovered");
+        assertEquals(20_099L, records.get(5_100).getTimestamp(), "Newest reading should come from the log");
+
+        // A second restart must not duplicate readings held by the snapshot and the log
+        restart();
+        assertEquals(5_101, storage.getRecords(1, 0, Long.MAX_VALUE).size(), "Readings should not be duplicated");
+    }
+
+    @Test
+    @DisplayName("Test batched readings are logged and recovered")
+    public void testRecoverBatch() throws IOException {
+        RecordBatch batch = new RecordBatch();
+        for (int i = 0; i < 3_000; i++) {
+            batch.add(i % 3, i % 2 == 0 ? "ECG" : "HeartRate", 1_000L + i, i);
+        }
+        storage.addBatch(batch);
+        storage.syncPersistence();
+        restart();
+
+        int recovered = 0;
+        for (int patientId = 0; patientId < 3; patientId++) {
+            recovered += storage.getRecords(patientId, 0, Long.MAX_VALUE).size();
+        }
+        assertEquals(3_000, recovered, "Every batched reading should be recovered");
+        List<PatientRecord> ecg = storage.getRecords(1, RecordTypeRegistry.ECG, 0, Long.MAX_VALUE);
+        assertEquals(500, ecg.size(), "Batched readings should keep their type");
+        assertEquals(2_998.0, ecg.get(499).getMeasurementValue(), "Batched values should be recovered");
+    }
+
+    @Test
+    @DisplayName("Test a torn frame at the end of the log is ignored")
+    public void testTornTail() throws IOException {
+        for (int i = 0; i < 100; i++) {
+            storage.addPatientData(1, i, "ECG", i);
+        }
+        storage.disablePersistence();
+        List<Long> segments = WriteAheadLog.listSegments(directory);
+        Path last = WriteAheadLog.segmentPath(directory, segments.get(segments.size() - 1));
+        Files.write(last, new byte[] {64, 0, 0, 0, 1, 2, 3}, StandardOpenOption.APPEND); // Half-written frame
+
+        storage.clearAllData();
+        storage.enablePersistence(directory, 1, TimeUnit.HOURS);
+        assertEquals(100, storage.getRecords(1, 0, Long.MAX_VALUE).size(), "Intact readings should be recovered");
+    }
+
+    @Test
+    @DisplayName("Test cleared data does not come back after a restart")
+    public void testClearIsPersisted() throws IOException {
+        storage.addPatientData(1, 1.0, "ECG", 1L);
+        storage.clearAllData();
+        storage.addPatientData(2, 2.0, "ECG", 2L);
+        storage.syncPersistence();
+        restart();
+
+        assertTrue(storage.getRecords(1, 0, Long.MAX_VALUE).isEmpty(), "Cleared patient should stay cleared");
+        assertEquals(1, storage.getRecords(2, 0, Long.MAX_VALUE).size(), "Later readings should be recovered");
+    }
+}
@@ -0,0 +1,162 @@
+package com.data_management;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for the cross-patient population queries of DataStorage.
+ */
+public class PopulationQueryTest {
+
+    private DataStorage storage;
+
+    @BeforeEach
+    public void setup() {
+        storage = DataStorage.getInstance();
+        storage.clearAllData();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        storage.setRetentionPolicy(new RetentionPolicy());
+        storage.clearAllData();
+    }
+
+    @Test
+    @DisplayName("Test population queries match a scan of every patient's latest value")
+    public void testMatchesScan() {
+        int patients = 2_000;
+        for (int p = 0; p < patients; p++) {
+            for (int i = 0; i < 5; i++) {
+                storage.addPatientData(p, 85 + (p * 7 + i) % 15, "OxygenSaturation", 1_000L * i);
+            }
+        }
+        List<PatientRecord> low = storage.findPatientsByLatest("OxygenSaturation", Double.NEGATIVE_INFINITY, 91.5);
+        int expected = 0;
+        for (int p = 0; p < patients; p++) {
+            if (storage.getLatest(p, "OxygenSaturation").getMeasurementValue() < 92) {
+                expected++;
+            }
+        }
+        assertEquals(expected, low.size(), "Every patient with a low latest value should be found");
+        for (int i = 1; i < low.size(); i++) {
+            assertTrue(low.get(i - 1).getMeasurementValue() <= low.get(i).getMeasurementValue(),
+                    "Matches should be in ascending value order");
+        }
+        assertEquals(4_000L, low.get(0).getTimestamp(), "Matches should be the latest readings");
+        assertEquals("OxygenSaturation", low.get(0).getRecordType(), "Record type should be reported");
+    }
+
+    @Test
+    @DisplayName("Test newer readings move patients in and out of a range, late readings do not")
+    public void testIndexFollowsLatest() {
+        storage.addPatientData(1, 97, "OxygenSaturation", 1_000L);
+        storage.addPatientData(2, 90, "OxygenSaturation", 1_000L);
+        assertEquals(1, storage.findPatientsByLatest("OxygenSaturation", 0, 91).size(),
+                "Only patient 2 should be low");
+
+        storage.addPatientData(1, 89, "OxygenSaturation", 2_000L);
+        storage.addPatientData(2, 96, "OxygenSaturation", 2_000L);
+        storage.addPatientData(2, 80, "OxygenSaturation", 1_500L); // Late reading
+        List<PatientRecord> low = storage.findPatientsByLatest("OxygenSaturation", 0, 91);
+        assertEquals(1, low.size(), "Only patient 1 should be low now");
+        assertEquals(1, low.get(0).getPatientId(), "Patient 1 should have moved into the range");
+
+        RecordBatch batch = new RecordBatch(4);
+        batch.add(2, RecordTypeRegistry.OXYGEN_SATURATION, 3_000L, 88);
+        batch.add(2, RecordTypeRegistry.OXYGEN_SATURATION, 2_500L, 99);
+        storage.addBatch(batch);
+        assertEquals(2, storage.findPatientsByLatest("OxygenSaturation", 0, 91).size(),
+                "Batched readings should update the index by timestamp");
+
+        assertEquals(1, storage.findPatientsByLatest("OxygenSaturation", 0, 91, 2_500L).size(),
+                "Readings older than the since time should be excluded");
+        assertTrue(storage.findPatientsByLatest("HeartRate", 0, 200).isEmpty(),
+                "Record types without readings should match nobody");
+    }
+
+    @Test
+    @DisplayName("Test retention and clearing remove patients from the index")
+    public void testRetentionAndClear() {
+        long now = System.currentTimeMillis();
+        storage.addPatientData(1, 150, "HeartRate", now - 10_000_000L);
+        storage.addPatientData(2, 155, "HeartRate", now);
+        assertEquals(2, storage.findPatientsByLatest("HeartRate", 140, 200).size(), "Both patients should match");
+
+        storage.setRetentionPolicy(new RetentionPolicy().setRetention("HeartRate", 1_000, TimeUnit.SECONDS));
+        storage.enforceRetention();
+        List<PatientRecord> high = storage.findPatientsByLatest("HeartRate", 140, 200);
+        assertEquals(1, high.size(), "Expired patients should not match");
+        assertEquals(2, high.get(0).getPatientId(), "The recent reading should still match");
+
+        storage.clearAllData();
+        assertTrue(storage.findPatientsByLatest("HeartRate", 140, 200).isEmpty(),
+                "Cleared readings should not match");
+    }
+
+    @Test
+    @DisplayName("Test querying a record type that was never stored finds nothing and registers nothing")
+    public void testUnknownRecordType() {
+        storage.addPatientData(1, 90, "OxygenSaturation", 1_000L);
+        RecordTypeRegistry registry = RecordTypeRegistry.getInstance();
+        int size = registry.size();
+        assertTrue(storage.findPatientsByLatest("NoSuchVitalSign", 0, 100).isEmpty(),
+                "An unknown record type should have no matches");
+        assertEquals(size, registry.size(), "Queries should not register record types");
+        assertEquals(-1, registry.find("NoSuchVitalSign"), "The queried name should stay unknown");
+    }
+
+    @Test
+    @DisplayName("Test range queries over 10k patients only visit the matching patients")
+    public void testQueryVisitsMatchesOnly() {
+        int patients = 10_000;
+        for (int p = 0; p < patients; p++) {
+            storage.addPatientData(p, 80 + p % 20, RecordTypeRegistry.OXYGEN_SATURATION, 1_000L);
+        }
+        storage.findPatientsByLatest("OxygenSaturation", 0, 81); // Builds the index
+        for (int p = 0; p < patients; p++) {
+            storage.addPatientData(p, 90 + p % 10, RecordTypeRegistry.OXYGEN_SATURATION, 2_000L);
+        }
+        List<PatientRecord> low = storage.findPatientsByLatest("OxygenSaturation", 0, 91.5);
+        assertEquals(2_000, low.size(), "Patients with a latest value of 90 or 91 should match");
+        for (PatientRecord record : low) {
+            assertTrue(record.getMeasurementValue() <= 91, "Only matching patients should be returned");
+            assertEquals(2_000L, record.getTimestamp(), "Replaced latest values should not be returned");
+        }
+
+        // A query reads the value-ordered index from the first match to the last, so it allocates per
+        // match; one that looked up each patient's latest reading would allocate per patient
+        long none = Long.MAX_VALUE;
+        long some = Long.MAX_VALUE;
+        for (int attempt = 0; attempt < 5; attempt++) {
+            long allocated = allocatedBytes();
+            assertTrue(storage.findPatientsByLatest("OxygenSaturation", 0, 89.5).isEmpty(),
+                    "Values replaced by newer readings should not match");
+            none = Math.min(none, allocatedBytes() - allocated);
+            allocated = allocatedBytes();
+            storage.findPatientsByLatest("OxygenSaturation", 0, 91.5);
+            some = Math.min(some, allocatedBytes() - allocated);
+        }
+        assertTrue(none < 2_048, "A query without matches should not touch every patient: " + none + " bytes");
+        assertTrue(some < 2_048 + 200L * low.size(), "A query should cost in proportion to its matches: " + some);
+    }
+
+    /**
+     * Returns the bytes allocated by this thread so far, or 0 where the JVM
+     * cannot tell.
+     */
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,130 @@
+package com.data_management;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Tests for the quantile sketches and the percentile queries of DataStorage.
+ */
+public class QuantileSketchTest {
+
+    private static final double[] QUANTILES = {0, 0.05, 0.25, 0.5, 0.75, 0.95, 0.99, 1};
+
+    private DataStorage storage;
+
+    @BeforeEach
+    public void setup() {
+        storage = DataStorage.getInstance();
+        storage.clearAllData();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        storage.clearAllData();
+    }
+
+    @Test
+    @DisplayName("Test sketch quantiles stay within the relative accuracy, also after merging")
+    public void testAccuracyAndMerge() {
+        Random random = new Random(7);
+        double[] values = new double[50_000];
+        QuantileSketch first = new QuantileSketch();
+        QuantileSketch second = new QuantileSketch();
+        for (int i = 0; i < values.length; i++) {
+            // Signed values with exact zeros, like an ECG trace
+            values[i] = i % 10 == 0 ? 0 : random.nextGaussian() * 0.5;
+            (i % 2 == 0 ? first : second).add(values[i]);
+        }
+        first.merge(second);
+        assertEquals(values.length, first.getCount(), "Merging should add the counts");
+        assertAccurate(values, first);
+
+        QuantileSketch empty = new QuantileSketch();
+        assertTrue(Double.isNaN(empty.getQuantile(0.5)), "An empty sketch should have no quantiles");
+        assertThrows(IllegalArgumentException.class, () -> first.getQuantile(1.5),
+                "Fractions above 1 should be rejected");
+    }
+
+    @Test
+    @DisplayName("Test window percentiles match a sort of the raw readings")
+    public void testWindowPercentiles() {
+        Random random = new Random(11);
+        long hour = Resolution.HOUR.getMillis();
+        int readings = 6 * 3_600;
+        for (int i = 0; i < readings; i++) {
+            storage.addPatientData(1, 60 + random.nextInt(60) + random.nextDouble(), "HeartRate", 1_000L * i);
+        }
+        storage.addPatientData(1, 200, "HeartRate", 2 * hour + 500); // Late reading inside a whole hour
+
+        long start = hour / 2 + 123;
+        long end = 5 * hour + 4_567;
+        List<PatientRecord> records = storage.getRecords(1, start, end);
+        double[] exact = new double[records.size()];
+        for (int i = 0; i < exact.length; i++) {
+            exact[i] = records.get(i).getMeasurementValue();
+        }
+        QuantileSketch sketch = storage.getQuantileSketch(1, "HeartRate", start, end);
+        assertEquals(exact.length, sketch.getCount(), "The sketch should cover exactly the readings in range");
+        assertEquals(200.0, sketch.getMax(), "The late reading should be included");
+        assertAccurate(exact, sketch);
+
+        double[] percentiles = storage.getQuantiles(1, "HeartRate", start, end, 0.05, 0.5, 0.95);
+        assertEquals(3, percentiles.length, "One estimate per fraction should be returned");
+        assertTrue(percentiles[0] < percentiles[1] && percentiles[1] < percentiles[2],
+                "Estimates should be in the order requested");
+        assertTrue(Double.isNaN(storage.getQuantiles(2, "HeartRate", 0, end, 0.5)[0]),
+                "A patient without readings should have no percentiles");
+        int types = RecordTypeRegistry.getInstance().size();
+        assertEquals(0, storage.getQuantileSketch(1, "NoSuchVitalSign", 0, end).getCount(),
+                "A record type that was never stored should have an empty sketch");
+        assertEquals(types, RecordTypeRegistry.getInstance().size(), "Queries should not register record types");
+    }
+
+    @Test
+    @DisplayName("Test sketch accuracy versus memory for a day of heart rates")
+    public void testAccuracyVersusMemory() {
+        Random random = new Random(3);
+        int readings = 24 * 3_600;
+        double[] values = new double[readings];
+        for (int i = 0; i < readings; i++) {
+            values[i] = 75 + 12 * random.nextGaussian();
+            storage.addPatientData(1, values[i], "HeartRate", 1_000L * i);
+        }
+        long end = 1_000L * readings - 1;
+        long sketchBytes = 0;
+        for (long hour = 0; hour < 24; hour++) {
+            long start = hour * Resolution.HOUR.getMillis();
+            sketchBytes += storage.getQuantileSketch(1, "HeartRate", start, start + Resolution.HOUR.getMillis() - 1)
+                    .residentBytes();
+        }
+        QuantileSketch day = storage.getQuantileSketch(1, "HeartRate", 0, end);
+        assertAccurate(values, day);
+        assertTrue(sketchBytes < 16L * readings / 50, "Sketches should be far smaller than the readings");
+    }
+
+    private static void assertAccurate(double[] values, QuantileSketch sketch) {
+        double error = maxRelativeError(values, sketch);
+        assertTrue(error <= QuantileSketch.RELATIVE_ACCURACY + 1e-12,
+                "Quantiles should be within the relative accuracy: " + error);
+    }
+
+    private static double maxRelativeError(double[] values, QuantileSketch sketch) {
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        double worst = 0;
+        for (double quantile : QUANTILES) {
+            double exact = sorted[(int) Math.floor(quantile * (sorted.length - 1))];
+            double estimate = sketch.getQuantile(quantile);
+            double error = exact == 0 ? Math.abs(estimate) : Math.abs(estimate - exact) / Math.abs(exact);
+            worst = Math.max(worst, error);
+        }
+        return worst;
+    }
+}
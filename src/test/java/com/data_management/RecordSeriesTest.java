@@ -0,0 +1,123 @@
+package com.data_management;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Tests for the columnar RecordSeries.
+ */
+public class RecordSeriesTest {
+
+    private RecordSeries series;
+    private static final int PATIENT_ID = 7;
+    private static final String TYPE = "ECG";
+
+    @BeforeEach
+    public void setup() {
+        series = new RecordSeries(RecordTypeRegistry.getInstance().idOf(TYPE));
+    }
+
+    @Test
+    @DisplayName("Test readings spanning several chunks are kept in order")
+    public void testAppendAcrossChunks() {
+        int count = RecordSeries.MAX_CHUNK_CAPACITY * 3 + 17;
+        for (int i = 0; i < count; i++) {
+            series.append(1000L + i, i * 0.5);
+        }
+        assertEquals(count, series.size(), "All readings should be stored");
+
+        List<PatientRecord> records = new ArrayList<>();
+        series.collect(PATIENT_ID, Long.MIN_VALUE, Long.MAX_VALUE, records);
+        assertEquals(count, records.size(), "All readings should be returned");
+        for (int i = 0; i < count; i++) {
+            PatientRecord record = records.get(i);
+            assertEquals(1000L + i, record.getTimestamp(), "Timestamp should match");
+            assertEquals(i * 0.5, record.getMeasurementValue(), "Value should match");
+            assertEquals(PATIENT_ID, record.getPatientId(), "Patient ID should match");
+            assertEquals(TYPE, record.getRecordType(), "Record type should match");
+        }
+    }
+
+    @Test
+    @DisplayName("Test range collection across a chunk boundary")
+    public void testCollectRange() {
+        for (int i = 0; i < 100; i++) {
+            series.append(i, i);
+        }
+        List<PatientRecord> records = new ArrayList<>();
+        series.collect(PATIENT_ID, 10, 40, records);
+        assertEquals(31, records.size(), "Should return the inclusive range");
+        assertEquals(10, records.get(0).getTimestamp(), "First record should start the range");
+        assertEquals(40, records.get(30).getTimestamp(), "Last record should end the range");
+    }
+
+    @Test
+    @DisplayName("Test additional info is kept for the readings that carry it")
+    public void testAdditionalInfo() {
+        series.append(1, 1.0);
+        series.append(2, 1.0, "triggered");
+
+        List<PatientRecord> records = new ArrayList<>();
+        series.collect(PATIENT_ID, 0, 10, records);
+        assertEquals("", records.get(0).getAdditionalInfo(), "Plain reading should have empty info");
+        assertEquals("triggered", records.get(1).getAdditionalInfo(), "Info should be restored");
+    }
+
+    @Test
+    @DisplayName("Test late readings are merged into timestamp order")
+    public void testOutOfOrderReadings() {
+        series.append(10, 1.0);
+        series.append(30, 3.0);
+        series.append(20, 2.0); // Late reading goes to the reorder buffer
+        series.append(40, 4.0);
+        series.append(5, 0.5);
+
+        List<PatientRecord> records = new ArrayList<>();
+        series.collect(PATIENT_ID, Long.MIN_VALUE, Long.MAX_VALUE, records);
+        assertEquals(5, records.size(), "All readings should be returned");
+        long previous = Long.MIN_VALUE;
+        for (PatientRecord record : records) {
+            assertTrue(record.getTimestamp() >= previous, "Records should be in timestamp order");
+            assertEquals(record.getTimestamp() / 10.0, record.getMeasurementValue(), "Value should follow its timestamp");
+            previous = record.getTimestamp();
+        }
+    }
+
+    @Test
+    @DisplayName("Test range queries match a full scan on shuffled input")
+    public void testRangeQueriesOnShuffledInput() {
+        Random random = new Random(42);
+        int count = 20_000;
+        List<Long> timestamps = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            // Mostly in order with occasional late arrivals, like a real feed
+            long timestamp = random.nextInt(10) == 0 ? random.nextInt(i + 1) * 10L : i * 10L;
+            if (series.append(timestamp, timestamp)) {
+                timestamps.add(timestamp);
+            }
+        }
+        assertEquals(timestamps.stream().distinct().count(), timestamps.size(),
+                "Only readings with new timestamps should be stored");
+
+        for (int q = 0; q < 50; q++) {
+            long start = random.nextInt(count * 10);
+            long end = start + random.nextInt(5_000);
+            long expected = timestamps.stream().filter(t -> t >= start && t <= end).count();
+
+            List<PatientRecord> records = new ArrayList<>();
+            series.collect(PATIENT_ID, start, end, records);
+            assertEquals(expected, records.size(), "Range query should match a full scan");
+            for (int i = 1; i < records.size(); i++) {
+                assertTrue(records.get(i - 1).getTimestamp() <= records.get(i).getTimestamp(),
+                        "Records should be in timestamp order");
+            }
+        }
+        assertEquals(timestamps.size(), series.size(), "No reading should be lost by merging");
+    }
+}
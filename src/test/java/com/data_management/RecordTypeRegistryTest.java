@@ -0,0 +1,71 @@
+package com.data_management;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import java.util.List;
+
+/**
+ * Tests for the RecordTypeRegistry.
+ */
+public class RecordTypeRegistryTest {
+
+    private final RecordTypeRegistry registry = RecordTypeRegistry.getInstance();
+
+    @Test
+    @DisplayName("Test the alert record types have their fixed ids")
+    public void testFixedIds() {
+        assertEquals(RecordTypeRegistry.SYSTOLIC_BP, registry.idOf("SystolicBP"), "SystolicBP id should be fixed");
+        assertEquals(RecordTypeRegistry.OXYGEN_SATURATION, registry.idOf("OxygenSaturation"),
+                "OxygenSaturation id should be fixed");
+        assertEquals(RecordTypeRegistry.ALERT, registry.idOf("Alert"), "Alert id should be fixed");
+        assertEquals("ECG", registry.nameOf(RecordTypeRegistry.ECG), "ECG name should match its id");
+    }
+
+    @Test
+    @DisplayName("Test generator names are aliases of the canonical record types")
+    public void testAliases() {
+        assertEquals(RecordTypeRegistry.SYSTOLIC_BP, registry.idOf("SystolicPressure"), "Alias should share the id");
+        assertEquals(RecordTypeRegistry.DIASTOLIC_BP, registry.idOf("DiastolicPressure"), "Alias should share the id");
+        assertEquals(RecordTypeRegistry.OXYGEN_SATURATION, registry.idOf("Saturation"), "Alias should share the id");
+
+        Patient patient = new Patient(1);
+        patient.addRecord(97.0, "Saturation", 1L);
+        List<PatientRecord> records = patient.getRecords(RecordTypeRegistry.OXYGEN_SATURATION, 0, 10);
+        assertEquals(1, records.size(), "Aliased reading should be stored under the canonical type");
+        assertEquals("OxygenSaturation", records.get(0).getRecordType(), "Canonical name should be reported");
+        assertEquals(RecordTypeRegistry.OXYGEN_SATURATION, records.get(0).getRecordTypeId(),
+                "Record should carry the type id");
+
+        assertThrows(IllegalArgumentException.class, () -> registry.registerAlias("ECG", "HeartRate"),
+                "A record type name cannot become an alias of another type");
+    }
+
+    @Test
+    @DisplayName("Test looking up an unknown name does not register it")
+    public void testFindDoesNotRegister() {
+        int size = registry.size();
+        assertEquals(-1, registry.find("NotARecordType"), "Unknown names should not be found");
+        assertEquals(size, registry.size(), "Finding should not register a name");
+        assertEquals(RecordTypeRegistry.ECG, registry.find("ECG"), "Known names should be found");
+        assertEquals(RecordTypeRegistry.OXYGEN_SATURATION, registry.find("Saturation"), "Aliases should be found");
+    }
+
+    @Test
+    @DisplayName("Test reading a record type that was never stored does not register it")
+    public void testReadsDoNotRegister() {
+        Patient patient = new Patient(1);
+        patient.addRecord(72.0, "HeartRate", 1L);
+        int size = registry.size();
+        assertTrue(patient.getAggregates("NotStoredType", 0, 10, Resolution.SECOND).isEmpty(),
+                "An unknown type should have no buckets");
+        int[] visited = new int[1];
+        patient.forEachInRange("NotStoredType", 0, 10, (timestamp, value) -> visited[0]++);
+        assertEquals(0, visited[0], "An unknown type should have no readings");
+        assertFalse(patient.openCursor("NotStoredType", 0, 10, new RecordCursor()).next(),
+                "A cursor over an unknown type should be empty");
+        assertEquals(size, registry.size(), "Reads should not register record types");
+        assertEquals(-1, registry.find("NotStoredType"), "The read name should stay unknown");
+    }
+}
@@ -0,0 +1,79 @@
+package com.data_management;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for retention enforcement in DataStorage.
+ */
+public class RetentionTest {
+
+    private DataStorage storage;
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+
+    @BeforeEach
+    public void setup() {
+        storage = DataStorage.getInstance();
+        storage.clearAllData();
+        storage.setRetentionPolicy(new RetentionPolicy().setRetention("ECG", 6, TimeUnit.HOURS));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        storage.stopRetentionEnforcement();
+        storage.setRetentionPolicy(new RetentionPolicy());
+        storage.clearAllData();
+    }
+
+    @Test
+    @DisplayName("Test expired chunks are evicted and counted")
+    public void testExpiredChunksAreEvicted() {
+        long now = System.currentTimeMillis();
+        int oldReadings = RecordSeries.MAX_CHUNK_CAPACITY * 4;
+        for (int i = 0; i < oldReadings; i++) {
+            storage.addPatientData(1, i, "ECG", now - 12 * HOUR + i);
+        }
+        storage.addPatientData(1, 1.0, "ECG", now);
+        long before = storage.getResidentBytes();
+
+        long evicted = storage.enforceRetention();
+
+        assertTrue(evicted > 0, "Old readings should be evicted");
+        assertEquals(evicted, storage.getEvictedRecordCount(), "Counter should report evictions");
+        assertTrue(storage.getResidentBytes() < before, "Resident bytes should shrink");
+        assertTrue(storage.getRecords(1, 0, now - 7 * HOUR).size() < oldReadings,
+                "Expired readings should be gone");
+        assertEquals(1, storage.getRecords(1, now - HOUR, now).size(), "Recent readings should be kept");
+    }
+
+    @Test
+    @DisplayName("Test record types without retention are kept")
+    public void testUnconfiguredTypeIsKept() {
+        long now = System.currentTimeMillis();
+        storage.addPatientData(1, 5.0, "Cholesterol", now - 1000 * HOUR);
+
+        assertEquals(0, storage.enforceRetention(), "Nothing should be evicted");
+        assertEquals(1, storage.getRecords(1, 0, now).size(), "Reading should be kept");
+    }
+
+    @Test
+    @DisplayName("Test background enforcement evicts without explicit calls")
+    public void testBackgroundEnforcement() throws InterruptedException {
+        long now = System.currentTimeMillis();
+        storage.addPatientData(2, 1.0, "ECG", now - 10 * HOUR);
+
+        storage.startRetentionEnforcement(10, TimeUnit.MILLISECONDS);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (storage.getEvictedRecordCount() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        assertEquals(1, storage.getEvictedRecordCount(), "Background task should evict the reading");
+        assertTrue(storage.getRecords(2, 0, now).isEmpty(), "Reading should be gone");
+    }
+}
@@ -0,0 +1,117 @@
+package com.data_management;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Tests for the rollups maintained alongside every series.
+ */
+public class RollupTest {
+
+    private DataStorage storage;
+
+    @BeforeEach
+    public void setup() {
+        storage = DataStorage.getInstance();
+        storage.clearAllData();
+    }
+
+    @Test
+    @DisplayName("Test minute buckets summarize their readings")
+    public void testMinuteBuckets() {
+        // 2 minutes of readings, one every 10 seconds
+        for (int i = 0; i < 12; i++) {
+            storage.addPatientData(1, i, "HeartRate", i * 10_000L);
+        }
+
+        List<Aggregate> buckets = storage.getAggregates(1, "HeartRate", 0, Long.MAX_VALUE, Resolution.MINUTE);
+        assertEquals(2, buckets.size(), "Should have one bucket per minute");
+        Aggregate first = buckets.get(0);
+        assertEquals(0, first.getStartTime(), "First bucket should start at zero");
+        assertEquals(60_000, first.getEndTime(), "Bucket should span one minute");
+        assertEquals(6, first.getCount(), "Six readings fall in the first minute");
+        assertEquals(0.0, first.getMin(), "Minimum should match");
+        assertEquals(5.0, first.getMax(), "Maximum should match");
+        assertEquals(2.5, first.getMean(), "Mean should match");
+        assertEquals(8.5, buckets.get(1).getMean(), "Second bucket mean should match");
+
+        List<Aggregate> hours = storage.getAggregates(1, "HeartRate", 0, Long.MAX_VALUE, Resolution.HOUR);
+        assertEquals(1, hours.size(), "All readings fall in one hour");
+        assertEquals(12, hours.get(0).getCount(), "Hour bucket should count every reading");
+    }
+
+    @Test
+    @DisplayName("Test rollups match aggregating the raw readings, including late ones")
+    public void testRollupsMatchRawReadings() {
+        Random random = new Random(7);
+        for (int i = 0; i < 50_000; i++) {
+            long timestamp = random.nextInt(20) == 0 ? random.nextInt(i + 1) * 250L : i * 250L;
+            storage.addPatientData(2, random.nextGaussian() * 10 + 80, "HeartRate", timestamp);
+        }
+
+        long start = 1_000_000;
+        long end = 9_000_000;
+        for (Resolution resolution : Resolution.values()) {
+            for (Aggregate bucket : storage.getAggregates(2, "HeartRate", start, end, resolution)) {
+                List<PatientRecord> raw = storage.getRecords(2, bucket.getStartTime(), bucket.getEndTime() - 1);
+                assertEquals(raw.size(), bucket.getCount(), "Count should match the raw readings");
+                double sum = 0;
+                double min = Double.POSITIVE_INFINITY;
+                for (PatientRecord record : raw) {
+                    sum += record.getMeasurementValue();
+                    min = Math.min(min, record.getMeasurementValue());
+                }
+                assertEquals(min, bucket.getMin(), "Minimum should match the raw readings");
+                assertEquals(sum, bucket.getSum(), 1e-6, "Sum should match the raw readings");
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Test a week of readings is charted from far fewer buckets")
+    public void testWeekChart() {
+        long week = 7 * 24 * 3_600_000L;
+        for (long t = 0; t < week; t += 1_000) {
+            storage.addPatientData(3, 98, "Saturation", t);
+        }
+
+        List<Aggregate> buckets = storage.getAggregates(3, "Saturation", 0, week - 1, Resolution.MINUTE);
+        assertEquals(7 * 24 * 60, buckets.size(), "A week should have one bucket per minute");
+        assertEquals(168, storage.getAggregates(3, "Saturation", 0, week - 1, Resolution.HOUR).size(),
+                "A week should have one bucket per hour");
+        assertTrue(storage.getAggregates(99, "Saturation", 0, week, Resolution.HOUR).isEmpty(),
+                "Unknown patient should have no buckets");
+    }
+
+    @Test
+    @DisplayName("Test a day at 1 Hz stays compact with its rollups, which still match the readings")
+    public void testRollupFootprint() {
+        RecordSeries series = new RecordSeries(RecordTypeRegistry.ECG, ChunkAllocator.COMPRESSED_HEAP);
+        int readings = 86_400;
+        for (int i = 0; i < readings; i++) {
+            series.append(1_000L * i, 60 + i % 40);
+        }
+
+        double bytesPerReading = (double) series.residentBytes() / readings;
+        assertTrue(bytesPerReading < 8, "Rollups should not outweigh the readings: " + bytesPerReading);
+
+        // Second buckets older than an hour are rebuilt from the readings
+        List<Aggregate> seconds = new ArrayList<>();
+        series.aggregate(0, 7_200_000, Resolution.SECOND, seconds);
+        assertEquals(7_201, seconds.size(), "Every old second should still have a bucket");
+        for (Aggregate bucket : seconds) {
+            long i = bucket.getStartTime() / 1_000;
+            assertEquals(1, bucket.getCount(), "Each second should hold one reading");
+            assertEquals(60 + i % 40, bucket.getMax(), "Rebuilt buckets should match the readings");
+        }
+        List<Aggregate> recent = new ArrayList<>();
+        series.aggregate(1_000L * (readings - 60), Long.MAX_VALUE, Resolution.SECOND, recent);
+        assertEquals(60, recent.size(), "The last minute should come from the kept tier");
+    }
+}
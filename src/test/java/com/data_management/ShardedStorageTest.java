@@ -0,0 +1,129 @@
+package com.data_management;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for sharded single-writer ingest in DataStorage.
+ */
+public class ShardedStorageTest {
+
+    private DataStorage storage;
+
+    @BeforeEach
+    public void setup() {
+        storage = DataStorage.getInstance();
+        storage.clearAllData();
+        storage.setShardCount(4);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        storage.setShardCount(0);
+        storage.clearAllData();
+        storage.setStorageMode(StorageMode.HEAP, 0);
+    }
+
+    @Test
+    @DisplayName("Test a query sees readings added before it")
+    public void testReadYourWrites() {
+        for (int i = 0; i < 10_000; i++) {
+            storage.addPatientData(i % 10, i, "ECG", i);
+        }
+        List<PatientRecord> records = storage.getRecords(3, 0, Long.MAX_VALUE);
+        assertEquals(1_000, records.size(), "Every queued reading of the patient should be visible");
+        for (int i = 0; i < records.size(); i++) {
+            assertEquals(3 + 10L * i, records.get(i).getTimestamp(), "Readings should keep their order");
+        }
+        assertEquals(10, storage.getAllPatients().size(), "Every patient should be visible");
+    }
+
+    @Test
+    @DisplayName("Test concurrent producers lose no readings")
+    public void testConcurrentProducers() throws Exception {
+        int producers = 8;
+        int readings = 20_000;
+        ExecutorService executor = Executors.newFixedThreadPool(producers);
+        for (int p = 0; p < producers; p++) {
+            int producer = p;
+            executor.submit(() -> {
+                for (int i = 0; i < readings; i++) {
+                    // Producers share patients, so shards receive interleaved readings
+                    storage.addPatientData(i % 16, i, "HeartRate", producer * (long) readings + i);
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS), "Producers should finish");
+        storage.flush();
+
+        long total = 0;
+        for (Patient patient : storage.getAllPatients()) {
+            List<PatientRecord> records = patient.getRecords(0, Long.MAX_VALUE);
+            for (int i = 1; i < records.size(); i++) {
+                assertTrue(records.get(i - 1).getTimestamp() <= records.get(i).getTimestamp(),
+                        "Each series should stay sorted");
+            }
+            total += records.size();
+        }
+        assertEquals((long) producers * readings, total, "No reading should be lost");
+    }
+
+    @Test
+    @DisplayName("Test batches and changing the shard count keep every reading")
+    public void testBatchAndReshard() {
+        storage.addBatch(saturationBatch(0));
+        storage.setShardCount(2); // Drains the previous shards
+        storage.addBatch(saturationBatch(5_000));
+        storage.setShardCount(0);
+        storage.addBatch(saturationBatch(10_000));
+
+        assertEquals(0, storage.getShardCount(), "Sharding should be disabled");
+        assertEquals(3 * 715, storage.getRecords(0, RecordTypeRegistry.OXYGEN_SATURATION, 0, Long.MAX_VALUE).size(),
+                "Readings from every mode should be stored");
+    }
+
+    @Test
+    @DisplayName("Test a negative shard count is rejected")
+    public void testNegativeShardCount() {
+        assertThrows(IllegalArgumentException.class, () -> storage.setShardCount(-1),
+                "Negative shard counts should be rejected");
+    }
+
+    @Test
+    @DisplayName("Test a failed batch is counted and reported on flush")
+    public void testFailedBatchIsReported() {
+        storage.setShardCount(0);
+        storage.setStorageMode(StorageMode.OFF_HEAP, 1 << 16);
+        storage.setShardCount(4);
+        int added = 100_000;
+        for (int i = 0; i < added; i++) {
+            storage.addPatientData(i % 10, i, "ECG", i);
+        }
+        assertThrows(IllegalStateException.class, storage::flush, "Exhausting the budget should surface on flush");
+        assertDoesNotThrow(storage::flush, "A failure should be reported once");
+
+        long stored = 0;
+        for (Patient patient : storage.getAllPatients()) {
+            stored += patient.getRecords(0, Long.MAX_VALUE).size();
+        }
+        assertTrue(stored < added, "The budget should have stopped some readings");
+        assertEquals(added, stored + storage.getRejectedRecordCount(), "Every lost reading should be counted");
+    }
+
+    private static RecordBatch saturationBatch(long firstTimestamp) {
+        RecordBatch batch = new RecordBatch();
+        for (int i = 0; i < 5_000; i++) {
+            batch.add(i % 7, "Saturation", firstTimestamp + i, 95.0);
+        }
+        return batch;
+    }
+}
@@ -0,0 +1,160 @@
+package com.data_management;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for the sliding-window statistics series keep up to date as
+ * readings arrive.
+ */
+public class SlidingWindowTest {
+
+    private static final int PATIENT_ID = 22;
+    private static final WindowSpec LAST_20 = WindowSpec.ofReadings(20);
+    private static final WindowSpec LAST_10_MINUTES = WindowSpec.ofDuration(10, TimeUnit.MINUTES);
+
+    private DataStorage storage;
+
+    @BeforeEach
+    public void setup() {
+        storage = DataStorage.getInstance();
+        storage.clearAllData();
+    }
+
+    /**
+     * Checks window statistics against the readings they summarize.
+     */
+    private static void assertSummarizes(List<PatientRecord> records, WindowStats stats) {
+        assertNotNull(stats, "A series with readings should have window statistics");
+        assertEquals(records.size(), stats.getCount(), "The window should hold every reading in it");
+        double sum = 0;
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        double minChange = Double.POSITIVE_INFINITY;
+        double maxChange = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < records.size(); i++) {
+            double value = records.get(i).getMeasurementValue();
+            sum += value;
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+            if (i > 0) {
+                double change = value - records.get(i - 1).getMeasurementValue();
+                minChange = Math.min(minChange, change);
+                maxChange = Math.max(maxChange, change);
+            }
+        }
+        double mean = sum / records.size();
+        double squares = 0;
+        for (PatientRecord record : records) {
+            squares += (record.getMeasurementValue() - mean) * (record.getMeasurementValue() - mean);
+        }
+        assertEquals(records.get(0).getTimestamp(), stats.getStartTime(), "Start times should match");
+        assertEquals(records.get(records.size() - 1).getTimestamp(), stats.getEndTime(), "End times should match");
+        assertEquals(records.get(records.size() - 1).getMeasurementValue(), stats.getLatest(),
+                "Latest values should match");
+        assertEquals(mean, stats.getMean(), 1e-9, "Means should match");
+        assertEquals(squares / records.size(), stats.getVariance(), 1e-6, "Variances should match");
+        assertEquals(min, stats.getMin(), "Minimums should match");
+        assertEquals(max, stats.getMax(), "Maximums should match");
+        if (records.size() > 1) {
+            assertEquals(minChange, stats.getMinChange(), "Smallest changes should match");
+            assertEquals(maxChange, stats.getMaxChange(), "Largest changes should match");
+        } else {
+            assertTrue(Double.isNaN(stats.getMinChange()), "One reading should have no change");
+        }
+    }
+
+    @Test
+    @DisplayName("Test count and time windows match the readings as they slide")
+    public void testMatchesReadings() {
+        Random random = new Random(22);
+        Patient patient = null;
+        long time = 0;
+        for (int i = 0; i < 5_000; i++) {
+            time += 1 + random.nextInt(3_000);
+            storage.addPatientData(PATIENT_ID, 60 + random.nextInt(60) + random.nextGaussian(), "ECG", time);
+            if (i == 0) {
+                patient = storage.getPatient(PATIENT_ID);
+                assertSummarizes(patient.getLastN("ECG", 20), patient.getWindowStats("ECG", LAST_20));
+            }
+            if (i % 97 == 0) {
+                assertSummarizes(patient.getLastN("ECG", 20), patient.getWindowStats("ECG", LAST_20));
+                assertSummarizes(patient.getRecords(time - 600_000, time),
+                        storage.getWindowStats(PATIENT_ID, "ECG", LAST_10_MINUTES));
+            }
+        }
+        assertNull(patient.getWindowStats("HeartRate", LAST_20), "A missing series should have no statistics");
+        assertNull(storage.getWindowStats(PATIENT_ID + 1, "ECG", LAST_20), "Unknown patients should have none");
+        int types = RecordTypeRegistry.getInstance().size();
+        assertNull(storage.getWindowStats(PATIENT_ID, "NoSuchVitalSign", LAST_20), "Unknown types should have none");
+        assertEquals(types, RecordTypeRegistry.getInstance().size(), "Queries should not register record types");
+    }
+
+    @Test
+    @DisplayName("Test late readings, batches and expiry keep the windows correct")
+    public void testRebuilds() {
+        for (int i = 0; i < 100; i++) {
+            storage.addPatientData(PATIENT_ID, i % 7, "ECG", 10_000L * i);
+        }
+        Patient patient = storage.getPatient(PATIENT_ID);
+        assertSummarizes(patient.getLastN("ECG", 20), patient.getWindowStats("ECG", LAST_20));
+        assertSummarizes(patient.getRecords(990_000 - 600_000, 990_000), patient.getWindowStats("ECG", LAST_10_MINUTES));
+
+        storage.addPatientData(PATIENT_ID, 50, "ECG", 985_000);  // Late, inside both windows
+        storage.addPatientData(PATIENT_ID, -50, "ECG", 5_000);   // Late, outside both windows
+        assertSummarizes(patient.getLastN("ECG", 20), patient.getWindowStats("ECG", LAST_20));
+        assertSummarizes(patient.getRecords(990_000 - 600_000, 990_000), patient.getWindowStats("ECG", LAST_10_MINUTES));
+
+        RecordBatch batch = new RecordBatch();
+        for (int i = 100; i < 130; i++) {
+            batch.add(PATIENT_ID, "ECG", 10_000L * i, 100 - i % 11);
+        }
+        storage.addBatch(batch);
+        assertSummarizes(patient.getLastN("ECG", 20), patient.getWindowStats("ECG", LAST_20));
+        assertSummarizes(patient.getRecords(1_290_000 - 600_000, 1_290_000),
+                patient.getWindowStats("ECG", LAST_10_MINUTES));
+
+        patient.evictBefore(1_285_000);
+        assertSummarizes(patient.getLastN("ECG", 20), patient.getWindowStats("ECG", LAST_20));
+        storage.clearAllData();
+        assertNull(storage.getWindowStats(PATIENT_ID, "ECG", LAST_20), "Cleared storage should have no statistics");
+    }
+
+    @Test
+    @DisplayName("Test a day-long window keeps matching a scan as it slides")
+    public void testDayLongWindow() {
+        WindowSpec lastDay = WindowSpec.ofDuration(1, TimeUnit.DAYS);
+        Random random = new Random(22);
+        long time = 0;
+        for (int i = 0; i < 86_400; i++) {
+            time += 1_000;
+            storage.addPatientData(PATIENT_ID, 95 + random.nextInt(5), "OxygenSaturation", time);
+        }
+        Patient patient = storage.getPatient(PATIENT_ID);
+        assertEquals(86_400, patient.getWindowStats("OxygenSaturation", lastDay).getCount(),
+                "The window should span the whole day");
+
+        double[] highest = new double[1];
+        for (int i = 0; i < 2_000; i++) {
+            time += 1_000;
+            // A rare high reading, so the maximum changes as it enters and leaves the window
+            storage.addPatientData(PATIENT_ID, i % 500 == 0 ? 100 : 95 + random.nextInt(5), "OxygenSaturation", time);
+            WindowStats stats = patient.getWindowStats("OxygenSaturation", lastDay);
+            if (i % 100 == 0) {
+                highest[0] = Double.NEGATIVE_INFINITY;
+                patient.forEachInRange("OxygenSaturation", time - 86_400_000L, time,
+                        (timestamp, value) -> highest[0] = Math.max(highest[0], value));
+                assertEquals(highest[0], stats.getMax(), "The window maximum should match a scan");
+                assertEquals(86_401, stats.getCount(), "The window should keep spanning one day, both ends included");
+            }
+        }
+        assertSummarizes(patient.getRecords(RecordTypeRegistry.OXYGEN_SATURATION, time - 86_400_000L, time),
+                patient.getWindowStats("OxygenSaturation", lastDay));
+    }
+}
@@ -0,0 +1,784 @@
+package com.data_management;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Timing benchmarks of the storage, kept apart from the unit tests so that
+ * {@code mvn test} does not depend on how fast or busy the machine is. The
+ * class name does not end in {@code Test}, so Surefire does not pick it up;
+ * run its {@code main} method with the test classpath instead, passing the
+ * names of the benchmarks to run, or none to run them all. Each benchmark
+ * reports the best of several rounds, so JIT warm-up is not measured.
+ */
+public final class StorageBenchmarks {
+
+    private StorageBenchmarks() {
+    }
+
+    /**
+     * Runs benchmarks and prints their results.
+     *
+     * @param args the names of the benchmarks to run; all of them if empty
+     */
+    public static void main(String[] args) {
+        Map<String, Runnable> benchmarks = new LinkedHashMap<>();
+        benchmarks.put("sliding-window", StorageBenchmarks::slidingWindow);
+        benchmarks.put("snapshot", StorageBenchmarks::snapshot);
+        benchmarks.put("latest-value", StorageBenchmarks::latestValue);
+        benchmarks.put("population-query", StorageBenchmarks::populationQuery);
+        benchmarks.put("ward-report", StorageBenchmarks::wardReport);
+        benchmarks.put("patient-directory", StorageBenchmarks::patientDirectory);
+        benchmarks.put("columnar-import", StorageBenchmarks::columnarImport);
+        benchmarks.put("sharded-ingest", StorageBenchmarks::shardedIngest);
+        benchmarks.put("batch-ingest", StorageBenchmarks::batchIngest);
+        benchmarks.put("tiering", StorageBenchmarks::tiering);
+        benchmarks.put("quantile-sketch", StorageBenchmarks::quantileSketch);
+        benchmarks.put("as-of-join", StorageBenchmarks::asOfJoin);
+        benchmarks.put("compressed-scan", StorageBenchmarks::compressedScan);
+        benchmarks.put("deduplication", StorageBenchmarks::deduplication);
+        benchmarks.put("concurrent-ingest", StorageBenchmarks::concurrentIngest);
+
+        for (String name : args.length == 0 ? benchmarks.keySet().toArray(new String[0]) : args) {
+            Runnable benchmark = benchmarks.get(name);
+            if (benchmark == null) {
+                System.err.println("Unknown benchmark: " + name + "; expected one of " + benchmarks.keySet());
+                continue;
+            }
+            DataStorage.getInstance().clearAllData();
+            benchmark.run();
+        }
+        DataStorage.getInstance().clearAllData();
+    }
+
+    /**
+     * Appending a reading and querying a day-long window, against rescanning
+     * the day for its maximum.
+     */
+    private static void slidingWindow() {
+        DataStorage storage = DataStorage.getInstance();
+        WindowSpec lastDay = WindowSpec.ofDuration(1, TimeUnit.DAYS);
+        Random random = new Random(22);
+        long time = 0;
+        for (int i = 0; i < 86_400; i++) {
+            time += 1_000;
+            storage.addPatientData(22, 95 + random.nextInt(5), "OxygenSaturation", time);
+        }
+        Patient patient = storage.getPatient(22);
+        patient.getWindowStats("OxygenSaturation", lastDay);
+
+        int rounds = 2_000;
+        long bestWindow = Long.MAX_VALUE;
+        long bestScan = Long.MAX_VALUE;
+        double[] highest = new double[1];
+        for (int attempt = 0; attempt < 5; attempt++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < rounds; i++) {
+                time += 1_000;
+                storage.addPatientData(22, 95 + random.nextInt(5), "OxygenSaturation", time);
+                highest[0] = patient.getWindowStats("OxygenSaturation", lastDay).getMax();
+            }
+            bestWindow = Math.min(bestWindow, System.nanoTime() - start);
+            start = System.nanoTime();
+            for (int i = 0; i < rounds / 100; i++) {
+                highest[0] = Double.NEGATIVE_INFINITY;
+                patient.forEachInRange("OxygenSaturation", time - 86_400_000L, time,
+                        (timestamp, value) -> highest[0] = Math.max(highest[0], value));
+            }
+            bestScan = Math.min(bestScan, (System.nanoTime() - start) * 100);
+        }
+        System.out.printf("Sliding window: %.2f us per append and query, %.2f us per rescan of one day (%.0fx)%n",
+                bestWindow / 1e3 / rounds, bestScan / 1e3 / rounds, (double) bestScan / bestWindow);
+    }
+
+    /**
+     * Taking a snapshot of 2,000 patients while a writer keeps adding
+     * readings, against copying every patient's readings.
+     */
+    private static void snapshot() {
+        DataStorage storage = DataStorage.getInstance();
+        int patients = 2_000;
+        RecordBatch batch = new RecordBatch();
+        for (int patientId = 1; patientId <= patients; patientId++) {
+            for (long time = 0; time < 1_000; time++) {
+                batch.add(patientId, "HeartRate", time * 1_000, 60 + time % 40);
+            }
+            storage.addBatch(batch);
+            batch.clear();
+        }
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicLong written = new AtomicLong();
+        Thread writer = new Thread(() -> {
+            for (long time = 1_000_000; running.get(); time += 1_000) {
+                for (int patientId = 1; patientId <= patients && running.get(); patientId += 7) {
+                    storage.addPatientData(patientId, 70, "HeartRate", time);
+                    written.incrementAndGet();
+                }
+            }
+        }, "snapshot-writer");
+        writer.start();
+
+        long bestSnapshot = Long.MAX_VALUE;
+        long bestCopy = Long.MAX_VALUE;
+        long copied = 0;
+        try {
+            for (int round = 0; round < 5; round++) {
+                long begin = System.nanoTime();
+                StorageSnapshot snapshot = storage.getSnapshot();
+                bestSnapshot = Math.min(bestSnapshot, System.nanoTime() - begin);
+                snapshot.close();
+
+                begin = System.nanoTime();
+                copied = 0;
+                for (Patient patient : storage.getAllPatients()) {
+                    copied += patient.getRecords(0, Long.MAX_VALUE).size();
+                }
+                bestCopy = Math.min(bestCopy, System.nanoTime() - begin);
+            }
+        } finally {
+            running.set(false);
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        System.out.printf("Snapshot of %d patients: %.2f ms, copying %d readings %.1f ms; %d readings added meanwhile%n",
+                patients, bestSnapshot / 1e6, copied, bestCopy / 1e6, written.get());
+    }
+
+    /**
+     * Looking up the latest reading of 5,000 patients with 200 readings each.
+     */
+    private static void latestValue() {
+        DataStorage storage = DataStorage.getInstance();
+        int patients = 5_000;
+        for (int p = 0; p < patients; p++) {
+            for (int i = 0; i < 200; i++) {
+                storage.addPatientData(p, 95 + i % 5, RecordTypeRegistry.OXYGEN_SATURATION, 1_000L * i);
+            }
+        }
+        double sum = 0;
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < 20; round++) {
+            long start = System.nanoTime();
+            for (int p = 0; p < patients; p++) {
+                sum += storage.getLatest(p, RecordTypeRegistry.OXYGEN_SATURATION).getMeasurementValue();
+            }
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        System.out.printf("getLatest: %.2f us per patient over %d patients (checksum %.0f)%n",
+                best / 1_000.0 / patients, patients, sum);
+    }
+
+    /**
+     * A range query over the latest values of 10,000 patients, matching
+     * 2,000 of them.
+     */
+    private static void populationQuery() {
+        DataStorage storage = DataStorage.getInstance();
+        int patients = 10_000;
+        for (int p = 0; p < patients; p++) {
+            storage.addPatientData(p, 80 + p % 20, RecordTypeRegistry.OXYGEN_SATURATION, 1_000L);
+        }
+        storage.findPatientsByLatest("OxygenSaturation", 0, 81); // Builds the index
+        for (int p = 0; p < patients; p++) {
+            storage.addPatientData(p, 90 + p % 10, RecordTypeRegistry.OXYGEN_SATURATION, 2_000L);
+        }
+        int matches = 0;
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < 50; round++) {
+            long start = System.nanoTime();
+            matches = storage.findPatientsByLatest("OxygenSaturation", 0, 91.5).size();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        System.out.printf("findPatientsByLatest: %.1f us for %d matches over %d patients%n",
+                best / 1_000.0, matches, patients);
+    }
+
+    /**
+     * A ward report of 400 patients' mean heart rates over 12 hours, from
+     * async summaries against a single-threaded scan of the readings.
+     */
+    private static void wardReport() {
+        DataStorage storage = DataStorage.getInstance();
+        int patients = 400;
+        long hour = 3_600_000L;
+        RecordBatch batch = new RecordBatch();
+        for (long time = 0; time < 13 * hour; time += 10_000) {
+            for (int patientId = 1; patientId <= patients; patientId++) {
+                batch.add(patientId, "HeartRate", time + patientId, 60 + (time / 10_000 * 7 + patientId) % 50);
+            }
+            if (batch.size() >= 4_096) {
+                storage.addBatch(batch);
+                batch.clear();
+            }
+        }
+        storage.addBatch(batch);
+        long start = hour;
+        long end = 13 * hour - 1;
+
+        long bestScan = Long.MAX_VALUE;
+        long bestAsync = Long.MAX_VALUE;
+        for (int round = 0; round < 5; round++) {
+            long begin = System.nanoTime();
+            double scanned = 0;
+            for (Patient patient : storage.getAllPatients()) {
+                double sum = 0;
+                List<PatientRecord> records = storage.getRecords(patient.getPatientId(), start, end);
+                for (PatientRecord record : records) {
+                    sum += record.getMeasurementValue();
+                }
+                scanned += sum / records.size();
+            }
+            bestScan = Math.min(bestScan, System.nanoTime() - begin);
+
+            begin = System.nanoTime();
+            double summarized = 0;
+            try {
+                for (Aggregate summary : storage.summarizeAsync("HeartRate", start, end).get().values()) {
+                    summarized += summary.getMean();
+                }
+            } catch (InterruptedException | ExecutionException e) {
+                throw new IllegalStateException("Ward report failed", e);
+            }
+            bestAsync = Math.min(bestAsync, System.nanoTime() - begin);
+            if (Math.abs(scanned - summarized) > 1e-6) {
+                throw new IllegalStateException("Reports differ: " + scanned + " and " + summarized);
+            }
+        }
+        System.out.printf("Ward report over %d patients x 12h: scan %.1f ms, async summaries %.1f ms (%.0fx)%n",
+                patients, bestScan / 1e6, bestAsync / 1e6, (double) bestScan / bestAsync);
+    }
+
+    /**
+     * Looking up 100,000 dense or sparse patient IDs in a patient directory,
+     * against a map of boxed IDs.
+     */
+    private static void patientDirectory() {
+        int patients = 100_000;
+        int[] denseIds = new int[patients];
+        int[] sparseIds = new int[patients];
+        Random random = new Random(25);
+        Set<Integer> distinct = new HashSet<>();
+        for (int i = 0; i < patients; i++) {
+            denseIds[i] = i + 1;
+            int sparse;
+            do {
+                sparse = 1_000_000 + random.nextInt(Integer.MAX_VALUE - 1_000_000);
+            } while (!distinct.add(sparse));
+            sparseIds[i] = sparse;
+        }
+        System.out.println("Patient lookups over " + patients + " patients, 20 rounds:");
+        for (int[] ids : new int[][] {denseIds, sparseIds}) {
+            PatientDirectory<Object> directory = new PatientDirectory<>();
+            ConcurrentMap<Integer, Object> map = new ConcurrentHashMap<>();
+            for (int patientId : ids) {
+                Object patient = new Object();
+                directory.computeIfAbsent(patientId, id -> patient);
+                map.put(patientId, patient);
+            }
+            int[] order = ids.clone();
+            for (int i = order.length - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                int swap = order[i];
+                order[i] = order[j];
+                order[j] = swap;
+            }
+
+            long bestDirectory = Long.MAX_VALUE;
+            long bestMap = Long.MAX_VALUE;
+            long directoryBytes = Long.MAX_VALUE;
+            long mapBytes = Long.MAX_VALUE;
+            int found = 0;
+            for (int attempt = 0; attempt < 5; attempt++) {
+                long allocated = allocatedBytes();
+                long start = System.nanoTime();
+                for (int round = 0; round < 20; round++) {
+                    for (int patientId : order) {
+                        if (directory.get(patientId) != null) {
+                            found++;
+                        }
+                    }
+                }
+                bestDirectory = Math.min(bestDirectory, System.nanoTime() - start);
+                directoryBytes = Math.min(directoryBytes, allocatedBytes() - allocated);
+
+                allocated = allocatedBytes();
+                start = System.nanoTime();
+                for (int round = 0; round < 20; round++) {
+                    for (int patientId : order) {
+                        if (map.get(patientId) != null) {
+                            found++;
+                        }
+                    }
+                }
+                bestMap = Math.min(bestMap, System.nanoTime() - start);
+                mapBytes = Math.min(mapBytes, allocatedBytes() - allocated);
+            }
+            long lookups = 20L * patients;
+            System.out.printf("  %s IDs: directory %.1f ns and %.2f bytes per lookup (%d KB held),"
+                    + " map %.1f ns and %.2f bytes per lookup; %d found%n",
+                    ids == denseIds ? "dense" : "sparse", (double) bestDirectory / lookups,
+                    (double) directoryBytes / lookups, directory.residentBytes() / 1024,
+                    (double) bestMap / lookups, (double) mapBytes / lookups, found);
+        }
+    }
+
+    /**
+     * Importing a columnar archive of 500 patients with two series of 5,000
+     * readings each.
+     */
+    private static void columnarImport() {
+        DataStorage storage = DataStorage.getInstance();
+        int patients = 500;
+        int readingsPerSeries = 5_000;
+        String[] types = {"HeartRate", "ECG"};
+        RecordBatch batch = new RecordBatch(patients * types.length);
+        for (int i = 0; i < readingsPerSeries; i++) {
+            for (int patientId = 0; patientId < patients; patientId++) {
+                for (String type : types) {
+                    batch.add(patientId, type, 1_000L * i, 60 + (i * 7 + patientId) % 50);
+                }
+            }
+            storage.addBatch(batch);
+            batch.clear();
+        }
+        Path archive = null;
+        try {
+            archive = Files.createTempFile("data-storage", ".cdca");
+            long readings = new ColumnarDataExporter(archive).export(storage);
+            long best = Long.MAX_VALUE;
+            for (int round = 0; round < 3; round++) {
+                storage.clearAllData();
+                long start = System.nanoTime();
+                new ColumnarDataReader(archive).importData(storage);
+                best = Math.min(best, System.nanoTime() - start);
+            }
+            double perSecond = readings * 1e9 / best;
+            System.out.printf("Columnar import: %,d readings in %.0f ms (%,.0f readings/sec, 100M in %.1f s)%n",
+                    readings, best / 1e6, perSecond, 1e8 / perSecond);
+        } catch (IOException e) {
+            System.err.println("Columnar import benchmark failed: " + e.getMessage());
+        } finally {
+            if (archive != null) {
+                try {
+                    Files.deleteIfExists(archive);
+                } catch (IOException e) {
+                    System.err.println("Could not delete " + archive + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Adding readings from several producers through one shard per producer,
+     * against adding them directly.
+     */
+    private static void shardedIngest() {
+        DataStorage storage = DataStorage.getInstance();
+        int producers = Math.max(2, Math.min(Runtime.getRuntime().availableProcessors(), 8));
+        int readingsPerProducer = 200_000;
+        long bestSharded = Long.MAX_VALUE;
+        long bestDirect = Long.MAX_VALUE;
+        try {
+            for (int round = 0; round < 3; round++) {
+                storage.setShardCount(producers);
+                storage.clearAllData();
+                bestSharded = Math.min(bestSharded, timeIngest(producers, readingsPerProducer));
+                storage.setShardCount(0);
+                storage.clearAllData();
+                bestDirect = Math.min(bestDirect, timeIngest(producers, readingsPerProducer));
+            }
+        } finally {
+            storage.setShardCount(0);
+        }
+        double readings = producers * (double) readingsPerProducer;
+        System.out.printf("Ingest with %d producers: direct %,.0f/s, %d shards %,.0f/s%n",
+                producers, readings * 1e9 / bestDirect, producers, readings * 1e9 / bestSharded);
+    }
+
+    /**
+     * Adds readings from several threads, each writing to its own patients,
+     * and returns the nanoseconds until all of them are stored.
+     */
+    private static long timeIngest(int producers, int readingsPerProducer) {
+        DataStorage storage = DataStorage.getInstance();
+        ExecutorService executor = Executors.newFixedThreadPool(producers);
+        try {
+            long start = System.nanoTime();
+            Future<?>[] futures = new Future<?>[producers];
+            for (int p = 0; p < producers; p++) {
+                int producer = p;
+                futures[p] = executor.submit(() -> {
+                    for (int i = 0; i < readingsPerProducer; i++) {
+                        storage.addPatientData(producer * 64 + (i & 63), i, RecordTypeRegistry.HEART_RATE, i);
+                    }
+                });
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            storage.flush();
+            return System.nanoTime() - start;
+        } catch (InterruptedException | ExecutionException e) {
+            throw new IllegalStateException("Ingest failed", e);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Adding 2,000,000 archive-like readings in batches of 4,096, against
+     * adding them one by one.
+     */
+    private static void batchIngest() {
+        DataStorage storage = DataStorage.getInstance();
+        RecordTypeRegistry registry = RecordTypeRegistry.getInstance();
+        String[] typeNames = {"ECG", "SystolicBP", "OxygenSaturation", "HeartRate"};
+        int readings = 2_000_000;
+        int patientCount = 50;
+        long[] timestamps = new long[readings];
+        int[] patients = new int[readings];
+        int[] types = new int[readings];
+        double[] values = new double[readings];
+        for (int i = 0; i < readings; i++) {
+            // Interleaved patients and types in time order
+            patients[i] = i % patientCount;
+            types[i] = registry.idOf(typeNames[(i / patientCount) % typeNames.length]);
+            timestamps[i] = i;
+            values[i] = i * 0.5;
+        }
+
+        long bestSingle = Long.MAX_VALUE;
+        long bestBatch = Long.MAX_VALUE;
+        RecordBatch batch = new RecordBatch(4096);
+        for (int round = 0; round < 3; round++) {
+            storage.clearAllData();
+            long start = System.nanoTime();
+            for (int i = 0; i < readings; i++) {
+                storage.addPatientData(patients[i], values[i], registry.nameOf(types[i]), timestamps[i]);
+            }
+            bestSingle = Math.min(bestSingle, System.nanoTime() - start);
+
+            storage.clearAllData();
+            start = System.nanoTime();
+            for (int i = 0; i < readings; i++) {
+                batch.add(patients[i], types[i], timestamps[i], values[i]);
+                if (batch.size() == 4096) {
+                    storage.addBatch(batch);
+                    batch.clear();
+                }
+            }
+            storage.addBatch(batch);
+            batch.clear();
+            bestBatch = Math.min(bestBatch, System.nanoTime() - start);
+        }
+        System.out.printf("Single: %,.0f records/sec, batch: %,.0f records/sec (%.1fx)%n",
+                readings * 1e9 / bestSingle, readings * 1e9 / bestBatch, (double) bestSingle / bestBatch);
+    }
+
+    /**
+     * Moving the history of 450 of 500 patients to disk, and reading one cold
+     * patient's three hours back with an empty page cache.
+     */
+    private static void tiering() {
+        DataStorage storage = DataStorage.getInstance();
+        int patients = 500;
+        int seconds = 3 * 3_600;
+        RecordBatch batch = new RecordBatch();
+        for (int i = 0; i < seconds; i++) {
+            for (int patientId = 1; patientId <= patients; patientId++) {
+                batch.add(patientId, "HeartRate", 1_000L * i, 60 + (i * 7 + patientId) % 40);
+            }
+            if (batch.size() >= 4_096) {
+                storage.addBatch(batch);
+                batch.clear();
+            }
+        }
+        storage.addBatch(batch);
+        long hot = storage.getMemoryUsage().getTotalBytes();
+        TieringOptions options = new TieringOptions().setHotPatients(patients / 10)
+                .setHotWindow(5, TimeUnit.MINUTES).setInterval(0, TimeUnit.SECONDS);
+
+        Path directory = null;
+        try {
+            directory = Files.createTempDirectory("data-storage-cold");
+            storage.enableTiering(directory, options);
+            for (int patientId = 1; patientId <= patients / 10; patientId++) {
+                storage.getRecords(patientId, 0, 0);
+            }
+            long start = System.nanoTime();
+            long moved = storage.enforceTiering();
+            long spillNanos = System.nanoTime() - start;
+            long tiered = storage.getMemoryUsage().getTotalBytes();
+
+            long best = Long.MAX_VALUE;
+            for (int round = 0; round < 5; round++) {
+                storage.disableTiering(); // Empties the page cache
+                storage.enableTiering(directory, options);
+                storage.enforceTiering();
+                start = System.nanoTime();
+                int read = storage.getRecords(patients, 0, Long.MAX_VALUE).size();
+                best = Math.min(best, System.nanoTime() - start);
+                if (read != seconds) {
+                    throw new IllegalStateException("Cold patient read " + read + " of " + seconds + " readings");
+                }
+            }
+            System.out.printf("Tiering: %,d readings moved in %.0f ms; %,d -> %,d bytes per patient (%.1fx), "
+                    + "%,d bytes on disk; cold history query %.2f ms%n", moved, spillNanos / 1e6,
+                    hot / patients, tiered / patients, (double) hot / tiered, storage.getColdBytes(), best / 1e6);
+        } catch (IOException e) {
+            System.err.println("Tiering benchmark failed: " + e.getMessage());
+        } finally {
+            storage.disableTiering();
+            storage.clearAllData();
+            if (directory != null) {
+                try (Stream<Path> files = Files.list(directory)) {
+                    for (Path file : (Iterable<Path>) files::iterator) {
+                        Files.delete(file);
+                    }
+                    Files.delete(directory);
+                } catch (IOException e) {
+                    System.err.println("Could not delete " + directory + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Querying the quantile sketch of a day of heart rates, against sorting
+     * the day's readings.
+     */
+    private static void quantileSketch() {
+        DataStorage storage = DataStorage.getInstance();
+        Random random = new Random(3);
+        int readings = 24 * 3_600;
+        double[] values = new double[readings];
+        for (int i = 0; i < readings; i++) {
+            values[i] = 75 + 12 * random.nextGaussian();
+            storage.addPatientData(1, values[i], "HeartRate", 1_000L * i);
+        }
+        long end = 1_000L * readings - 1;
+        long sketchBytes = 0;
+        for (long hour = 0; hour < 24; hour++) {
+            long start = hour * Resolution.HOUR.getMillis();
+            sketchBytes += storage.getQuantileSketch(1, "HeartRate", start, start + Resolution.HOUR.getMillis() - 1)
+                    .residentBytes();
+        }
+        long bestQuery = Long.MAX_VALUE;
+        long bestSort = Long.MAX_VALUE;
+        double median = 0;
+        for (int round = 0; round < 20; round++) {
+            long start = System.nanoTime();
+            median += storage.getQuantileSketch(1, "HeartRate", 0, end).getQuantile(0.5);
+            bestQuery = Math.min(bestQuery, System.nanoTime() - start);
+
+            double[] sorted = values.clone();
+            start = System.nanoTime();
+            Arrays.sort(sorted);
+            bestSort = Math.min(bestSort, System.nanoTime() - start);
+            median -= sorted[readings / 2];
+        }
+        System.out.printf("Quantile sketches: %d bytes for 24 hours vs %d bytes raw (%.0fx), "
+                + "day query %.1f us vs sort %.1f us (sketch median off by %.3f)%n",
+                sketchBytes, 16L * readings, 16.0 * readings / sketchBytes,
+                bestQuery / 1_000.0, bestSort / 1_000.0, median / 20);
+    }
+
+    /**
+     * Aligning 200,000 saturation readings to the blood pressure readings
+     * taken every minute or so, nearest within a second.
+     */
+    private static void asOfJoin() {
+        DataStorage storage = DataStorage.getInstance();
+        Random random = new Random(21);
+        int readings = 200_000;
+        long time = 0;
+        RecordBatch batch = new RecordBatch();
+        for (int i = 0; i < readings; i++) {
+            time += 1 + random.nextInt(2_000);
+            batch.add(1, "OxygenSaturation", time, 85 + random.nextInt(15));
+            if (i % 60 == 0) {
+                batch.add(1, "SystolicBP", time + random.nextInt(30_000), 80 + random.nextInt(60));
+            }
+        }
+        storage.addBatch(batch);
+
+        AsOfJoin join = new AsOfJoin("SystolicBP", "OxygenSaturation").setTolerance(1, TimeUnit.SECONDS)
+                .setMatch(JoinMatch.NEAREST).setRequireAll(false);
+        Patient patient = storage.getPatient(1);
+        AlignedReadingVisitor ignore = (timestamps, values) -> { };
+        long best = Long.MAX_VALUE;
+        int rows = 0;
+        for (int round = 0; round < 10; round++) {
+            long start = System.nanoTime();
+            rows = join.join(patient, 0, Long.MAX_VALUE, ignore);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        System.out.printf("As-of join: %,d rows over %,d readings in %.2f ms (%.0f ns per reading)%n",
+                rows, readings + rows, best / 1e6, (double) best / (readings + rows));
+    }
+
+    /**
+     * Scanning 100,000 simulated readings of each vital sign from compressed
+     * chunks, against plain ones.
+     */
+    private static void compressedScan() {
+        int readings = 100_000;
+        Random random = new Random(42);
+        double saturation = 97;
+        double systolic = 120;
+        long[] timestamps = new long[readings];
+        double[][] signals = new double[3][readings];
+        for (int i = 0; i < readings; i++) {
+            // Same shapes as the simulator's generators: one reading a second, small integer steps
+            timestamps[i] = 1_700_000_000_000L + 1_000L * i;
+            saturation = Math.min(Math.max(saturation + random.nextInt(3) - 1, 90), 100);
+            systolic = Math.min(Math.max(systolic + random.nextInt(5) - 2, 90), 180);
+            signals[0][i] = saturation;
+            signals[1][i] = systolic;
+            signals[2][i] = Math.round(Math.sin(i * 0.3) * 100) / 100.0; // ECG sampled to 0.01 mV
+        }
+        String[] names = {"Saturation", "SystolicBP", "ECG"};
+        for (int s = 0; s < signals.length; s++) {
+            RecordSeries plain = new RecordSeries(0, ChunkAllocator.HEAP);
+            RecordSeries compressed = new RecordSeries(0, ChunkAllocator.COMPRESSED_HEAP);
+            plain.appendAll(timestamps, signals[s], 0, readings, null, 1, null);
+            compressed.appendAll(timestamps, signals[s], 0, readings, null, 1, null);
+            long bestPlain = Long.MAX_VALUE;
+            long bestCompressed = Long.MAX_VALUE;
+            for (int round = 0; round < 20; round++) {
+                bestPlain = Math.min(bestPlain, timeScan(plain));
+                bestCompressed = Math.min(bestCompressed, timeScan(compressed));
+            }
+            System.out.printf("%s: scan %,.0f/s uncompressed vs %,.0f/s compressed%n",
+                    names[s], readings * 1e9 / bestPlain, readings * 1e9 / bestCompressed);
+        }
+    }
+
+    /**
+     * Sums every value of the series and returns the nanoseconds it took.
+     */
+    private static long timeScan(RecordSeries series) {
+        double[] total = new double[1];
+        long start = System.nanoTime();
+        series.forEach(Long.MIN_VALUE, Long.MAX_VALUE, (timestamp, value) -> total[0] += value);
+        long elapsed = System.nanoTime() - start;
+        if (Double.isNaN(total[0])) {
+            throw new IllegalStateException("Scan summed to NaN");
+        }
+        return elapsed;
+    }
+
+    /**
+     * Checking re-delivered readings older than the newest one, which
+     * consults the bloom filter and the chunks, against adding new late
+     * readings.
+     */
+    private static void deduplication() {
+        DataStorage storage = DataStorage.getInstance();
+        int readings = 20_000;
+        long bestLate = Long.MAX_VALUE;
+        long bestDuplicate = Long.MAX_VALUE;
+        for (int round = 0; round < 5; round++) {
+            storage.clearAllData();
+            for (int i = 0; i < readings; i++) {
+                storage.addPatientData(1, i, "ECG", 20L * i);
+            }
+            long start = System.nanoTime();
+            for (int i = 0; i < readings; i++) {
+                storage.addPatientData(1, i, "ECG", 20L * i + 10);
+            }
+            bestLate = Math.min(bestLate, System.nanoTime() - start);
+            start = System.nanoTime();
+            for (int i = 0; i < readings; i++) {
+                storage.addPatientData(1, i, "ECG", 10L * i);
+            }
+            bestDuplicate = Math.min(bestDuplicate, System.nanoTime() - start);
+        }
+        System.out.printf("Duplicate check of old readings: %.2f us each; late reading stored: %.2f us each"
+                + " (%,d duplicates found)%n", bestDuplicate / 1_000.0 / readings, bestLate / 1_000.0 / readings,
+                storage.getDuplicateRecordCount());
+    }
+
+    /**
+     * Adding 5,000 readings for each of 20 patients per writer thread, with
+     * one writer and then twice as many each time up to eight.
+     */
+    private static void concurrentIngest() {
+        DataStorage storage = DataStorage.getInstance();
+        int patientsPerWriter = 20;
+        int readingsPerPatient = 5_000;
+        int maxWriters = Math.max(1, Math.min(8, Runtime.getRuntime().availableProcessors()));
+        for (int writers = 1; writers <= maxWriters; writers *= 2) {
+            long best = Long.MAX_VALUE;
+            for (int round = 0; round < 3; round++) {
+                storage.clearAllData();
+                ExecutorService executor = Executors.newFixedThreadPool(writers);
+                CountDownLatch start = new CountDownLatch(1);
+                Future<?>[] futures = new Future<?>[writers];
+                for (int w = 0; w < writers; w++) {
+                    int firstPatient = w * patientsPerWriter;
+                    futures[w] = executor.submit(() -> {
+                        start.await();
+                        for (int i = 0; i < readingsPerPatient; i++) {
+                            for (int p = 0; p < patientsPerWriter; p++) {
+                                storage.addPatientData(firstPatient + p, i, "Saturation", i);
+                            }
+                        }
+                        return null;
+                    });
+                }
+                long begin = System.nanoTime();
+                start.countDown();
+                try {
+                    for (Future<?> future : futures) {
+                        future.get();
+                    }
+                } catch (InterruptedException | ExecutionException e) {
+                    throw new IllegalStateException("Ingest failed", e);
+                } finally {
+                    executor.shutdown();
+                }
+                best = Math.min(best, System.nanoTime() - begin);
+            }
+            long total = (long) writers * patientsPerWriter * readingsPerPatient;
+            System.out.printf("%d writer(s): %,d records in %d ms (%,.0f records/sec)%n",
+                    writers, total, TimeUnit.NANOSECONDS.toMillis(best), total * 1e9 / best);
+        }
+    }
+
+    /**
+     * Returns the bytes allocated by this thread so far, or 0 where the JVM
+     * cannot tell.
+     */
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+}
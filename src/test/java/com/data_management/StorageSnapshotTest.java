@@ -0,0 +1,184 @@
+package com.data_management;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests for consistent point-in-time snapshots of the whole storage.
+ */
+public class StorageSnapshotTest {
+
+    private DataStorage storage;
+
+    @BeforeEach
+    public void setup() {
+        storage = DataStorage.getInstance();
+        storage.clearAllData();
+    }
+
+    @Test
+    @DisplayName("Test a snapshot is unchanged by later writes, late readings and expiry")
+    public void testUnchangedByLaterWrites() {
+        for (int i = 0; i < 5_000; i++) {
+            storage.addPatientData(1, i % 90, "HeartRate", 1_000L * i);
+            if (i % 2 == 0) {
+                storage.addPatientData(2, 95 + i % 5, "OxygenSaturation", 1_000L * i + 1);
+            }
+        }
+        List<PatientRecord> first = storage.getRecords(1, 0, Long.MAX_VALUE);
+        List<PatientRecord> second = storage.getRecords(2, 0, Long.MAX_VALUE);
+
+        StorageSnapshot snapshot = storage.getSnapshot();
+        for (int i = 5_000; i < 6_000; i++) {
+            storage.addPatientData(1, i % 90, "HeartRate", 1_000L * i);
+            storage.addPatientData(3, 120, "SystolicPressure", 1_000L * i);
+        }
+        storage.addPatientData(1, -1, "HeartRate", 500);    // Late, merged into the old chunks
+        storage.addPatientData(2, 99, "ECG", 10);           // A new series of a known patient
+        storage.getPatient(2).evictBefore(4_000_000);
+        StorageSnapshot later = storage.getSnapshot();
+
+        assertEquals(List.of(1, 2), snapshot.getPatientIds(), "Patients added later should not be in the snapshot");
+        assertEquals(7_500, snapshot.getRecordCount(), "The snapshot should keep its reading count");
+        assertRecordsEqual(first, snapshot.getRecords(1, 0, Long.MAX_VALUE));
+        assertRecordsEqual(second, snapshot.getRecords(2, 0, Long.MAX_VALUE));
+        assertRecordsEqual(first.subList(100, 201), snapshot.getRecords(1, "HeartRate", 100_000, 200_000));
+        assertTrue(snapshot.getRecords(2, "ECG", 0, Long.MAX_VALUE).isEmpty(), "Series added later should be empty");
+        assertEquals(4_999_000L, snapshot.getLatest(1, "HeartRate").getTimestamp(),
+                "The latest reading should be the newest one in the snapshot");
+        assertNull(snapshot.getLatest(3, "SystolicPressure"), "Unknown patients should have no latest reading");
+        int types = RecordTypeRegistry.getInstance().size();
+        assertTrue(snapshot.getRecords(1, "NoSuchVitalSign", 0, Long.MAX_VALUE).isEmpty(),
+                "Unknown record types should have no records");
+        assertNull(snapshot.getLatest(1, "NoSuchVitalSign"), "Unknown record types should have no latest reading");
+        assertEquals(types, RecordTypeRegistry.getInstance().size(), "Queries should not register record types");
+
+        assertTrue(later.getVersion() > snapshot.getVersion(), "Later snapshots should have later versions");
+        assertEquals(List.of(1, 2, 3), later.getPatientIds(), "A later snapshot should see the new patients");
+        assertEquals(storage.getRecords(1, 0, Long.MAX_VALUE).size(), later.getRecords(1, 0, Long.MAX_VALUE).size(),
+                "A later snapshot should see the new readings");
+        assertEquals(storage.getRecords(2, 0, Long.MAX_VALUE).size(), later.getRecords(2, 0, Long.MAX_VALUE).size(),
+                "A later snapshot should see the expiry");
+
+        snapshot.close();
+        snapshot.close();
+        assertThrows(IllegalStateException.class, () -> snapshot.getRecords(1, 0, Long.MAX_VALUE),
+                "A closed snapshot should not be read");
+        later.close();
+    }
+
+    private static void assertRecordsEqual(List<PatientRecord> expected, List<PatientRecord> actual) {
+        assertEquals(expected.size(), actual.size(), "The snapshot should hold the same number of records");
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getTimestamp(), actual.get(i).getTimestamp(), "Timestamps should match");
+            assertEquals(expected.get(i).getMeasurementValue(), actual.get(i).getMeasurementValue(),
+                    "Values should match");
+            assertEquals(expected.get(i).getRecordType(), actual.get(i).getRecordType(), "Record types should match");
+        }
+    }
+
+    @Test
+    @DisplayName("Test snapshots taken during ingest are consistent cuts across patients")
+    public void testConsistentCut() throws Exception {
+        int writers = 4;
+        long readings = 50_000;
+        List<Thread> threads = new ArrayList<>();
+        for (int w = 0; w < writers; w++) {
+            int first = 100 + 2 * w;
+            Thread thread = new Thread(() -> {
+                // Each reading of the first patient is stored before the matching one of the second
+                for (long time = 0; time < readings; time++) {
+                    storage.addPatientData(first, time % 100, "HeartRate", time);
+                    storage.addPatientData(first + 1, time % 100, "ECG", time);
+                }
+            }, "snapshot-writer-" + w);
+            thread.start();
+            threads.add(thread);
+        }
+
+        int snapshots = 0;
+        int[] counts = new int[2];
+        boolean writing = true;
+        while (writing) {
+            writing = false;
+            for (Thread thread : threads) {
+                writing |= thread.isAlive();
+            }
+            try (StorageSnapshot snapshot = storage.getSnapshot()) {
+                snapshots++;
+                for (int w = 0; w < writers; w++) {
+                    int first = 100 + 2 * w;
+                    counts[0] = 0;
+                    counts[1] = 0;
+                    snapshot.forEachInRange(first, "HeartRate", 0, Long.MAX_VALUE, (time, value) -> counts[0]++);
+                    snapshot.forEachInRange(first + 1, "ECG", 0, Long.MAX_VALUE, (time, value) -> counts[1]++);
+                    assertTrue(counts[0] == counts[1] || counts[0] == counts[1] + 1,
+                            "A snapshot holding a reading should hold every reading written before it: "
+                                    + counts[0] + " and " + counts[1]);
+                    if (!writing) {
+                        assertEquals(readings, counts[1], "A snapshot after the writes should hold them all");
+                    }
+                }
+            }
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertTrue(snapshots > 1, "Snapshots should have been taken during ingest");
+    }
+
+    @Test
+    @DisplayName("Test taking a snapshot shares the chunks instead of copying the readings")
+    public void testSnapshotSharesChunks() {
+        int patients = 2_000;
+        int readings = 1_000;
+        RecordBatch batch = new RecordBatch();
+        for (int patientId = 1; patientId <= patients; patientId++) {
+            for (long time = 0; time < readings; time++) {
+                batch.add(patientId, "HeartRate", time * 1_000, 60 + time % 40);
+            }
+            storage.addBatch(batch);
+            batch.clear();
+        }
+        storage.getSnapshot().close(); // Loads the classes involved, so they are not counted below
+
+        long allocated = allocatedBytes();
+        StorageSnapshot snapshot = storage.getSnapshot();
+        allocated = allocatedBytes() - allocated;
+        assertEquals(patients * (long) readings, snapshot.getRecordCount(), "Every reading should be in the snapshot");
+        for (int patientId = 1; patientId <= patients; patientId++) {
+            List<SeriesView> shared = snapshot.seriesViews(patientId);
+            List<SeriesView> live = storage.getPatient(patientId).seriesViews();
+            assertEquals(live.size(), shared.size(), "The snapshot should hold every series");
+            for (int s = 0; s < live.size(); s++) {
+                assertEquals(live.get(s).chunkCount(), shared.get(s).chunkCount(), "Chunk counts should match");
+                for (int c = 0; c < live.get(s).chunkCount(); c++) {
+                    assertSame(live.get(s).chunk(c), shared.get(s).chunk(c),
+                            "The snapshot should share the series' chunks, not copies");
+                }
+            }
+        }
+        // A few small objects per patient, where copying would take 16 bytes per reading
+        assertTrue(allocated < patients * 1_024L,
+                "A snapshot should allocate per patient, not per reading: " + allocated + " bytes");
+        snapshot.close();
+    }
+
+    /**
+     * Returns the bytes allocated by this thread so far, or 0 where the JVM
+     * cannot tell.
+     */
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+}
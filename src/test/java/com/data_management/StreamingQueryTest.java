@@ -0,0 +1,128 @@
+package com.data_management;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Tests for the visitor and cursor query API of DataStorage.
+ */
+public class StreamingQueryTest {
+
+    private static final int PATIENT_ID = 4_096;
+    private static final int QUERIES = 20_000;
+
+    private DataStorage storage;
+
+    @BeforeEach
+    public void setup() {
+        storage = DataStorage.getInstance();
+        storage.clearAllData();
+        for (int i = 0; i < 10_000; i++) {
+            storage.addPatientData(PATIENT_ID, i % 97, "ECG", 1_000L * i);
+            storage.addPatientData(PATIENT_ID, 98, "Saturation", 1_000L * i);
+        }
+        storage.addPatientData(PATIENT_ID, -1, "ECG", 500L); // Late reading
+    }
+
+    @Test
+    @DisplayName("Test visitor and cursor return the same readings as getRecords")
+    public void testMatchesGetRecords() {
+        long start = 1_234_567;
+        long end = 4_567_890;
+        List<PatientRecord> expected = storage.getRecords(PATIENT_ID, start, end).stream()
+                .filter(record -> record.getRecordType().equals("ECG"))
+                .collect(Collectors.toList());
+
+        double[] sum = new double[1];
+        int[] count = new int[1];
+        storage.forEachInRange(PATIENT_ID, "ECG", start, end, (timestamp, value) -> {
+            assertEquals(expected.get(count[0]).getTimestamp(), timestamp, "Visitor timestamps should match");
+            sum[0] += value;
+            count[0]++;
+        });
+        assertEquals(expected.size(), count[0], "Visitor should see every reading in range");
+
+        RecordCursor cursor = storage.openCursor(PATIENT_ID, "ECG", start, end, new RecordCursor());
+        int index = 0;
+        while (cursor.next()) {
+            assertEquals(expected.get(index).getTimestamp(), cursor.getTimestamp(), "Cursor timestamps should match");
+            assertEquals(expected.get(index).getMeasurementValue(), cursor.getValue(), "Cursor values should match");
+            index++;
+        }
+        assertEquals(expected.size(), index, "Cursor should see every reading in range");
+
+        storage.openCursor(PATIENT_ID, "ECG", 100, 600, cursor);
+        assertTrue(cursor.next(), "Late reading should be visible");
+        assertEquals(-1, cursor.getValue(), "Late reading should come first");
+        assertFalse(storage.openCursor(PATIENT_ID + 1, "ECG", 0, end, cursor).next(),
+                "Unknown patient should have no readings");
+    }
+
+    @Test
+    @DisplayName("Test visitor and cursor queries on a patient allocate nothing once warmed up")
+    public void testZeroAllocationPerQuery() {
+        // Alert evaluation already holds the Patient, so that is the hot path measured here
+        Patient patient = storage.getAllPatients().get(0);
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        SumVisitor visitor = new SumVisitor();
+        RecordCursor cursor = new RecordCursor();
+
+        for (int i = 0; i < 5; i++) {
+            visitorQueries(patient, visitor); // Warm up so the JIT compiles the query path
+            cursorQueries(patient, cursor);
+        }
+
+        long before = threads.getThreadAllocatedBytes(threadId);
+        visitorQueries(patient, visitor);
+        long visitorBytes = threads.getThreadAllocatedBytes(threadId) - before;
+
+        before = threads.getThreadAllocatedBytes(threadId);
+        cursorQueries(patient, cursor);
+        long cursorBytes = threads.getThreadAllocatedBytes(threadId) - before;
+
+        assertTrue(visitorBytes < QUERIES, "Visitor queries should not allocate: " + visitorBytes + " bytes");
+        assertTrue(cursorBytes < QUERIES, "Cursor queries should not allocate: " + cursorBytes + " bytes");
+        assertTrue(visitor.count > 0, "Queries should have visited readings");
+    }
+
+    private void visitorQueries(Patient patient, SumVisitor visitor) {
+        for (int q = 0; q < QUERIES; q++) {
+            long start = (q % 9_000) * 1_000L;
+            patient.forEachInRange("ECG", start, start + 60_000, visitor);
+        }
+    }
+
+    private double cursorQueries(Patient patient, RecordCursor cursor) {
+        double sum = 0;
+        for (int q = 0; q < QUERIES; q++) {
+            long start = (q % 9_000) * 1_000L;
+            patient.openCursor("ECG", start, start + 60_000, cursor);
+            while (cursor.next()) {
+                sum += cursor.getValue();
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Visitor that accumulates into fields, as a reused hot-path visitor would.
+     */
+    private static class SumVisitor implements RecordVisitor {
+        private double sum;
+        private long count;
+
+        @Override
+        public void visit(long timestamp, double value) {
+            sum += value;
+            count++;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.data_management;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Tests for the push-based reading subscriptions of DataStorage.
+ */
+public class SubscriptionTest {
+
+    private DataStorage storage;
+    private final List<Subscription> subscriptions = new ArrayList<>();
+
+    @BeforeEach
+    public void setup() {
+        storage = DataStorage.getInstance();
+        storage.clearAllData();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        for (Subscription subscription : subscriptions) {
+            subscription.cancel();
+        }
+        storage.clearAllData();
+    }
+
+    @Test
+    @DisplayName("Test new readings are pushed in batches per patient and record type")
+    public void testDeliveryByPatientAndType() throws Exception {
+        List<ReadingUpdate> updates = new CopyOnWriteArrayList<>();
+        Subscription subscription = track(storage.subscribe(ReadingFilter.recordTypes("HeartRate"), updates::add));
+
+        RecordBatch batch = new RecordBatch();
+        for (int i = 0; i < 100; i++) {
+            batch.add(i % 2, "HeartRate", i, 60 + i);
+            batch.add(i % 2, "OxygenSaturation", i, 95); // Filtered out
+        }
+        storage.addBatch(batch);
+        storage.addPatientData(0, 61, "HeartRate", 0); // Duplicate, not delivered
+        storage.addPatientData(1, 170, "HeartRate", 1_000);
+        awaitDelivered(subscription, 101);
+
+        long[] lastTimestamp = {-1, -1};
+        int readings = 0;
+        for (ReadingUpdate update : updates) {
+            assertEquals("HeartRate", update.getRecordType(), "Only the subscribed type should be delivered");
+            for (int i = 0; i < update.size(); i++) {
+                long timestamp = update.getTimestamp(i);
+                assertEquals(timestamp < 100 ? timestamp % 2 : 1, update.getPatientId(),
+                        "Every reading in an update should belong to its patient");
+                assertTrue(timestamp > lastTimestamp[update.getPatientId()],
+                        "Readings should arrive in the order they were stored");
+                lastTimestamp[update.getPatientId()] = timestamp;
+            }
+            readings += update.size();
+        }
+        assertEquals(101, readings, "Every stored heart rate should be delivered once");
+        assertTrue(updates.size() < readings, "Readings should be delivered in batches");
+        assertEquals(0, subscription.getDroppedCount(), "Nothing should be dropped");
+    }
+
+    @Test
+    @DisplayName("Test overflow policies drop the oldest or the newest readings")
+    public void testDropPolicies() {
+        List<Runnable> pending = new ArrayList<>();
+        List<Long> oldestKept = new ArrayList<>();
+        List<Long> newestKept = new ArrayList<>();
+        Subscription dropOldest = track(storage.subscribe(ReadingFilter.all(),
+                update -> collect(update, oldestKept),
+                new SubscriptionOptions().setExecutor(pending::add).setQueueCapacity(4)));
+        Subscription dropNewest = track(storage.subscribe(ReadingFilter.patients(1),
+                update -> collect(update, newestKept),
+                new SubscriptionOptions().setExecutor(pending::add).setQueueCapacity(4)
+                        .setOverflowPolicy(OverflowPolicy.DROP_NEWEST)));
+
+        for (int i = 0; i < 10; i++) {
+            storage.addPatientData(1, 80, "HeartRate", i);
+        }
+        assertEquals(2, pending.size(), "One delivery task per subscription should be scheduled");
+        for (Runnable task : pending) {
+            task.run();
+        }
+        assertEquals(List.of(6L, 7L, 8L, 9L), oldestKept, "The newest readings should be kept");
+        assertEquals(List.of(0L, 1L, 2L, 3L), newestKept, "The oldest readings should be kept");
+        assertEquals(6, dropOldest.getDroppedCount(), "Dropped readings should be counted");
+        assertEquals(6, dropNewest.getDroppedCount(), "Dropped readings should be counted");
+    }
+
+    @Test
+    @DisplayName("Test the blocking policy loses nothing behind a slow listener, and cancel stops delivery")
+    public void testBlockingAndCancel() throws Exception {
+        List<Long> received = new CopyOnWriteArrayList<>();
+        Subscription subscription = track(storage.subscribe(ReadingFilter.all(), update -> {
+            collect(update, received);
+            sleep(1);
+        }, new SubscriptionOptions().setQueueCapacity(2).setOverflowPolicy(OverflowPolicy.BLOCK)));
+
+        for (int i = 0; i < 50; i++) {
+            storage.addPatientData(1, 80, "HeartRate", i);
+        }
+        awaitDelivered(subscription, 50);
+        assertEquals(50, received.size(), "Every reading should be delivered");
+        assertEquals(0, subscription.getDroppedCount(), "Blocking should drop nothing");
+
+        subscription.cancel();
+        storage.addPatientData(1, 80, "HeartRate", 100);
+        sleep(50);
+        assertTrue(subscription.isCancelled(), "The subscription should be cancelled");
+        assertEquals(50, received.size(), "Cancelled subscriptions should receive nothing");
+        assertThrows(IllegalArgumentException.class, () -> new SubscriptionOptions().setQueueCapacity(0),
+                "Empty queues should be rejected");
+    }
+
+    private Subscription track(Subscription subscription) {
+        subscriptions.add(subscription);
+        return subscription;
+    }
+
+    private static void collect(ReadingUpdate update, List<Long> timestamps) {
+        for (int i = 0; i < update.size(); i++) {
+            timestamps.add(update.getTimestamp(i));
+        }
+    }
+
+    private static void awaitDelivered(Subscription subscription, long readings) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (subscription.getDeliveredCount() < readings && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(readings, subscription.getDeliveredCount(), "Readings should be delivered promptly");
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
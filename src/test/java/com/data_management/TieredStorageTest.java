@@ -0,0 +1,185 @@
+package com.data_management;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Tests for moving the history of inactive patients to disk and paging it
+ * back in.
+ */
+public class TieredStorageTest {
+
+    private static final long HOUR = 3_600_000L;
+
+    private DataStorage storage;
+    private Path directory;
+
+    @BeforeEach
+    public void setup() throws IOException {
+        storage = DataStorage.getInstance();
+        storage.disableTiering();
+        storage.clearAllData();
+        directory = Files.createTempDirectory("data-storage-cold");
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        storage.disableTiering();
+        storage.clearAllData();
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    /**
+     * Adds one reading per second for each patient, oldest first.
+     */
+    private void ingest(int patients, long startTime, int seconds) {
+        RecordBatch batch = new RecordBatch();
+        for (int i = 0; i < seconds; i++) {
+            for (int patientId = 1; patientId <= patients; patientId++) {
+                batch.add(patientId, "HeartRate", startTime + 1_000L * i, 60 + (i * 7 + patientId) % 40);
+            }
+            if (batch.size() >= 4_096) {
+                storage.addBatch(batch);
+                batch.clear();
+            }
+        }
+        storage.addBatch(batch);
+    }
+
+    private static TieringOptions options(int hotPatients, long hotWindowMinutes) {
+        return new TieringOptions().setHotPatients(hotPatients).setHotWindow(hotWindowMinutes, TimeUnit.MINUTES)
+                .setInterval(0, TimeUnit.SECONDS);
+    }
+
+    private static void assertSameRecords(List<PatientRecord> expected, List<PatientRecord> actual) {
+        assertEquals(expected.size(), actual.size(), "Every reading should be returned");
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getTimestamp(), actual.get(i).getTimestamp(), "Timestamps should match");
+            assertEquals(expected.get(i).getMeasurementValue(), actual.get(i).getMeasurementValue(),
+                    "Values should match");
+        }
+    }
+
+    @Test
+    @DisplayName("Test inactive patients move to disk and their history is paged back in by queries")
+    public void testColdPatientsArePagedIn() throws IOException {
+        ingest(40, 0, 2 * 3_600);
+        // Read through the patients, which does not count as use
+        List<PatientRecord> expected = storage.getPatient(7).getRecords(0, Long.MAX_VALUE);
+        List<Aggregate> expectedSeconds = storage.getPatient(7).getAggregates("HeartRate", 0, Long.MAX_VALUE,
+                Resolution.SECOND);
+        storage.enableTiering(directory, options(4, 10));
+        for (int patientId = 1; patientId <= 4; patientId++) {
+            storage.getRecords(patientId, 0, 0);
+        }
+        MemoryUsage before = storage.getMemoryUsage();
+
+        assertTrue(storage.enforceTiering() > 30 * 6_000, "The history of inactive patients should move to disk");
+        MemoryUsage after = storage.getMemoryUsage();
+        assertTrue(storage.getColdBytes() > 0, "Moved readings should be on disk");
+        assertTrue(after.getPatientBytes(7) * 3 < before.getPatientBytes(7),
+                "Cold patients should shrink: " + before.getPatientBytes(7) + " -> " + after.getPatientBytes(7));
+        assertEquals(before.getPatientBytes(2), after.getPatientBytes(2), "Hot patients should stay in memory");
+
+        assertEquals(0, storage.getColdPageInCount(), "Nothing should be read back yet");
+        assertEquals(60 + (7_199 * 7 + 7) % 40, storage.getLatest(7, "HeartRate").getMeasurementValue(),
+                "Latest values should not need the disk");
+        assertEquals(600, storage.getRecords(7, 2 * HOUR - 600_000, 2 * HOUR).size(),
+                "The hot window should be read from memory");
+        assertEquals(0, storage.getColdPageInCount(), "The hot window should not need the disk");
+        assertSameRecords(expected, storage.getRecords(7, 0, Long.MAX_VALUE));
+        assertTrue(storage.getColdPageInCount() > 0, "Cold chunks should be paged in");
+        List<Aggregate> seconds = storage.getAggregates(7, "HeartRate", 0, Long.MAX_VALUE, Resolution.SECOND);
+        assertEquals(expectedSeconds.size(), seconds.size(), "Second rollups should be rebuilt from cold readings");
+        for (int i = 0; i < seconds.size(); i++) {
+            assertEquals(expectedSeconds.get(i).getStartTime(), seconds.get(i).getStartTime(), "Buckets should match");
+            assertEquals(expectedSeconds.get(i).getMean(), seconds.get(i).getMean(), 1e-9, "Buckets should match");
+        }
+
+        // Patient 7 was just queried, so the least recently used hot patient makes room
+        assertEquals(0, storage.getMemoryUsage().getPatientBytes(7) - after.getPatientBytes(7),
+                "Queries should not change the estimate");
+        storage.enforceTiering();
+        assertTrue(storage.getMemoryUsage().getPatientBytes(1) * 3 < before.getPatientBytes(1),
+                "The least recently used patient should go cold");
+        assertEquals(before.getPatientBytes(2), storage.getMemoryUsage().getPatientBytes(2),
+                "More recently used patients should stay hot");
+    }
+
+    @Test
+    @DisplayName("Test late readings, duplicates and expiry reach cold history")
+    public void testWritesToColdHistory() throws IOException {
+        ingest(3, 0, 3_600);
+        storage.enableTiering(directory, options(0, 0));
+        assertTrue(storage.enforceTiering() > 0, "Every sealed chunk should move to disk");
+
+        storage.addPatientData(2, 99, "HeartRate", 2_000);  // Already on disk
+        storage.addPatientData(2, -5, "HeartRate", 1_500);  // Late
+        storage.addPatientData(2, 75, "HeartRate", HOUR);   // New
+        assertEquals(1, storage.getDuplicateRecordCount(), "Readings on disk should still be deduplicated");
+        List<PatientRecord> records = storage.getRecords(2, 1_000, 2_000);
+        assertEquals(3, records.size(), "The late reading should be merged into the cold history");
+        assertEquals(-5, records.get(1).getMeasurementValue(), "The late reading should be stored");
+        assertEquals(60 + (2 * 7 + 2) % 40, records.get(2).getMeasurementValue(), "The first reading should win");
+        assertEquals(3_602, storage.getRecords(2, 0, Long.MAX_VALUE).size(), "Every reading should be kept");
+
+        storage.enforceTiering();
+        long cold = storage.getColdBytes();
+        storage.getPatient(1).evictBefore(HOUR / 2);
+        assertTrue(storage.getColdBytes() < cold, "Expired cold chunks should be dropped from disk");
+        storage.clearAllData();
+        assertEquals(0, storage.getColdBytes(), "Cleared storage should hold nothing on disk");
+    }
+
+    @Test
+    @DisplayName("Test disabling tiering reads the history back and deletes the files")
+    public void testDisableTiering() throws IOException {
+        ingest(5, 0, 3_600);
+        List<PatientRecord> expected = storage.getPatient(3).getRecords(0, Long.MAX_VALUE);
+        long resident = storage.getMemoryUsage().getTotalBytes();
+        storage.enableTiering(directory, options(1, 5));
+        storage.enforceTiering();
+        assertTrue(storage.getMemoryUsage().getTotalBytes() < resident, "Cold history should leave memory");
+
+        storage.disableTiering();
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(0, files.count(), "Cold files should be deleted");
+        }
+        assertSameRecords(expected, storage.getPatient(3).getRecords(0, Long.MAX_VALUE));
+        assertEquals(0, storage.getColdBytes(), "Nothing should be left on disk");
+        assertThrows(IllegalStateException.class, () -> storage.enforceTiering(),
+                "Passes should need tiering to be enabled");
+    }
+
+    @Test
+    @DisplayName("Test the memory held per patient with most patients cold")
+    public void testCapacity() throws IOException {
+        int patients = 500;
+        ingest(patients, 0, 3 * 3_600);
+        long hot = storage.getMemoryUsage().getTotalBytes();
+        storage.enableTiering(directory, options(patients / 10, 5));
+        for (int patientId = 1; patientId <= patients / 10; patientId++) {
+            storage.getRecords(patientId, 0, 0);
+        }
+        storage.enforceTiering();
+        long tiered = storage.getMemoryUsage().getTotalBytes();
+        assertEquals(3 * 3_600, storage.getRecords(patients, 0, Long.MAX_VALUE).size(),
+                "A cold patient should be read in full");
+        assertTrue(tiered * 3 < hot, "Most of the memory should be freed: " + hot + " -> " + tiered);
+    }
+}